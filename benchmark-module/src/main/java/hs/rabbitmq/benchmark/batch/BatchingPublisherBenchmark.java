@@ -0,0 +1,119 @@
+package hs.rabbitmq.benchmark.batch;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import hs.rabbitmq.batch.BatchingPublisher;
+import hs.rabbitmq.batch.DebatchingConsumer;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: BatchingPublisherBenchmark
+ * @description: 小消息逐条发送与应用层批量发送的端到端吞吐量对比
+ *               每次调用发布MESSAGES_PER_OP条逻辑消息，等待全部被确认并且被消费者（DebatchingConsumer）逐条处理完，
+ *               结果按逻辑消息计算（ops/s即msg/s）。batchSize为0时不打包，逐条basicPublish。
+ *               StubBroker中每条AMQP消息都有确认、路由、投递（复制消息体、提交到分发线程）的开销，
+ *               真实broker的单条消息开销（入队、索引、投递、确认）要大得多，批量带来的提升也会更明显。
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar BatchingPublisherBenchmark -prof gc
+ * @date 2026年10月18日 19:40
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BatchingPublisherBenchmark {
+
+    public static final int MESSAGES_PER_OP = 1_000;
+
+    /**
+     * 一个批次的消息条数，0表示不打包
+     */
+    @Param({"0", "10", "100"})
+    public int batchSize;
+
+    /**
+     * 单条逻辑消息的大小，单位：字节
+     */
+    @Param({"16", "64"})
+    public int payloadSize;
+
+    @Param({"100"})
+    public int confirmLatencyMicros;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private BatchingPublisher publisher;
+    private String queue;
+    private byte[] payload;
+    private final AtomicLong consumed = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker(confirmLatencyMicros, TimeUnit.MICROSECONDS);
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        channel.confirmSelect();
+        queue = channel.queueDeclare().getQueue();
+        Channel consumerChannel = connection.createChannel();
+        consumerChannel.basicConsume(queue, true, new DebatchingConsumer(consumerChannel, true,
+                (properties, body) -> consumed.incrementAndGet()));
+        if (batchSize > 0) {
+            publisher = new BatchingPublisher(channel, batchSize, 64 * 1024, 10, TimeUnit.MILLISECONDS);
+        }
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (publisher != null) {
+            publisher.close();
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publish() throws IOException, InterruptedException, TimeoutException {
+        if (publisher == null) {
+            for (int i = 0; i < MESSAGES_PER_OP; i++) {
+                channel.basicPublish("", queue, null, payload);
+            }
+        } else {
+            for (int i = 0; i < MESSAGES_PER_OP; i++) {
+                publisher.publish("", queue, null, payload);
+            }
+            publisher.flush();
+        }
+        channel.waitForConfirmsOrDie(10_000);
+        expected += MESSAGES_PER_OP;
+        while (consumed.get() < expected) {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+}
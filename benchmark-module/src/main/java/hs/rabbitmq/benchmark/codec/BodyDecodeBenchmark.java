@@ -0,0 +1,95 @@
+package hs.rabbitmq.benchmark.codec;
+
+import hs.rabbitmq.codec.ByteBufferConsumer;
+import hs.rabbitmq.codec.LazyJson;
+import hs.rabbitmq.codec.PayloadBuffers;
+import hs.rabbitmq.codec.Utf8Decoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: BodyDecodeBenchmark
+ * @description: 对比消费者读取消息中一个字段（订单的status）的几种方式：
+ *                  string：与原来的消费者一样，new String(body)（平台默认字符集）后在String上查找字段
+ *                  utf8String：new String(body, UTF_8)，字符集正确，但同样要生成整个String
+ *                  lazy：ByteBufferConsumer.wrap包装为只读ByteBuffer，LazyJson在字节上查找字段并比较，不解码其它内容
+ *                  decodeReused：Utf8Decoder把整个消息体解码到复用的StringBuilder中，需要完整内容时的做法
+ *               status字段放在消息的最后，lazy需要跳过前面所有的字段，是它最不利的情况。
+ *               需要配合-prof gc运行，关注gc.alloc.rate.norm（B/op）：
+ *               java -jar benchmark-module/target/benchmarks.jar BodyDecodeBenchmark -prof gc
+ * @date 2026年10月19日 01:10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BodyDecodeBenchmark {
+
+    private static final String STATUS_FIELD = "\"status\":\"";
+
+    /**
+     * 订单中商品的数量，用来控制消息长度：1约200字节，50约3KB
+     */
+    @Param({"1", "50"})
+    public int items;
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"orderId\":20261019000123,\"customer\":{\"id\":42,\"name\":\"张三\",\"level\":\"VIP\"},\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"sku\":\"SKU-").append(i).append("\",\"title\":\"商品").append(i)
+                    .append(" \\\"限量\\\"\",\"qty\":").append(i % 5 + 1).append('}');
+        }
+        builder.append("],\"remark\":\"请在工作日送货\",\"status\":\"PAID\"}");
+        body = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean string() {
+        return paid(new String(body));
+    }
+
+    @Benchmark
+    public boolean utf8String() {
+        return paid(new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public boolean lazy() {
+        ByteBuffer buffer = ByteBufferConsumer.wrap(body);
+        return LazyJson.stringEquals(buffer, LazyJson.find(buffer, "status"), "PAID");
+    }
+
+    @Benchmark
+    public int decodeReused() {
+        return Utf8Decoder.decode(ByteBufferConsumer.wrap(body), 0, body.length, PayloadBuffers.get().builder()).length();
+    }
+
+    private static boolean paid(String message) {
+        int index = message.indexOf(STATUS_FIELD);
+        return index >= 0 && message.startsWith("PAID\"", index + STATUS_FIELD.length());
+    }
+}
@@ -0,0 +1,130 @@
+package hs.rabbitmq.benchmark.codec;
+
+import hs.rabbitmq.codec.CompressionCodec;
+import hs.rabbitmq.codec.DeflateCodec;
+import hs.rabbitmq.codec.Lz4Codec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * @author heshuai
+ * @title: CompressionBenchmark
+ * @description: 各压缩算法在带宽和CPU之间的取舍
+ *               compress、decompress的吞吐量按原始字节数计算（ops/s × payloadSize即每秒处理的原始字节数），
+ *               压缩率在Setup时打印：压缩后的字节数 / 原始字节数，越小越节省网络带宽和broker磁盘。
+ *               消息内容：
+ *                  json：结构相同、字段值随机的JSON数组，与业务消息类似，重复度高
+ *                  text：随机选取的单词组成的文本，重复度中等
+ *                  random：随机字节，不可压缩，用来观察不可压缩数据上的开销
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar CompressionBenchmark
+ * @date 2026年10月18日 18:50
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CompressionBenchmark {
+
+    private static final String[] WORDS = {"rabbitmq", "exchange", "queue", "binding", "routing", "consumer", "producer",
+            "message", "confirm", "channel", "connection", "durable", "persistent", "prefetch", "acknowledge"};
+
+    /**
+     * lz4、deflate1（最快级别）、deflate6（默认级别）
+     */
+    @Param({"lz4", "deflate1", "deflate6"})
+    public String codec;
+
+    @Param({"json", "text", "random"})
+    public String content;
+
+    /**
+     * 原始消息体大小，单位：字节
+     */
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    private CompressionCodec compressionCodec;
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        switch (codec) {
+            case "lz4":
+                compressionCodec = new Lz4Codec();
+                break;
+            case "deflate1":
+                compressionCodec = new DeflateCodec(Deflater.BEST_SPEED);
+                break;
+            case "deflate6":
+                compressionCodec = new DeflateCodec(6);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        payload = generate(content, payloadSize);
+        compressed = compressionCodec.compress(payload);
+        byte[] restored = compressionCodec.decompress(compressed);
+        if (!Arrays.equals(payload, restored)) {
+            throw new IllegalStateException(codec + " round trip failed");
+        }
+        System.out.printf("%n %s/%s/%d: %d -> %d bytes, ratio %.3f%n", codec, content, payloadSize, payload.length,
+                compressed.length, (double) compressed.length / payload.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compressionCodec.compress(payload);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return compressionCodec.decompress(compressed);
+    }
+
+    private static byte[] generate(String content, int size) {
+        Random random = new Random(42);
+        if ("random".equals(content)) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            return bytes;
+        }
+        StringBuilder builder = new StringBuilder(size + 128);
+        if ("json".equals(content)) {
+            builder.append('[');
+            for (int i = 0; builder.length() < size; i++) {
+                builder.append(i == 0 ? "" : ",")
+                        .append("{\"id\":").append(random.nextInt(1_000_000))
+                        .append(",\"queue\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                        .append("\",\"status\":\"").append(random.nextBoolean() ? "OK" : "FAILED")
+                        .append("\",\"latency\":").append(random.nextInt(10_000))
+                        .append('}');
+            }
+        } else {
+            while (builder.length() < size) {
+                builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, size);
+    }
+}
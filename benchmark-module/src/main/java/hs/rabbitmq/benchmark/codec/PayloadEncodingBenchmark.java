@@ -0,0 +1,114 @@
+package hs.rabbitmq.benchmark.codec;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.codec.PayloadBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: PayloadEncodingBenchmark
+ * @description: 对比两种生成消息体的方式：
+ *                  getBytes：与原来的Producer一样，拼接出String再调用getBytes("utf-8")
+ *                  pooled：在复用的StringBuilder中拼接，通过PayloadBuffers编码到复用的byte[]中
+ *               *Publish版本在编码后还会发布到StubBroker（Channel未开启发布确认，队列没有消费者，消息被直接丢弃），
+ *               用来确认整个发布路径上每条消息的分配量。
+ *               需要配合-prof gc运行，关注gc.alloc.rate.norm（B/op）：
+ *               java -jar benchmark-module/target/benchmarks.jar PayloadEncodingBenchmark -prof gc
+ * @date 2026年10月18日 17:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PayloadEncodingBenchmark {
+
+    /**
+     * 消息前缀：ascii为纯ASCII，cjk为中文（每个字符编码为3个字节）
+     */
+    @Param({"ascii", "cjk"})
+    public String charset;
+
+    /**
+     * 前缀重复的次数，用来控制消息长度
+     */
+    @Param({"1", "64"})
+    public int repeat;
+
+    private String prefix;
+    private int counter;
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String unit = "ascii".equals(charset) ? "message-" : "第条消息-";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            builder.append(unit);
+        }
+        prefix = builder.toString();
+        broker = new StubBroker();
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        channel.queueDeclare("payload-encoding", false, false, false, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        connection.close();
+    }
+
+    /**
+     * 计数器只在0~999之间循环，消息长度的种类有限，与实际业务消息类似
+     */
+    private int nextIndex() {
+        int index = counter;
+        counter = index == 999 ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public byte[] getBytes() throws UnsupportedEncodingException {
+        String message = prefix + nextIndex();
+        return message.getBytes("utf-8");
+    }
+
+    @Benchmark
+    public byte[] pooled() {
+        PayloadBuffers buffers = PayloadBuffers.get();
+        return buffers.encode(buffers.builder().append(prefix).append(nextIndex()));
+    }
+
+    @Benchmark
+    public void getBytesPublish() throws IOException {
+        String message = prefix + nextIndex();
+        channel.basicPublish("", "payload-encoding", null, message.getBytes("utf-8"));
+    }
+
+    @Benchmark
+    public void pooledPublish() throws IOException {
+        PayloadBuffers buffers = PayloadBuffers.get();
+        channel.basicPublish("", "payload-encoding", null, buffers.encode(buffers.builder().append(prefix).append(nextIndex())));
+    }
+}
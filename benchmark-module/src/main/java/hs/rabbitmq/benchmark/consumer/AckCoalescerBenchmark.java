@@ -0,0 +1,112 @@
+package hs.rabbitmq.benchmark.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.consumer.AckCoalescer;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: AckCoalescerBenchmark
+ * @description: 逐条确认与AckCoalescer合并确认的消费吞吐量和ack帧数量对比
+ *               消息由WorkerPoolConsumer的lanes个工作线程并行处理（乱序完成），每次调用发布MESSAGES_PER_OP条消息并等待全部处理完成，
+ *               结果按消息计算（ops/s即msg/s）；每条消息平均的ack帧数量在TearDown时打印。
+ *               StubBroker收到ack只是计数，真实broker上每个ack帧都要经过网络、解析、更新队列状态，帧数减少带来的收益会更明显
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar AckCoalescerBenchmark
+ * @date 2026年10月18日 22:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AckCoalescerBenchmark {
+
+    public static final int MESSAGES_PER_OP = 1_000;
+
+    /**
+     * individual：每条消息basicAck(tag, false)；coalesced：AckCoalescer合并确认
+     */
+    @Param({"individual", "coalesced"})
+    public String ackMode;
+
+    @Param({"1", "4"})
+    public int lanes;
+
+    /**
+     * 连续完成多少条消息时立即确认
+     */
+    @Param({"64"})
+    public int threshold;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private WorkerPoolConsumer consumer;
+    private AckCoalescer acks;
+    private String queue;
+    private final byte[] payload = new byte[64];
+    private final AtomicLong handled = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker();
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        queue = channel.queueDeclare().getQueue();
+        Channel consumerChannel = connection.createChannel();
+        WorkerPoolConsumer.DeliveryHandler handler = (envelope, properties, body) -> handled.incrementAndGet();
+        if ("coalesced".equals(ackMode)) {
+            acks = new AckCoalescer(consumerChannel, threshold, 1, TimeUnit.MILLISECONDS);
+            consumer = new WorkerPoolConsumer(consumerChannel, lanes, WorkerPoolConsumer.KeyExtractor.none(), handler, acks);
+        } else {
+            consumer = new WorkerPoolConsumer(consumerChannel, false, lanes, WorkerPoolConsumer.KeyExtractor.none(), handler);
+        }
+        consumerChannel.basicConsume(queue, false, consumer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        consumer.close();
+        if (acks != null) {
+            acks.close();
+        }
+        System.out.printf("%n %s/%d lanes: %.4f ack frames per message%n", ackMode, lanes,
+                (double) broker.ackFrameCount() / broker.deliveredCount());
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void consume() throws IOException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            channel.basicPublish("", queue, null, payload);
+        }
+        expected += MESSAGES_PER_OP;
+        while (handled.get() < expected) {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package hs.rabbitmq.benchmark.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.consumer.BatchConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: BatchConsumerBenchmark
+ * @description: 逐条消费与BatchConsumer批量消费的吞吐量对比
+ *               下游用parkNanos模拟数据库写入：每次调用固定callMicros微秒（网络往返、事务提交），每行再加rowMicros微秒，
+ *               逐条消费时每条消息一次调用、一次ack；批量消费时每批一次调用、一次multiple=true的ack。
+ *               每次调用发布MESSAGES_PER_OP条消息并等待全部处理完成，结果按消息计算（ops/s即msg/s）
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar BatchConsumerBenchmark
+ * @date 2026年10月18日 23:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BatchConsumerBenchmark {
+
+    public static final int MESSAGES_PER_OP = 500;
+
+    /**
+     * 每批最多的消息条数，1表示逐条消费（DefaultConsumer的写法）
+     */
+    @Param({"1", "10", "50"})
+    public int batchSize;
+
+    @Param({"200"})
+    public int callMicros;
+
+    @Param({"2"})
+    public int rowMicros;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private BatchConsumer batchConsumer;
+    private String queue;
+    private final byte[] payload = new byte[64];
+    private final AtomicLong handled = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker();
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        queue = channel.queueDeclare().getQueue();
+        Channel consumerChannel = connection.createChannel();
+        if (batchSize == 1) {
+            consumerChannel.basicConsume(queue, false, new DefaultConsumer(consumerChannel) {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+                                           byte[] body) throws IOException {
+                    write(1);
+                    getChannel().basicAck(envelope.getDeliveryTag(), false);
+                }
+            });
+        } else {
+            // 替身不限制prefetch，MESSAGES_PER_OP是batchSize的整数倍，每批都能攒满，不会等待receiveTimeout
+            batchConsumer = new BatchConsumer(consumerChannel, batchSize, 1, TimeUnit.MILLISECONDS, batch -> write(batch.size()));
+            consumerChannel.basicConsume(queue, false, batchConsumer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        if (batchConsumer != null) {
+            batchConsumer.close();
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void consume() throws IOException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            channel.basicPublish("", queue, null, payload);
+        }
+        expected += MESSAGES_PER_OP;
+        while (handled.get() < expected) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private void write(int rows) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(callMicros + (long) rowMicros * rows));
+        handled.addAndGet(rows);
+    }
+}
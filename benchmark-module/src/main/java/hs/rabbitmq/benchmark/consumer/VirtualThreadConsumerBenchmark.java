@@ -0,0 +1,125 @@
+package hs.rabbitmq.benchmark.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.consumer.VirtualThreadConsumer;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: VirtualThreadConsumerBenchmark
+ * @description: 处理逻辑阻塞handlerMillis毫秒（模拟JDBC、HTTP调用）时，线程池（WorkerPoolConsumer）与虚拟线程（VirtualThreadConsumer）的消费吞吐量对比
+ *               每次调用发布MESSAGES_PER_OP条消息，等待全部处理完成并确认，结果按消息计算（ops/s即msg/s）。
+ *               替身不按prefetch限制投递，这里在发布端模拟：已发布未处理的消息不超过concurrency条，
+ *               pool为concurrency个工作线程、prefetch为concurrency，virtual为prefetch为concurrency、每条消息一个虚拟线程。
+ *               结束时打印进程的峰值线程数和堆内存，内存分配速率通过-prof gc查看。
+ *               virtual需要Java 21：用Java 21的java命令运行benchmarks.jar，Java 8上这些参数组合会在Setup时失败
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar VirtualThreadConsumerBenchmark -prof gc
+ * @date 2026年10月19日 03:10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class VirtualThreadConsumerBenchmark {
+
+    public static final int MESSAGES_PER_OP = 512;
+
+    /**
+     * pool：线程池；virtual：虚拟线程
+     */
+    @Param({"pool", "virtual"})
+    public String mode;
+
+    /**
+     * 工作线程数量，同时也是prefetch
+     */
+    @Param({"16", "256"})
+    public int concurrency;
+
+    @Param({"50"})
+    public int handlerMillis;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private DefaultConsumer consumer;
+    private String queue;
+    private final byte[] payload = new byte[64];
+    private final AtomicLong handled = new AtomicLong();
+    private long published;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker();
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        queue = channel.queueDeclare().getQueue();
+        Channel consumerChannel = connection.createChannel();
+        consumerChannel.basicQos(concurrency);
+        WorkerPoolConsumer.DeliveryHandler handler = (envelope, properties, body) -> {
+            Thread.sleep(handlerMillis);
+            handled.incrementAndGet();
+        };
+        if ("virtual".equals(mode)) {
+            consumer = new VirtualThreadConsumer(consumerChannel, handler);
+        } else {
+            consumer = new WorkerPoolConsumer(consumerChannel, false, concurrency, WorkerPoolConsumer.KeyExtractor.none(), handler);
+        }
+        consumerChannel.basicConsume(queue, false, consumer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.printf("%n%s concurrency=%d: peak platform threads=%d, heap used=%dKB, non-heap used=%dKB%n", mode, concurrency,
+                threads.getPeakThreadCount(), memory.getHeapMemoryUsage().getUsed() / 1024,
+                memory.getNonHeapMemoryUsage().getUsed() / 1024);
+        ((AutoCloseable) consumer).close();
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void consume() throws IOException {
+        long target = published + MESSAGES_PER_OP;
+        while (published < target) {
+            if (published - handled.get() < concurrency) {
+                channel.basicPublish("", queue, null, payload);
+                published++;
+            } else {
+                LockSupport.parkNanos(100_000);
+            }
+        }
+        while (handled.get() < target) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package hs.rabbitmq.benchmark.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: WorkerPoolConsumerBenchmark
+ * @description: 处理逻辑较慢（等待I/O）时，在分发线程上处理与交给WorkerPoolConsumer处理的消费吞吐量对比
+ *               每次调用发布MESSAGES_PER_OP条消息，消息头orderId在KEYS个值之间轮换，等待全部处理完成并确认，
+ *               结果按消息计算（ops/s即msg/s）。lanes为0时在分发线程上直接处理，即DefaultConsumer的写法；
+ *               处理逻辑用parkNanos模拟handlerMicros微秒的I/O等待（查询数据库、调用接口），不占用CPU，所以单核机器上也能看到扩展性
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar WorkerPoolConsumerBenchmark
+ * @date 2026年10月18日 21:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WorkerPoolConsumerBenchmark {
+
+    public static final int MESSAGES_PER_OP = 256;
+    private static final int KEYS = 64;
+
+    /**
+     * 工作线程数量，0表示在分发线程上处理
+     */
+    @Param({"0", "1", "4", "16"})
+    public int lanes;
+
+    @Param({"50"})
+    public int handlerMicros;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private WorkerPoolConsumer workerPool;
+    private String queue;
+    private AMQP.BasicProperties[] properties;
+    private final byte[] payload = new byte[64];
+    private final AtomicLong handled = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker();
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        queue = channel.queueDeclare().getQueue();
+        properties = new AMQP.BasicProperties[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            properties[i] = new AMQP.BasicProperties.Builder()
+                    .headers(Collections.singletonMap("orderId", "order-" + i)).build();
+        }
+        Channel consumerChannel = connection.createChannel();
+        long handlerNanos = TimeUnit.MICROSECONDS.toNanos(handlerMicros);
+        if (lanes == 0) {
+            consumerChannel.basicConsume(queue, false, new DefaultConsumer(consumerChannel) {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+                                           byte[] body) throws IOException {
+                    LockSupport.parkNanos(handlerNanos);
+                    handled.incrementAndGet();
+                    getChannel().basicAck(envelope.getDeliveryTag(), false);
+                }
+            });
+        } else {
+            workerPool = new WorkerPoolConsumer(consumerChannel, false, lanes, WorkerPoolConsumer.KeyExtractor.header("orderId"),
+                    (envelope, properties, body) -> {
+                        LockSupport.parkNanos(handlerNanos);
+                        handled.incrementAndGet();
+                    });
+            consumerChannel.basicConsume(queue, false, workerPool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        if (workerPool != null) {
+            workerPool.close();
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void consume() throws IOException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            channel.basicPublish("", queue, properties[i % KEYS], payload);
+        }
+        expected += MESSAGES_PER_OP;
+        while (handled.get() < expected) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package hs.rabbitmq.benchmark.outbox;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.MessageProperties;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.outbox.MappedOutbox;
+import hs.rabbitmq.outbox.OutboxDrainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: OutboxBenchmark
+ * @description: 生产者发送一条持久化消息的延迟：写入本地发件箱 vs 直接发布并等待发布确认
+ *               append：写入MappedOutbox，后台的OutboxDrainer同时把消息重放到StubBroker，发件箱写满时append会阻塞，
+ *                       所以测得的延迟包含了重放跟不上时的背压
+ *               publishAndConfirm：basicPublish之后waitForConfirmsOrDie，即PublisherConfirms.publishMessagesIndividually的方式
+ *               使用SampleTime模式，可以看到p99、p99.9等分位数
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar OutboxBenchmark
+ * @date 2026年10月18日 20:40
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OutboxBenchmark {
+
+    @Param({"128", "4096"})
+    public int payloadSize;
+
+    @Param({"100"})
+    public int confirmLatencyMicros;
+
+    private StubBroker broker;
+    private Connection connection;
+    private Channel channel;
+    private Path directory;
+    private MappedOutbox outbox;
+    private OutboxDrainer drainer;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker(confirmLatencyMicros, TimeUnit.MICROSECONDS);
+        connection = broker.newConnection();
+        channel = connection.createChannel();
+        channel.confirmSelect();
+        channel.queueDeclare("outbox", true, false, false, null);
+        directory = Files.createTempDirectory("outbox-benchmark");
+        outbox = new MappedOutbox(directory, 16 * 1024 * 1024, 16, 10, TimeUnit.SECONDS);
+        drainer = new OutboxDrainer(outbox, broker.connectionFactory(), 500, 100, TimeUnit.MILLISECONDS).start();
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        drainer.close();
+        outbox.close();
+        connection.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void append() throws IOException, InterruptedException {
+        outbox.append("", "outbox", MessageProperties.PERSISTENT_BASIC, payload);
+    }
+
+    @Benchmark
+    public void publishAndConfirm() throws IOException, InterruptedException, TimeoutException {
+        channel.basicPublish("", "outbox", MessageProperties.PERSISTENT_BASIC, payload);
+        channel.waitForConfirmsOrDie(5_000);
+    }
+}
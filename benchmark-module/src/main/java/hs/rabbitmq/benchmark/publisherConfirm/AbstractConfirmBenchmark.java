@@ -0,0 +1,85 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: AbstractConfirmBenchmark
+ * @description: 发布确认基准测试的公共部分：在StubBroker上准备好Connection、Channel和消息体
+ *               每次调用发布MESSAGES_PER_OP条消息，结果按单条消息计算吞吐量（ops/s即msg/s）
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar ConfirmBenchmark -prof gc
+ * @date 2026年10月18日 15:10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public abstract class AbstractConfirmBenchmark {
+
+    /**
+     * 每次调用发布的消息数量
+     */
+    public static final int MESSAGES_PER_OP = 1_000;
+
+    /**
+     * 消息体大小，单位：字节
+     */
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    /**
+     * 消息轮流发布到的Channel数量
+     */
+    @Param({"1", "4"})
+    public int channels;
+
+    /**
+     * broker确认一条消息的延迟，单位：微秒，用来模拟broker刷盘和网络往返
+     */
+    @Param({"100"})
+    public int confirmLatencyMicros;
+
+    protected StubBroker broker;
+    protected Connection connection;
+    protected Channel[] channelArray;
+    protected String queue;
+    protected byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUpBroker() throws IOException {
+        broker = new StubBroker(confirmLatencyMicros, TimeUnit.MICROSECONDS);
+        connection = broker.newConnection();
+        channelArray = new Channel[channels];
+        for (int i = 0; i < channels; i++) {
+            channelArray[i] = connection.createChannel();
+        }
+        queue = channelArray[0].queueDeclare().getQueue();
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownBroker() throws IOException {
+        connection.close();
+    }
+}
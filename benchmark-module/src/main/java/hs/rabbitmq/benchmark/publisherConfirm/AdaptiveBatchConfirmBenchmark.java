@@ -0,0 +1,54 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import hs.rabbitmq.publisherConfirm.AdaptiveBatchPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: AdaptiveBatchConfirmBenchmark
+ * @description: 自适应批量确认，和BatchConfirmBenchmark的固定批量对比；每轮迭代结束时打印收敛后的批量大小和p99延迟
+ * @date 2026年10月18日 16:40
+ */
+public class AdaptiveBatchConfirmBenchmark extends AbstractConfirmBenchmark {
+
+    @Param({"1000", "5000"})
+    public int targetP99Micros;
+
+    private AdaptiveBatchPublisher[] publishers;
+
+    @Setup(Level.Trial)
+    public void createPublishers() throws IOException {
+        publishers = new AdaptiveBatchPublisher[channels];
+        for (int i = 0; i < channels; i++) {
+            publishers[i] = new AdaptiveBatchPublisher(channelArray[i], 1, 10_000, targetP99Micros, TimeUnit.MICROSECONDS, 5_000);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() throws IOException, InterruptedException, TimeoutException {
+        // 批量可以跨越多次调用，迭代结束时再确认剩余的消息
+        for (AdaptiveBatchPublisher publisher : publishers) {
+            publisher.flush();
+        }
+        AdaptiveBatchPublisher publisher = publishers[0];
+        System.out.printf("%n batch size: %d, confirm rtt: %d us, p99 batch latency: %d us%n", publisher.getBatchSize(),
+                publisher.getLastConfirmRtt(TimeUnit.MICROSECONDS), publisher.getP99BatchLatency(TimeUnit.MICROSECONDS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publishInAdaptiveBatch() throws IOException, InterruptedException, TimeoutException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            publishers[i % channels].publish("", queue, null, payload);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import hs.rabbitmq.publisherConfirm.ConfirmingPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: AsyncConfirmBenchmark
+ * @description: 对应PublisherConfirms.handlePublishConfirmsAsynchronously，使用ConfirmingPublisher异步处理确认，
+ *               inFlight为每个Channel上允许的最大未确认消息数量
+ * @date 2026年10月18日 15:10
+ */
+public class AsyncConfirmBenchmark extends AbstractConfirmBenchmark {
+
+    @Param({"64", "1024", "8192"})
+    public int inFlight;
+
+    private ConfirmingPublisher[] publishers;
+
+    @Setup(Level.Trial)
+    public void createPublishers() throws IOException {
+        publishers = new ConfirmingPublisher[channels];
+        for (int i = 0; i < channels; i++) {
+            publishers[i] = new ConfirmingPublisher(channelArray[i], inFlight);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publishAsynchronously() throws IOException, InterruptedException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            publishers[i % channels].publish("", queue, null, payload);
+        }
+        // 本次调用发布的消息全部确认后才算完成，避免把未确认的消息算进吞吐量
+        for (ConfirmingPublisher publisher : publishers) {
+            if (!publisher.awaitConfirms(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Messages could not be confirmed in 5 seconds");
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import com.rabbitmq.client.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: BatchConfirmBenchmark
+ * @description: 对应PublisherConfirms.publishMessagesInBatch：每发布batchSize条消息同步等待一次确认，
+ *               多个Channel时每个Channel各自攒够一批再等待
+ * @date 2026年10月18日 15:10
+ */
+public class BatchConfirmBenchmark extends AbstractConfirmBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int batchSize;
+
+    private int[] outstanding;
+
+    @Setup(Level.Trial)
+    public void selectConfirms() throws IOException {
+        outstanding = new int[channels];
+        for (Channel channel : channelArray) {
+            channel.confirmSelect();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publishInBatch() throws IOException, InterruptedException, TimeoutException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            int index = i % channels;
+            Channel channel = channelArray[index];
+            channel.basicPublish("", queue, null, payload);
+            if (++outstanding[index] == batchSize) {
+                channel.waitForConfirmsOrDie(5_000);
+                outstanding[index] = 0;
+            }
+        }
+        // 不满一批的消息在本次调用结束前也要确认完
+        for (int index = 0; index < channels; index++) {
+            if (outstanding[index] > 0) {
+                channelArray[index].waitForConfirmsOrDie(5_000);
+                outstanding[index] = 0;
+            }
+        }
+    }
+}
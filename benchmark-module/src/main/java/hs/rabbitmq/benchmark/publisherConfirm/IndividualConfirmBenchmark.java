@@ -0,0 +1,36 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import com.rabbitmq.client.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: IndividualConfirmBenchmark
+ * @description: 对应PublisherConfirms.publishMessagesIndividually：每发布一条消息同步等待一次确认
+ * @date 2026年10月18日 15:10
+ */
+public class IndividualConfirmBenchmark extends AbstractConfirmBenchmark {
+
+    @Setup(Level.Trial)
+    public void selectConfirms() throws IOException {
+        for (Channel channel : channelArray) {
+            channel.confirmSelect();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publishIndividually() throws IOException, InterruptedException, TimeoutException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            Channel channel = channelArray[i % channels];
+            channel.basicPublish("", queue, null, payload);
+            channel.waitForConfirmsOrDie(5_000);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package hs.rabbitmq.benchmark.publisherConfirm;
+
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.publisherConfirm.ShardedPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: ShardedPublisherBenchmark
+ * @description: 多个线程共享一个ShardedPublisher发布消息，shards=1时相当于所有线程共享一个Channel
+ *               可以用-t调整线程数，观察吞吐量随分片数量的变化
+ * @date 2026年10月18日 16:02
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class ShardedPublisherBenchmark {
+
+    private static final int MESSAGES_PER_OP = 100;
+    private static final String[] ROUTING_KEYS = {"log.error", "log.info", "log.warn", "order.created", "order.paid",
+            "user.login", "user.logout", "payment.refund"};
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    @Param({"ROUND_ROBIN"})
+    public ShardedPublisher.ShardStrategy strategy;
+
+    @Param({"1024"})
+    public int payloadSize;
+
+    @Param({"100"})
+    public int confirmLatencyMicros;
+
+    private ShardedPublisher publisher;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, TimeoutException {
+        StubBroker broker = new StubBroker(confirmLatencyMicros, TimeUnit.MICROSECONDS);
+        publisher = ShardedPublisher.create(broker.connectionFactory(), shards, Math.min(connections, shards), 1_024, strategy);
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        publisher.awaitConfirms(5, TimeUnit.SECONDS);
+        publisher.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OP)
+    public void publish() throws IOException, InterruptedException {
+        for (int i = 0; i < MESSAGES_PER_OP; i++) {
+            // 替身中没有这个Exchange，消息发布确认后直接丢弃
+            publisher.publish("MESSAGE_TOPIC", ROUTING_KEYS[i & 7], null, payload);
+        }
+    }
+}
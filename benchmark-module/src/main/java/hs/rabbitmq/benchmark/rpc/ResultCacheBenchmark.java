@@ -0,0 +1,121 @@
+package hs.rabbitmq.benchmark.rpc;
+
+import hs.rabbitmq.rpc.ConcurrentRPCServer;
+import hs.rabbitmq.rpc.ResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: ResultCacheBenchmark
+ * @description: 有无ResultCache时RPC处理逻辑的吞吐量对比，直接调用处理逻辑，不经过broker
+ *               处理逻辑为fib(fib)，CPU密集；请求从keys个不同的请求中按Zipf分布（指数skew）抽取，少数请求占大部分，
+ *               缓存最多capacity个结果。结束时打印命中率和淘汰数量
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar ResultCacheBenchmark
+ * @date 2026年10月19日 07:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ResultCacheBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+
+    /**
+     * none：不缓存；lru：ResultCache
+     */
+    @Param({"none", "lru"})
+    public String cache;
+
+    @Param({"4096"})
+    public int keys;
+
+    @Param({"256"})
+    public int capacity;
+
+    @Param({"1.0"})
+    public double skew;
+
+    @Param({"20"})
+    public int fib;
+
+    private ConcurrentRPCServer.RequestHandler handler;
+    private ResultCache resultCache;
+    private byte[][] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConcurrentRPCServer.RequestHandler compute = (properties, body) -> {
+            // 计算量与请求内容无关，回复与请求一一对应
+            int result = fib(fib) + Integer.parseInt(new String(body, StandardCharsets.UTF_8));
+            return Integer.toString(result).getBytes(StandardCharsets.UTF_8);
+        };
+        if ("lru".equals(cache)) {
+            resultCache = new ResultCache(capacity, Long.MAX_VALUE, 0, TimeUnit.SECONDS);
+            handler = resultCache.handler(compute);
+        } else {
+            handler = compute;
+        }
+        requests = zipfRequests();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (resultCache != null) {
+            System.out.printf("%nhit ratio=%.3f, evictions=%d%n", resultCache.hitRatio(), resultCache.evictions());
+        }
+    }
+
+    @Benchmark
+    public byte[] handle() throws Exception {
+        byte[] request = requests[next++ & (SAMPLES - 1)];
+        return handler.handle(null, request);
+    }
+
+    /**
+     * 按Zipf分布预先抽取SAMPLES个请求，第k个请求被抽中的概率与1 / k^skew成正比
+     */
+    private byte[][] zipfRequests() {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int k = 0; k < keys; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+        byte[][] bodies = new byte[keys][];
+        for (int k = 0; k < keys; k++) {
+            bodies[k] = Integer.toString(k).getBytes(StandardCharsets.UTF_8);
+        }
+        Random random = new Random(42);
+        byte[][] samples = new byte[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            int k = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            samples[i] = bodies[k < 0 ? -k - 1 : k];
+        }
+        return samples;
+    }
+
+    private static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+}
@@ -0,0 +1,132 @@
+package hs.rabbitmq.benchmark.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.rpc.MultiplexingRPCClient;
+import hs.rabbitmq.rpc.RPCClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: RpcClientBenchmark
+ * @description: 每次请求声明回复queue（RPCClient.call）与共用回复消费者（MultiplexingRPCClient）的RPC延迟分位数对比
+ *               服务端在另一个Connection上原样返回请求内容。替身的同步方法（queue.declare、basic.consume、basic.cancel）
+ *               按roundTripMicros模拟网络往返，RPCClient.call每次请求多三次往返，MultiplexingRPCClient只在创建时订阅一次。
+ *               mode：perCall为RPCClient.call；directReplyTo为direct reply-to；sharedQueue为创建时声明的一个exclusive回复queue。
+ *               多个线程同时请求（在途请求数量）通过-t指定，所有线程共用一个客户端、一个Channel。
+ *               fanOut：一个线程同时发出FAN_OUT个请求并等待全部回复（Web层并行调用多个服务），
+ *               MultiplexingRPCClient使用callAsync，RPCClient.call只能逐个阻塞调用，结果按单个请求计算
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar RpcClientBenchmark -t 8
+ * @date 2026年10月19日 04:20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RpcClientBenchmark {
+
+    public static final int FAN_OUT = 64;
+
+    private static final String REQUEST_QUEUE = "rpc_queue";
+
+    /**
+     * perCall：RPCClient.call；directReplyTo、sharedQueue：MultiplexingRPCClient
+     */
+    @Param({"perCall", "directReplyTo", "sharedQueue"})
+    public String mode;
+
+    /**
+     * 同步方法的往返延迟，单位：微秒
+     */
+    @Param({"0", "200"})
+    public int roundTripMicros;
+
+    private StubBroker broker;
+    private Connection serverConnection;
+    private Connection clientConnection;
+    private Channel clientChannel;
+    private MultiplexingRPCClient client;
+    private final byte[] request = "30".getBytes(StandardCharsets.UTF_8);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        broker = new StubBroker(0, roundTripMicros, TimeUnit.MICROSECONDS);
+        serverConnection = broker.newConnection();
+        Channel serverChannel = serverConnection.createChannel();
+        serverChannel.queueDeclare(REQUEST_QUEUE, false, false, false, null);
+        serverChannel.basicConsume(REQUEST_QUEUE, true, new DefaultConsumer(serverChannel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                    throws IOException {
+                AMQP.BasicProperties replyProps = new AMQP.BasicProperties.Builder()
+                        .correlationId(properties.getCorrelationId())
+                        .build();
+                getChannel().basicPublish("", properties.getReplyTo(), replyProps, body);
+            }
+        });
+        clientConnection = broker.newConnection();
+        clientChannel = clientConnection.createChannel();
+        if (!"perCall".equals(mode)) {
+            client = new MultiplexingRPCClient(clientChannel, "", REQUEST_QUEUE, "directReplyTo".equals(mode),
+                    10, TimeUnit.SECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        clientConnection.close();
+        serverConnection.close();
+    }
+
+    @Benchmark
+    public String call() throws IOException, InterruptedException, TimeoutException {
+        if (client == null) {
+            return RPCClient.call(clientChannel, REQUEST_QUEUE, "30");
+        }
+        return client.call("30");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FAN_OUT)
+    public void fanOut() throws IOException, InterruptedException {
+        if (client == null) {
+            for (int i = 0; i < FAN_OUT; i++) {
+                RPCClient.call(clientChannel, REQUEST_QUEUE, "30");
+            }
+            return;
+        }
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[FAN_OUT];
+        for (int i = 0; i < FAN_OUT; i++) {
+            replies[i] = client.callAsync(request);
+        }
+        CompletableFuture.allOf(replies).join();
+    }
+}
@@ -0,0 +1,133 @@
+package hs.rabbitmq.benchmark.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.rpc.ConcurrentRPCServer;
+import hs.rabbitmq.rpc.MultiplexingRPCClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: RpcServerBenchmark
+ * @description: 单Channel在分发线程上处理请求（RPCServer原来的方式）与ConcurrentRPCServer的服务端吞吐量对比
+ *               每次调用由MultiplexingRPCClient同时发出REQUESTS_PER_OP个请求并等待全部回复，结果按请求计算（ops/s即请求/s）。
+ *               请求的处理逻辑为计算fib(fib)，CPU密集；concurrent的工作线程数量为workers，0表示CPU核数，
+ *               single不使用workers。结束时打印ConcurrentRPCServer平均每批发送的回复数量。
+ *               吞吐量随CPU核数增长，单核机器上两者接近
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar RpcServerBenchmark
+ * @date 2026年10月19日 06:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RpcServerBenchmark {
+
+    public static final int REQUESTS_PER_OP = 256;
+
+    private static final String REQUEST_QUEUE = "rpc_queue";
+
+    /**
+     * single：一个Channel，在分发线程上处理；concurrent：ConcurrentRPCServer
+     */
+    @Param({"single", "concurrent"})
+    public String server;
+
+    @Param({"0"})
+    public int workers;
+
+    @Param({"20"})
+    public int fib;
+
+    private Connection serverConnection;
+    private Connection clientConnection;
+    private ConcurrentRPCServer concurrentServer;
+    private MultiplexingRPCClient client;
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StubBroker broker = new StubBroker();
+        serverConnection = broker.newConnection();
+        Channel serverChannel = serverConnection.createChannel();
+        serverChannel.queueDeclare(REQUEST_QUEUE, false, false, false, null);
+        if ("concurrent".equals(server)) {
+            int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+            concurrentServer = new ConcurrentRPCServer(serverConnection, REQUEST_QUEUE, RpcServerBenchmark::handle,
+                    Math.min(threads, 4), threads);
+            concurrentServer.start();
+        } else {
+            serverChannel.basicQos(1);
+            serverChannel.basicConsume(REQUEST_QUEUE, false, new DefaultConsumer(serverChannel) {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                        throws IOException {
+                    AMQP.BasicProperties replyProps = new AMQP.BasicProperties.Builder()
+                            .correlationId(properties.getCorrelationId())
+                            .build();
+                    getChannel().basicPublish("", properties.getReplyTo(), replyProps, handle(properties, body));
+                    getChannel().basicAck(envelope.getDeliveryTag(), false);
+                }
+            });
+        }
+        clientConnection = broker.newConnection();
+        client = new MultiplexingRPCClient(clientConnection.createChannel(), "", REQUEST_QUEUE, 30, TimeUnit.SECONDS);
+        request = Integer.toString(fib).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        clientConnection.close();
+        if (concurrentServer != null) {
+            long replies = concurrentServer.processed() + concurrentServer.failed();
+            System.out.printf("%nreplies=%d, drains=%d, replies per drain=%.2f%n", replies, concurrentServer.replyBatches(),
+                    (double) replies / Math.max(1, concurrentServer.replyBatches()));
+            concurrentServer.close();
+        }
+        serverConnection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS_PER_OP)
+    public void serve() {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[REQUESTS_PER_OP];
+        for (int i = 0; i < REQUESTS_PER_OP; i++) {
+            replies[i] = client.callAsync(request);
+        }
+        CompletableFuture.allOf(replies).join();
+    }
+
+    private static byte[] handle(AMQP.BasicProperties properties, byte[] body) {
+        int n = Integer.parseInt(new String(body, StandardCharsets.UTF_8));
+        return Integer.toString(fib(n)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+}
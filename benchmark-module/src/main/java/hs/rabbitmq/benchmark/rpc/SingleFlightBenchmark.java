@@ -0,0 +1,113 @@
+package hs.rabbitmq.benchmark.rpc;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import hs.rabbitmq.benchmark.stub.StubBroker;
+import hs.rabbitmq.rpc.ConcurrentRPCServer;
+import hs.rabbitmq.rpc.MultiplexingRPCClient;
+import hs.rabbitmq.rpc.SingleFlight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: SingleFlightBenchmark
+ * @description: 有无SingleFlight时ConcurrentRPCServer处理一批相同请求的耗时对比
+ *               每次调用由MultiplexingRPCClient同时发出CALLS_PER_OP个完全相同的请求（fib(fib)）并等待全部回复，
+ *               结果为一批的平均耗时。不使用ResultCache，相同请求只能靠SingleFlight合并。
+ *               结束时打印平均每批实际计算的次数，none为CALLS_PER_OP
+ *               运行方式：java -jar benchmark-module/target/benchmarks.jar SingleFlightBenchmark
+ * @date 2026年10月19日 08:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SingleFlightBenchmark {
+
+    public static final int CALLS_PER_OP = 1000;
+
+    private static final String REQUEST_QUEUE = "rpc_queue";
+
+    /**
+     * none：每个请求各自计算；singleFlight：合并同时到达的相同请求
+     */
+    @Param({"none", "singleFlight"})
+    public String mode;
+
+    @Param({"0"})
+    public int workers;
+
+    @Param({"22"})
+    public int fib;
+
+    private final AtomicLong computations = new AtomicLong();
+    private long batches;
+    private Connection serverConnection;
+    private Connection clientConnection;
+    private ConcurrentRPCServer server;
+    private MultiplexingRPCClient client;
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StubBroker broker = new StubBroker();
+        serverConnection = broker.newConnection();
+        Channel serverChannel = serverConnection.createChannel();
+        serverChannel.queueDeclare(REQUEST_QUEUE, false, false, false, null);
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        ConcurrentRPCServer.RequestHandler handler = (properties, body) -> {
+            computations.incrementAndGet();
+            int n = Integer.parseInt(new String(body, StandardCharsets.UTF_8));
+            return Integer.toString(fib(n)).getBytes(StandardCharsets.UTF_8);
+        };
+        server = new ConcurrentRPCServer(serverConnection, REQUEST_QUEUE, handler, Math.min(threads, 4), threads,
+                "singleFlight".equals(mode) ? new SingleFlight() : null);
+        server.start();
+        clientConnection = broker.newConnection();
+        client = new MultiplexingRPCClient(clientConnection.createChannel(), "", REQUEST_QUEUE, 60, TimeUnit.SECONDS);
+        request = Integer.toString(fib).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%ncomputations per %d calls=%.1f%n", CALLS_PER_OP, (double) computations.get() / Math.max(1, batches));
+        client.close();
+        clientConnection.close();
+        server.close();
+        serverConnection.close();
+    }
+
+    @Benchmark
+    public void burst() {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[CALLS_PER_OP];
+        for (int i = 0; i < CALLS_PER_OP; i++) {
+            replies[i] = client.callAsync(request);
+        }
+        CompletableFuture.allOf(replies).join();
+        batches++;
+    }
+
+    private static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+}
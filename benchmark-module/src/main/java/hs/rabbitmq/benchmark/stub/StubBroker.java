@@ -0,0 +1,314 @@
+package hs.rabbitmq.benchmark.stub;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author heshuai
+ * @title: StubBroker
+ * @description: 进程内的AMQP替身，用于在没有Rabbitmq的开发机上运行基准测试
+ *               只模拟了客户端代码能观察到的行为：
+ *                  1. 发布确认：每个Channel的确认由所属Connection的确认线程异步发送，可以配置确认延迟（模拟broker刷盘），
+ *                     和真实broker一样，会用multiple=true一次确认多条消息
+ *                  2. 路由：默认Exchange按queue名字路由；其它Exchange按绑定的routingKey精确匹配，fanout类型发送到所有绑定的queue
+ *                  3. 消费：queue上有消费者时轮询投递，投递在Connection的分发线程上执行；
+ *                     没有消费者时最多暂存UNCONSUMED_LIMIT条，第一个消费者注册时投递给它，超过的消息直接丢弃，不会无限占用内存
+ *                  4. 同步方法的往返延迟：queue.declare、basic.consume、basic.cancel等需要等待broker回复的方法可以配置延迟（模拟网络往返）
+ *                  5. auto-delete的queue在最后一个消费者取消后删除；direct reply-to（amq.rabbitmq.reply-to）
+ *               不模拟的内容：持久化、prefetch限制、事务、消息重新入队等
+ * @date 2026年10月18日 14:20
+ */
+public class StubBroker {
+
+    /**
+     * 没有消费者的queue最多暂存的消息数量
+     */
+    static final int UNCONSUMED_LIMIT = 1024;
+
+    /**
+     * 发布确认的延迟，单位：纳秒
+     */
+    private final long confirmLatencyNanos;
+    /**
+     * 同步方法的往返延迟，单位：纳秒
+     */
+    private final long methodLatencyNanos;
+    private final Map<String, StubQueue> queues = new ConcurrentHashMap<>();
+    private final Map<String, Exchange> exchanges = new ConcurrentHashMap<>();
+    private final AtomicLong queueNames = new AtomicLong();
+
+    final LongAdder published = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder ackFrames = new LongAdder();
+    final LongAdder nackFrames = new LongAdder();
+
+    public StubBroker() {
+        this(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param confirmLatency 每条消息从发布到被确认的最短时间
+     */
+    public StubBroker(long confirmLatency, TimeUnit unit) {
+        this(confirmLatency, 0, unit);
+    }
+
+    /**
+     * @param confirmLatency 每条消息从发布到被确认的最短时间
+     * @param methodLatency queue.declare、basic.consume等同步方法从发出到收到回复的时间
+     */
+    public StubBroker(long confirmLatency, long methodLatency, TimeUnit unit) {
+        this.confirmLatencyNanos = unit.toNanos(confirmLatency);
+        this.methodLatencyNanos = unit.toNanos(methodLatency);
+    }
+
+    public Connection newConnection() {
+        return new StubConnection(this);
+    }
+
+    /**
+     * @return 创建StubConnection的连接工厂，可以直接传给需要ConnectionFactory的代码
+     */
+    public ConnectionFactory connectionFactory() {
+        return new StubConnectionFactory(this);
+    }
+
+    long confirmLatencyNanos() {
+        return confirmLatencyNanos;
+    }
+
+    long methodLatencyNanos() {
+        return methodLatencyNanos;
+    }
+
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    public long deliveredCount() {
+        return delivered.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 收到的basicAck帧数量（multiple=true的ack只算一帧）
+     */
+    public long ackFrameCount() {
+        return ackFrames.sum();
+    }
+
+    public long nackFrameCount() {
+        return nackFrames.sum();
+    }
+
+    StubQueue declareQueue(String name) {
+        return declareQueue(name, false);
+    }
+
+    /**
+     * @param autoDelete 是否在最后一个消费者取消后删除，只在第一次声明时生效
+     */
+    StubQueue declareQueue(String name, boolean autoDelete) {
+        if (name == null || name.isEmpty()) {
+            name = "amq.gen-" + queueNames.incrementAndGet();
+        }
+        return queues.computeIfAbsent(name, n -> new StubQueue(n, autoDelete));
+    }
+
+    StubQueue queue(String name) {
+        return queues.get(name);
+    }
+
+    /**
+     * 消费者被取消或者所在的Channel关闭后调用
+     */
+    void consumerRemoved(StubQueue queue) {
+        if (queue.autoDelete && queue.consumerCount() == 0) {
+            deleteQueue(queue.name);
+        }
+    }
+
+    void deleteQueue(String name) {
+        StubQueue queue = queues.remove(name);
+        if (queue != null) {
+            for (Exchange exchange : exchanges.values()) {
+                exchange.unbind(queue);
+            }
+        }
+    }
+
+    void declareExchange(String name, String type) {
+        exchanges.computeIfAbsent(name, n -> new Exchange(BuiltinExchangeType.FANOUT.getType().equals(type)));
+    }
+
+    void bind(String queue, String exchange, String routingKey) {
+        StubQueue target = declareQueue(queue);
+        exchanges.computeIfAbsent(exchange, n -> new Exchange(false)).bind(routingKey, target);
+    }
+
+    /**
+     * 路由一条消息到queue上
+     */
+    void route(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+        published.increment();
+        if (exchange.isEmpty()) {
+            StubQueue queue = queues.get(routingKey);
+            if (queue == null || !queue.deliver(exchange, routingKey, props, body)) {
+                dropped.increment();
+            }
+            return;
+        }
+        Exchange target = exchanges.get(exchange);
+        if (target == null || !target.route(routingKey, props, body, exchange)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 只保存绑定关系的Exchange
+     */
+    private static final class Exchange {
+        private final boolean fanout;
+        private final Map<String, List<StubQueue>> bindings = new ConcurrentHashMap<>();
+
+        private Exchange(boolean fanout) {
+            this.fanout = fanout;
+        }
+
+        private void bind(String routingKey, StubQueue queue) {
+            List<StubQueue> targets = bindings.computeIfAbsent(fanout ? "" : routingKey, k -> new CopyOnWriteArrayList<>());
+            if (!targets.contains(queue)) {
+                targets.add(queue);
+            }
+        }
+
+        private void unbind(StubQueue queue) {
+            for (List<StubQueue> targets : bindings.values()) {
+                targets.remove(queue);
+            }
+        }
+
+        private boolean route(String routingKey, AMQP.BasicProperties props, byte[] body, String name) {
+            List<StubQueue> targets = bindings.get(fanout ? "" : routingKey);
+            boolean routed = false;
+            if (targets != null) {
+                for (StubQueue queue : targets) {
+                    routed |= queue.deliver(name, routingKey, props, body);
+                }
+            }
+            return routed;
+        }
+    }
+
+    /**
+     * 保存消费者和少量暂存消息的queue
+     */
+    final class StubQueue {
+        final String name;
+        private final boolean autoDelete;
+        private final List<StubChannel.StubConsumer> consumers = new CopyOnWriteArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        /**
+         * 没有消费者时收到的消息，只在持有this锁时访问
+         */
+        private final ArrayDeque<Unconsumed> unconsumed = new ArrayDeque<>();
+
+        private StubQueue(String name, boolean autoDelete) {
+            this.name = name;
+            this.autoDelete = autoDelete;
+        }
+
+        /**
+         * 注册消费者，并把暂存的消息投递给它
+         */
+        synchronized void addConsumer(StubChannel.StubConsumer consumer) {
+            consumers.add(consumer);
+            Unconsumed message;
+            while ((message = unconsumed.poll()) != null) {
+                delivered.increment();
+                consumer.deliver(message.exchange, message.routingKey, message.props, message.body);
+            }
+        }
+
+        /**
+         * @return 清除的暂存消息数量
+         */
+        synchronized int purge() {
+            int count = unconsumed.size();
+            unconsumed.clear();
+            return count;
+        }
+
+        synchronized int messageCount() {
+            return unconsumed.size();
+        }
+
+        void removeConsumer(StubChannel.StubConsumer consumer) {
+            consumers.remove(consumer);
+        }
+
+        int consumerCount() {
+            return consumers.size();
+        }
+
+        /**
+         * 轮询投递给一个消费者，没有消费者时暂存，暂存已满返回false
+         */
+        boolean deliver(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            int size = consumers.size();
+            if (size == 0) {
+                synchronized (this) {
+                    if (consumers.isEmpty()) {
+                        if (unconsumed.size() >= UNCONSUMED_LIMIT) {
+                            return false;
+                        }
+                        unconsumed.add(new Unconsumed(exchange, routingKey, props, body.clone()));
+                        return true;
+                    }
+                }
+                // 暂存期间注册了消费者
+                return deliver(exchange, routingKey, props, body);
+            }
+            StubChannel.StubConsumer consumer;
+            try {
+                consumer = consumers.get((next.getAndIncrement() & Integer.MAX_VALUE) % size);
+            } catch (IndexOutOfBoundsException e) {
+                // 消费者在这期间被取消
+                return false;
+            }
+            delivered.increment();
+            consumer.deliver(exchange, routingKey, props, body);
+            return true;
+        }
+    }
+
+    private static final class Unconsumed {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties props;
+        private final byte[] body;
+
+        private Unconsumed(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+        }
+    }
+}
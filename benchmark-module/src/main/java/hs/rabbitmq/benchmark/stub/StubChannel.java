@@ -0,0 +1,918 @@
+package hs.rabbitmq.benchmark.stub;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Command;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.ConsumerShutdownSignalCallback;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Method;
+import com.rabbitmq.client.ReturnCallback;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: StubChannel
+ * @description: StubBroker的Channel
+ *               发布确认模式下，每条消息的发布时间记录在以sequenceNumber为下标的环形数组里，由Connection的确认线程按延迟确认，
+ *               发布本身不会产生额外的对象，避免替身自身的内存分配干扰基准测试的-prof gc结果
+ *               投递给消费者的消息体会复制一份，和真实客户端一样，消费者拿到的永远是新的数组
+ *               direct reply-to：在amq.rabbitmq.reply-to上消费（必须autoAck）时为这个Channel创建一个auto-delete的回复queue，
+ *               之后从这个Channel发布的replyTo为amq.rabbitmq.reply-to的消息，replyTo会被改写为这个queue的名字，与真实broker相同
+ * @date 2026年10月18日 14:20
+ */
+public class StubChannel implements Channel {
+
+    /**
+     * 未确认消息的最大数量，超过后发布会等待，相当于TCP的背压
+     */
+    private static final int CONFIRM_RING = 1 << 16;
+    private static final int CONFIRM_MASK = CONFIRM_RING - 1;
+    private static final AtomicLong CONSUMER_TAGS = new AtomicLong();
+    private static final AtomicLong REPLY_QUEUES = new AtomicLong();
+    static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private final StubConnection connection;
+    private final StubBroker broker;
+    private final int channelNumber;
+
+    private final long[] publishTimes = new long[CONFIRM_RING];
+    /**
+     * 与ChannelN一致：未开启发布确认时为0
+     */
+    private volatile long nextPublishSeqNo;
+    private volatile long published;
+    private volatile long confirmed;
+    private final AtomicInteger confirmWaiters = new AtomicInteger();
+    private final Object confirmMonitor = new Object();
+    private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong deliveryTags = new AtomicLong();
+    private final Map<String, StubConsumer> consumers = new ConcurrentHashMap<>();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private volatile ShutdownSignalException closeReason;
+    private volatile int prefetchCount;
+    /**
+     * direct reply-to的回复queue，没有在amq.rabbitmq.reply-to上消费时为null
+     */
+    private volatile String directReplyQueue;
+    private Consumer defaultConsumer;
+
+    StubChannel(StubConnection connection, int channelNumber) {
+        this.connection = connection;
+        this.broker = connection.broker();
+        this.channelNumber = channelNumber;
+    }
+
+    /**
+     * @return 最近一次basicQos设置的prefetchCount，替身并不会按照它限制投递
+     */
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    // ---------------------------------------------------------------- 发布与发布确认
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException {
+        basicPublish(exchange, routingKey, false, false, props, body);
+    }
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, boolean mandatory, AMQP.BasicProperties props, byte[] body) throws IOException {
+        basicPublish(exchange, routingKey, mandatory, false, props, body);
+    }
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, boolean mandatory, boolean immediate,
+                             AMQP.BasicProperties props, byte[] body) throws IOException {
+        if (props != null && DIRECT_REPLY_TO.equals(props.getReplyTo())) {
+            String replyQueue = directReplyQueue;
+            if (replyQueue == null) {
+                throw new IOException("PRECONDITION_FAILED - fast reply consumer does not exist");
+            }
+            props = props.builder().replyTo(replyQueue).build();
+        }
+        synchronized (this) {
+            ensureOpen();
+            long seq = nextPublishSeqNo;
+            if (seq > 0) {
+                while (seq - confirmed > CONFIRM_RING) {
+                    LockSupport.parkNanos(this, 1_000);
+                    ensureOpen();
+                }
+                publishTimes[(int) (seq & CONFIRM_MASK)] = System.nanoTime();
+                nextPublishSeqNo = seq + 1;
+                // volatile写，保证确认线程看到上面记录的发布时间
+                published = seq;
+                connection.wakeConfirmer();
+            }
+        }
+        broker.route(exchange, routingKey, props, body);
+    }
+
+    @Override
+    public AMQP.Confirm.SelectOk confirmSelect() throws IOException {
+        ensureOpen();
+        roundTrip();
+        synchronized (this) {
+            if (nextPublishSeqNo == 0) {
+                nextPublishSeqNo = 1;
+            }
+        }
+        return new AMQImpl.Confirm.SelectOk();
+    }
+
+    @Override
+    public long getNextPublishSeqNo() {
+        return nextPublishSeqNo;
+    }
+
+    /**
+     * 由确认线程调用：确认所有已经满足延迟的消息
+     * @return 下一条待确认消息可以被确认的时间，没有待确认消息时返回Long.MAX_VALUE
+     */
+    long confirmDue(long now, long latency) {
+        long from = confirmed;
+        long to = published;
+        if (to <= from) {
+            return Long.MAX_VALUE;
+        }
+        long seq = from;
+        while (seq < to && publishTimes[(int) ((seq + 1) & CONFIRM_MASK)] + latency <= now) {
+            seq++;
+        }
+        if (seq > from) {
+            confirmed = seq;
+            boolean multiple = seq > from + 1;
+            for (ConfirmListener listener : confirmListeners) {
+                try {
+                    listener.handleAck(seq, multiple);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (confirmWaiters.get() > 0) {
+                synchronized (confirmMonitor) {
+                    confirmMonitor.notifyAll();
+                }
+            }
+        }
+        return seq < to ? publishTimes[(int) ((seq + 1) & CONFIRM_MASK)] + latency : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean waitForConfirms() throws InterruptedException {
+        try {
+            return waitForConfirms(0);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean waitForConfirms(long timeout) throws InterruptedException, TimeoutException {
+        if (nextPublishSeqNo == 0) {
+            throw new IllegalStateException("Confirms not selected");
+        }
+        long target = nextPublishSeqNo - 1;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        confirmWaiters.incrementAndGet();
+        try {
+            synchronized (confirmMonitor) {
+                while (confirmed < target) {
+                    if (closeReason != null) {
+                        throw closeReason;
+                    }
+                    // timeout为0时一直等待
+                    long remaining = timeout > 0 ? deadline - System.nanoTime() : Long.MAX_VALUE;
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(confirmMonitor, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)));
+                }
+            }
+        } finally {
+            confirmWaiters.decrementAndGet();
+        }
+        // 替身不会nack消息
+        return true;
+    }
+
+    @Override
+    public void waitForConfirmsOrDie() throws IOException, InterruptedException {
+        waitForConfirms();
+    }
+
+    @Override
+    public void waitForConfirmsOrDie(long timeout) throws IOException, InterruptedException, TimeoutException {
+        waitForConfirms(timeout);
+    }
+
+    @Override
+    public void addConfirmListener(ConfirmListener listener) {
+        confirmListeners.add(listener);
+    }
+
+    @Override
+    public ConfirmListener addConfirmListener(ConfirmCallback ackCallback, ConfirmCallback nackCallback) {
+        ConfirmListener listener = new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+                ackCallback.handle(deliveryTag, multiple);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+                nackCallback.handle(deliveryTag, multiple);
+            }
+        };
+        addConfirmListener(listener);
+        return listener;
+    }
+
+    @Override
+    public boolean removeConfirmListener(ConfirmListener listener) {
+        return confirmListeners.remove(listener);
+    }
+
+    @Override
+    public void clearConfirmListeners() {
+        confirmListeners.clear();
+    }
+
+    // ---------------------------------------------------------------- 消费
+
+    @Override
+    public void basicQos(int prefetchSize, int prefetchCount, boolean global) throws IOException {
+        ensureOpen();
+        roundTrip();
+        this.prefetchCount = prefetchCount;
+    }
+
+    @Override
+    public void basicQos(int prefetchCount, boolean global) throws IOException {
+        basicQos(0, prefetchCount, global);
+    }
+
+    @Override
+    public void basicQos(int prefetchCount) throws IOException {
+        basicQos(0, prefetchCount, false);
+    }
+
+    @Override
+    public void basicAck(long deliveryTag, boolean multiple) throws IOException {
+        ensureOpen();
+        broker.ackFrames.increment();
+    }
+
+    @Override
+    public void basicNack(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+        ensureOpen();
+        broker.nackFrames.increment();
+    }
+
+    @Override
+    public void basicReject(long deliveryTag, boolean requeue) throws IOException {
+        basicNack(deliveryTag, false, requeue);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, Consumer callback) throws IOException {
+        ensureOpen();
+        roundTrip();
+        StubBroker.StubQueue target;
+        if (DIRECT_REPLY_TO.equals(queue)) {
+            if (!autoAck) {
+                throw new IOException("PRECONDITION_FAILED - reply consumer cannot acknowledge");
+            }
+            target = broker.declareQueue(DIRECT_REPLY_TO + ".g" + REPLY_QUEUES.incrementAndGet(), true);
+            directReplyQueue = target.name;
+        } else {
+            target = broker.queue(queue);
+        }
+        if (target == null) {
+            throw new IOException("NOT_FOUND - no queue '" + queue + "'");
+        }
+        String tag = consumerTag == null || consumerTag.isEmpty() ? "amq.ctag-" + CONSUMER_TAGS.incrementAndGet() : consumerTag;
+        StubConsumer consumer = new StubConsumer(tag, target, callback);
+        consumers.put(tag, consumer);
+        target.addConsumer(consumer);
+        dispatch(() -> callback.handleConsumeOk(tag));
+        return tag;
+    }
+
+    @Override
+    public void basicCancel(String consumerTag) throws IOException {
+        roundTrip();
+        StubConsumer consumer = consumers.remove(consumerTag);
+        if (consumer == null) {
+            throw new IOException("Unknown consumerTag: " + consumerTag);
+        }
+        removeConsumer(consumer);
+        dispatch(() -> consumer.callback.handleCancelOk(consumerTag));
+    }
+
+    @Override
+    public String basicConsume(String queue, Consumer callback) throws IOException {
+        return basicConsume(queue, false, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, CancelCallback cancelCallback) throws IOException {
+        return basicConsume(queue, false, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, false, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, false, deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Consumer callback) throws IOException {
+        return basicConsume(queue, autoAck, "", callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback, CancelCallback cancelCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, Consumer callback) throws IOException {
+        return basicConsume(queue, autoAck, "", false, false, arguments, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback, ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, Consumer callback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, false, false, null, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback, ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback, CancelCallback cancelCallback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments, deliverCallback, cancelCallback, null);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments, deliverCallback, null, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        Consumer callback = new DefaultConsumer(this) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+                deliverCallback.handle(consumerTag, new Delivery(envelope, properties, body));
+            }
+
+            @Override
+            public void handleCancel(String consumerTag) throws IOException {
+                if (cancelCallback != null) {
+                    cancelCallback.handle(consumerTag);
+                }
+            }
+
+            @Override
+            public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+                if (shutdownSignalCallback != null) {
+                    shutdownSignalCallback.handleShutdownSignal(consumerTag, sig);
+                }
+            }
+        };
+        return basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments, callback);
+    }
+
+    @Override
+    public Consumer getDefaultConsumer() {
+        return defaultConsumer;
+    }
+
+    @Override
+    public void setDefaultConsumer(Consumer consumer) {
+        this.defaultConsumer = consumer;
+    }
+
+    private void removeConsumer(StubConsumer consumer) {
+        consumer.queue.removeConsumer(consumer);
+        if (consumer.queue.name.equals(directReplyQueue)) {
+            directReplyQueue = null;
+        }
+        broker.consumerRemoved(consumer.queue);
+    }
+
+    /**
+     * 模拟同步方法等待broker回复的网络往返
+     */
+    private void roundTrip() {
+        long latency = broker.methodLatencyNanos();
+        if (latency <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + latency;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void dispatch(ConsumerTask task) {
+        try {
+            connection.dispatcher().execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Connection已关闭
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConsumerTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * 注册在queue上的消费者
+     */
+    final class StubConsumer {
+        private final String tag;
+        private final StubBroker.StubQueue queue;
+        private final Consumer callback;
+
+        private StubConsumer(String tag, StubBroker.StubQueue queue, Consumer callback) {
+            this.tag = tag;
+            this.queue = queue;
+            this.callback = callback;
+        }
+
+        void deliver(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            Envelope envelope = new Envelope(deliveryTags.incrementAndGet(), false, exchange, routingKey);
+            byte[] copy = body.clone();
+            dispatch(() -> callback.handleDelivery(tag, envelope, props, copy));
+        }
+    }
+
+    // ---------------------------------------------------------------- 声明
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclare() throws IOException {
+        return queueDeclare("", false, true, true, null);
+    }
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclare(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+                                             Map<String, Object> arguments) throws IOException {
+        ensureOpen();
+        roundTrip();
+        StubBroker.StubQueue declared = broker.declareQueue(queue, autoDelete);
+        return new AMQImpl.Queue.DeclareOk(declared.name, declared.messageCount(), declared.consumerCount());
+    }
+
+    @Override
+    public void queueDeclareNoWait(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+                                   Map<String, Object> arguments) throws IOException {
+        queueDeclare(queue, durable, exclusive, autoDelete, arguments);
+    }
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclarePassive(String queue) throws IOException {
+        ensureOpen();
+        roundTrip();
+        if (DIRECT_REPLY_TO.equals(queue)) {
+            // 和真实broker一样，客户端（例如RabbitTemplate）用被动声明检查是否支持direct reply-to
+            return new AMQImpl.Queue.DeclareOk(queue, 0, 0);
+        }
+        StubBroker.StubQueue declared = broker.queue(queue);
+        if (declared == null) {
+            throw new IOException("NOT_FOUND - no queue '" + queue + "'");
+        }
+        return new AMQImpl.Queue.DeclareOk(declared.name, declared.messageCount(), declared.consumerCount());
+    }
+
+    @Override
+    public AMQP.Queue.DeleteOk queueDelete(String queue) throws IOException {
+        return queueDelete(queue, false, false);
+    }
+
+    @Override
+    public AMQP.Queue.DeleteOk queueDelete(String queue, boolean ifUnused, boolean ifEmpty) throws IOException {
+        ensureOpen();
+        roundTrip();
+        broker.deleteQueue(queue);
+        return new AMQImpl.Queue.DeleteOk(0);
+    }
+
+    @Override
+    public void queueDeleteNoWait(String queue, boolean ifUnused, boolean ifEmpty) throws IOException {
+        queueDelete(queue, ifUnused, ifEmpty);
+    }
+
+    @Override
+    public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey) throws IOException {
+        return queueBind(queue, exchange, routingKey, null);
+    }
+
+    @Override
+    public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey, Map<String, Object> arguments) throws IOException {
+        ensureOpen();
+        roundTrip();
+        broker.bind(queue, exchange, routingKey);
+        return new AMQImpl.Queue.BindOk();
+    }
+
+    @Override
+    public void queueBindNoWait(String queue, String exchange, String routingKey, Map<String, Object> arguments) throws IOException {
+        queueBind(queue, exchange, routingKey, arguments);
+    }
+
+    @Override
+    public AMQP.Queue.PurgeOk queuePurge(String queue) throws IOException {
+        ensureOpen();
+        roundTrip();
+        // 替身只暂存没有消费者时收到的消息
+        StubBroker.StubQueue target = broker.queue(queue);
+        return new AMQImpl.Queue.PurgeOk(target == null ? 0 : target.purge());
+    }
+
+    @Override
+    public long messageCount(String queue) throws IOException {
+        return queueDeclarePassive(queue).getMessageCount();
+    }
+
+    @Override
+    public long consumerCount(String queue) throws IOException {
+        return queueDeclarePassive(queue).getConsumerCount();
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type) throws IOException {
+        return exchangeDeclare(exchange, type, false, false, false, null);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type) throws IOException {
+        return exchangeDeclare(exchange, type.getType());
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable) throws IOException {
+        return exchangeDeclare(exchange, type, durable, false, false, null);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable) throws IOException {
+        return exchangeDeclare(exchange, type.getType(), durable);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable, boolean autoDelete,
+                                                   Map<String, Object> arguments) throws IOException {
+        return exchangeDeclare(exchange, type, durable, autoDelete, false, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable, boolean autoDelete,
+                                                   Map<String, Object> arguments) throws IOException {
+        return exchangeDeclare(exchange, type.getType(), durable, autoDelete, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable, boolean autoDelete,
+                                                   boolean internal, Map<String, Object> arguments) throws IOException {
+        ensureOpen();
+        roundTrip();
+        broker.declareExchange(exchange, type);
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable, boolean autoDelete,
+                                                   boolean internal, Map<String, Object> arguments) throws IOException {
+        return exchangeDeclare(exchange, type.getType(), durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public void exchangeDeclareNoWait(String exchange, String type, boolean durable, boolean autoDelete, boolean internal,
+                                      Map<String, Object> arguments) throws IOException {
+        exchangeDeclare(exchange, type, durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public void exchangeDeclareNoWait(String exchange, BuiltinExchangeType type, boolean durable, boolean autoDelete,
+                                      boolean internal, Map<String, Object> arguments) throws IOException {
+        exchangeDeclare(exchange, type, durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclarePassive(String name) throws IOException {
+        ensureOpen();
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    // ---------------------------------------------------------------- 生命周期
+
+    @Override
+    public int getChannelNumber() {
+        return channelNumber;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() throws IOException, TimeoutException {
+        close(AMQImpl.REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage) throws IOException, TimeoutException {
+        abort(closeCode, closeMessage);
+    }
+
+    @Override
+    public void abort() throws IOException {
+        abort(AMQImpl.REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage) throws IOException {
+        if (shutdown(new ShutdownSignalException(false, true, null, this))) {
+            connection.channelClosed(this);
+        }
+    }
+
+    /**
+     * 关闭Channel，取消所有消费者并通知监听器
+     * @return 是否是本次调用关闭的
+     */
+    boolean shutdown(ShutdownSignalException cause) {
+        synchronized (this) {
+            if (closeReason != null) {
+                return false;
+            }
+            closeReason = cause;
+        }
+        for (StubConsumer consumer : consumers.values()) {
+            removeConsumer(consumer);
+            dispatch(() -> consumer.callback.handleShutdownSignal(consumer.tag, cause));
+        }
+        consumers.clear();
+        synchronized (confirmMonitor) {
+            confirmMonitor.notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    private void ensureOpen() {
+        ShutdownSignalException reason = closeReason;
+        if (reason != null) {
+            throw new AlreadyClosedException(reason);
+        }
+    }
+
+    @Override
+    public void addShutdownListener(ShutdownListener listener) {
+        shutdownListeners.add(listener);
+    }
+
+    @Override
+    public void removeShutdownListener(ShutdownListener listener) {
+        shutdownListeners.remove(listener);
+    }
+
+    @Override
+    public ShutdownSignalException getCloseReason() {
+        return closeReason;
+    }
+
+    @Override
+    public void notifyListeners() {
+        for (ShutdownListener listener : shutdownListeners) {
+            listener.shutdownCompleted(closeReason);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return closeReason == null;
+    }
+
+    // ---------------------------------------------------------------- 以下功能替身不支持
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not supported by StubChannel");
+    }
+
+    @Override
+    public void addReturnListener(ReturnListener listener) {
+        throw unsupported();
+    }
+
+    @Override
+    public ReturnListener addReturnListener(ReturnCallback returnCallback) {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean removeReturnListener(ReturnListener listener) {
+        throw unsupported();
+    }
+
+    @Override
+    public void clearReturnListeners() {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.DeleteOk exchangeDelete(String exchange, boolean ifUnused) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public void exchangeDeleteNoWait(String exchange, boolean ifUnused) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.DeleteOk exchangeDelete(String exchange) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey, Map<String, Object> arguments) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public void exchangeBindNoWait(String destination, String source, String routingKey, Map<String, Object> arguments) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey, Map<String, Object> arguments) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public void exchangeUnbindNoWait(String destination, String source, String routingKey, Map<String, Object> arguments) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey, Map<String, Object> arguments) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public GetResponse basicGet(String queue, boolean autoAck) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Basic.RecoverOk basicRecover() throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Basic.RecoverOk basicRecover(boolean requeue) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Tx.SelectOk txSelect() throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Tx.CommitOk txCommit() throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public AMQP.Tx.RollbackOk txRollback() throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public void asyncRpc(Method method) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public Command rpc(Method method) throws IOException {
+        throw unsupported();
+    }
+
+    @Override
+    public CompletableFuture<Command> asyncCompletableRpc(Method method) throws IOException {
+        throw unsupported();
+    }
+}
@@ -0,0 +1,300 @@
+package hs.rabbitmq.benchmark.stub;
+
+import com.rabbitmq.client.BlockedCallback;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ExceptionHandler;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.UnblockedCallback;
+import com.rabbitmq.client.impl.AMQImpl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author heshuai
+ * @title: StubConnection
+ * @description: StubBroker的Connection
+ *               每个Connection有一个确认线程（相当于真实客户端的I/O线程，发布确认回调在这个线程上执行），
+ *               以及一个分发线程（相当于真实客户端的consumer work pool，投递回调在这个线程上执行）
+ * @date 2026年10月18日 14:20
+ */
+public class StubConnection implements Connection {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private final StubBroker broker;
+    private final List<StubChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private final List<BlockedListener> blockedListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+    private final ExecutorService dispatcher;
+    private final Thread confirmer;
+    private volatile ShutdownSignalException closeReason;
+    private String id;
+
+    StubConnection(StubBroker broker) {
+        this.broker = broker;
+        int number = IDS.incrementAndGet();
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "stub-dispatcher-" + number);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.confirmer = new Thread(this::confirmLoop, "stub-confirmer-" + number);
+        this.confirmer.setDaemon(true);
+        this.confirmer.start();
+    }
+
+    StubBroker broker() {
+        return broker;
+    }
+
+    ExecutorService dispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * 有新的待确认消息时唤醒确认线程
+     */
+    void wakeConfirmer() {
+        LockSupport.unpark(confirmer);
+    }
+
+    /**
+     * 模拟broker触发内存告警，通知所有BlockedListener
+     */
+    public void block(String reason) throws IOException {
+        for (BlockedListener listener : blockedListeners) {
+            listener.handleBlocked(reason);
+        }
+    }
+
+    /**
+     * 模拟broker解除内存告警
+     */
+    public void unblock() throws IOException {
+        for (BlockedListener listener : blockedListeners) {
+            listener.handleUnblocked();
+        }
+    }
+
+    /**
+     * 确认线程：按照发布时间依次确认各个Channel上的消息，每次尽量确认到最新一条满足延迟的消息
+     */
+    private void confirmLoop() {
+        long latency = broker.confirmLatencyNanos();
+        while (isOpen()) {
+            long now = System.nanoTime();
+            long nextDue = Long.MAX_VALUE;
+            for (StubChannel channel : channels) {
+                long due = channel.confirmDue(now, latency);
+                if (due < nextDue) {
+                    nextDue = due;
+                }
+            }
+            if (nextDue == Long.MAX_VALUE) {
+                // 没有待确认的消息，等待新的发布
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            } else if (nextDue > now) {
+                LockSupport.parkNanos(this, nextDue - now);
+            }
+        }
+    }
+
+    void channelClosed(StubChannel channel) {
+        channels.remove(channel);
+    }
+
+    @Override
+    public Channel createChannel() throws IOException {
+        return createChannel(channelNumbers.incrementAndGet());
+    }
+
+    @Override
+    public Channel createChannel(int channelNumber) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("Connection is closed", closeReason);
+        }
+        StubChannel channel = new StubChannel(this, channelNumber);
+        channels.add(channel);
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(AMQImpl.REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage) throws IOException {
+        close(closeCode, closeMessage, -1);
+    }
+
+    @Override
+    public void close(int timeout) throws IOException {
+        close(AMQImpl.REPLY_SUCCESS, "OK", timeout);
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage, int timeout) throws IOException {
+        abort(closeCode, closeMessage, timeout);
+    }
+
+    @Override
+    public void abort() {
+        abort(AMQImpl.REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage) {
+        abort(closeCode, closeMessage, -1);
+    }
+
+    @Override
+    public void abort(int timeout) {
+        abort(AMQImpl.REPLY_SUCCESS, "OK", timeout);
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage, int timeout) {
+        synchronized (this) {
+            if (closeReason != null) {
+                return;
+            }
+            closeReason = new ShutdownSignalException(true, true, null, this);
+        }
+        for (StubChannel channel : channels) {
+            channel.shutdown(closeReason);
+        }
+        channels.clear();
+        dispatcher.shutdown();
+        LockSupport.unpark(confirmer);
+        notifyListeners();
+    }
+
+    @Override
+    public void addBlockedListener(BlockedListener listener) {
+        blockedListeners.add(listener);
+    }
+
+    @Override
+    public BlockedListener addBlockedListener(BlockedCallback blockedCallback, UnblockedCallback unblockedCallback) {
+        BlockedListener listener = new BlockedListener() {
+            @Override
+            public void handleBlocked(String reason) throws IOException {
+                blockedCallback.handle(reason);
+            }
+
+            @Override
+            public void handleUnblocked() throws IOException {
+                unblockedCallback.handle();
+            }
+        };
+        addBlockedListener(listener);
+        return listener;
+    }
+
+    @Override
+    public boolean removeBlockedListener(BlockedListener listener) {
+        return blockedListeners.remove(listener);
+    }
+
+    @Override
+    public void clearBlockedListeners() {
+        blockedListeners.clear();
+    }
+
+    @Override
+    public void addShutdownListener(ShutdownListener listener) {
+        shutdownListeners.add(listener);
+    }
+
+    @Override
+    public void removeShutdownListener(ShutdownListener listener) {
+        shutdownListeners.remove(listener);
+    }
+
+    @Override
+    public ShutdownSignalException getCloseReason() {
+        return closeReason;
+    }
+
+    @Override
+    public void notifyListeners() {
+        for (ShutdownListener listener : shutdownListeners) {
+            listener.shutdownCompleted(closeReason);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return closeReason == null;
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return 5672;
+    }
+
+    @Override
+    public int getChannelMax() {
+        return 2047;
+    }
+
+    @Override
+    public int getFrameMax() {
+        return 131072;
+    }
+
+    @Override
+    public int getHeartbeat() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Object> getClientProperties() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public String getClientProvidedName() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Object> getServerProperties() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public ExceptionHandler getExceptionHandler() {
+        throw new UnsupportedOperationException("Not supported by StubConnection");
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+}
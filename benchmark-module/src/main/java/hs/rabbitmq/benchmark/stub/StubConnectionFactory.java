@@ -0,0 +1,28 @@
+package hs.rabbitmq.benchmark.stub;
+
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author heshuai
+ * @title: StubConnectionFactory
+ * @description: ConnectionFactory的所有newConnection重载最终都会调用newConnection(ExecutorService, AddressResolver, String)，
+ *               这里覆盖它返回StubConnection，其它配置项全部忽略
+ * @date 2026年10月18日 14:20
+ */
+public class StubConnectionFactory extends ConnectionFactory {
+
+    private final StubBroker broker;
+
+    public StubConnectionFactory(StubBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public Connection newConnection(ExecutorService executor, AddressResolver addressResolver, String clientProvidedName) {
+        return broker.newConnection();
+    }
+}
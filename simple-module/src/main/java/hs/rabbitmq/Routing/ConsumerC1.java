@@ -1,6 +1,7 @@
 package hs.rabbitmq.Routing;
 
 import com.rabbitmq.client.*;
+import hs.rabbitmq.codec.DecompressingConsumer;
 import hs.rabbitmq.config.RabbitmqConfig;
 
 import java.io.IOException;
@@ -45,7 +46,7 @@ public class ConsumerC1 {
              * autoAck：消息确认机制；true：自动确认消息，false：手动确认消息
              * callback：Consumer接口，收到消息后的处理逻辑！这里直接写了一个匿名类
              */
-            channel.basicConsume(queueName,true,new DefaultConsumer(channel){
+            channel.basicConsume(queueName,true,new DecompressingConsumer(new DefaultConsumer(channel){
                 @Override
                 public void handleDelivery(String consumerTag,
                                            Envelope envelope,
@@ -56,7 +57,7 @@ public class ConsumerC1 {
                     System.out.println("Receive==="+new String(body));
 
                 }
-            });
+            }));
             // 若不关闭connection，则一直保持接受消息的状态
         } catch (IOException e) {
             e.printStackTrace();
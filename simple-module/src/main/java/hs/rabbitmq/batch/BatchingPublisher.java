@@ -0,0 +1,198 @@
+package hs.rabbitmq.batch;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: BatchingPublisher
+ * @description: 应用层批量发布
+ *               每条AMQP消息在broker端都有固定的开销（路由、入队、持久化索引、投递、确认），消息很小（几十字节）时这部分开销占了绝大部分。
+ *               这里把发往同一个exchange/routingKey的多条逻辑消息打包成一条AMQP消息发送，满足以下任一条件时发送当前批次：
+ *                  1. 消息条数达到batchSize
+ *                  2. 再加入一条消息会超过bufferLimit字节
+ *                  3. 批次中第一条消息加入后超过linger时间
+ *                  4. 目标exchange/routingKey发生变化，或者手动调用flush
+ *               打包格式与spring-amqp的SimpleBatchingStrategy相同：每条消息为4字节（大端）长度 + 消息体，
+ *               并在消息头中写入springBatchFormat=lengthHeader4，所以SpringBoot的监听器会自动拆包。
+ *               注意：
+ *                  1. 一个批次使用第一条消息的属性，后续消息的属性被忽略
+ *                  2. 单条消息超过bufferLimit时不打包，直接发送
+ *                  3. 消费端需要使用DebatchingConsumer拆包，一个批次作为整体确认
+ *                  4. 发送失败时批次保留在缓冲区中，下一次flush（包括close）会重新发送；
+ *                     linger定时器发送失败时没有调用方可以通知，异常会在下一次调用publish或者flush时抛出
+ * @date 2026年10月18日 19:20
+ */
+public class BatchingPublisher implements AutoCloseable {
+
+    /**
+     * 标记批量消息格式的消息头，与spring-amqp一致
+     */
+    public static final String BATCH_FORMAT_HEADER = "springBatchFormat";
+    public static final String BATCH_FORMAT_LENGTH_HEADER4 = "lengthHeader4";
+    private static final int LENGTH_HEADER = 4;
+
+    private final Channel channel;
+    private final int batchSize;
+    private final int bufferLimit;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private byte[] buffer;
+    private int length;
+    private int count;
+    private String exchange;
+    private String routingKey;
+    private AMQP.BasicProperties properties;
+    private ScheduledFuture<?> lingerTask;
+    private IOException lingerFailure;
+
+    /**
+     * @param channel 发布消息的Channel
+     * @param batchSize 一个批次最多的消息条数
+     * @param bufferLimit 一个批次最大的字节数（包括每条消息4字节的长度）
+     * @param linger 批次中第一条消息最多等待的时间
+     * @param unit linger的单位
+     */
+    public BatchingPublisher(Channel channel, int batchSize, int bufferLimit, long linger, TimeUnit unit) {
+        if (batchSize <= 0 || bufferLimit <= LENGTH_HEADER) {
+            throw new IllegalArgumentException("batchSize must be positive and bufferLimit must be larger than " + LENGTH_HEADER);
+        }
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.bufferLimit = bufferLimit;
+        this.lingerNanos = unit.toNanos(linger);
+        this.buffer = new byte[Math.min(bufferLimit, 4096)];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batching-publisher-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 加入当前批次，满足发送条件时在当前线程中发送
+     */
+    public synchronized void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        throwLingerFailure();
+        if (count > 0 && (!exchange.equals(this.exchange) || !routingKey.equals(this.routingKey))) {
+            flush();
+        }
+        int frameLength = LENGTH_HEADER + body.length;
+        if (count > 0 && length + frameLength > bufferLimit) {
+            flush();
+        }
+        if (frameLength > bufferLimit) {
+            channel.basicPublish(exchange, routingKey, props, body);
+            return;
+        }
+        if (count == 0) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = props;
+            lingerTask = scheduler.schedule(this::lingerExpired, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+        if (length + frameLength > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(bufferLimit, Math.max(length + frameLength, buffer.length * 2)));
+        }
+        buffer[length] = (byte) (body.length >>> 24);
+        buffer[length + 1] = (byte) (body.length >>> 16);
+        buffer[length + 2] = (byte) (body.length >>> 8);
+        buffer[length + 3] = (byte) body.length;
+        System.arraycopy(body, 0, buffer, length + LENGTH_HEADER, body.length);
+        length += frameLength;
+        if (++count >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * 立即发送当前批次，发送失败时批次保留，可以再次调用flush重新发送
+     */
+    public synchronized void flush() throws IOException {
+        throwLingerFailure();
+        send();
+    }
+
+    private void send() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        Map<String, Object> headers = new HashMap<>();
+        if (properties != null && properties.getHeaders() != null) {
+            headers.putAll(properties.getHeaders());
+        }
+        headers.put(BATCH_FORMAT_HEADER, BATCH_FORMAT_LENGTH_HEADER4);
+        AMQP.BasicProperties.Builder builder = properties == null ? new AMQP.BasicProperties.Builder() : properties.builder();
+        byte[] batch = Arrays.copyOf(buffer, length);
+        channel.basicPublish(exchange, routingKey, builder.headers(headers).build(), batch);
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        count = 0;
+        length = 0;
+        properties = null;
+    }
+
+    /**
+     * @return 当前批次中的消息条数
+     */
+    public synchronized int pending() {
+        return count;
+    }
+
+    /**
+     * 发送剩余的消息并停止linger定时器，不会关闭Channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return 消息属性是否标记为批量消息
+     */
+    public static boolean isBatch(AMQP.BasicProperties props) {
+        if (props == null || props.getHeaders() == null) {
+            return false;
+        }
+        Object format = props.getHeaders().get(BATCH_FORMAT_HEADER);
+        // 从broker收到的字符串类型的消息头是LongString
+        return format != null && BATCH_FORMAT_LENGTH_HEADER4.equals(format.toString());
+    }
+
+    private synchronized void lingerExpired() {
+        try {
+            send();
+        } catch (IOException e) {
+            e.printStackTrace();
+            lingerFailure = e;
+        }
+    }
+
+    /**
+     * 抛出linger定时器发送失败的异常，只抛出一次，批次仍然保留等待下一次flush
+     */
+    private void throwLingerFailure() throws IOException {
+        if (lingerFailure != null) {
+            IOException failure = lingerFailure;
+            lingerFailure = null;
+            throw new IOException("Batch of " + count + " messages failed to publish after linger", failure);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package hs.rabbitmq.batch;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author heshuai
+ * @title: DebatchingConsumer
+ * @description: 拆包消费者
+ *               BatchingPublisher（或者spring-amqp的BatchingRabbitTemplate）发送的批量消息在这里拆成单条消息，逐条交给MessageHandler处理，
+ *               没有打包的消息直接交给MessageHandler，所以同一个队列中可以混合批量消息和普通消息。
+ *               手动确认（autoAck=false）时，一个批次作为整体确认：所有消息处理成功后basicAck，
+ *               任意一条消息处理失败则basicNack整个批次，第一次投递时重新入队，重复投递（redeliver）时不再入队（进入死信队列或丢弃），
+ *               所以同一批次中已经处理成功的消息可能被重复处理，MessageHandler需要是幂等的。
+ *               需要解压时把它包装在DecompressingConsumer中：先解压整个批次，再拆包
+ * @date 2026年10月18日 19:20
+ */
+public class DebatchingConsumer extends DefaultConsumer {
+
+    /**
+     * 单条消息的处理逻辑
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+        /**
+         * @param properties 消息属性，批量消息中的每条消息都使用批次的消息属性
+         * @param body 单条消息的消息体
+         */
+        void handle(AMQP.BasicProperties properties, byte[] body) throws Exception;
+    }
+
+    private final boolean autoAck;
+    private final MessageHandler handler;
+
+    /**
+     * @param channel 消费消息的Channel
+     * @param autoAck 与basicConsume的autoAck参数保持一致，false时由当前消费者确认消息
+     * @param handler 单条消息的处理逻辑
+     */
+    public DebatchingConsumer(Channel channel, boolean autoAck, MessageHandler handler) {
+        super(channel);
+        this.autoAck = autoAck;
+        this.handler = handler;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        try {
+            if (BatchingPublisher.isBatch(properties)) {
+                debatch(properties, body);
+            } else {
+                handler.handle(properties, body);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!autoAck) {
+                getChannel().basicNack(envelope.getDeliveryTag(), false, !envelope.isRedeliver());
+            }
+            return;
+        }
+        if (!autoAck) {
+            getChannel().basicAck(envelope.getDeliveryTag(), false);
+        }
+    }
+
+    private void debatch(AMQP.BasicProperties properties, byte[] body) throws Exception {
+        int position = 0;
+        while (position < body.length) {
+            if (body.length - position < 4) {
+                throw new IOException("Malformed batch: truncated length at " + position);
+            }
+            int length = (body[position] & 0xFF) << 24 | (body[position + 1] & 0xFF) << 16
+                    | (body[position + 2] & 0xFF) << 8 | (body[position + 3] & 0xFF);
+            position += 4;
+            if (length < 0 || length > body.length - position) {
+                throw new IOException("Malformed batch: invalid length " + length + " at " + (position - 4));
+            }
+            handler.handle(properties, Arrays.copyOfRange(body, position, position + length));
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package hs.rabbitmq.codec;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * @author heshuai
+ * @title: ByteBufferConsumer
+ * @description: 以只读ByteBuffer交付消息体的Consumer
+ *               客户端收到的消息体本来就是一个完整的byte[]，这里只是把它包装成只读的ByteBuffer交给处理逻辑，不拷贝、不解码，
+ *               处理逻辑用LazyJson、Utf8Decoder只读取需要的字段，不需要的消息直接确认或者丢弃，整个消息体不会变成String。
+ *               只读是为了防止处理逻辑修改消息体：同一个byte[]可能还会被其它装饰器（例如重试时重新发布）使用。
+ *               两种用法：
+ *                  1. 直接作为Consumer：channel.basicConsume(queue, autoAck, new ByteBufferConsumer(channel, handler))，
+ *                     可以再包一层DecompressingConsumer；autoAck=false时由处理逻辑自己确认，
+ *                     DecompressingConsumer要传入FailureHandler.reject(channel)拒绝解压失败的消息
+ *                  2. 交给WorkerPoolConsumer：new WorkerPoolConsumer(..., ByteBufferConsumer.handler(handler), ...)
+ * @date 2026年10月19日 01:10
+ */
+public class ByteBufferConsumer extends DefaultConsumer {
+
+    /**
+     * 处理以ByteBuffer表示的消息体，body的[position, limit)为消息内容
+     */
+    @FunctionalInterface
+    public interface BodyHandler {
+        void handle(Envelope envelope, AMQP.BasicProperties properties, ByteBuffer body) throws Exception;
+    }
+
+    private final BodyHandler handler;
+
+    public ByteBufferConsumer(Channel channel, BodyHandler handler) {
+        super(channel);
+        this.handler = handler;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        try {
+            handler.handle(envelope, properties, wrap(body));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 把按ByteBuffer处理的逻辑转换为WorkerPoolConsumer的处理逻辑
+     */
+    public static WorkerPoolConsumer.DeliveryHandler handler(BodyHandler handler) {
+        return (envelope, properties, body) -> handler.handle(envelope, properties, wrap(body));
+    }
+
+    /**
+     * @return 与body共享内容的只读ByteBuffer
+     */
+    public static ByteBuffer wrap(byte[] body) {
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,41 @@
+package hs.rabbitmq.codec;
+
+import java.io.IOException;
+
+/**
+ * @author heshuai
+ * @title: CompressionCodec
+ * @description: 消息体压缩算法
+ *               压缩后的消息通过AMQP的content-encoding属性标记所使用的算法，消费端据此选择解压算法，
+ *               contentEncoding()的返回值就是写入content-encoding的名称。
+ *               解压的长度由消息体决定，不可信：几个字节的消息体可以声明（lz4的长度头）或者解压出（deflate）任意大的数据，
+ *               所以解压时限制最大长度，超过时抛出IOException，而不是分配巨大的数组导致OutOfMemoryError
+ * @date 2026年10月18日 18:00
+ */
+public interface CompressionCodec {
+
+    /**
+     * 默认的最大解压长度：64MB，通过实现类的构造方法修改，然后用PayloadCompressor.registerCodec注册
+     */
+    int DEFAULT_MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * @return 写入content-encoding属性的算法名称，例如lz4、deflate
+     */
+    String contentEncoding();
+
+    /**
+     * 压缩消息体
+     * @param body 原始消息体
+     * @return 压缩后的消息体，新分配的数组
+     */
+    byte[] compress(byte[] body);
+
+    /**
+     * 解压消息体
+     * @param body 压缩后的消息体
+     * @return 原始消息体
+     * @throws IOException 消息体格式错误，或者解压后的长度超过最大解压长度
+     */
+    byte[] decompress(byte[] body) throws IOException;
+}
@@ -0,0 +1,114 @@
+package hs.rabbitmq.codec;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import hs.rabbitmq.consumer.AckCoalescer;
+
+import java.io.IOException;
+
+/**
+ * @author heshuai
+ * @title: DecompressingConsumer
+ * @description: 自动解压消息体的Consumer装饰器
+ *               把原来的Consumer包装一层即可：channel.basicConsume(queue, true, new DecompressingConsumer(consumer))，
+ *               被压缩的消息在交给原Consumer的handleDelivery之前解压，原来的处理逻辑不需要任何改动。
+ *               解压失败（消息体损坏、超过最大解压长度）的消息不会交给原Consumer，也不会从handleDelivery抛出异常：
+ *               抛出异常时客户端默认会关闭Channel，这条消息重新入队后再次投递、再次失败，一直循环；autoAck时同一个Channel上
+ *               已经投递还没处理的其它消息也会一起丢失。这里交给FailureHandler处理这一条消息：
+ *                  1. 默认（autoAck=true的消费者）：打印异常后丢弃，消息已经被自动确认
+ *                  2. 手动确认的消费者必须传入FailureHandler.reject(channel)或者FailureHandler.nack(acks)，
+ *                     以requeue=false拒绝这条消息（配置了死信交换机时进入死信队列），否则它会一直占用prefetch的额度
+ * @date 2026年10月18日 18:00
+ */
+public class DecompressingConsumer implements Consumer {
+
+    /**
+     * 解压失败的消息的处理方式
+     */
+    @FunctionalInterface
+    public interface FailureHandler {
+        void handle(Envelope envelope, AMQP.BasicProperties properties, byte[] body, IOException cause) throws IOException;
+
+        /**
+         * autoAck=true时使用：消息已经被自动确认，直接丢弃
+         */
+        static FailureHandler discard() {
+            return (envelope, properties, body, cause) -> {
+            };
+        }
+
+        /**
+         * 手动确认时使用：basicReject，不重新入队
+         */
+        static FailureHandler reject(Channel channel) {
+            return (envelope, properties, body, cause) -> channel.basicReject(envelope.getDeliveryTag(), false);
+        }
+
+        /**
+         * 手动确认并通过AckCoalescer合并确认时使用：必须经过AckCoalescer，否则它会一直等待这个tag完成
+         */
+        static FailureHandler nack(AckCoalescer acks) {
+            return (envelope, properties, body, cause) -> acks.nack(envelope.getDeliveryTag(), false);
+        }
+    }
+
+    private final Consumer delegate;
+    private final FailureHandler onFailure;
+
+    /**
+     * autoAck=true的消费者，解压失败的消息直接丢弃
+     */
+    public DecompressingConsumer(Consumer delegate) {
+        this(delegate, FailureHandler.discard());
+    }
+
+    /**
+     * @param onFailure 解压失败的消息的处理方式
+     */
+    public DecompressingConsumer(Consumer delegate, FailureHandler onFailure) {
+        this.delegate = delegate;
+        this.onFailure = onFailure;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        PayloadCompressor.Payload payload;
+        try {
+            payload = PayloadCompressor.decompress(properties, body);
+        } catch (IOException e) {
+            e.printStackTrace();
+            onFailure.handle(envelope, properties, body, e);
+            return;
+        }
+        delegate.handleDelivery(consumerTag, envelope, payload.getProperties(), payload.getBody());
+    }
+
+    @Override
+    public void handleConsumeOk(String consumerTag) {
+        delegate.handleConsumeOk(consumerTag);
+    }
+
+    @Override
+    public void handleCancelOk(String consumerTag) {
+        delegate.handleCancelOk(consumerTag);
+    }
+
+    @Override
+    public void handleCancel(String consumerTag) throws IOException {
+        delegate.handleCancel(consumerTag);
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        delegate.handleShutdownSignal(consumerTag, sig);
+    }
+
+    @Override
+    public void handleRecoverOk(String consumerTag) {
+        delegate.handleRecoverOk(consumerTag);
+    }
+}
@@ -0,0 +1,369 @@
+package hs.rabbitmq.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author heshuai
+ * @title: LazyJson
+ * @description: 直接在消息体字节上按需读取JSON字段
+ *               只需要根据一两个字段过滤、路由的消费者，如果先new String(body)再整体解析成对象，
+ *               每条消息都要分配char[]、String和整棵对象树，而真正用到的只有几个字段。
+ *               这里只扫描到要找的字段为止：跳过的值不解码、不分配对象，找到后返回值在ByteBuffer中的区间，
+ *               再按需要读取为long、boolean，与字符串比较，或者解码到复用的StringBuilder中。
+ *               区间用一个long表示：高32位为起始下标，低32位为结束下标（绝对下标，不包含），字符串的区间包含两端的引号，
+ *               没有找到时返回NOT_FOUND。嵌套字段先找到外层对象的区间，再在这个区间内查找：
+ *                  long customer = LazyJson.find(body, "customer");
+ *                  long level = LazyJson.find(body, customer, "level");
+ *               注意：
+ *                  1. 只检查扫描经过的部分，不保证整个消息是合法的JSON；结构错误时抛出IllegalArgumentException
+ *                  2. 字段名按解码后的内容比较，字段名中有转义字符时也能匹配；同名字段返回第一个
+ *                  3. 只使用按下标读取的get(index)，不改变ByteBuffer的position
+ * @date 2026年10月19日 01:10
+ */
+public final class LazyJson {
+
+    public static final long NOT_FOUND = -1L;
+
+    private LazyJson() {
+    }
+
+    /**
+     * 在顶层对象中查找字段，ByteBuffer的[position, limit)为整个JSON
+     * @return 字段值的区间，没有这个字段时返回NOT_FOUND
+     */
+    public static long find(ByteBuffer json, String name) {
+        int start = skipWhitespace(json, json.position(), json.limit());
+        return find(json, range(start, json.limit()), name);
+    }
+
+    /**
+     * 在object区间表示的对象中查找字段
+     * @param object 对象的区间，为NOT_FOUND或者不是对象时返回NOT_FOUND
+     * @return 字段值的区间，没有这个字段时返回NOT_FOUND
+     */
+    public static long find(ByteBuffer json, long object, String name) {
+        if (object == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        int i = start(object);
+        int end = end(object);
+        if (i >= end || json.get(i) != '{') {
+            return NOT_FOUND;
+        }
+        i = skipWhitespace(json, i + 1, end);
+        if (i < end && json.get(i) == '}') {
+            return NOT_FOUND;
+        }
+        while (i < end) {
+            if (json.get(i) != '"') {
+                throw malformed(i);
+            }
+            int keyEnd = skipString(json, i, end);
+            boolean matched = stringEquals(json, i, keyEnd, name);
+            i = skipWhitespace(json, keyEnd, end);
+            if (i >= end || json.get(i) != ':') {
+                throw malformed(i);
+            }
+            int valueStart = skipWhitespace(json, i + 1, end);
+            int valueEnd = skipValue(json, valueStart, end);
+            if (matched) {
+                return range(valueStart, valueEnd);
+            }
+            i = skipWhitespace(json, valueEnd, end);
+            if (i < end && json.get(i) == '}') {
+                return NOT_FOUND;
+            }
+            if (i >= end || json.get(i) != ',') {
+                throw malformed(i);
+            }
+            i = skipWhitespace(json, i + 1, end);
+        }
+        throw malformed(end);
+    }
+
+    /**
+     * @return 值是否为字符串
+     */
+    public static boolean isString(ByteBuffer json, long value) {
+        return value != NOT_FOUND && json.get(start(value)) == '"';
+    }
+
+    /**
+     * @return 值是否为null，没有找到的字段也返回true
+     */
+    public static boolean isNull(ByteBuffer json, long value) {
+        return value == NOT_FOUND || (end(value) - start(value) == 4 && json.get(start(value)) == 'n');
+    }
+
+    /**
+     * 字符串值与chars比较，不生成String
+     * @return 值是字符串并且解码（包括转义字符）后等于chars
+     */
+    public static boolean stringEquals(ByteBuffer json, long value, CharSequence chars) {
+        return isString(json, value) && stringEquals(json, start(value), end(value), chars);
+    }
+
+    /**
+     * 把字符串值解码（包括转义字符）后追加到dst，值不是字符串时追加原始内容（数字、true、对象等）
+     * @return dst
+     */
+    public static StringBuilder appendString(ByteBuffer json, long value, StringBuilder dst) {
+        if (value == NOT_FOUND) {
+            return dst;
+        }
+        int start = start(value);
+        int end = end(value);
+        if (json.get(start) != '"') {
+            return Utf8Decoder.decode(json, start, end, dst);
+        }
+        return unescape(json, start + 1, end - 1, dst);
+    }
+
+    /**
+     * @return 字符串值解码后的String，需要保存字段值时使用
+     */
+    public static String stringValue(ByteBuffer json, long value) {
+        return value == NOT_FOUND ? null : appendString(json, value, new StringBuilder(end(value) - start(value))).toString();
+    }
+
+    /**
+     * 读取整数值，不生成String
+     * @throws NumberFormatException 值不是整数
+     */
+    public static long longValue(ByteBuffer json, long value) {
+        if (value == NOT_FOUND) {
+            throw new NumberFormatException("field not found");
+        }
+        int i = start(value);
+        int end = end(value);
+        boolean negative = json.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("not an integer at " + start(value));
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = json.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("not an integer at " + start(value));
+            }
+            // 按负数累加，Long.MIN_VALUE也能表示
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("integer overflow at " + start(value));
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException("integer overflow at " + start(value));
+            }
+            return -result;
+        }
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException 值不是true或false
+     */
+    public static boolean booleanValue(ByteBuffer json, long value) {
+        if (value != NOT_FOUND) {
+            int length = end(value) - start(value);
+            if (length == 4 && json.get(start(value)) == 't') {
+                return true;
+            }
+            if (length == 5 && json.get(start(value)) == 'f') {
+                return false;
+            }
+        }
+        throw new IllegalArgumentException("not a boolean");
+    }
+
+    /**
+     * @return 值对应的只读ByteBuffer，与json共享内容，不拷贝
+     */
+    public static ByteBuffer slice(ByteBuffer json, long value) {
+        ByteBuffer duplicate = json.asReadOnlyBuffer();
+        duplicate.limit(end(value)).position(start(value));
+        return duplicate.slice();
+    }
+
+    public static int start(long value) {
+        return (int) (value >>> 32);
+    }
+
+    public static int end(long value) {
+        return (int) value;
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    /**
+     * [start, end)为包含引号的字符串，没有转义字符时直接比较UTF-8字节，否则按字符逐个比较
+     */
+    private static boolean stringEquals(ByteBuffer json, int start, int end, CharSequence chars) {
+        int from = start + 1;
+        int to = end - 1;
+        for (int i = from; i < to; i++) {
+            if (json.get(i) == '\\') {
+                // 有转义字符的字符串很少见，解码到临时的StringBuilder再比较
+                StringBuilder builder = unescape(json, from, to, new StringBuilder(to - from));
+                if (builder.length() != chars.length()) {
+                    return false;
+                }
+                for (int j = 0; j < builder.length(); j++) {
+                    if (builder.charAt(j) != chars.charAt(j)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return Utf8Decoder.equals(json, from, to, chars);
+    }
+
+    /**
+     * 解码字符串内容[start, end)（不包含引号），处理转义字符
+     */
+    private static StringBuilder unescape(ByteBuffer json, int start, int end, StringBuilder dst) {
+        int i = start;
+        int run = start;
+        while (i < end) {
+            if (json.get(i) != '\\') {
+                i++;
+                continue;
+            }
+            Utf8Decoder.decode(json, run, i, dst);
+            if (i + 1 >= end) {
+                throw malformed(i);
+            }
+            byte escaped = json.get(i + 1);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    dst.append((char) escaped);
+                    break;
+                case 'b':
+                    dst.append('\b');
+                    break;
+                case 'f':
+                    dst.append('\f');
+                    break;
+                case 'n':
+                    dst.append('\n');
+                    break;
+                case 'r':
+                    dst.append('\r');
+                    break;
+                case 't':
+                    dst.append('\t');
+                    break;
+                case 'u':
+                    if (i + 6 > end) {
+                        throw malformed(i);
+                    }
+                    int c = 0;
+                    for (int k = i + 2; k < i + 6; k++) {
+                        int digit = Character.digit(json.get(k), 16);
+                        if (digit < 0) {
+                            throw malformed(k);
+                        }
+                        c = (c << 4) | digit;
+                    }
+                    dst.append((char) c);
+                    i += 4;
+                    break;
+                default:
+                    throw malformed(i);
+            }
+            i += 2;
+            run = i;
+        }
+        return Utf8Decoder.decode(json, run, end, dst);
+    }
+
+    /**
+     * @return 值结束的下标
+     */
+    private static int skipValue(ByteBuffer json, int i, int end) {
+        if (i >= end) {
+            throw malformed(i);
+        }
+        byte b = json.get(i);
+        if (b == '"') {
+            return skipString(json, i, end);
+        }
+        if (b == '{' || b == '[') {
+            return skipContainer(json, i, end);
+        }
+        // 数字、true、false、null：到分隔符为止
+        int j = i;
+        while (j < end) {
+            b = json.get(j);
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                break;
+            }
+            j++;
+        }
+        if (j == i) {
+            throw malformed(i);
+        }
+        return j;
+    }
+
+    /**
+     * @param i 开始的引号
+     * @return 结束的引号之后的下标
+     */
+    private static int skipString(ByteBuffer json, int i, int end) {
+        for (int j = i + 1; j < end; j++) {
+            byte b = json.get(j);
+            if (b == '\\') {
+                j++;
+            } else if (b == '"') {
+                return j + 1;
+            }
+        }
+        throw malformed(i);
+    }
+
+    /**
+     * 跳过对象或数组，只计算括号的层数，不检查里面的内容
+     * @return 对应的右括号之后的下标
+     */
+    private static int skipContainer(ByteBuffer json, int i, int end) {
+        int depth = 0;
+        for (int j = i; j < end; j++) {
+            byte b = json.get(j);
+            if (b == '"') {
+                j = skipString(json, j, end) - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+            }
+        }
+        throw malformed(i);
+    }
+
+    private static int skipWhitespace(ByteBuffer json, int i, int end) {
+        while (i < end) {
+            byte b = json.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException malformed(int index) {
+        return new IllegalArgumentException("malformed json at " + index);
+    }
+}
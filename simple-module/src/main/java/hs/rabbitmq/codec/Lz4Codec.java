@@ -0,0 +1,262 @@
+package hs.rabbitmq.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author heshuai
+ * @title: Lz4Codec
+ * @description: LZ4块格式（block format）压缩
+ *               LZ4只做字典匹配、没有熵编码，压缩率不如deflate，但压缩/解压速度快一个数量级，适合网络带宽是瓶颈、CPU又不能花太多的场景。
+ *               这里是LZ4块格式的纯Java实现（快速模式：4KB哈希表、单次探测），不依赖lz4-java。
+ *               消息体格式：4字节（大端）原始长度 + LZ4块，content-encoding为lz4；
+ *               解压前先检查长度头，超过maxDecompressedLength时直接抛出IOException，不会按长度头分配数组
+ * @date 2026年10月18日 18:00
+ */
+public class Lz4Codec implements CompressionCodec {
+
+    public static final String CONTENT_ENCODING = "lz4";
+
+    private static final int MIN_MATCH = 4;
+    /**
+     * 块的最后5个字节必须是字面量
+     */
+    private static final int LAST_LITERALS = 5;
+    /**
+     * 最后一个匹配必须在块结束前12个字节之前开始
+     */
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+    /**
+     * 连续多少次没有匹配后增大探测步长，快速跳过不可压缩的数据
+     */
+    private static final int SKIP_TRIGGER = 6;
+    private static final int HEADER_LENGTH = 4;
+
+    /**
+     * 哈希表在线程内复用，不需要清空：候选位置在使用前会校验范围并比较4个字节，残留的旧值只会导致一次无效的探测
+     */
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    private final int maxDecompressedLength;
+
+    public Lz4Codec() {
+        this(DEFAULT_MAX_DECOMPRESSED_LENGTH);
+    }
+
+    /**
+     * @param maxDecompressedLength 最大解压长度，单位：字节
+     */
+    public Lz4Codec(int maxDecompressedLength) {
+        if (maxDecompressedLength <= 0) {
+            throw new IllegalArgumentException("maxDecompressedLength must be positive");
+        }
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    @Override
+    public String contentEncoding() {
+        return CONTENT_ENCODING;
+    }
+
+    @Override
+    public byte[] compress(byte[] body) {
+        byte[] dst = new byte[HEADER_LENGTH + maxCompressedLength(body.length)];
+        writeIntBE(dst, 0, body.length);
+        int length = compress(body, 0, body.length, dst, HEADER_LENGTH, HASH_TABLE.get());
+        return Arrays.copyOf(dst, HEADER_LENGTH + length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) throws IOException {
+        if (body.length < HEADER_LENGTH) {
+            throw new IOException("Malformed lz4 payload: missing length header");
+        }
+        int length = readIntBE(body, 0);
+        if (length < 0) {
+            throw new IOException("Malformed lz4 payload: negative length " + length);
+        }
+        if (length > maxDecompressedLength) {
+            throw new IOException("lz4 payload declares " + length + " bytes, more than the limit of " + maxDecompressedLength);
+        }
+        byte[] dst = new byte[length];
+        decompress(body, HEADER_LENGTH, body.length - HEADER_LENGTH, dst);
+        return dst;
+    }
+
+    /**
+     * @return srcLength字节的数据压缩后最大的长度（不可压缩时略大于原始长度）
+     */
+    public static int maxCompressedLength(int srcLength) {
+        return srcLength + srcLength / 255 + 16;
+    }
+
+    /**
+     * 压缩为LZ4块
+     * @return 写入dst的字节数
+     */
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int[] table) {
+        final int srcEnd = srcOff + srcLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOff;
+        int op = dstOff;
+        if (srcLen > MF_LIMIT) {
+            int ip = srcOff;
+            int misses = 0;
+            while (ip < mfLimit) {
+                int sequence = readIntLE(src, ip);
+                int h = hash(sequence);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < srcOff || ref >= ip || ip - ref > MAX_OFFSET || readIntLE(src, ref) != sequence) {
+                    ip += 1 + (misses++ >>> SKIP_TRIGGER);
+                    continue;
+                }
+                misses = 0;
+                // 向前扩展匹配
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        // 剩余的字节全部作为字面量
+        int literalLength = srcEnd - anchor;
+        int tokenPos = op++;
+        if (literalLength >= 15) {
+            dst[tokenPos] = (byte) 0xF0;
+            op = writeLength(literalLength - 15, dst, op);
+        } else {
+            dst[tokenPos] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        op += literalLength;
+        return op - dstOff;
+    }
+
+    /**
+     * 解压LZ4块，dst的长度必须恰好等于原始长度
+     */
+    static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dst.length;
+        int ip = srcOff;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (literalLength > srcEnd - ip || literalLength > dstEnd - op) {
+                    throw new IOException("Malformed lz4 block: literals out of bounds");
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == srcEnd) {
+                    break;
+                }
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                if (offset == 0 || offset > op) {
+                    throw new IOException("Malformed lz4 block: invalid offset " + offset);
+                }
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (matchLength > dstEnd - op) {
+                    throw new IOException("Malformed lz4 block: match out of bounds");
+                }
+                int ref = op - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // 重叠的匹配（例如连续重复的字节）只能逐字节复制
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed lz4 block: truncated input", e);
+        }
+        if (op != dstEnd) {
+            throw new IOException("Malformed lz4 block: expected " + dstEnd + " bytes but got " + op);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int op) {
+        int tokenPos = op++;
+        int token;
+        if (literalLength >= 15) {
+            token = 0xF0;
+            op = writeLength(literalLength - 15, dst, op);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        int extra = matchLength - MIN_MATCH;
+        if (extra >= 15) {
+            token |= 0x0F;
+            op = writeLength(extra - 15, dst, op);
+        } else {
+            token |= extra;
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readIntLE(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    private static int readIntBE(byte[] b, int i) {
+        return (b[i] & 0xFF) << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | (b[i + 3] & 0xFF);
+    }
+
+    private static void writeIntBE(byte[] b, int i, int value) {
+        b[i] = (byte) (value >>> 24);
+        b[i + 1] = (byte) (value >>> 16);
+        b[i + 2] = (byte) (value >>> 8);
+        b[i + 3] = (byte) value;
+    }
+}
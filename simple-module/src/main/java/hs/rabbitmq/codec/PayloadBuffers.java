@@ -0,0 +1,110 @@
+package hs.rabbitmq.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author heshuai
+ * @title: PayloadBuffers
+ * @description: 线程内复用的消息体缓冲区
+ *               Channel.basicPublish只接受完整的byte[]（没有offset/length参数），消息体数组的长度必须恰好等于消息长度，
+ *               所以这里按长度缓存byte[]：同一个线程再次编码相同长度的消息时直接复用上一次的数组，
+ *               消息长度的种类不多时（绝大多数业务消息都是如此），稳定运行后每条消息不再分配新的byte[]。
+ *               同时提供一个复用的StringBuilder用来拼接消息内容，避免"a" + i + "b"产生的临时String。
+ *               注意：
+ *                  1. encode返回的数组只在当前线程下一次编码相同长度的消息之前有效，不能保存下来或交给其它线程
+ *                  2. 只适用于阻塞IO模式（默认）的客户端：basicPublish返回前消息体已经写入socket缓冲区，
+ *                     NIO模式下帧会在I/O线程中异步写出，不能复用消息体数组
+ *                  3. builder()返回的StringBuilder同样只能在当前线程、下一次调用builder()之前使用
+ * @date 2026年10月18日 17:05
+ */
+public final class PayloadBuffers {
+
+    /**
+     * 按长度缓存的数组槽位数量，必须是2的幂
+     */
+    private static final int ARRAY_SLOTS = 64;
+    /**
+     * 超过这个长度的消息不缓存，避免每个线程长期持有大数组
+     */
+    private static final int MAX_POOLED_LENGTH = 64 * 1024;
+    /**
+     * StringBuilder容量超过这个值时在builder()中丢弃重建
+     */
+    private static final int MAX_BUILDER_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<PayloadBuffers> LOCAL = ThreadLocal.withInitial(PayloadBuffers::new);
+
+    /**
+     * 直接映射的缓存：长度为n的数组放在n & (ARRAY_SLOTS - 1)槽位上
+     */
+    private final byte[][] arrays = new byte[ARRAY_SLOTS][];
+    private StringBuilder builder = new StringBuilder(256);
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    private PayloadBuffers() {
+    }
+
+    /**
+     * @return 当前线程的缓冲区
+     */
+    public static PayloadBuffers get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * @return 清空后的StringBuilder，用来拼接消息内容
+     */
+    public StringBuilder builder() {
+        if (builder.capacity() > MAX_BUILDER_CAPACITY) {
+            builder = new StringBuilder(256);
+        } else {
+            builder.setLength(0);
+        }
+        return builder;
+    }
+
+    /**
+     * 获取长度恰好为length的数组，内容是上一次使用留下的数据
+     * @param length 数组长度
+     * @return 复用的数组，长度超过MAX_POOLED_LENGTH时返回新数组
+     */
+    public byte[] array(int length) {
+        if (length > MAX_POOLED_LENGTH) {
+            return new byte[length];
+        }
+        int slot = length & (ARRAY_SLOTS - 1);
+        byte[] array = arrays[slot];
+        if (array == null || array.length != length) {
+            array = new byte[length];
+            arrays[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * 把消息内容按UTF-8编码为消息体
+     * @param chars 消息内容
+     * @return 复用的数组，长度恰好等于编码后的字节数，可以直接作为basicPublish的body
+     */
+    public byte[] encode(CharSequence chars) {
+        byte[] body = array(Utf8Encoder.encodedLength(chars));
+        Utf8Encoder.encode(chars, body, 0);
+        return body;
+    }
+
+    /**
+     * 把消息内容按UTF-8编码写入复用的ByteBuffer
+     * @param chars 消息内容
+     * @return 已flip的ByteBuffer，position为0，limit为编码后的字节数
+     */
+    public ByteBuffer encodeToBuffer(CharSequence chars) {
+        int length = Utf8Encoder.encodedLength(chars);
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        Utf8Encoder.encode(chars, buffer);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,138 @@
+package hs.rabbitmq.codec;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author heshuai
+ * @title: PayloadCompressor
+ * @description: 发布端的消息体压缩
+ *               只压缩长度不小于threshold的消息体，小消息压缩收益很小，反而白白消耗CPU；压缩后没有变小的消息也按原样发送。
+ *               压缩后的消息在content-encoding属性中写入算法名称，如果原来已经有content-encoding（例如UTF-8），
+ *               写成"算法:原content-encoding"，解压时恢复原来的值；spring-amqp默认写成"算法, 原content-encoding"，
+ *               解压时两种分隔符都能识别，所以两个模块之间可以互通。
+ *               消费端使用decompress或者DecompressingConsumer按照content-encoding自动解压，
+ *               没有被压缩的消息（content-encoding不是已注册的算法）原样返回
+ * @date 2026年10月18日 18:00
+ */
+public class PayloadCompressor {
+
+    /**
+     * 算法名称与原content-encoding之间的分隔符
+     */
+    public static final String ENCODING_DELIMITER = ":";
+    /**
+     * spring-amqp压缩PostProcessor默认使用的分隔符
+     */
+    private static final char SPRING_ENCODING_DELIMITER = ',';
+
+    private static final Map<String, CompressionCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        registerCodec(new Lz4Codec());
+        registerCodec(new DeflateCodec());
+    }
+
+    private final CompressionCodec codec;
+    private final int threshold;
+
+    /**
+     * @param codec 压缩算法
+     * @param threshold 压缩阈值，消息体长度小于这个值时不压缩，单位：字节
+     */
+    public PayloadCompressor(CompressionCodec codec, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    /**
+     * 注册一个解压算法，消费端遇到content-encoding为codec.contentEncoding()的消息时使用它解压
+     * 默认已经注册了lz4和deflate，最大解压长度为CompressionCodec.DEFAULT_MAX_DECOMPRESSED_LENGTH，
+     * 需要修改时重新注册，例如registerCodec(new Lz4Codec(8 * 1024 * 1024))
+     */
+    public static void registerCodec(CompressionCodec codec) {
+        CODECS.put(codec.contentEncoding(), codec);
+    }
+
+    /**
+     * 按需压缩消息体
+     * @param props 消息属性，可以为null
+     * @param body 消息体
+     * @return 发送用的消息属性和消息体，没有压缩时就是传入的props和body
+     */
+    public Payload compress(AMQP.BasicProperties props, byte[] body) {
+        if (body.length < threshold) {
+            return new Payload(props, body);
+        }
+        byte[] compressed = codec.compress(body);
+        if (compressed.length >= body.length) {
+            return new Payload(props, body);
+        }
+        AMQP.BasicProperties.Builder builder = props == null ? new AMQP.BasicProperties.Builder() : props.builder();
+        String original = props == null ? null : props.getContentEncoding();
+        String encoding = original == null ? codec.contentEncoding() : codec.contentEncoding() + ENCODING_DELIMITER + original;
+        return new Payload(builder.contentEncoding(encoding).build(), compressed);
+    }
+
+    /**
+     * 按需压缩后发布消息
+     */
+    public void basicPublish(Channel channel, String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        Payload payload = compress(props, body);
+        channel.basicPublish(exchange, routingKey, payload.getProperties(), payload.getBody());
+    }
+
+    /**
+     * 按照content-encoding解压消息体
+     * @param props 收到的消息属性，可以为null
+     * @param body 收到的消息体
+     * @return 解压后的消息属性（content-encoding恢复为压缩前的值）和消息体，没有被压缩的消息原样返回
+     * @throws IOException 消息体与content-encoding标记的算法不匹配
+     */
+    public static Payload decompress(AMQP.BasicProperties props, byte[] body) throws IOException {
+        String encoding = props == null ? null : props.getContentEncoding();
+        if (encoding == null) {
+            return new Payload(props, body);
+        }
+        int delimiter = encoding.indexOf(ENCODING_DELIMITER);
+        if (delimiter < 0) {
+            delimiter = encoding.indexOf(SPRING_ENCODING_DELIMITER);
+        }
+        CompressionCodec codec = CODECS.get(delimiter < 0 ? encoding : encoding.substring(0, delimiter));
+        if (codec == null) {
+            return new Payload(props, body);
+        }
+        String original = delimiter < 0 ? null : encoding.substring(delimiter + 1).trim();
+        return new Payload(props.builder().contentEncoding(original).build(), codec.decompress(body));
+    }
+
+    /**
+     * 消息属性和消息体
+     */
+    public static final class Payload {
+
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        Payload(AMQP.BasicProperties properties, byte[] body) {
+            this.properties = properties;
+            this.body = body;
+        }
+
+        public AMQP.BasicProperties getProperties() {
+            return properties;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
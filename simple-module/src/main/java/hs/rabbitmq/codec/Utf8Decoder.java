@@ -0,0 +1,140 @@
+package hs.rabbitmq.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author heshuai
+ * @title: Utf8Decoder
+ * @description: 不产生中间对象的UTF-8解码器，与Utf8Encoder对应
+ *               new String(body)每条消息都要分配char[]（JDK 8下还要经过CharsetDecoder），而且使用的是平台默认字符集，
+ *               Windows上默认GBK时中文消息会乱码。这里直接在ByteBuffer的[start, end)区间上解码：
+ *                  1. equals：逐个字符与CharSequence比较，不生成String，用来按字段值过滤、路由
+ *                  2. decode：追加到调用方复用的StringBuilder（例如PayloadBuffers.builder()）
+ *               只使用按下标读取的get(index)，不改变ByteBuffer的position，只读的ByteBuffer、堆外ByteBuffer都可以使用。
+ *               非法的字节序列（截断的多字节字符、多余的后续字节、超长编码、代理字符）每个字节替换为U+FFFD
+ * @date 2026年10月19日 01:10
+ */
+public final class Utf8Decoder {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private Utf8Decoder() {
+    }
+
+    /**
+     * 比较[start, end)区间解码后的内容是否等于chars
+     * @param src 源ByteBuffer
+     * @param start 起始下标（绝对下标，包含）
+     * @param end 结束下标（绝对下标，不包含）
+     * @param chars 比较的字符序列
+     */
+    public static boolean equals(ByteBuffer src, int start, int end, CharSequence chars) {
+        int length = chars.length();
+        // 每个字符至少1个字节、最多3个字节（4字节的字符对应2个char）
+        if (end - start < length || end - start > length * 3) {
+            return false;
+        }
+        int i = start;
+        int j = 0;
+        while (i < end) {
+            int b = src.get(i);
+            if (b >= 0) {
+                if (j == length || chars.charAt(j) != b) {
+                    return false;
+                }
+                i++;
+                j++;
+                continue;
+            }
+            long next = next(src, i, end);
+            int codePoint = (int) (next >>> 32);
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (j + 1 >= length || chars.charAt(j) != Character.highSurrogate(codePoint)
+                        || chars.charAt(j + 1) != Character.lowSurrogate(codePoint)) {
+                    return false;
+                }
+                j += 2;
+            } else {
+                if (j == length || chars.charAt(j) != codePoint) {
+                    return false;
+                }
+                j++;
+            }
+            i += (int) next;
+        }
+        return j == length;
+    }
+
+    /**
+     * 把[start, end)区间解码后追加到dst
+     * @param src 源ByteBuffer
+     * @param start 起始下标（绝对下标，包含）
+     * @param end 结束下标（绝对下标，不包含）
+     * @param dst 目标StringBuilder
+     * @return dst
+     */
+    public static StringBuilder decode(ByteBuffer src, int start, int end, StringBuilder dst) {
+        dst.ensureCapacity(dst.length() + end - start);
+        int i = start;
+        while (i < end) {
+            int b = src.get(i);
+            if (b >= 0) {
+                dst.append((char) b);
+                i++;
+                continue;
+            }
+            long next = next(src, i, end);
+            dst.appendCodePoint((int) (next >>> 32));
+            i += (int) next;
+        }
+        return dst;
+    }
+
+    /**
+     * 解码整个ByteBuffer的剩余部分（[position, limit)），需要保存结果时使用
+     */
+    public static String decode(ByteBuffer src) {
+        return decode(src, src.position(), src.limit(), new StringBuilder(src.remaining())).toString();
+    }
+
+    /**
+     * 解码从i开始的一个多字节字符
+     * @return 高32位为码点，低32位为占用的字节数
+     */
+    private static long next(ByteBuffer src, int i, int end) {
+        int b = src.get(i) & 0xFF;
+        int count;
+        int codePoint;
+        int min;
+        if (b >= 0xC2 && b <= 0xDF) {
+            count = 2;
+            codePoint = b & 0x1F;
+            min = 0x80;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            count = 3;
+            codePoint = b & 0x0F;
+            min = 0x800;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            count = 4;
+            codePoint = b & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            return ((long) REPLACEMENT << 32) | 1;
+        }
+        if (i + count > end) {
+            return ((long) REPLACEMENT << 32) | 1;
+        }
+        for (int k = 1; k < count; k++) {
+            int c = src.get(i + k) & 0xFF;
+            if ((c & 0xC0) != 0x80) {
+                return ((long) REPLACEMENT << 32) | 1;
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return ((long) REPLACEMENT << 32) | 1;
+        }
+        return ((long) codePoint << 32) | count;
+    }
+}
@@ -0,0 +1,141 @@
+package hs.rabbitmq.codec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * @author heshuai
+ * @title: Utf8Encoder
+ * @description: 不产生中间对象的UTF-8编码器
+ *               String.getBytes("utf-8")每次都会新建一个byte[]（JDK 8下还会经过CharsetEncoder再拷贝一次），
+ *               这里直接把CharSequence（String、StringBuilder）中的字符逐个编码写入调用方提供的ByteBuffer或byte[]中。
+ *               与String.getBytes一致，不成对的代理字符（surrogate）编码为'?'
+ * @date 2026年10月18日 17:05
+ */
+public final class Utf8Encoder {
+
+    private Utf8Encoder() {
+    }
+
+    /**
+     * 计算UTF-8编码后的字节数
+     * @param chars 字符序列
+     * @return 编码后的字节数
+     */
+    public static int encodedLength(CharSequence chars) {
+        int length = chars.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                // 一对代理字符（2个char）编码为4个字节
+                bytes += 2;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符编码为'?'，占1个字节
+                continue;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 把字符序列编码写入byte[]
+     * @param chars 字符序列
+     * @param dst 目标数组
+     * @param offset 写入的起始位置
+     * @return 写入的字节数
+     * @throws ArrayIndexOutOfBoundsException 目标数组剩余空间不足
+     */
+    public static int encode(CharSequence chars, byte[] dst, int offset) {
+        int length = chars.length();
+        int pos = offset;
+        int i = 0;
+        // ASCII字符最常见，先走一个没有分支判断的快速循环
+        while (i < length) {
+            char c = chars.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            dst[pos++] = (byte) c;
+            i++;
+        }
+        for (; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                dst[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xC0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                dst[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                dst[pos++] = '?';
+            } else {
+                dst[pos++] = (byte) (0xE0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos - offset;
+    }
+
+    /**
+     * 把字符序列编码写入ByteBuffer，从position开始写，写完后position移动到编码结果之后
+     * 堆内ByteBuffer直接写底层数组，堆外ByteBuffer逐字节put
+     * @param chars 字符序列
+     * @param dst 目标ByteBuffer
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间不足，此时dst的position不变
+     */
+    public static int encode(CharSequence chars, ByteBuffer dst) {
+        int position = dst.position();
+        if (dst.hasArray()) {
+            if (dst.remaining() < encodedLength(chars)) {
+                throw new BufferOverflowException();
+            }
+            int written = encode(chars, dst.array(), dst.arrayOffset() + position);
+            dst.position(position + written);
+            return written;
+        }
+        try {
+            int length = chars.length();
+            for (int i = 0; i < length; i++) {
+                char c = chars.charAt(i);
+                if (c < 0x80) {
+                    dst.put((byte) c);
+                } else if (c < 0x800) {
+                    dst.put((byte) (0xC0 | (c >> 6)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                    dst.put((byte) (0xF0 | (codePoint >> 18)));
+                    dst.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    dst.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    dst.put((byte) '?');
+                } else {
+                    dst.put((byte) (0xE0 | (c >> 12)));
+                    dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        } catch (BufferOverflowException e) {
+            dst.position(position);
+            throw e;
+        }
+        return dst.position() - position;
+    }
+}
@@ -0,0 +1,238 @@
+package hs.rabbitmq.config;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import hs.rabbitmq.metrics.MessagingMetrics;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author heshuai
+ * @title: ChannelPool
+ * @description: Connection/Channel池
+ *               RabbitmqConfig.getChannel()每次都会新建一个Connection（一次完整的TCP连接 + AMQP握手），用完即关，
+ *               在高频发送消息的场景下，建立连接的耗时和文件句柄的消耗都很可观。
+ *               这里维护固定数量的长连接，每个Connection上缓存若干Channel，使用方借出（borrow）一个Channel，用完后归还（close），
+ *               Channel不会被真正关闭，而是放回所属Connection的缓存中，供下一次借出使用。
+ *               注意：
+ *                  1. 一个Channel同一时刻只能被一个线程借出，不要把借出的Channel共享给其它线程
+ *                  2. 开启过confirmSelect的Channel归还后仍然处于发布确认模式
+ *                  3. 消费者（basicConsume）会长期占用Channel，请直接使用RabbitmqConfig.getChannel()，不要从池中借
+ *                  4. 指定了MessagingMetrics时，池中的Channel在创建时包装一次，借出的都是记录指标的Channel
+ * @date 2026年10月18日 10:12
+ */
+public class ChannelPool implements AutoCloseable {
+
+    /**
+     * 创建Connection的工厂
+     */
+    private final ConnectionFactory connectionFactory;
+    /**
+     * 每个Connection最多同时打开的Channel数量，同时也是每个Connection的Channel缓存大小
+     */
+    private final int channelsPerConnection;
+    /**
+     * 借出Channel的最长等待时间，单位：毫秒
+     */
+    private final long borrowTimeoutMillis;
+    private final Slot[] slots;
+    /**
+     * 轮询选择Connection的计数器
+     */
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+    /**
+     * 为null时不记录指标
+     */
+    private final MessagingMetrics metrics;
+
+    /**
+     * @param connectionFactory 连接工厂
+     * @param connectionCount 长连接数量
+     * @param channelsPerConnection 每个连接上的Channel数量上限
+     * @param borrowTimeoutMillis 所有Channel都被借出时，借出的最长等待时间
+     */
+    public ChannelPool(ConnectionFactory connectionFactory, int connectionCount, int channelsPerConnection, long borrowTimeoutMillis) {
+        this(connectionFactory, connectionCount, channelsPerConnection, borrowTimeoutMillis, null);
+    }
+
+    /**
+     * @param metrics 记录池中Channel的发布、消费指标，为null时不记录
+     */
+    public ChannelPool(ConnectionFactory connectionFactory, int connectionCount, int channelsPerConnection, long borrowTimeoutMillis,
+                       MessagingMetrics metrics) {
+        if (connectionCount <= 0 || channelsPerConnection <= 0) {
+            throw new IllegalArgumentException("connectionCount and channelsPerConnection must be positive");
+        }
+        this.connectionFactory = connectionFactory;
+        this.channelsPerConnection = channelsPerConnection;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.metrics = metrics;
+        this.slots = new Slot[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * 借出一个Channel，用完之后调用PooledChannel.close()归还，推荐使用try-with-resources
+     * @return 借出的Channel
+     * @throws IOException
+     * @throws TimeoutException 等待超过borrowTimeoutMillis仍然没有空闲Channel
+     */
+    public PooledChannel borrow() throws IOException, TimeoutException {
+        if (closed) {
+            throw new IllegalStateException("ChannelPool is closed");
+        }
+        // 先轮询所有Connection，尝试不等待地拿到一个Channel
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[(start + i) % slots.length];
+            if (slot.permits.tryAcquire()) {
+                return slot.lease();
+            }
+        }
+        // 所有Channel都被借出，则在轮询到的Connection上等待
+        Slot slot = slots[start % slots.length];
+        try {
+            if (!slot.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("No channel available within " + borrowTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a channel", e);
+        }
+        return slot.lease();
+    }
+
+    /**
+     * 关闭池中的所有Connection，已借出的Channel会随Connection一起关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Slot slot : slots) {
+            slot.close();
+        }
+    }
+
+    /**
+     * 一个长连接以及它上面缓存的空闲Channel
+     */
+    private final class Slot {
+        private final Semaphore permits = new Semaphore(channelsPerConnection);
+        private final BlockingQueue<Channel> idle = new ArrayBlockingQueue<>(channelsPerConnection);
+        private volatile Connection connection;
+
+        /**
+         * 调用前必须已经拿到permits
+         */
+        private PooledChannel lease() throws IOException, TimeoutException {
+            try {
+                // 丢弃已经失效的缓存Channel
+                Channel channel = idle.poll();
+                while (channel != null && !channel.isOpen()) {
+                    channel = idle.poll();
+                }
+                if (channel == null) {
+                    channel = connection().createChannel();
+                    if (metrics != null) {
+                        channel = metrics.wrap(channel);
+                    }
+                }
+                return new PooledChannel(channel, this);
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private Connection connection() throws IOException, TimeoutException {
+            Connection current = connection;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            synchronized (this) {
+                current = connection;
+                if (current == null || !current.isOpen()) {
+                    // Connection已断开，旧Connection上缓存的Channel也都不可用了
+                    idle.clear();
+                    current = connectionFactory.newConnection();
+                    connection = current;
+                }
+                return current;
+            }
+        }
+
+        private void giveBack(Channel channel) {
+            try {
+                if (closed || !channel.isOpen() || !idle.offer(channel)) {
+                    closeQuietly(channel);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        private synchronized void close() {
+            idle.clear();
+            if (connection != null && connection.isOpen()) {
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException | TimeoutException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 借出的Channel，close()并不会关闭Channel，而是归还给池
+     */
+    public static final class PooledChannel implements AutoCloseable {
+        private final Channel channel;
+        private final Slot slot;
+        private boolean returned;
+
+        private PooledChannel(Channel channel, Slot slot) {
+            this.channel = channel;
+            this.slot = slot;
+        }
+
+        public Channel getChannel() {
+            if (returned) {
+                throw new IllegalStateException("Channel has already been returned to the pool");
+            }
+            return channel;
+        }
+
+        /**
+         * 归还Channel，重复调用无效果
+         */
+        @Override
+        public void close() {
+            if (!returned) {
+                returned = true;
+                slot.giveBack(channel);
+            }
+        }
+    }
+}
@@ -3,8 +3,14 @@ package hs.rabbitmq.config;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import hs.rabbitmq.metrics.ConsoleReporter;
+import hs.rabbitmq.metrics.MessagingMetrics;
+import hs.rabbitmq.outbox.MappedOutbox;
+import hs.rabbitmq.outbox.OutboxDrainer;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -17,6 +23,54 @@ public class RabbitmqConfig {
      * 创建连接mq的连接工厂对象
      */
     private static ConnectionFactory connectionFactory = new ConnectionFactory();
+    /**
+     * 共享的Channel池，第一次使用时才创建
+     */
+    private static volatile ChannelPool channelPool;
+    /**
+     * Channel池中长连接的数量
+     */
+    private static final int POOL_CONNECTIONS = 2;
+    /**
+     * Channel池中每个长连接上的Channel数量
+     */
+    private static final int POOL_CHANNELS_PER_CONNECTION = 16;
+    /**
+     * 从Channel池中借出Channel的最长等待时间，单位：毫秒
+     */
+    private static final long POOL_BORROW_TIMEOUT = 5_000;
+    /**
+     * 共享的本地发件箱，第一次使用时才创建
+     */
+    private static volatile MappedOutbox outbox;
+    /**
+     * 发件箱所在目录
+     */
+    private static final String OUTBOX_DIRECTORY = System.getProperty("java.io.tmpdir") + "/rabbitmq-demo-outbox";
+    /**
+     * 发件箱段文件大小，单位：字节
+     */
+    private static final int OUTBOX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * 发件箱最多的段文件数量，即最多占用 16MB × 64 = 1GB 磁盘空间
+     */
+    private static final int OUTBOX_MAX_SEGMENTS = 64;
+    /**
+     * 发件箱写满时append的最长等待时间，单位：毫秒
+     */
+    private static final long OUTBOX_BLOCK_TIMEOUT = 5_000;
+    /**
+     * 指标上报周期，单位：秒
+     */
+    private static final long METRICS_REPORT_PERIOD = 10;
+    /**
+     * 共享的指标，默认不包装Channel也不上报，调用enableMetrics()之后才生效
+     */
+    private static final MessagingMetrics metrics = new MessagingMetrics();
+    /**
+     * getChannel()和Channel池是否包装Channel记录指标
+     */
+    private static volatile boolean metricsEnabled;
     static {
         // 连接rabbitmq的主机
         connectionFactory.setHost("127.0.0.1");
@@ -55,7 +109,102 @@ public class RabbitmqConfig {
      * @throws TimeoutException
      */
     public static Channel getChannel() throws IOException, TimeoutException {
-        return getConnection().createChannel();
+        Channel channel = getConnection().createChannel();
+        return metricsEnabled ? metrics.wrap(channel) : channel;
+    }
+
+    /**
+     * 获取共享的Channel池，池中的Connection是长连接，借出的Channel用完后需要归还而不是关闭
+     * 适用于频繁发送消息的生产者，避免每次发送都重新建立Connection
+     * @return
+     */
+    public static ChannelPool getChannelPool() {
+        ChannelPool pool = channelPool;
+        if (pool == null) {
+            synchronized (RabbitmqConfig.class) {
+                pool = channelPool;
+                if (pool == null) {
+                    pool = new ChannelPool(connectionFactory, POOL_CONNECTIONS, POOL_CHANNELS_PER_CONNECTION, POOL_BORROW_TIMEOUT,
+                            metricsEnabled ? metrics : null);
+                    channelPool = pool;
+                    // JVM退出时关闭池中的长连接
+                    Runtime.getRuntime().addShutdownHook(new Thread(pool::close));
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 从共享的Channel池中借出一个Channel
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static ChannelPool.PooledChannel borrowChannel() throws IOException, TimeoutException {
+        return getChannelPool().borrow();
+    }
+
+    /**
+     * 获取共享的本地发件箱，消息先写入本地的内存映射文件，再由后台的OutboxDrainer重放到broker，
+     * broker不可用时发送方不会报错，也不会丢失消息
+     * @return
+     * @throws IOException
+     */
+    public static MappedOutbox getOutbox() throws IOException {
+        MappedOutbox box = outbox;
+        if (box == null) {
+            synchronized (RabbitmqConfig.class) {
+                box = outbox;
+                if (box == null) {
+                    box = new MappedOutbox(Paths.get(OUTBOX_DIRECTORY), OUTBOX_SEGMENT_SIZE, OUTBOX_MAX_SEGMENTS,
+                            OUTBOX_BLOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+                    OutboxDrainer drainer = new OutboxDrainer(box, connectionFactory, 500, 1, TimeUnit.SECONDS).start();
+                    outbox = box;
+                    // JVM退出时停止重放并把发件箱刷到磁盘，未确认的消息下次启动时继续发送
+                    MappedOutbox closing = box;
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        try {
+                            drainer.close();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        closing.close();
+                    }));
+                }
+            }
+        }
+        return box;
+    }
+
+    /**
+     * 获取共享的指标，默认不上报，需要记录指标的Channel通过getMetrics().wrap(channel)包装，
+     * 通过getMetrics().start(reporter, period, unit)开始上报
+     * @return
+     */
+    public static MessagingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 开启指标：之后getChannel()返回的Channel和第一次创建的Channel池借出的Channel都会包装，
+     * 并且每隔METRICS_REPORT_PERIOD秒打印一次各个exchange/routingKey、队列的速率和耗时；
+     * 需要在getChannelPool()第一次调用之前开启，已经创建的Channel池不会再包装
+     */
+    public static synchronized void enableMetrics() {
+        if (metricsEnabled) {
+            return;
+        }
+        metrics.start(new ConsoleReporter(), METRICS_REPORT_PERIOD, TimeUnit.SECONDS);
+        metricsEnabled = true;
+    }
+
+    /**
+     * 获取连接工厂，用于需要自行管理Connection的场景
+     * @return
+     */
+    public static ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
     }
 
 }
@@ -0,0 +1,295 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: AckCoalescer
+ * @description: 合并手动确认
+ *               逐条basicAck(tag, false)时每条消息都要发送一个ack帧，消费速率很高时ack帧本身就是不小的开销。
+ *               一个Channel上的deliveryTag从1开始连续递增，basicAck(tag, true)会确认这个Channel上所有不大于tag的未确认消息，
+ *               这里记录处理完成的deliveryTag，只在“连续完成”的最大tag上发送一次multiple=true的basicAck：
+ *                  1. 连续完成、尚未确认的消息达到threshold条时立即确认
+ *                  2. 否则第一条消息完成后最多等待maxDelay，由定时任务确认
+ *                  3. 并行处理时消息乱序完成，tag 5已完成但tag 3还在处理中时，只会确认到tag 2，
+ *                     tag 3完成后再一次确认到tag 5，不会误确认还在处理中的消息
+ *                  4. nack立即单独发送（multiple=false），nack过的消息在broker端已经结束：multiple=true确认的tag本身不能是nack过的
+ *                     （broker会以PRECONDITION_FAILED - unknown delivery tag关闭Channel），只确认到连续完成的消息中最大的没有nack过的tag；
+ *                     剩下的都是nack过的消息时不发送确认
+ *               注意：
+ *                  1. 一个Channel只能使用一个AckCoalescer，并且这个Channel上所有手动确认的消息都必须通过它确认，
+ *                     同一个Channel上不能有autoAck的消费者，否则deliveryTag不连续，确认会一直卡在缺失的tag上
+ *                  2. Channel关闭时未确认的消息由broker重新投递，这里清空记录；自动恢复的Channel上新的deliveryTag接着之前的继续递增，
+ *                     关闭前还在处理中的消息再也不会被确认，所以恢复后从第一条新投递的消息重新开始计算，
+ *                     并行处理消息时需要在handleDelivery中调用delivered，告诉当前对象哪一条是恢复后的第一条消息（WorkerPoolConsumer会调用）
+ *                  3. 确认被延迟最多maxDelay，这段时间内消息仍然占用prefetch的额度，threshold要明显小于prefetch
+ * @date 2026年10月18日 22:00
+ */
+public class AckCoalescer implements AutoCloseable {
+
+    /**
+     * base推进超过这个值时压缩BitSet，丢掉已经确认的部分
+     */
+    private static final int COMPACT_THRESHOLD = 64 * 1024;
+
+    private final Channel channel;
+    private final int threshold;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ShutdownListener shutdownListener;
+
+    /**
+     * 第i位表示deliveryTag为base + i的消息已经完成，由当前对象的锁保护
+     */
+    private BitSet completed = new BitSet();
+    /**
+     * 第i位表示deliveryTag为base + i的消息已经nack，同时也会记录在completed中，由当前对象的锁保护
+     */
+    private BitSet nacked = new BitSet();
+    private long base = 1;
+    /**
+     * 不大于这个tag的消息都已经结束（通过multiple=true确认，或者已经nack）
+     */
+    private long acked;
+    private ScheduledFuture<?> flushTask;
+    private boolean closed;
+    /**
+     * Channel关闭过，需要从下一条消息重新开始计算
+     */
+    private volatile boolean resync;
+    /**
+     * 调用方是否调用delivered，调用时Channel关闭后、新消息投递前完成的消息都是关闭前投递的，直接忽略
+     */
+    private volatile boolean deliveriesTracked;
+
+    private final AtomicLong ackFrames = new AtomicLong();
+    private final AtomicLong ackedMessages = new AtomicLong();
+    private final AtomicLong nackFrames = new AtomicLong();
+
+    /**
+     * @param channel 投递消息的Channel
+     * @param threshold 连续完成多少条消息时立即确认
+     * @param maxDelay 消息完成后最长的确认延迟
+     * @param unit maxDelay的单位
+     */
+    public AckCoalescer(Channel channel, int threshold, long maxDelay, TimeUnit unit) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        this.channel = channel;
+        this.threshold = threshold;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ack-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shutdownListener = this::handleShutdown;
+        channel.addShutdownListener(shutdownListener);
+    }
+
+    /**
+     * 收到一条消息，在handleDelivery中按投递顺序调用，只有Channel关闭过之后才需要加锁处理
+     */
+    public void delivered(long deliveryTag) {
+        if (!deliveriesTracked) {
+            deliveriesTracked = true;
+        }
+        if (resync) {
+            synchronized (this) {
+                if (resync) {
+                    restart(deliveryTag);
+                }
+            }
+        }
+    }
+
+    /**
+     * 消息处理成功，可以在任意线程上调用
+     */
+    public synchronized void ack(long deliveryTag) throws IOException {
+        if (mark(deliveryTag)) {
+            completedChanged();
+        }
+    }
+
+    /**
+     * 消息处理失败，立即发送basicNack
+     * @param requeue true：重新入队；false：丢弃或者进入死信队列
+     */
+    public synchronized void nack(long deliveryTag, boolean requeue) throws IOException {
+        if (isStale(deliveryTag)) {
+            return;
+        }
+        channel.basicNack(deliveryTag, false, requeue);
+        nackFrames.incrementAndGet();
+        // nack之后这条消息在broker端已经结束，当作完成处理，后面的multiple=true确认可以越过它，但不能以它结尾
+        if (mark(deliveryTag)) {
+            nacked.set(toIndex(deliveryTag));
+            completedChanged();
+        }
+    }
+
+    /**
+     * 立即确认所有连续完成的消息
+     */
+    public synchronized void flush() throws IOException {
+        long contiguous = contiguous();
+        if (contiguous > acked) {
+            send(contiguous);
+        }
+    }
+
+    /**
+     * @return 发送的basicAck帧数量
+     */
+    public long ackFrames() {
+        return ackFrames.get();
+    }
+
+    /**
+     * @return 通过basicAck确认的消息数量，不包括nack的消息
+     */
+    public long ackedMessages() {
+        return ackedMessages.get();
+    }
+
+    /**
+     * @return 发送的basicNack帧数量
+     */
+    public long nackFrames() {
+        return nackFrames.get();
+    }
+
+    /**
+     * 确认所有连续完成的消息并停止定时任务，不会关闭Channel
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (channel.isOpen()) {
+                flush();
+            }
+        }
+        channel.removeShutdownListener(shutdownListener);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录完成的tag
+     * @return 是否需要继续处理，已经确认过的tag返回false
+     */
+    private boolean mark(long deliveryTag) {
+        if (isStale(deliveryTag)) {
+            return false;
+        }
+        if (resync) {
+            // 没有调用delivered，按顺序处理消息时第一条完成的就是第一条投递的
+            restart(deliveryTag);
+        }
+        completed.set(toIndex(deliveryTag));
+        return true;
+    }
+
+    /**
+     * 连续完成的消息达到threshold条时立即确认，否则安排定时确认
+     */
+    private void completedChanged() throws IOException {
+        long contiguous = contiguous();
+        if (contiguous - acked >= threshold) {
+            send(contiguous);
+        } else if (contiguous > acked && flushTask == null && !closed) {
+            flushTask = scheduler.schedule(this::scheduledFlush, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return 已经确认过，或者是Channel关闭前投递的消息
+     */
+    private boolean isStale(long deliveryTag) {
+        if (resync) {
+            return deliveriesTracked;
+        }
+        return deliveryTag <= acked;
+    }
+
+    /**
+     * @return 从base开始连续完成的最大tag
+     */
+    private long contiguous() {
+        return base + completed.nextClearBit((int) (acked + 1 - base)) - 1;
+    }
+
+    private void restart(long firstDeliveryTag) {
+        completed = new BitSet();
+        nacked = new BitSet();
+        base = firstDeliveryTag;
+        acked = firstDeliveryTag - 1;
+        resync = false;
+    }
+
+    /**
+     * 结束所有不大于contiguous的消息：用一个multiple=true的basicAck确认到其中最大的没有nack过的tag，
+     * 这个tag之后的消息都已经nack，不需要确认
+     * 调用方持有当前对象的锁，保证multiple=true的确认按tag递增的顺序发送，
+     * 否则较小的tag在较大的tag之后到达broker，会因为unknown delivery tag导致Channel被关闭
+     */
+    private void send(long contiguous) throws IOException {
+        int from = (int) (acked + 1 - base);
+        int to = (int) (contiguous + 1 - base);
+        int last = nacked.previousClearBit(to - 1);
+        if (last >= from) {
+            channel.basicAck(base + last, true);
+            ackFrames.incrementAndGet();
+            ackedMessages.addAndGet(to - from - nacked.get(from, to).cardinality());
+        }
+        acked = contiguous;
+        // 不取消已经安排的定时确认，到期时没有需要确认的消息就直接返回，避免每次确认都重新安排定时任务
+        // BitSet中已经确认的部分只需要偶尔丢掉，避免每次确认都移动数组
+        int advance = (int) (acked + 1 - base);
+        if (advance >= COMPACT_THRESHOLD) {
+            completed = completed.get(advance, Math.max(advance, completed.length()));
+            nacked = nacked.get(advance, Math.max(advance, nacked.length()));
+            base += advance;
+        }
+    }
+
+    private int toIndex(long deliveryTag) {
+        long index = deliveryTag - base;
+        if (index > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Delivery tag " + deliveryTag + " is too far ahead of " + base);
+        }
+        return (int) index;
+    }
+
+    private synchronized void scheduledFlush() {
+        flushTask = null;
+        try {
+            flush();
+        } catch (IOException | ShutdownSignalException e) {
+            // Channel已经关闭，未确认的消息会被broker重新投递
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void handleShutdown(ShutdownSignalException cause) {
+        completed = new BitSet();
+        nacked = new BitSet();
+        resync = true;
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: AdaptivePrefetch
+ * @description: 根据处理耗时和网络往返时间自动调整prefetch（basicQos）
+ *               prefetch太小（例如1）时，消费者每处理完一条消息都要等ack到达broker、下一条消息再回来，一个往返时间（RTT）里什么也做不了；
+ *               prefetch太大时，消息都堆在一个慢消费者的缓冲区里，其它消费者空闲，也不公平。
+ *               按照Little定律，要让workers个工作线程一直有消息可处理，已投递未确认的消息数量至少为：
+ *                  workers × (处理耗时 + RTT) / 处理耗时
+ *               这里统计每条消息的处理耗时和RTT（EWMA），每个调整周期按上面的公式加上每个工作线程一条的余量计算目标值，
+ *               与当前值相差超过25%时重新basicQos。
+ *               RTT的估算：已投递未确认的消息数量达到prefetch时，broker要等收到ack才会投递下一条，
+ *               从这时确认一条消息到收到下一条消息的时间就是一个RTT样本（使用AckCoalescer时包括合并确认的延迟，这正是需要覆盖的时间）。
+ *               使用方式：consumer(...)包装传给basicConsume的Consumer，handler(...)包装WorkerPoolConsumer的处理逻辑。
+ *               注意：
+ *                  1. 使用global=true的basicQos，作用于整个Channel并且立即生效；global=false只对之后新建的消费者生效，运行中调整不起作用，
+ *                     所以一个Channel上只应该有一个消费者
+ *                  2. 需要手动确认，自动确认时prefetch不起作用
+ * @date 2026年10月18日 22:30
+ */
+public class AdaptivePrefetch implements AutoCloseable {
+
+    /**
+     * EWMA的平滑系数，新样本的权重
+     */
+    private static final double ALPHA = 0.2;
+
+    private final Channel channel;
+    private final int workers;
+    private final int minPrefetch;
+    private final int maxPrefetch;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile int prefetch;
+    /**
+     * 已投递的消息数量、开始处理的消息数量、处理完成的消息数量
+     */
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong idleNanos = new AtomicLong();
+    private final AtomicInteger adjustments = new AtomicInteger();
+    /**
+     * 达到prefetch上限后第一条消息处理完成的时间，0表示不在等待
+     */
+    private final AtomicLong limitReleasedAt = new AtomicLong();
+    /**
+     * 每个工作线程上一条消息处理完成的时间，用来统计空闲时间
+     */
+    private final ThreadLocal<long[]> lastFinished = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * 处理耗时和RTT的EWMA，单位：纳秒，由当前对象的锁保护
+     */
+    private double processingNanos;
+    private double rttNanos;
+
+    /**
+     * @param channel 消费消息的Channel，构造时按initialPrefetch设置basicQos，需要在basicConsume之前创建
+     * @param workers 并行处理消息的工作线程数量，WorkerPoolConsumer的lanes，在分发线程上处理时为1
+     * @param initialPrefetch 开始时的prefetch，还没有统计数据时使用
+     * @param minPrefetch prefetch下限
+     * @param maxPrefetch prefetch上限
+     * @param interval 调整周期
+     * @param unit interval的单位
+     * @throws IOException
+     */
+    public AdaptivePrefetch(Channel channel, int workers, int initialPrefetch, int minPrefetch, int maxPrefetch,
+                            long interval, TimeUnit unit) throws IOException {
+        if (workers <= 0 || minPrefetch <= 0 || minPrefetch > maxPrefetch) {
+            throw new IllegalArgumentException("workers and minPrefetch must be positive and minPrefetch must not exceed maxPrefetch");
+        }
+        this.channel = channel;
+        this.workers = workers;
+        this.minPrefetch = minPrefetch;
+        this.maxPrefetch = maxPrefetch;
+        this.prefetch = Math.max(minPrefetch, Math.min(maxPrefetch, initialPrefetch));
+        channel.basicQos(prefetch, true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "adaptive-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjust, interval, interval, unit);
+    }
+
+    /**
+     * 包装传给basicConsume的Consumer，统计投递的消息和RTT
+     */
+    public Consumer consumer(Consumer delegate) {
+        return new MeteringConsumer(delegate);
+    }
+
+    /**
+     * 包装WorkerPoolConsumer的处理逻辑，统计处理耗时和工作线程的空闲时间
+     */
+    public WorkerPoolConsumer.DeliveryHandler handler(WorkerPoolConsumer.DeliveryHandler delegate) {
+        return (envelope, properties, body) -> {
+            long start = System.nanoTime();
+            started.incrementAndGet();
+            long[] finished = lastFinished.get();
+            if (finished[0] != 0) {
+                idleNanos.addAndGet(start - finished[0]);
+            }
+            try {
+                delegate.handle(envelope, properties, body);
+            } finally {
+                long end = System.nanoTime();
+                finished[0] = end;
+                sampleProcessing(end - start);
+                // 处理完成之前已投递未确认的消息数量达到上限，broker在等这条消息的确认
+                if (delivered.get() - completed.getAndIncrement() >= prefetch) {
+                    limitReleasedAt.compareAndSet(0, end);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return 当前的prefetch
+     */
+    public int prefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @return 已投递但还没有开始处理的消息数量，即消费者缓冲区的深度
+     */
+    public long bufferDepth() {
+        return Math.max(0, delivered.get() - started.get());
+    }
+
+    /**
+     * @return 工作线程累计的空闲时间（处理完一条消息到开始处理下一条消息之间），单位：毫秒
+     */
+    public long idleTimeMillis() {
+        return idleNanos.get() / 1_000_000;
+    }
+
+    /**
+     * @return 处理耗时的EWMA，单位：微秒
+     */
+    public synchronized long processingMicros() {
+        return (long) (processingNanos / 1_000);
+    }
+
+    /**
+     * @return RTT的EWMA，单位：微秒，还没有样本时为0
+     */
+    public synchronized long rttMicros() {
+        return (long) (rttNanos / 1_000);
+    }
+
+    /**
+     * @return 重新设置basicQos的次数
+     */
+    public int adjustments() {
+        return adjustments.get();
+    }
+
+    /**
+     * 停止调整，不会关闭Channel，已经设置的prefetch保持不变
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void sampleProcessing(long nanos) {
+        processingNanos = processingNanos == 0 ? nanos : processingNanos + ALPHA * (nanos - processingNanos);
+    }
+
+    private synchronized void sampleRtt(long nanos) {
+        rttNanos = rttNanos == 0 ? nanos : rttNanos + ALPHA * (nanos - rttNanos);
+    }
+
+    /**
+     * @return 按Little定律计算的目标prefetch，还没有统计数据时返回当前值
+     */
+    synchronized int target() {
+        if (processingNanos == 0 || rttNanos == 0) {
+            return prefetch;
+        }
+        double target = workers * (processingNanos + rttNanos) / processingNanos + workers;
+        return (int) Math.max(minPrefetch, Math.min(maxPrefetch, Math.ceil(target)));
+    }
+
+    private void adjust() {
+        int target = target();
+        int current = prefetch;
+        // 变化不大时不调整，避免频繁发送basic.qos
+        if (target == current || Math.abs(target - current) * 4 < current) {
+            return;
+        }
+        try {
+            channel.basicQos(target, true);
+            prefetch = target;
+            adjustments.incrementAndGet();
+        } catch (IOException | ShutdownSignalException e) {
+            // Channel已经关闭，下个周期再试
+            e.printStackTrace();
+        }
+    }
+
+    private void delivered() {
+        delivered.incrementAndGet();
+        long releasedAt = limitReleasedAt.getAndSet(0);
+        if (releasedAt != 0) {
+            sampleRtt(System.nanoTime() - releasedAt);
+        }
+    }
+
+    /**
+     * Channel关闭后未确认的消息由broker重新投递，WorkerPoolConsumer中排队的消息不会再处理，
+     * 这里丢掉这部分计数，否则缓冲区深度和已投递未确认的数量一直偏大
+     */
+    private void reset() {
+        long done = completed.get();
+        delivered.set(done);
+        started.set(done);
+        limitReleasedAt.set(0);
+    }
+
+    /**
+     * 统计投递的消息，其它回调直接交给原Consumer
+     */
+    private class MeteringConsumer implements Consumer {
+
+        private final Consumer delegate;
+
+        MeteringConsumer(Consumer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                throws IOException {
+            delivered();
+            delegate.handleDelivery(consumerTag, envelope, properties, body);
+        }
+
+        @Override
+        public void handleConsumeOk(String consumerTag) {
+            delegate.handleConsumeOk(consumerTag);
+        }
+
+        @Override
+        public void handleCancelOk(String consumerTag) {
+            delegate.handleCancelOk(consumerTag);
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) throws IOException {
+            delegate.handleCancel(consumerTag);
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            delegate.handleShutdownSignal(consumerTag, sig);
+            reset();
+        }
+
+        @Override
+        public void handleRecoverOk(String consumerTag) {
+            delegate.handleRecoverOk(consumerTag);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: BatchConsumer
+ * @description: 批量消费消息
+ *               下游批量处理比逐条处理便宜得多（例如一条insert写入多行只需要一次数据库往返），
+ *               这里handleDelivery只把消息放进缓冲队列，由单独的工作线程攒够batchSize条、
+ *               或者批次中第一条消息等待超过receiveTimeout时，把整个批次交给BatchHandler一次处理：
+ *                  1. 全部成功：用multiple=true的basicAck一次确认整个批次
+ *                  2. 部分失败：BatchHandler抛出PartialBatchFailureException，其中标记的消息逐条basicNack，
+ *                     第一次投递时重新入队，重复投递（redeliver）时不再入队（进入死信队列或丢弃），其余消息仍然一次确认
+ *                  3. 抛出其它异常：整个批次按失败处理
+ *               注意：
+ *                  1. 只支持手动确认（basicConsume的autoAck为false），批次按投递顺序依次处理，
+ *                     multiple=true的确认会确认这个Channel上所有不大于tag的消息，所以一个Channel上只能有这一个消费者
+ *                  2. prefetch至少为batchSize，否则批次永远攒不满，每个批次都要等receiveTimeout
+ *                  3. 处理失败重新入队的消息会再次投递，BatchHandler需要是幂等的
+ * @date 2026年10月18日 23:00
+ */
+@SuppressWarnings("try") // close()要join批量处理线程，InterruptedException交给调用方处理
+public class BatchConsumer extends DefaultConsumer implements AutoCloseable {
+
+    /**
+     * 一个批次的处理逻辑，在工作线程上执行
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+        /**
+         * @param batch 按投递顺序排列的消息，最多batchSize条
+         * @throws PartialBatchFailureException 只有部分消息处理失败
+         */
+        void handle(List<Delivery> batch) throws Exception;
+    }
+
+    private final int batchSize;
+    private final long receiveTimeoutNanos;
+    private final BatchHandler handler;
+    private final BlockingQueue<Delivery> buffer = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong nacked = new AtomicLong();
+
+    /**
+     * @param channel 消费消息的Channel
+     * @param batchSize 一个批次最多的消息条数
+     * @param receiveTimeout 批次中第一条消息最多等待的时间
+     * @param unit receiveTimeout的单位
+     * @param handler 一个批次的处理逻辑
+     */
+    public BatchConsumer(Channel channel, int batchSize, long receiveTimeout, TimeUnit unit, BatchHandler handler) {
+        super(channel);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        this.receiveTimeoutNanos = unit.toNanos(receiveTimeout);
+        this.handler = handler;
+        this.worker = new Thread(this::run, "batch-consumer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        if (!closed) {
+            // 已经关闭时消息不处理也不确认，Channel关闭后由broker重新投递
+            buffer.add(new Delivery(envelope, properties, body));
+        }
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        // Channel已经关闭，未确认的消息会被broker重新投递，缓冲中的消息不再处理
+        buffer.clear();
+    }
+
+    /**
+     * @return 处理过的批次数量
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    /**
+     * @return 确认的消息数量
+     */
+    public long acked() {
+        return acked.get();
+    }
+
+    /**
+     * @return basicNack的消息数量
+     */
+    public long nacked() {
+        return nacked.get();
+    }
+
+    /**
+     * 停止接收新消息，等待缓冲中已有的消息处理完成，不会取消订阅也不会关闭Channel
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        worker.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    private void run() {
+        while (!closed || !buffer.isEmpty()) {
+            List<Delivery> batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+        }
+    }
+
+    /**
+     * @return 攒够batchSize条或者第一条消息等待超过receiveTimeout的批次，100ms内没有消息时返回空的批次，以便检查是否已经关闭
+     */
+    private List<Delivery> nextBatch() throws InterruptedException {
+        List<Delivery> batch = new ArrayList<>(batchSize);
+        Delivery first = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + receiveTimeoutNanos;
+        while (batch.size() < batchSize) {
+            // 先取走已经到达的消息，只有缓冲为空时才等待
+            buffer.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            Delivery next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void process(List<Delivery> batch) {
+        BitSet failed;
+        try {
+            handler.handle(batch);
+            failed = new BitSet();
+        } catch (PartialBatchFailureException e) {
+            e.printStackTrace();
+            failed = e.getFailed();
+        } catch (Exception e) {
+            e.printStackTrace();
+            failed = new BitSet();
+            failed.set(0, batch.size());
+        }
+        batches.incrementAndGet();
+        settle(batch, failed);
+    }
+
+    /**
+     * 先逐条basicNack失败的消息，再用multiple=true确认到最后一条成功的消息，
+     * 已经nack的消息在broker端已经结束，不会被之后的multiple=true确认包含
+     */
+    private void settle(List<Delivery> batch, BitSet failed) {
+        Channel channel = getChannel();
+        try {
+            long lastAcked = -1;
+            int succeeded = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                Envelope envelope = batch.get(i).getEnvelope();
+                if (failed.get(i)) {
+                    channel.basicNack(envelope.getDeliveryTag(), false, !envelope.isRedeliver());
+                    nacked.incrementAndGet();
+                } else {
+                    lastAcked = envelope.getDeliveryTag();
+                    succeeded++;
+                }
+            }
+            if (lastAcked >= 0) {
+                channel.basicAck(lastAcked, true);
+                acked.addAndGet(succeeded);
+            }
+        } catch (IOException | ShutdownSignalException e) {
+            // Channel已经关闭，未确认的消息会被broker重新投递
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package hs.rabbitmq.consumer;
+
+import java.util.BitSet;
+
+/**
+ * @author heshuai
+ * @title: PartialBatchFailureException
+ * @description: 批量处理时只有部分消息失败，由BatchConsumer.BatchHandler（springboot-module中由BatchAcknowledger.BatchHandler）抛出
+ *               failed中第i位表示批次中第i条消息处理失败，只有这些消息被basicNack，其它消息正常确认
+ * @date 2026年10月18日 23:00
+ */
+public class PartialBatchFailureException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BitSet failed;
+
+    public PartialBatchFailureException(String message, BitSet failed) {
+        super(message);
+        this.failed = (BitSet) failed.clone();
+    }
+
+    public PartialBatchFailureException(String message, BitSet failed, Throwable cause) {
+        super(message, cause);
+        this.failed = (BitSet) failed.clone();
+    }
+
+    /**
+     * @param failed 处理失败的消息在批次中的下标
+     */
+    public static PartialBatchFailureException of(int... failed) {
+        BitSet bits = new BitSet();
+        for (int index : failed) {
+            bits.set(index);
+        }
+        return new PartialBatchFailureException(failed.length + " messages in batch failed", bits);
+    }
+
+    /**
+     * @return 处理失败的消息在批次中的下标
+     */
+    public BitSet getFailed() {
+        return (BitSet) failed.clone();
+    }
+}
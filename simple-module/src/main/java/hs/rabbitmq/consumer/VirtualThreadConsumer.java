@@ -0,0 +1,120 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: VirtualThreadConsumer
+ * @description: 每条消息在一个新的虚拟线程上处理的消费者（需要Java 21）
+ *               WorkerPoolConsumer的并发度是工作线程数量，处理逻辑阻塞在I/O上（JDBC、HTTP）时，要提高吞吐量只能增加平台线程，
+ *               每个平台线程都要占用一个完整的线程栈。虚拟线程阻塞时会让出载体线程，几乎不占资源，这里不再限制线程数量：
+ *                  1. handleDelivery为每条消息启动一个虚拟线程，立即返回
+ *                  2. 同时处理的消息数量由prefetch（basicQos）限制：broker最多投递prefetch条未确认的消息，
+ *                     处理完成并确认之后才会投递下一条，所以prefetch就是并发度
+ *                  3. 确认方式与WorkerPoolConsumer相同：处理成功basicAck，失败basicNack，
+ *                     第一次投递时重新入队，重复投递（redeliver）时不再入队（进入死信队列或丢弃）
+ *               注意：
+ *                  1. 必须手动确认并通过basicQos设置prefetch，否则broker会把队列中的消息全部推过来，同时启动的虚拟线程没有上限
+ *                  2. 消息并行处理，不保证顺序，需要按key保持顺序时使用WorkerPoolConsumer
+ *                  3. 处理逻辑中不要在synchronized块里做阻塞I/O，Java 21中这会把虚拟线程固定（pin）在载体线程上
+ *                  4. Channel关闭（包括自动恢复之前）不会停止executor，不再使用时调用close()
+ * @date 2026年10月19日 03:10
+ */
+@SuppressWarnings("try") // close()等待虚拟线程上正在处理的消息，等待可以被中断
+public class VirtualThreadConsumer extends DefaultConsumer implements AutoCloseable {
+
+    private final WorkerPoolConsumer.DeliveryHandler handler;
+    private final ExecutorService executor;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param channel 消费消息的Channel，需要先通过basicQos设置prefetch
+     * @param handler 单条消息的处理逻辑，在虚拟线程上执行
+     */
+    public VirtualThreadConsumer(Channel channel, WorkerPoolConsumer.DeliveryHandler handler) {
+        this(channel, handler, VirtualThreads.newExecutor("consumer-virtual-"));
+    }
+
+    /**
+     * 测试时传入普通的线程池，不需要Java 21
+     */
+    VirtualThreadConsumer(Channel channel, WorkerPoolConsumer.DeliveryHandler handler, ExecutorService executor) {
+        super(channel);
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        try {
+            executor.execute(() -> process(envelope, properties, body));
+        } catch (RejectedExecutionException e) {
+            // 已经调用close()，消息不处理也不确认，Channel关闭后由broker重新投递
+        }
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        // Channel已经关闭，未确认的消息会被broker重新投递，正在处理的消息确认时会失败或者被amqp-client丢掉；
+        // 不停止executor，自动恢复后同一个消费者对象会继续收到消息，executor只在close()中停止
+    }
+
+    /**
+     * @return 处理成功的消息数量
+     */
+    public long processed() {
+        return processed.get();
+    }
+
+    /**
+     * @return 处理失败的消息数量
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * 停止接收新消息，等待正在处理的消息处理完成，不会取消订阅也不会关闭Channel
+     */
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void process(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        boolean ack;
+        try {
+            handler.handle(envelope, properties, body);
+            processed.incrementAndGet();
+            ack = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            failed.incrementAndGet();
+            ack = false;
+        }
+        try {
+            // 必须使用投递消息的同一个Channel确认，Channel的确认是线程安全的
+            if (ack) {
+                getChannel().basicAck(envelope.getDeliveryTag(), false);
+            } else {
+                getChannel().basicNack(envelope.getDeliveryTag(), false, !envelope.isRedeliver());
+            }
+        } catch (IOException | ShutdownSignalException e) {
+            // Channel已经关闭，消息会被broker重新投递
+            e.printStackTrace();
+        }
+    }
+}
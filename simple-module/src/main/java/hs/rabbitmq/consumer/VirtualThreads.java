@@ -0,0 +1,53 @@
+package hs.rabbitmq.consumer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author heshuai
+ * @title: VirtualThreads
+ * @description: 创建虚拟线程的ExecutorService
+ *               项目按Java 8编译，不能直接引用Java 21的Thread.ofVirtual()，这里通过反射调用：
+ *                  Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+ *               运行在Java 21以下时isSupported()返回false，newExecutor抛出IllegalStateException
+ * @date 2026年10月19日 03:10
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前JVM是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 每个任务一个新的虚拟线程，线程名为prefix加序号
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            // 通过公开的接口Thread.Builder调用，实现类不是public的
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalStateException("Virtual threads require Java 21, running on " + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+}
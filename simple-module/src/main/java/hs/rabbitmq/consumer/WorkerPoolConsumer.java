@@ -0,0 +1,224 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: WorkerPoolConsumer
+ * @description: 在工作线程池中处理消息的消费者
+ *               amqp-client在Connection的分发线程上调用handleDelivery，同一个Connection上所有Channel的消费者共用这个线程，
+ *               handleDelivery中的业务逻辑一慢（例如workQueues.ConsumerC1中的Thread.sleep），所有消费者都会跟着变慢。
+ *               这里handleDelivery只按消息的key把消息交给对应的工作线程（lane），立即返回，业务逻辑在工作线程上执行：
+ *                  1. key相同的消息总是进入同一个lane，lane内按投递顺序串行处理，所以同一个key的消息保持顺序，不同key的消息并行处理
+ *                  2. key由KeyExtractor决定：routingKey、消息头中的业务主键，或者不需要顺序时按deliveryTag轮流分配
+ *                  3. 手动确认时由工作线程在处理完成后确认，处理成功basicAck，失败basicNack，
+ *                     第一次投递时重新入队，重复投递（redeliver）时不再入队（进入死信队列或丢弃）
+ *               注意：
+ *                  1. 需要通过basicQos设置prefetch，限制已投递未确认的消息数量，也就限制了lane中排队的消息数量，
+ *                     prefetch至少为lanes，否则工作线程吃不满
+ *                  2. 消息会乱序完成，确认时不能直接使用multiple=true，需要合并确认时传入AckCoalescer，由它按连续完成的tag合并确认
+ *                  3. Channel关闭时只丢掉lane中排队的消息（broker会重新投递），工作线程保留：开启自动恢复时恢复后的Channel上
+ *                     仍然是同一个消费者对象，新投递的消息继续由这些lane处理；只有close()才停止lane
+ * @date 2026年10月18日 21:30
+ */
+@SuppressWarnings("try") // close()等待各个lane中排队的消息处理完，调用方需要能中断这个等待
+public class WorkerPoolConsumer extends DefaultConsumer implements AutoCloseable {
+
+    /**
+     * 单条消息的处理逻辑，在工作线程上执行
+     */
+    @FunctionalInterface
+    public interface DeliveryHandler {
+        void handle(Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws Exception;
+    }
+
+    /**
+     * 决定消息进入哪个lane，返回值相同的消息按投递顺序处理
+     */
+    @FunctionalInterface
+    public interface KeyExtractor {
+        Object key(Envelope envelope, AMQP.BasicProperties properties, byte[] body);
+
+        /**
+         * 按routingKey保持顺序
+         */
+        static KeyExtractor routingKey() {
+            return (envelope, properties, body) -> envelope.getRoutingKey();
+        }
+
+        /**
+         * 按消息头中的业务主键（例如订单号）保持顺序，没有这个消息头的消息按routingKey
+         */
+        static KeyExtractor header(String name) {
+            return (envelope, properties, body) -> {
+                Object value = properties == null || properties.getHeaders() == null ? null : properties.getHeaders().get(name);
+                // 从broker收到的字符串类型的消息头是LongString，没有按内容实现hashCode，这里统一转成String
+                return value == null ? envelope.getRoutingKey() : value.toString();
+            };
+        }
+
+        /**
+         * 不需要顺序，按deliveryTag轮流分配
+         */
+        static KeyExtractor none() {
+            return (envelope, properties, body) -> envelope.getDeliveryTag();
+        }
+    }
+
+    private final boolean autoAck;
+    private final KeyExtractor keyExtractor;
+    private final DeliveryHandler handler;
+    private final AckCoalescer acks;
+    private final ThreadPoolExecutor[] lanes;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param channel 消费消息的Channel
+     * @param autoAck 与basicConsume的autoAck参数保持一致，false时由工作线程确认消息
+     * @param lanes 工作线程数量
+     * @param keyExtractor 决定消息进入哪个lane
+     * @param handler 单条消息的处理逻辑
+     */
+    public WorkerPoolConsumer(Channel channel, boolean autoAck, int lanes, KeyExtractor keyExtractor, DeliveryHandler handler) {
+        this(channel, autoAck, lanes, keyExtractor, handler, null);
+    }
+
+    /**
+     * 手动确认，并通过AckCoalescer合并确认
+     * @param acks 合并确认，为null时逐条确认
+     */
+    public WorkerPoolConsumer(Channel channel, int lanes, KeyExtractor keyExtractor, DeliveryHandler handler, AckCoalescer acks) {
+        this(channel, false, lanes, keyExtractor, handler, acks);
+    }
+
+    private WorkerPoolConsumer(Channel channel, boolean autoAck, int lanes, KeyExtractor keyExtractor, DeliveryHandler handler,
+                               AckCoalescer acks) {
+        super(channel);
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes must be positive");
+        }
+        this.autoAck = autoAck;
+        this.keyExtractor = keyExtractor;
+        this.handler = handler;
+        this.acks = acks;
+        this.lanes = new ThreadPoolExecutor[lanes];
+        for (int i = 0; i < lanes; i++) {
+            String name = "consumer-worker-" + i;
+            // 与Executors.newSingleThreadExecutor相同，但可以拿到排队的任务，Channel关闭时清空
+            this.lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        if (acks != null) {
+            acks.delivered(envelope.getDeliveryTag());
+        }
+        ThreadPoolExecutor lane = lanes[lane(keyExtractor.key(envelope, properties, body))];
+        try {
+            lane.execute(() -> process(envelope, properties, body));
+        } catch (RejectedExecutionException e) {
+            // 已经调用close()，消息不处理也不确认，Channel关闭后由broker重新投递
+        }
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        // Channel已经关闭，未确认的消息会被broker重新投递，lane中排队的消息不再处理；
+        // 不停止lane，自动恢复后同一个消费者对象会继续收到消息。正在处理的消息确认时Channel已经关闭或者tag已经过期，
+        // amqp-client（RecoveryAwareChannelN）或者AckCoalescer会丢掉过期的确认
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.getQueue().clear();
+        }
+    }
+
+    /**
+     * @return 处理成功的消息数量
+     */
+    public long processed() {
+        return processed.get();
+    }
+
+    /**
+     * @return 处理失败的消息数量
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * 停止接收新消息，等待lane中已经排队的消息处理完成，不会取消订阅也不会关闭Channel
+     */
+    @Override
+    public void close() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void process(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        try {
+            handler.handle(envelope, properties, body);
+        } catch (Exception e) {
+            e.printStackTrace();
+            failed.incrementAndGet();
+            if (!autoAck) {
+                respond(envelope, false);
+            }
+            return;
+        }
+        processed.incrementAndGet();
+        if (!autoAck) {
+            respond(envelope, true);
+        }
+    }
+
+    private void respond(Envelope envelope, boolean ack) {
+        try {
+            if (acks != null) {
+                if (ack) {
+                    acks.ack(envelope.getDeliveryTag());
+                } else {
+                    acks.nack(envelope.getDeliveryTag(), !envelope.isRedeliver());
+                }
+                return;
+            }
+            // Channel是线程安全的，可以在工作线程上确认，但必须使用投递消息的同一个Channel
+            if (ack) {
+                getChannel().basicAck(envelope.getDeliveryTag(), false);
+            } else {
+                getChannel().basicNack(envelope.getDeliveryTag(), false, !envelope.isRedeliver());
+            }
+        } catch (IOException | ShutdownSignalException e) {
+            // Channel已经关闭，消息会被broker重新投递
+            e.printStackTrace();
+        }
+    }
+
+    private int lane(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // 打散hashCode的高位，避免key的hashCode只在高位不同时都落到同一个lane
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, lanes.length);
+    }
+}
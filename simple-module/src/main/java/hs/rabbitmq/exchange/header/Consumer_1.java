@@ -1,11 +1,14 @@
 package hs.rabbitmq.exchange.header;
 
 import com.rabbitmq.client.*;
+import hs.rabbitmq.codec.DecompressingConsumer;
 import hs.rabbitmq.config.RabbitmqConfig;
+import hs.rabbitmq.consumer.AckCoalescer;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -49,7 +52,13 @@ public class Consumer_1 {
              * autoAck：消息确认机制；true：自动确认消息，false：手动确认消息
              * callback：Consumer接口，收到消息后的处理逻辑！这里直接写了一个匿名类
              */
-            channel.basicConsume(queueNameAll,false,new DefaultConsumer(channel){
+            /**
+             * 合并确认：每50条消息（或者第一条消息处理完成后等待10ms）发送一次multiple=true的basicAck，
+             * 不再每条消息都发送一个ack帧；不能直接对每条消息basicAck(tag,true)，那样仍然是每条消息一帧，
+             * 而且消息并行处理时会把还没有处理完的消息一起确认掉
+             */
+            AckCoalescer acks = new AckCoalescer(channel,50,10,TimeUnit.MILLISECONDS);
+            channel.basicConsume(queueNameAll,false,new DecompressingConsumer(new DefaultConsumer(channel){
                 @Override
                 public void handleDelivery(String consumerTag,
                                            Envelope envelope,
@@ -58,9 +67,9 @@ public class Consumer_1 {
                         throws IOException
                 {
                     System.out.println("Receive==="+new String(body));
-                    channel.basicAck(envelope.getDeliveryTag(),true);
+                    acks.ack(envelope.getDeliveryTag());
                 }
-            });
+            },DecompressingConsumer.FailureHandler.nack(acks)));
             // 若不关闭connection，则一直保持接受消息的状态
         } catch (IOException e) {
             e.printStackTrace();
@@ -3,6 +3,7 @@ package hs.rabbitmq.exchange.header;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.BuiltinExchangeType;
 import com.rabbitmq.client.Channel;
+import hs.rabbitmq.codec.PayloadBuffers;
 import hs.rabbitmq.config.RabbitmqConfig;
 import org.junit.Test;
 
@@ -68,16 +69,18 @@ public class Producer {
      */
     private void send(Channel channel, List<Map> headers) throws IOException {
 
+        PayloadBuffers buffers = PayloadBuffers.get();
         Iterator iterator = headers.iterator();
         while (iterator.hasNext()){
             Map<String,Object> header = (Map<String,Object>)iterator.next();
             // 定义消息配置信息，这里主要定义消息Header信息
             AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().headers(header).build();
             Iterator<String> keys = header.keySet().iterator();
-            StringBuffer message = new StringBuffer();
+            // 复用当前线程的StringBuilder，append不再先拼接出临时String
+            StringBuilder message = buffers.builder();
             while (keys.hasNext()){
                 String key = keys.next();
-                message.append(key+"="+header.get(key)+"，");
+                message.append(key).append('=').append(header.get(key)).append("，");
             }
             /**
              * 发送消息
@@ -85,7 +88,7 @@ public class Producer {
              * routingKey：Exchange type 是 Header，则routingkey为空
              * props：定义消息配置属性信息，比如 Routing Header
              */
-            channel.basicPublish(EXCHANGE,"", properties,message.toString().getBytes());
+            channel.basicPublish(EXCHANGE,"", properties,buffers.encode(message));
         }
     }
 }
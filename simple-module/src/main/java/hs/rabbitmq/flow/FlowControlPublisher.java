@@ -0,0 +1,265 @@
+package hs.rabbitmq.flow;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: FlowControlPublisher
+ * @description: 感知broker流控的发布者
+ *               broker触发内存或者磁盘告警时，会给所有发布消息的Connection发送connection.blocked，之后不再读取这些Connection上的数据，
+ *               这时basicPublish会一直阻塞在socket写入上，发送线程越积越多，调用方却看不到任何异常。
+ *               这里在Connection上注册BlockedListener，收到connection.blocked后立即切换状态，不再调用basicPublish：
+ *                  FAIL_FAST：直接抛出PublishBlockedException，上游可以立即拒绝请求（返回503等），不会占住线程
+ *                  BUFFER：消息复制到内存缓冲区，收到connection.unblocked后由后台线程按顺序补发，缓冲区满了之后抛出PublishBlockedException
+ *               同时统计被阻塞的次数和累计时长，用于监控和告警。
+ *               注意：
+ *                  1. 3.x之后的broker不再使用channel.flow做流控，amqp-client 5.x也移除了FlowListener，所以只处理connection.blocked
+ *                  2. connection.blocked通知到达之前已经进入basicPublish的线程仍然会被阻塞，所以这里只能缩短而不能完全消除阻塞
+ *                  3. BUFFER模式的缓冲区只在内存中，进程退出时丢失，需要可靠性时使用MappedOutbox
+ *                  4. 消费者和发布者最好使用不同的Connection，否则Connection被阻塞时消费者也收不到消息，反而加剧内存告警
+ * @date 2026年10月18日 21:00
+ */
+public class FlowControlPublisher implements AutoCloseable {
+
+    /**
+     * Connection被阻塞时的处理方式
+     */
+    public enum Mode {
+        /**
+         * 立即抛出PublishBlockedException
+         */
+        FAIL_FAST,
+        /**
+         * 缓存到内存中，解除阻塞后补发
+         */
+        BUFFER
+    }
+
+    private static final class BufferedMessage {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        BufferedMessage(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+
+    private final Channel channel;
+    private final Mode mode;
+    private final int bufferLimit;
+    private final BlockedListener blockedListener;
+    private final ExecutorService drainer;
+    /**
+     * 缓冲的消息，由bufferLock保护
+     */
+    private final ArrayDeque<BufferedMessage> buffer = new ArrayDeque<>();
+    /**
+     * 保证basicPublish的顺序：正常发布和补发都持有这个锁，
+     * 被阻塞时publish不会去获取它，所以卡在basicPublish中的线程不会拖住其它调用方
+     */
+    private final Object publishLock = new Object();
+    private final Object bufferLock = new Object();
+
+    private volatile boolean blocked;
+    private volatile String blockedReason;
+    private volatile long blockedSince;
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param channel 发布消息的Channel，BlockedListener注册在它所属的Connection上
+     * @param mode 被阻塞时的处理方式
+     * @param bufferLimit BUFFER模式下最多缓存的消息数量，FAIL_FAST模式下忽略
+     */
+    public FlowControlPublisher(Channel channel, Mode mode, int bufferLimit) {
+        if (mode == Mode.BUFFER && bufferLimit <= 0) {
+            throw new IllegalArgumentException("bufferLimit must be positive in BUFFER mode");
+        }
+        this.channel = channel;
+        this.mode = mode;
+        this.bufferLimit = bufferLimit;
+        this.drainer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "flow-control-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 回调在Connection的I/O线程上执行，这里只修改状态，补发交给后台线程
+        this.blockedListener = channel.getConnection().addBlockedListener(this::handleBlocked, this::handleUnblocked);
+    }
+
+    /**
+     * 发布一条消息，Connection被阻塞时按照mode处理，不会阻塞调用线程
+     * @throws PublishBlockedException Connection被阻塞（FAIL_FAST模式），或者缓冲区已满（BUFFER模式）
+     * @throws IOException 发布失败
+     */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        if (!blocked) {
+            synchronized (publishLock) {
+                // 阻塞刚解除、补发线程还没有发完时，由当前线程先补发缓冲区中的消息，保证发送顺序
+                drainLocked();
+                if (!blocked && buffered() == 0) {
+                    channel.basicPublish(exchange, routingKey, props, body);
+                    return;
+                }
+            }
+        }
+        if (mode == Mode.FAIL_FAST) {
+            rejectedCount.incrementAndGet();
+            throw new PublishBlockedException("Connection is blocked by the broker", blockedReason);
+        }
+        synchronized (bufferLock) {
+            if (buffer.size() >= bufferLimit) {
+                rejectedCount.incrementAndGet();
+                throw new PublishBlockedException("Connection is blocked and " + buffer.size() + " messages are buffered",
+                        blockedReason);
+            }
+            // 调用方可能会复用消息体数组，这里必须复制
+            buffer.addLast(new BufferedMessage(exchange, routingKey, props, body.clone()));
+        }
+        if (!blocked) {
+            // 加入缓冲区的同时阻塞已经解除，补发任务可能已经执行完了
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * @return Connection当前是否被阻塞，上游可以在处理请求之前先检查，提前拒绝
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * @return 被阻塞的次数
+     */
+    public long blockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * @return 累计被阻塞的时长，包括当前正在进行的阻塞，单位：毫秒
+     */
+    public long blockedTimeMillis() {
+        long nanos = blockedNanos.get();
+        if (blocked) {
+            nanos += System.nanoTime() - blockedSince;
+        }
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * @return 因为被阻塞而拒绝的消息数量
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return 缓冲区中等待补发的消息数量
+     */
+    public int buffered() {
+        synchronized (bufferLock) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * 移除BlockedListener并停止补发线程，不会关闭Channel；仍然被阻塞时缓冲区中的消息会被丢弃
+     */
+    @Override
+    public void close() {
+        channel.getConnection().removeBlockedListener(blockedListener);
+        drainer.shutdown();
+        if (!blocked) {
+            drain();
+        }
+    }
+
+    private void handleBlocked(String reason) {
+        if (blocked) {
+            return;
+        }
+        blockedReason = reason;
+        blockedSince = System.nanoTime();
+        blocked = true;
+        blockedCount.incrementAndGet();
+        System.err.println("Connection " + describe(channel.getConnection()) + " is blocked: " + reason);
+    }
+
+    private void handleUnblocked() {
+        if (!blocked) {
+            return;
+        }
+        blocked = false;
+        blockedNanos.addAndGet(System.nanoTime() - blockedSince);
+        System.err.println("Connection " + describe(channel.getConnection()) + " is unblocked");
+        if (mode == Mode.BUFFER) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!drainer.isShutdown()) {
+            try {
+                drainer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 已经关闭
+            }
+        }
+    }
+
+    /**
+     * 按顺序补发缓冲区中的消息，再次被阻塞时停止
+     */
+    private void drain() {
+        synchronized (publishLock) {
+            drainLocked();
+        }
+    }
+
+    /**
+     * 调用方需要持有publishLock
+     */
+    private void drainLocked() {
+        while (!blocked) {
+            BufferedMessage message;
+            synchronized (bufferLock) {
+                message = buffer.peekFirst();
+            }
+            if (message == null) {
+                return;
+            }
+            try {
+                channel.basicPublish(message.exchange, message.routingKey, message.properties, message.body);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            synchronized (bufferLock) {
+                buffer.removeFirst();
+            }
+        }
+    }
+
+    private static String describe(Connection connection) {
+        return connection.getClientProvidedName() != null ? connection.getClientProvidedName()
+                : String.valueOf(connection.getAddress());
+    }
+}
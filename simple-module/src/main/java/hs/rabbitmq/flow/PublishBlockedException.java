@@ -0,0 +1,28 @@
+package hs.rabbitmq.flow;
+
+import java.io.IOException;
+
+/**
+ * @author heshuai
+ * @title: PublishBlockedException
+ * @description: Connection被broker阻塞（connection.blocked）时发布被拒绝，调用方应当立即降级或者拒绝上游请求，而不是重试
+ * @date 2026年10月18日 21:00
+ */
+public class PublishBlockedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    public PublishBlockedException(String message, String reason) {
+        super(message + ", reason: " + reason);
+        this.reason = reason;
+    }
+
+    /**
+     * @return broker给出的阻塞原因，例如 low on memory、low on disk
+     */
+    public String getReason() {
+        return reason;
+    }
+}
@@ -4,6 +4,7 @@ import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.codec.DecompressingConsumer;
 import hs.rabbitmq.config.RabbitmqConfig;
 
 import java.io.IOException;
@@ -29,7 +30,7 @@ public class Consumer {
              * autoAck：消息确认机制；true：自动确认消息，false：手动确认消息
              * callback：Consumer接口，收到消息后的处理逻辑！这里直接写了一个匿名类
              */
-            channel.basicConsume("hello",true,new DefaultConsumer(channel){
+            channel.basicConsume("hello",true,new DecompressingConsumer(new DefaultConsumer(channel){
                 @Override
                 public void handleDelivery(String consumerTag,
                                            Envelope envelope,
@@ -39,7 +40,7 @@ public class Consumer {
                 {
                     System.out.println("Receive==="+new String(body));
                 }
-            });
+            }));
             // 若不关闭connection，则一直保持接受消息的状态
         } catch (IOException e) {
             e.printStackTrace();
@@ -2,6 +2,7 @@ package hs.rabbitmq.helloWord;
 
 import com.rabbitmq.client.*;
 import hs.rabbitmq.config.RabbitmqConfig;
+import hs.rabbitmq.outbox.MappedOutbox;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -58,6 +59,25 @@ public class Producer {
         // 声明消息持久化
         channel.basicPublish("","durableQueue", MessageProperties.PERSISTENT_TEXT_PLAIN,"持久化消息".getBytes());
     }
+
+    /**
+     * 通过本地发件箱发送持久化消息：append只写入本地的内存映射文件，broker未启动或者重启时也不会报错，
+     * 后台的OutboxDrainer连上broker后按写入顺序补发，收到发布确认后才从发件箱中删除
+     */
+    @Test
+    public void testDurableOutbox() throws IOException, TimeoutException, InterruptedException {
+        try (Channel channel = RabbitmqConfig.getChannel()) {
+            channel.queueDeclare("durableQueue",true,false,false,null);
+        }
+        MappedOutbox outbox = RabbitmqConfig.getOutbox();
+        outbox.append("","durableQueue", MessageProperties.PERSISTENT_TEXT_PLAIN,"持久化消息".getBytes());
+        // 防止断电丢失消息时把发件箱刷到磁盘
+        outbox.sync();
+        // 等待后台线程发送完成，正常运行的程序不需要等待
+        while (outbox.pending() > 0) {
+            Thread.sleep(100);
+        }
+    }
     /**
      * 测试消息过期时间
      */
@@ -0,0 +1,61 @@
+package hs.rabbitmq.idempotency;
+
+import hs.rabbitmq.util.Hashing;
+
+/**
+ * @author heshuai
+ * @title: BloomFilter
+ * @description: 放在持久化存储前面的布隆过滤器
+ *               内存中的LongLruSet容量有限，没有命中时还要查询持久化存储（数据库、Redis），而绝大多数消息都是第一次投递，
+ *               这些查询几乎都是白查。布隆过滤器判断“一定没有处理过”时直接跳过存储查询，只有可能处理过时才查询。
+ *               按预期的key数量和误判率计算位数组大小和哈希函数个数，k个哈希值由key的两个64位哈希组合得到（double hashing）。
+ *               只能添加不能删除，实际加入的key超过预期数量后误判率上升（多查询存储），但不会把新消息误判为重复。
+ *               不是线程安全的，由调用方加锁
+ * @date 2026年10月19日 00:10
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long mask;
+    private final int hashes;
+
+    /**
+     * @param expectedInsertions 预期加入的key数量
+     * @param fpp 期望的误判率，例如0.01
+     */
+    BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive and fpp must be in (0, 1)");
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 位数取2的幂，下标用位运算计算
+        long size = Math.max(64, Long.highestOneBit(optimalBits - 1) << 1);
+        this.bits = new long[(int) Math.min(1L << 30, size >>> 6)];
+        this.mask = (long) bits.length * 64 - 1;
+        this.hashes = Math.max(1, (int) Math.round((double) optimalBits / expectedInsertions * Math.log(2)));
+    }
+
+    void add(long key) {
+        long h1 = key;
+        long h2 = Hashing.fmix64(key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long index = (h1 + i * h2) & mask;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return false表示一定没有加入过；true表示可能加入过
+     */
+    boolean mightContain(long key) {
+        long h1 = key;
+        long h2 = Hashing.fmix64(key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long index = (h1 + i * h2) & mask;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
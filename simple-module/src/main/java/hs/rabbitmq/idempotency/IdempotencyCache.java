@@ -0,0 +1,242 @@
+package hs.rabbitmq.idempotency;
+
+import com.rabbitmq.client.AMQP;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+import hs.rabbitmq.util.Hashing;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: IdempotencyCache
+ * @description: 消费端去重
+ *               Rabbitmq保证的是至少一次投递：消费者崩溃、Channel关闭、basicNack(requeue=true)之后，未确认的消息都会重新投递，
+ *               业务逻辑可能被重复执行。这里按消息id（messageId属性，或者指定的消息头）记录处理成功的消息，重复投递时直接跳过：
+ *                  1. 内存：LongLruSet只保存消息id的64位哈希，容量固定，按近似LRU和TTL淘汰
+ *                  2. 持久化存储（可选）：内存没有命中时查询IdempotencyStore，跨进程重启去重
+ *                  3. 布隆过滤器（可选，需要持久化存储）：判断一定没有处理过时跳过存储查询，
+ *                     创建时通过IdempotencyStore.forEachKey加入存储中已有的消息id，重启后仍然能查到重启前处理过的消息
+ *               使用方式：handler(...)包装WorkerPoolConsumer的处理逻辑，重复的消息不执行原来的逻辑，直接返回，
+ *               由WorkerPoolConsumer照常确认（或者通过AckCoalescer合并确认）；也可以直接调用isDuplicate和processed。
+ *               注意：
+ *                  1. 处理成功后才记录，处理过程中崩溃的消息重新投递时会再处理一次
+ *                  2. 同一个消息id的两次投递同时在处理时都不会被判断为重复，WorkerPoolConsumer按同一个key分配lane可以避免
+ *                  3. 64位哈希冲突会把新消息误判为重复，概率约为 n² / 2^65，一亿个id时约为2.7e-4
+ *                  4. 没有消息id的消息不去重
+ *                  5. 布隆过滤器只包含创建时存储中的消息id和本实例处理过的消息id，多个实例共享同一个存储时，
+ *                     其他实例之后处理的消息会被跳过存储查询，这种情况不要使用布隆过滤器（bloomExpectedInsertions传0）
+ * @date 2026年10月19日 00:10
+ */
+public class IdempotencyCache {
+
+    private final String keyHeader;
+    private final LongLruSet recent;
+    private final BloomFilter bloom;
+    private final IdempotencyStore store;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bloomSkips = new AtomicLong();
+    private final AtomicLong unkeyed = new AtomicLong();
+
+    /**
+     * 只在内存中去重，按messageId
+     * @param capacity 内存中最多记录的消息id数量
+     * @param ttl 消息id的有效期，0表示只按容量淘汰
+     */
+    public IdempotencyCache(int capacity, long ttl, TimeUnit unit) {
+        this(null, capacity, ttl, unit, null, IdempotencyStore.NONE);
+    }
+
+    /**
+     * @param keyHeader 作为消息id的消息头，为null时使用messageId属性
+     * @param capacity 内存中最多记录的消息id数量
+     * @param ttl 消息id的有效期，0表示只按容量淘汰
+     * @param unit ttl的单位
+     * @param bloomExpectedInsertions 布隆过滤器预期的消息id数量（误判率1%），包括存储中已有的消息id，0表示不使用布隆过滤器，
+     *                                大于0时store需要实现forEachKey
+     * @param store 持久化存储，不需要时传IdempotencyStore.NONE
+     * @throws IOException 遍历存储中的消息id失败
+     */
+    public IdempotencyCache(String keyHeader, int capacity, long ttl, TimeUnit unit, long bloomExpectedInsertions,
+                            IdempotencyStore store) throws IOException {
+        this(keyHeader, capacity, ttl, unit, bloomFilter(bloomExpectedInsertions, store), store);
+    }
+
+    private IdempotencyCache(String keyHeader, int capacity, long ttl, TimeUnit unit, BloomFilter bloom,
+                             IdempotencyStore store) {
+        this.keyHeader = keyHeader;
+        this.recent = new LongLruSet(capacity, unit.toNanos(ttl));
+        this.bloom = bloom;
+        this.store = store;
+    }
+
+    /**
+     * @return 加入了存储中已有消息id的布隆过滤器，不使用时返回null
+     */
+    private static BloomFilter bloomFilter(long expectedInsertions, IdempotencyStore store) throws IOException {
+        if (expectedInsertions <= 0 || store == IdempotencyStore.NONE) {
+            return null;
+        }
+        BloomFilter bloom = new BloomFilter(expectedInsertions, 0.01);
+        try {
+            // 只有本实例处理过的消息id时，重启前处理过的消息会被判断为一定没有处理过，重复执行
+            store.forEachKey(key -> bloom.add(hash(key)));
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalArgumentException("bloom filter requires IdempotencyStore.forEachKey", e);
+        }
+        return bloom;
+    }
+
+    /**
+     * @return 消息id，没有时返回null
+     */
+    public String key(AMQP.BasicProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        if (keyHeader == null) {
+            return properties.getMessageId();
+        }
+        Object value = properties.getHeaders() == null ? null : properties.getHeaders().get(keyHeader);
+        // 从broker收到的字符串类型的消息头是LongString
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return 这条消息是否已经处理过，没有消息id时返回false
+     */
+    public boolean isDuplicate(AMQP.BasicProperties properties) throws IOException {
+        return isDuplicate(key(properties));
+    }
+
+    /**
+     * 按消息id判断，用于不是通过Rabbitmq客户端收到的消息，例如Spring AMQP的MessageProperties.getMessageId()
+     * @param key 消息id，为null时不去重
+     * @return 这个消息id是否已经处理过，key为null时返回false
+     */
+    public boolean isDuplicate(String key) throws IOException {
+        if (key == null) {
+            unkeyed.incrementAndGet();
+            return false;
+        }
+        long hash = hash(key);
+        synchronized (this) {
+            if (recent.contains(hash, System.nanoTime())) {
+                hits.incrementAndGet();
+                return true;
+            }
+            if (store == IdempotencyStore.NONE) {
+                misses.incrementAndGet();
+                return false;
+            }
+            if (bloom != null && !bloom.mightContain(hash)) {
+                bloomSkips.incrementAndGet();
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+        // 存储查询可能很慢，不持有锁
+        if (store.contains(key)) {
+            storeHits.incrementAndGet();
+            synchronized (this) {
+                recent.add(hash, System.nanoTime());
+            }
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 记录这条消息已经处理成功，在确认消息之前调用
+     */
+    public void processed(AMQP.BasicProperties properties) throws IOException {
+        processed(key(properties));
+    }
+
+    /**
+     * 记录这个消息id已经处理成功，key为null时忽略
+     */
+    public void processed(String key) throws IOException {
+        if (key == null) {
+            return;
+        }
+        long hash = hash(key);
+        synchronized (this) {
+            recent.add(hash, System.nanoTime());
+            if (bloom != null) {
+                bloom.add(hash);
+            }
+        }
+        store.put(key);
+    }
+
+    /**
+     * 包装WorkerPoolConsumer的处理逻辑：重复的消息直接返回，由WorkerPoolConsumer确认；处理成功后记录消息id
+     */
+    public WorkerPoolConsumer.DeliveryHandler handler(WorkerPoolConsumer.DeliveryHandler delegate) {
+        return (envelope, properties, body) -> {
+            if (isDuplicate(properties)) {
+                return;
+            }
+            delegate.handle(envelope, properties, body);
+            processed(properties);
+        };
+    }
+
+    /**
+     * @return 在内存中命中的重复消息数量
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 在持久化存储中命中的重复消息数量
+     */
+    public long storeHits() {
+        return storeHits.get();
+    }
+
+    /**
+     * @return 没有处理过的消息数量
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 布隆过滤器跳过的存储查询次数
+     */
+    public long bloomSkips() {
+        return bloomSkips.get();
+    }
+
+    /**
+     * @return 没有消息id、不去重的消息数量
+     */
+    public long unkeyed() {
+        return unkeyed.get();
+    }
+
+    /**
+     * @return 重复消息占有消息id的消息的比例
+     */
+    public double hitRate() {
+        long duplicates = hits.get() + storeHits.get();
+        long total = duplicates + misses.get();
+        return total == 0 ? 0 : (double) duplicates / total;
+    }
+
+    /**
+     * @return 字符串的64位哈希（FNV-1a后再混合），不会返回0
+     */
+    static long hash(String key) {
+        long hash = Hashing.fmix64(Hashing.fnv1a(Hashing.FNV_OFFSET_BASIS, key));
+        return hash == 0 ? 1 : hash;
+    }
+}
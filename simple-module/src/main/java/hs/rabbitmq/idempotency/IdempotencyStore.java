@@ -0,0 +1,54 @@
+package hs.rabbitmq.idempotency;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * @author heshuai
+ * @title: IdempotencyStore
+ * @description: 已处理消息id的持久化存储
+ *               IdempotencyCache的内存部分在进程重启后就丢失了，而重启恰恰是重复投递最多的时候（未确认的消息全部重新投递），
+ *               需要跨进程去重时实现这个接口，例如：数据库中以消息id为主键的表、Redis的SET key value NX EX ttl。
+ *               内存没有命中时才会调用contains，处理成功后调用put，实现需要是线程安全的。
+ *               IdempotencyCache使用布隆过滤器时，创建时调用forEachKey把已经保存的消息id加入布隆过滤器
+ * @date 2026年10月19日 00:10
+ */
+public interface IdempotencyStore {
+
+    /**
+     * 不做持久化，只在内存中去重
+     */
+    IdempotencyStore NONE = new IdempotencyStore() {
+        @Override
+        public boolean contains(String key) {
+            return false;
+        }
+
+        @Override
+        public void put(String key) {
+        }
+
+        @Override
+        public void forEachKey(Consumer<String> action) {
+        }
+    };
+
+    /**
+     * @return 这个消息id是否已经处理过
+     */
+    boolean contains(String key) throws IOException;
+
+    /**
+     * 记录消息id已经处理过
+     */
+    void put(String key) throws IOException;
+
+    /**
+     * 遍历所有已经保存的消息id，IdempotencyCache使用布隆过滤器时才需要实现，
+     * 例如：数据库中 select id from processed_message、Redis的SCAN
+     * @throws UnsupportedOperationException 不支持遍历（默认）
+     */
+    default void forEachKey(Consumer<String> action) throws IOException {
+        throw new UnsupportedOperationException("forEachKey");
+    }
+}
@@ -0,0 +1,159 @@
+package hs.rabbitmq.idempotency;
+
+/**
+ * @author heshuai
+ * @title: LongLruSet
+ * @description: 容量固定、按近似LRU和TTL淘汰的long集合
+ *               HashSet<String>每个元素都有Entry、String、char[]等多个对象，百万级的消息id会给GC带来很大压力，
+ *               这里只保存消息id的64位哈希值，全部数据放在几个long[]中：
+ *                  1. 开放寻址（线性探测）哈希表，负载因子不超过0.5，删除时向后移动（backward shift），不使用墓碑
+ *                  2. ring按插入顺序记录key，满了以后从最旧的开始淘汰；被访问过的key有一次“第二次机会”（CLOCK算法），
+ *                     清除访问标记后移到最新的位置，所以经常被访问的key不会被淘汰，效果接近LRU
+ *                  3. 每个key记录过期时间，过期的key视为不存在，淘汰时优先淘汰
+ *               0作为空槽的标记，调用方需要保证key不为0。不是线程安全的，由调用方加锁
+ * @date 2026年10月19日 00:10
+ */
+final class LongLruSet {
+
+    private final long[] keys;
+    private final long[] expiresAt;
+    private final boolean[] referenced;
+    private final int mask;
+    private final long ttlNanos;
+
+    /**
+     * 按插入顺序排列的key，head为最旧的key
+     */
+    private final long[] ring;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity 最多保存的key数量
+     * @param ttlNanos key的有效期，单位：纳秒，0表示不过期
+     */
+    LongLruSet(int capacity, long ttlNanos) {
+        if (capacity <= 0 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^29");
+        }
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.keys = new long[tableSize];
+        this.expiresAt = new long[tableSize];
+        this.referenced = new boolean[tableSize];
+        this.mask = tableSize - 1;
+        this.ttlNanos = ttlNanos;
+        this.ring = new long[capacity];
+    }
+
+    /**
+     * @return key存在并且没有过期，存在时记录一次访问
+     */
+    boolean contains(long key, long now) {
+        int slot = find(key);
+        if (slot < 0 || expired(slot, now)) {
+            return false;
+        }
+        referenced[slot] = true;
+        return true;
+    }
+
+    /**
+     * 加入key，已经存在时重新计算过期时间
+     */
+    void add(long key, long now) {
+        int slot = find(key);
+        if (slot >= 0) {
+            expiresAt[slot] = expiry(now);
+            referenced[slot] = true;
+            return;
+        }
+        if (size == ring.length) {
+            evict(now);
+        }
+        slot = insertionSlot(key);
+        keys[slot] = key;
+        expiresAt[slot] = expiry(now);
+        referenced[slot] = false;
+        ring[(head + size) % ring.length] = key;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 淘汰一个key：从最旧的开始，没有过期并且被访问过的key清除访问标记后移到最新的位置，
+     * 最多转一圈，所有key都被访问过时淘汰最旧的那个
+     */
+    private void evict(long now) {
+        for (int i = 0; i < size; i++) {
+            long key = ring[head];
+            int slot = find(key);
+            if (!referenced[slot] || expired(slot, now)) {
+                break;
+            }
+            referenced[slot] = false;
+            ring[head] = 0;
+            head = (head + 1) % ring.length;
+            ring[(head + size - 1) % ring.length] = key;
+        }
+        remove(find(ring[head]));
+        ring[head] = 0;
+        head = (head + 1) % ring.length;
+        size--;
+    }
+
+    private int find(long key) {
+        int slot = index(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insertionSlot(long key) {
+        int slot = index(key);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * 删除槽位上的key，把后面同一段探测序列中的key向前移动，保证find不会因为中间出现空槽而提前结束
+     */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = index(keys[next]);
+            // next处的key应该在[home, next]之间查找，hole不在这个区间内时才能移动到hole
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                expiresAt[hole] = expiresAt[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        referenced[hole] = false;
+    }
+
+    private boolean expired(int slot, long now) {
+        return expiresAt[slot] - now <= 0;
+    }
+
+    private long expiry(long now) {
+        return ttlNanos == 0 ? now + Long.MAX_VALUE / 2 : now + ttlNanos;
+    }
+
+    private int index(long key) {
+        // key已经是均匀分布的哈希值，这里只混合高位
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
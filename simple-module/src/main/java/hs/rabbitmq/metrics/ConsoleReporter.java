@@ -0,0 +1,88 @@
+package hs.rabbitmq.metrics;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author heshuai
+ * @title: ConsoleReporter
+ * @description: 把每个上报周期的速率和耗时分位数打印到标准输出，没有变化的exchange/routingKey、队列不打印，例如：
+ *               [metrics] publish exchange=(default) routingKey=work-queues rate=5210.3/s failed=0 confirmed=5210 nacked=0 confirm(p50/p99/max)=0.52/3.01/7.86ms
+ *               [metrics] consume queue=work-queues rate=480.0/s redelivered=0 unacked=250 rejected=0 failed=0 handler(p50/p99/max)=2.03/4.10/9.95ms
+ *               unacked是当前值，其余计数都是这个周期内的增量。只在MessagingMetrics的上报线程中调用，不是线程安全的
+ * @date 2026年10月19日 02:00
+ */
+public class ConsoleReporter implements MetricsReporter {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final PrintStream out;
+    private final Map<Object, long[]> previousCounts = new HashMap<>();
+    private final Map<Object, LatencyHistogram.Snapshot> previousLatencies = new HashMap<>();
+    private long previousNanos = System.nanoTime();
+
+    public ConsoleReporter() {
+        this(System.out);
+    }
+
+    public ConsoleReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void report(MessagingMetrics metrics) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - previousNanos) / 1e9;
+        previousNanos = now;
+        for (PublishMetrics publish : metrics.publishers()) {
+            long[] delta = delta(publish, publish.published(), publish.failed(), publish.confirmed(), publish.nacked());
+            LatencyHistogram.Snapshot confirm = interval(publish, publish.confirmLatency());
+            if (delta[0] == 0 && delta[1] == 0 && confirm.count() == 0) {
+                continue;
+            }
+            out.printf("[metrics] publish exchange=%s routingKey=%s rate=%.1f/s failed=%d confirmed=%d nacked=%d confirm(p50/p99/max)=%s%n",
+                    publish.exchange().isEmpty() ? "(default)" : publish.exchange(), publish.routingKey(), delta[0] / seconds,
+                    delta[1], delta[2], delta[3], latencies(confirm));
+        }
+        for (ConsumeMetrics consume : metrics.consumers()) {
+            long[] delta = delta(consume, consume.delivered(), consume.redelivered(), consume.rejected(), consume.failed());
+            LatencyHistogram.Snapshot handler = interval(consume, consume.handlerLatency());
+            long unacked = consume.unacked();
+            if (delta[0] == 0 && unacked == 0) {
+                continue;
+            }
+            out.printf("[metrics] consume queue=%s rate=%.1f/s redelivered=%d unacked=%d rejected=%d failed=%d handler(p50/p99/max)=%s%n",
+                    consume.queue(), delta[0] / seconds, delta[1], unacked, delta[2], delta[3], latencies(handler));
+        }
+    }
+
+    /**
+     * @return 与上一次读数的差值
+     */
+    private long[] delta(Object meter, long... counts) {
+        long[] previous = previousCounts.put(meter, counts);
+        if (previous == null) {
+            return counts.clone();
+        }
+        long[] delta = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            delta[i] = counts[i] - previous[i];
+        }
+        return delta;
+    }
+
+    private LatencyHistogram.Snapshot interval(Object meter, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot current = histogram.snapshot();
+        LatencyHistogram.Snapshot previous = previousLatencies.put(meter, current);
+        return previous == null ? current : current.minus(previous);
+    }
+
+    private static String latencies(LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.count() == 0) {
+            return "-";
+        }
+        return String.format("%.2f/%.2f/%.2fms", snapshot.percentile(0.5) / NANOS_PER_MILLI,
+                snapshot.percentile(0.99) / NANOS_PER_MILLI, snapshot.max() / NANOS_PER_MILLI);
+    }
+}
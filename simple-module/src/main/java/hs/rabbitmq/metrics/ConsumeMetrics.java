@@ -0,0 +1,80 @@
+package hs.rabbitmq.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author heshuai
+ * @title: ConsumeMetrics
+ * @description: 同一个队列的消费指标，由MessagingMetrics创建，同一个队列上的多个消费者共用，计数器都是累计值，
+ *               上报时两次读数相减得到速率
+ * @date 2026年10月19日 02:00
+ */
+public class ConsumeMetrics {
+
+    private final String queue;
+
+    final LongAdder delivered = new LongAdder();
+    final LongAdder redelivered = new LongAdder();
+    final LongAdder acked = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder unacked = new LongAdder();
+    final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+    ConsumeMetrics(String queue) {
+        this.queue = queue;
+    }
+
+    public String queue() {
+        return queue;
+    }
+
+    /**
+     * @return 投递给消费者的消息数量
+     */
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return 其中重新投递（redelivered标记）的消息数量，持续增长说明有消息反复处理失败
+     */
+    public long redelivered() {
+        return redelivered.sum();
+    }
+
+    /**
+     * @return 确认（basicAck）的消息数量
+     */
+    public long acked() {
+        return acked.sum();
+    }
+
+    /**
+     * @return 拒绝（basicNack、basicReject）的消息数量
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return handleDelivery抛出异常的消息数量
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 当前已投递、还没有确认或拒绝的消息数量（autoAck的消费者不计入），接近prefetch说明消费者处理不过来
+     */
+    public long unacked() {
+        return unacked.sum();
+    }
+
+    /**
+     * @return handleDelivery的耗时；WorkerPoolConsumer、BatchConsumer等在分发线程上只做入队，这里记录的是入队的耗时
+     */
+    public LatencyHistogram handlerLatency() {
+        return handlerLatency;
+    }
+}
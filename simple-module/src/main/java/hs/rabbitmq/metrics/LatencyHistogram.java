@@ -0,0 +1,150 @@
+package hs.rabbitmq.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author heshuai
+ * @title: LatencyHistogram
+ * @description: 无锁的延迟直方图
+ *               发布确认、消息处理的耗时在每条消息上记录，不能加锁，也不能保存每个样本。
+ *               这里按对数-线性分桶（与HdrHistogram类似）：每个2的幂区间再等分为16个桶，相对误差不超过1/16（约6%），
+ *               0 ~ 2^42纳秒（约73分钟）共624个桶，超过范围的样本计入最后一个桶。
+ *               record只对一个桶做一次AtomicLongArray自增，总和与最大值使用LongAdder、LongAccumulator，多线程记录时没有锁竞争。
+ *               snapshot复制当前的计数，两次snapshot相减得到这段时间内的分布，用来计算每个上报周期的分位数
+ * @date 2026年10月19日 02:00
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 41;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos 耗时，单位：纳秒，负数按0记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return 当前累计的分布
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶中最小的值
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 某一时刻的分布，不可变
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return 两次snapshot之间的分布，最大值取这段时间内有样本的最高的桶的上界（不超过累计的最大值）
+         */
+        public Snapshot minus(Snapshot previous) {
+            long[] delta = new long[counts.length];
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - previous.counts[i];
+                if (delta[i] > 0) {
+                    highest = i;
+                }
+            }
+            long intervalMax = highest < 0 ? 0 : Math.min(max, upperBound(highest));
+            return new Snapshot(delta, sum - previous.sum, intervalMax);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return 平均值，单位：纳秒
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @return 最大值，单位：纳秒
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @param quantile 0 ~ 1，例如0.99
+         * @return 分位数所在桶的上界（不超过最大值），单位：纳秒，没有样本时返回0
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        private static long upperBound(int index) {
+            return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package hs.rabbitmq.metrics;
+
+import com.rabbitmq.client.Channel;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author heshuai
+ * @title: MessagingMetrics
+ * @description: 生产者、消费者的统一指标
+ *               原来只能靠System.out.println的输出判断哪个消费者慢了，这里记录：
+ *                  1. 按exchange/routingKey：发布数量、发布失败、确认、拒绝数量，发布确认的耗时分布
+ *                  2. 按队列：投递数量、重新投递数量、确认、拒绝数量、未确认的消息数量，handleDelivery的耗时分布
+ *               计数器使用LongAdder，耗时使用无锁的LatencyHistogram，热路径上没有锁。
+ *               接入方式：wrap(channel)返回一个代理Channel，拦截basicPublish、confirmSelect、basicConsume、basicAck/Nack/Reject，
+ *               其它方法直接转发，使用方的代码不需要改动；调用RabbitmqConfig.enableMetrics()之后，
+ *               RabbitmqConfig.getChannel()和Channel池借出的Channel会自动包装，默认不包装。
+ *               start(reporter, period, unit)按固定周期把指标交给MetricsReporter，默认的ConsoleReporter打印每个周期的速率和分位数，
+ *               需要接入其它监控系统时实现MetricsReporter即可。
+ *               注意：
+ *                  1. 不同的exchange/routingKey、队列最多maxMeters个，超过后都记录在"_other"下，
+ *                     避免RPC的临时回复队列（amq.gen-*）等一次性的名字让指标无限增长
+ *                  2. 发布确认的耗时按Channel的发布序号匹配，要求同一个Channel不被多个线程同时发布（与Channel本身的要求一致）
+ * @date 2026年10月19日 02:00
+ */
+public class MessagingMetrics implements AutoCloseable {
+
+    static final String OTHER = "_other";
+
+    private final int maxMeters;
+    private final AtomicInteger meters = new AtomicInteger();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, PublishMetrics>> publishers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConsumeMetrics> consumers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public MessagingMetrics() {
+        this(1000);
+    }
+
+    /**
+     * @param maxMeters 最多记录的exchange/routingKey与队列的数量
+     */
+    public MessagingMetrics(int maxMeters) {
+        this.maxMeters = maxMeters;
+    }
+
+    /**
+     * @return 发往exchange/routingKey的发布指标
+     */
+    public PublishMetrics publish(String exchange, String routingKey) {
+        PublishMetrics metrics = findPublish(exchange, routingKey);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (meters.get() >= maxMeters) {
+            metrics = findPublish(OTHER, OTHER);
+            if (metrics != null) {
+                return metrics;
+            }
+            exchange = OTHER;
+            routingKey = OTHER;
+        }
+        String tag = exchange;
+        return publishers.computeIfAbsent(exchange, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(routingKey, key -> {
+                    meters.incrementAndGet();
+                    return new PublishMetrics(tag, key);
+                });
+    }
+
+    /**
+     * @return 队列的消费指标
+     */
+    public ConsumeMetrics consume(String queue) {
+        ConsumeMetrics metrics = consumers.get(queue);
+        if (metrics == null && meters.get() >= maxMeters) {
+            queue = OTHER;
+            metrics = consumers.get(queue);
+        }
+        if (metrics != null) {
+            return metrics;
+        }
+        return consumers.computeIfAbsent(queue, q -> {
+            meters.incrementAndGet();
+            return new ConsumeMetrics(q);
+        });
+    }
+
+    private PublishMetrics findPublish(String exchange, String routingKey) {
+        ConcurrentHashMap<String, PublishMetrics> byRoutingKey = publishers.get(exchange);
+        return byRoutingKey == null ? null : byRoutingKey.get(routingKey);
+    }
+
+    public Collection<PublishMetrics> publishers() {
+        List<PublishMetrics> all = new ArrayList<>();
+        publishers.values().forEach(byRoutingKey -> all.addAll(byRoutingKey.values()));
+        return all;
+    }
+
+    public Collection<ConsumeMetrics> consumers() {
+        return new ArrayList<>(consumers.values());
+    }
+
+    /**
+     * 包装Channel，通过返回的Channel发布、消费的消息都会记录指标
+     */
+    public Channel wrap(Channel channel) {
+        if (Proxy.isProxyClass(channel.getClass()) && Proxy.getInvocationHandler(channel) instanceof MeteredChannel) {
+            return channel;
+        }
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                new MeteredChannel(channel, this));
+    }
+
+    /**
+     * 开始按固定周期上报，重复调用时替换原来的上报
+     */
+    public synchronized MessagingMetrics start(MetricsReporter reporter, long period, TimeUnit unit) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "messaging-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                reporter.report(this);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, period, period, unit);
+        return this;
+    }
+
+    /**
+     * 停止上报，已经包装的Channel仍然会记录指标
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package hs.rabbitmq.metrics;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author heshuai
+ * @title: MeteredChannel
+ * @description: MessagingMetrics.wrap返回的代理Channel的实现
+ *               1. basicPublish：按exchange/routingKey计数；Channel处于发布确认模式时按发布序号记录发布时间，收到确认后计算耗时
+ *               2. basicConsume：把Consumer（或DeliverCallback）包装一层，按队列记录投递、重新投递和handleDelivery的耗时，
+ *                  需要手动确认的消息按deliveryTag记录所属的队列
+ *               3. basicAck/basicNack/basicReject：按deliveryTag找到所属的队列，减少未确认数量（multiple时一次处理多条）
+ *               Channel关闭时，未确认的消息会被broker重新投递，未收到确认的发布结果未知，两者都直接清除
+ * @date 2026年10月19日 02:00
+ */
+final class MeteredChannel implements InvocationHandler {
+
+    private final Channel delegate;
+    private final MessagingMetrics metrics;
+    /**
+     * 发布序号 -> 等待确认的消息
+     */
+    private final ConcurrentSkipListMap<Long, Pending> unconfirmed = new ConcurrentSkipListMap<>();
+    /**
+     * deliveryTag -> 所属队列的指标
+     */
+    private final ConcurrentSkipListMap<Long, ConsumeMetrics> unacked = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean confirmListening = new AtomicBoolean();
+
+    MeteredChannel(Channel delegate, MessagingMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        delegate.addShutdownListener(cause -> reset());
+        // 包装之前已经开启了发布确认
+        if (delegate.getNextPublishSeqNo() > 0) {
+            listenConfirms();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "basicPublish":
+                return publish(method, args);
+            case "basicConsume":
+                return consume(method, args);
+            case "basicAck":
+                call(method, args);
+                settle((Long) args[0], (Boolean) args[1], true);
+                return null;
+            case "basicNack":
+                call(method, args);
+                settle((Long) args[0], (Boolean) args[1], false);
+                return null;
+            case "basicReject":
+                call(method, args);
+                settle((Long) args[0], false, false);
+                return null;
+            case "confirmSelect":
+                Object ok = call(method, args);
+                listenConfirms();
+                return ok;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "MeteredChannel(" + delegate + ")";
+            default:
+                return call(method, args);
+        }
+    }
+
+    private Object publish(Method method, Object[] args) throws Throwable {
+        PublishMetrics meter = metrics.publish((String) args[0], (String) args[1]);
+        long sequence = confirmListening.get() ? delegate.getNextPublishSeqNo() : 0;
+        if (sequence > 0) {
+            unconfirmed.put(sequence, new Pending(meter, System.nanoTime()));
+        }
+        try {
+            call(method, args);
+        } catch (Throwable e) {
+            if (sequence > 0) {
+                unconfirmed.remove(sequence);
+            }
+            meter.failed.increment();
+            throw e;
+        }
+        meter.published.increment();
+        return null;
+    }
+
+    /**
+     * 替换参数中的Consumer或DeliverCallback；没有autoAck参数的重载方法都是手动确认
+     */
+    private Object consume(Method method, Object[] args) throws Throwable {
+        ConsumeMetrics meter = metrics.consume((String) args[0]);
+        boolean autoAck = args.length > 1 && args[1] instanceof Boolean && (Boolean) args[1];
+        Object[] wrapped = args.clone();
+        for (int i = 0; i < wrapped.length; i++) {
+            if (wrapped[i] instanceof Consumer) {
+                wrapped[i] = new MeteredConsumer((Consumer) wrapped[i], meter, autoAck);
+            } else if (wrapped[i] instanceof DeliverCallback) {
+                DeliverCallback callback = (DeliverCallback) wrapped[i];
+                wrapped[i] = (DeliverCallback) (consumerTag, delivery) -> {
+                    long start = delivered(meter, autoAck, delivery.getEnvelope());
+                    try {
+                        callback.handle(consumerTag, delivery);
+                    } catch (IOException | RuntimeException e) {
+                        meter.failed.increment();
+                        throw e;
+                    } finally {
+                        meter.handlerLatency.record(System.nanoTime() - start);
+                    }
+                };
+            }
+        }
+        return call(method, wrapped);
+    }
+
+    /**
+     * 记录一次投递，必须在交给处理逻辑之前调用（处理逻辑中可能直接确认）
+     * @return 开始处理的时间
+     */
+    private long delivered(ConsumeMetrics meter, boolean autoAck, Envelope envelope) {
+        meter.delivered.increment();
+        if (envelope.isRedeliver()) {
+            meter.redelivered.increment();
+        }
+        if (!autoAck) {
+            unacked.put(envelope.getDeliveryTag(), meter);
+            meter.unacked.increment();
+        }
+        return System.nanoTime();
+    }
+
+    private void settle(long deliveryTag, boolean multiple, boolean ack) {
+        if (!multiple) {
+            ConsumeMetrics meter = unacked.remove(deliveryTag);
+            if (meter != null) {
+                settled(meter, ack);
+            }
+            return;
+        }
+        // deliveryTag为0并且multiple时表示所有未确认的消息
+        long upTo = deliveryTag == 0 ? Long.MAX_VALUE : deliveryTag;
+        Map.Entry<Long, ConsumeMetrics> entry;
+        while ((entry = unacked.firstEntry()) != null && entry.getKey() <= upTo) {
+            // 其它线程可能同时在确认，只有删除成功的一方计数
+            if (unacked.remove(entry.getKey(), entry.getValue())) {
+                settled(entry.getValue(), ack);
+            }
+        }
+    }
+
+    private static void settled(ConsumeMetrics meter, boolean ack) {
+        meter.unacked.decrement();
+        if (ack) {
+            meter.acked.increment();
+        } else {
+            meter.rejected.increment();
+        }
+    }
+
+    private void listenConfirms() {
+        if (!confirmListening.compareAndSet(false, true)) {
+            return;
+        }
+        delegate.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                confirmed(deliveryTag, multiple, true);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                confirmed(deliveryTag, multiple, false);
+            }
+        });
+    }
+
+    private void confirmed(long deliveryTag, boolean multiple, boolean ack) {
+        long now = System.nanoTime();
+        if (!multiple) {
+            Pending pending = unconfirmed.remove(deliveryTag);
+            if (pending != null) {
+                pending.confirmed(now, ack);
+            }
+            return;
+        }
+        Map.Entry<Long, Pending> entry;
+        while ((entry = unconfirmed.firstEntry()) != null && entry.getKey() <= deliveryTag) {
+            if (unconfirmed.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().confirmed(now, ack);
+            }
+        }
+    }
+
+    private void reset() {
+        Map.Entry<Long, ConsumeMetrics> entry;
+        while ((entry = unacked.pollFirstEntry()) != null) {
+            entry.getValue().unacked.decrement();
+        }
+        unconfirmed.clear();
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class Pending {
+        private final PublishMetrics meter;
+        private final long publishedAt;
+
+        private Pending(PublishMetrics meter, long publishedAt) {
+            this.meter = meter;
+            this.publishedAt = publishedAt;
+        }
+
+        private void confirmed(long now, boolean ack) {
+            if (ack) {
+                meter.confirmed.increment();
+                meter.confirmLatency.record(now - publishedAt);
+            } else {
+                meter.nacked.increment();
+            }
+        }
+    }
+
+    /**
+     * 记录投递和处理耗时的Consumer装饰器
+     */
+    private final class MeteredConsumer implements Consumer {
+        private final Consumer consumer;
+        private final ConsumeMetrics meter;
+        private final boolean autoAck;
+
+        private MeteredConsumer(Consumer consumer, ConsumeMetrics meter, boolean autoAck) {
+            this.consumer = consumer;
+            this.meter = meter;
+            this.autoAck = autoAck;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                throws IOException {
+            long start = delivered(meter, autoAck, envelope);
+            try {
+                consumer.handleDelivery(consumerTag, envelope, properties, body);
+            } catch (IOException | RuntimeException e) {
+                meter.failed.increment();
+                throw e;
+            } finally {
+                meter.handlerLatency.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void handleConsumeOk(String consumerTag) {
+            consumer.handleConsumeOk(consumerTag);
+        }
+
+        @Override
+        public void handleCancelOk(String consumerTag) {
+            consumer.handleCancelOk(consumerTag);
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) throws IOException {
+            consumer.handleCancel(consumerTag);
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            consumer.handleShutdownSignal(consumerTag, sig);
+        }
+
+        @Override
+        public void handleRecoverOk(String consumerTag) {
+            consumer.handleRecoverOk(consumerTag);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package hs.rabbitmq.metrics;
+
+/**
+ * @author heshuai
+ * @title: MetricsReporter
+ * @description: 指标的上报方式，由MessagingMetrics.start按固定周期在上报线程中调用，
+ *               默认的ConsoleReporter打印到标准输出，接入Prometheus、日志系统等时实现这个接口。
+ *               PublishMetrics、ConsumeMetrics中的计数器都是累计值，需要速率时由实现自己保存上一次的读数
+ * @date 2026年10月19日 02:00
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    void report(MessagingMetrics metrics);
+}
@@ -0,0 +1,70 @@
+package hs.rabbitmq.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author heshuai
+ * @title: PublishMetrics
+ * @description: 发往同一个exchange/routingKey的消息的发布指标，由MessagingMetrics创建，计数器都是累计值，
+ *               上报时两次读数相减得到速率
+ * @date 2026年10月19日 02:00
+ */
+public class PublishMetrics {
+
+    private final String exchange;
+    private final String routingKey;
+
+    final LongAdder published = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder confirmed = new LongAdder();
+    final LongAdder nacked = new LongAdder();
+    final LatencyHistogram confirmLatency = new LatencyHistogram();
+
+    PublishMetrics(String exchange, String routingKey) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    public String exchange() {
+        return exchange;
+    }
+
+    public String routingKey() {
+        return routingKey;
+    }
+
+    /**
+     * @return 发布成功（写入Channel）的消息数量
+     */
+    public long published() {
+        return published.sum();
+    }
+
+    /**
+     * @return basicPublish抛出异常的消息数量
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 收到broker确认（basic.ack）的消息数量，Channel没有开启发布确认时为0
+     */
+    public long confirmed() {
+        return confirmed.sum();
+    }
+
+    /**
+     * @return 被broker拒绝（basic.nack）的消息数量
+     */
+    public long nacked() {
+        return nacked.sum();
+    }
+
+    /**
+     * @return 从发布到收到确认的耗时
+     */
+    public LatencyHistogram confirmLatency() {
+        return confirmLatency;
+    }
+}
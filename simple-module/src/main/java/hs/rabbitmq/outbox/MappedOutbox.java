@@ -0,0 +1,544 @@
+package hs.rabbitmq.outbox;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.impl.ContentHeaderPropertyWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * @author heshuai
+ * @title: MappedOutbox
+ * @description: 基于内存映射文件的本地发件箱（write-ahead outbox）
+ *               broker不可用时basicPublish会直接抛异常，调用方只能丢掉消息或者阻塞重试。
+ *               这里先把消息追加到本地的内存映射文件中，append只是一次内存拷贝，不需要等待网络和broker，
+ *               再由OutboxDrainer在后台把消息按顺序重放到broker，收到发布确认后commit，已确认的段文件被删除。
+ *               文件布局：
+ *                  目录下有若干固定大小的段文件（{段号}.seg）和一个检查点文件（checkpoint），
+ *                  每条记录为 4字节长度 + 4字节CRC32 + 内容，内容为exchange、routingKey、消息属性（AMQP content header帧格式）、消息体，
+ *                  长度最后写入，长度为0表示后面还没有数据，长度为-1表示当前段已写满，跳到下一个段
+ *                  检查点文件记录已确认的位置（段号 + 段内偏移），重启后从检查点开始重放
+ *               可靠性：
+ *                  1. 写入内存映射文件后即使进程崩溃，数据也在操作系统的页缓存中，不会丢失；
+ *                     需要防止断电、操作系统崩溃丢数据时，在关键消息之后调用sync()把数据刷到磁盘
+ *                  2. 已发布但还没有确认的消息在重启或者重连后会重新发送，即至少一次（at-least-once），消费端需要幂等
+ *                  3. 段文件数量不超过maxSegments，写满后append最多阻塞blockTimeout，仍然没有空间则抛出IOException，
+ *                     以此限制磁盘占用并把broker长时间不可用的情况反馈给调用方
+ *                  4. 恢复时只有最后一个段末尾不完整的记录（写入过程中崩溃）被丢弃；
+ *                     其它位置的记录损坏（CRC不一致、长度不合法，一般是断电前没有sync）时，把段文件复制一份为{段号}.seg.corrupt，
+ *                     跳过这个段剩余的部分，后面的段照常重放，损坏的记录需要人工处理
+ *                  5. 删除的段文件立即解除映射，不等GC回收MappedByteBuffer
+ * @date 2026年10月18日 20:10
+ */
+public class MappedOutbox implements AutoCloseable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+
+    /**
+     * 从发件箱中读出的一条消息
+     */
+    public static final class Entry {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        Entry(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+
+        public String getExchange() {
+            return exchange;
+        }
+
+        public String getRoutingKey() {
+            return routingKey;
+        }
+
+        public AMQP.BasicProperties getProperties() {
+            return properties;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 复用的序列化缓冲区，直接访问内部数组避免toByteArray的拷贝
+     */
+    private static final class ReusableOutput extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long blockTimeoutNanos;
+    /**
+     * 从旧到新的段文件，最后一个是当前写入的段
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final MappedByteBuffer checkpoint;
+    private final ReusableOutput propertiesOutput = new ReusableOutput();
+    private final CRC32 crc = new CRC32();
+
+    private int writeOffset;
+    private Segment readSegment;
+    private int readOffset;
+    private Segment committedSegment;
+    private int committedOffset;
+    private long pending;
+    private boolean closed;
+
+    /**
+     * 打开（不存在则创建）发件箱，从检查点恢复未确认的消息
+     * @param directory 发件箱目录，同一时间只能被一个进程使用
+     * @param segmentSize 段文件大小，单位：字节，单条消息不能超过它
+     * @param maxSegments 最多的段文件数量
+     * @param blockTimeout 发件箱写满时append最长的等待时间
+     * @param unit blockTimeout的单位
+     * @throws IOException
+     */
+    public MappedOutbox(Path directory, int segmentSize, int maxSegments, long blockTimeout, TimeUnit unit)
+            throws IOException {
+        if (segmentSize <= RECORD_HEADER || maxSegments < 2) {
+            throw new IllegalArgumentException("segmentSize must be larger than " + RECORD_HEADER
+                    + " and maxSegments must be at least 2");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+        Files.createDirectories(directory);
+        this.checkpoint = map(directory.resolve(CHECKPOINT_FILE), 12);
+        recover();
+    }
+
+    /**
+     * 追加一条消息，发件箱写满时最多阻塞blockTimeout
+     * @throws IOException 消息超过段大小、发件箱已满或者已关闭
+     * @throws InterruptedException 等待空间时被中断
+     */
+    public void append(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException {
+        byte[] exchangeBytes = exchange.getBytes(StandardCharsets.UTF_8);
+        byte[] routingKeyBytes = routingKey.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Outbox is closed");
+            }
+            int propertiesLength = writeProperties(props, body.length);
+            int contentLength = 2 + exchangeBytes.length + 2 + routingKeyBytes.length + 4
+                    + Math.max(propertiesLength, 0) + body.length;
+            int recordLength = RECORD_HEADER + contentLength;
+            if (recordLength > segmentSize) {
+                throw new IOException("Message of " + body.length + " bytes does not fit in an outbox segment of "
+                        + segmentSize + " bytes");
+            }
+            if (writeOffset + recordLength > segmentSize) {
+                roll();
+            }
+            MappedByteBuffer buffer = segments.getLast().buffer;
+            int position = writeOffset + RECORD_HEADER;
+            buffer.putShort(position, (short) exchangeBytes.length);
+            position = put(buffer, position + 2, exchangeBytes, exchangeBytes.length);
+            buffer.putShort(position, (short) routingKeyBytes.length);
+            position = put(buffer, position + 2, routingKeyBytes, routingKeyBytes.length);
+            buffer.putInt(position, propertiesLength);
+            position = put(buffer, position + 4, propertiesOutput.array(), Math.max(propertiesLength, 0));
+            put(buffer, position, body, body.length);
+            buffer.putInt(writeOffset + 4, checksum(buffer, writeOffset + RECORD_HEADER, contentLength));
+            // 长度最后写入，进程在写入过程中崩溃时这条记录的长度仍然为0，恢复时被当作末尾
+            buffer.putInt(writeOffset, contentLength);
+            writeOffset += recordLength;
+            pending++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * 从读取位置开始读出消息，没有消息时最多等待timeout
+     * @param out 读出的消息追加到这里
+     * @param max 最多读出的消息数量
+     * @return 读出的消息数量
+     * @throws InterruptedException
+     */
+    public synchronized int read(List<Entry> out, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int count = 0;
+        while (count < max && !closed) {
+            if (readSegment == segments.getLast() && readOffset >= writeOffset) {
+                // 已经读到写入位置
+                long remaining = deadline - System.nanoTime();
+                if (count > 0 || remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                continue;
+            }
+            int contentLength = lengthAt(readSegment, readOffset);
+            if (contentLength > 0) {
+                out.add(decode(readSegment.buffer, readOffset + RECORD_HEADER, contentLength));
+                readOffset += RECORD_HEADER + contentLength;
+                count++;
+            } else {
+                // 当前段已读完，进入下一个段
+                readSegment = next(readSegment);
+                readOffset = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 已读出的消息全部被broker确认，把检查点推进到读取位置，删除已经不需要的段文件
+     */
+    public synchronized void commit() {
+        long committed = 0;
+        Segment segment = committedSegment;
+        int offset = committedOffset;
+        while (segment != readSegment || offset < readOffset) {
+            int contentLength = lengthAt(segment, offset);
+            if (contentLength > 0) {
+                offset += RECORD_HEADER + contentLength;
+                committed++;
+            } else {
+                segment = next(segment);
+                offset = 0;
+            }
+        }
+        committedSegment = readSegment;
+        committedOffset = readOffset;
+        writeCheckpoint();
+        pending -= committed;
+        while (segments.getFirst() != committedSegment) {
+            delete(segments.removeFirst());
+        }
+        notifyAll();
+    }
+
+    /**
+     * 发布失败时把读取位置退回到检查点，未确认的消息会被重新读出
+     */
+    public synchronized void rewind() {
+        readSegment = committedSegment;
+        readOffset = committedOffset;
+    }
+
+    /**
+     * @return 还没有被确认的消息数量
+     */
+    public synchronized long pending() {
+        return pending;
+    }
+
+    /**
+     * 把当前写入的段和检查点刷到磁盘，用于防止断电、操作系统崩溃时丢失数据
+     */
+    public synchronized void sync() {
+        segments.getLast().buffer.force();
+        checkpoint.force();
+    }
+
+    /**
+     * 关闭发件箱，未确认的消息保留在磁盘上，下次打开时继续重放
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        sync();
+        notifyAll();
+    }
+
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        ids.sort(null);
+        long checkpointId = checkpoint.getLong(0);
+        int checkpointOffset = checkpoint.getInt(8);
+        for (long id : ids) {
+            Path path = segmentPath(id);
+            if (id < checkpointId) {
+                // 检查点之前的段已经全部确认，删除时进程崩溃会留下这些文件
+                Files.deleteIfExists(path);
+            } else {
+                segments.addLast(new Segment(id, path, map(path, segmentSize)));
+            }
+        }
+        if (segments.isEmpty() || segments.getFirst().id != checkpointId) {
+            // 第一次打开，或者检查点所在的段已经不存在，从第一个段的开头开始
+            checkpointOffset = 0;
+            if (segments.isEmpty()) {
+                segments.addLast(newSegment(checkpointId));
+            }
+        }
+        committedSegment = segments.getFirst();
+        committedOffset = checkpointOffset;
+        readSegment = committedSegment;
+        readOffset = committedOffset;
+        // 校验检查点之后的记录，统计未确认的消息数量，找到写入位置
+        Segment segment = committedSegment;
+        int offset = committedOffset;
+        Iterator<Segment> iterator = segments.iterator();
+        iterator.next();
+        while (true) {
+            int contentLength = lengthAt(segment, offset);
+            if (contentLength > 0 && offset + RECORD_HEADER + contentLength <= segmentSize
+                    && segment.buffer.getInt(offset + 4) == checksum(segment.buffer, offset + RECORD_HEADER, contentLength)) {
+                offset += RECORD_HEADER + contentLength;
+                pending++;
+                continue;
+            }
+            if (contentLength == END_OF_SEGMENT && iterator.hasNext()) {
+                segment = iterator.next();
+                offset = 0;
+                continue;
+            }
+            boolean last = !iterator.hasNext();
+            // 长度为0（或者最后一个段已写满）是正常的末尾，其它情况都是损坏
+            if (!last || (contentLength != 0 && contentLength != END_OF_SEGMENT)) {
+                moveAside(segment, offset);
+            }
+            if (last) {
+                break;
+            }
+            // 中间的段：剩余的部分不再读取，标记为段结束，继续校验后面的段
+            if (offset + 4 <= segmentSize) {
+                segment.buffer.putInt(offset, END_OF_SEGMENT);
+            }
+            segment = iterator.next();
+            offset = 0;
+        }
+        // 写入过程中崩溃会留下不完整的记录，清零之后从这里继续写入
+        for (int i = offset; i < segmentSize; i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+        writeOffset = offset;
+        writeCheckpoint();
+    }
+
+    /**
+     * 把损坏的段文件复制一份，留给人工处理
+     */
+    private void moveAside(Segment segment, int offset) throws IOException {
+        Path copy = segment.path.resolveSibling(segment.path.getFileName() + ".corrupt");
+        Files.copy(segment.path, copy, StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("Outbox segment " + segment.path + " is corrupt at offset " + offset
+                + ", the rest of it will not be replayed, a copy is kept in " + copy);
+    }
+
+    /**
+     * 当前段写满，写入结束标记并创建下一个段，段文件数量达到上限时等待commit释放空间
+     */
+    private void roll() throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (segments.size() >= maxSegments) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new IOException("Outbox is full: " + pending + " messages are waiting for the broker");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            if (closed) {
+                throw new IOException("Outbox is closed");
+            }
+        }
+        Segment current = segments.getLast();
+        if (writeOffset + 4 <= segmentSize) {
+            current.buffer.putInt(writeOffset, END_OF_SEGMENT);
+        }
+        segments.addLast(newSegment(current.id + 1));
+        writeOffset = 0;
+    }
+
+    /**
+     * @return 记录的长度，0表示后面还没有数据，剩余空间放不下记录头时视为段结束
+     */
+    private int lengthAt(Segment segment, int offset) {
+        return offset + RECORD_HEADER <= segmentSize ? segment.buffer.getInt(offset) : END_OF_SEGMENT;
+    }
+
+    private Segment next(Segment segment) {
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.next() != segment) {
+            // 段文件数量很少，顺序查找即可
+        }
+        return iterator.next();
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        Path path = segmentPath(id);
+        return new Segment(id, path, map(path, segmentSize));
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private void delete(Segment segment) {
+        // 先解除映射：映射期间磁盘空间不会释放，Windows上也无法删除文件
+        unmap(segment.buffer);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // 删除失败只会多占用磁盘空间，下次打开时会再次删除检查点之前的段
+            e.printStackTrace();
+        }
+    }
+
+    private void writeCheckpoint() {
+        checkpoint.putLong(0, committedSegment.id);
+        checkpoint.putInt(8, committedOffset);
+    }
+
+    /**
+     * 把消息属性按AMQP content header帧的格式（weight + bodySize + 属性）序列化到propertiesOutput中，
+     * 读取时直接交给AMQP.BasicProperties(DataInputStream)解析
+     * @return 序列化后的长度，消息属性为null时返回-1
+     */
+    private int writeProperties(AMQP.BasicProperties props, int bodySize) throws IOException {
+        propertiesOutput.reset();
+        if (props == null) {
+            return -1;
+        }
+        DataOutputStream out = new DataOutputStream(propertiesOutput);
+        out.writeShort(0);
+        out.writeLong(bodySize);
+        props.writePropertiesTo(new ContentHeaderPropertyWriter(out));
+        return propertiesOutput.size();
+    }
+
+    private static Entry decode(MappedByteBuffer buffer, int position, int contentLength) {
+        byte[] content = new byte[contentLength];
+        get(buffer, position, content);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+            String exchange = readString(in);
+            String routingKey = readString(in);
+            int propertiesLength = in.readInt();
+            AMQP.BasicProperties properties = null;
+            if (propertiesLength >= 0) {
+                properties = new AMQP.BasicProperties(new DataInputStream(
+                        new ByteArrayInputStream(content, contentLength - in.available(), propertiesLength)));
+                in.skipBytes(propertiesLength);
+            }
+            byte[] body = new byte[in.available()];
+            in.readFully(body);
+            return new Entry(exchange, routingKey, properties, body);
+        } catch (IOException e) {
+            // 记录在写入时已经校验过CRC，不会出现
+            throw new IllegalStateException("Corrupted outbox record", e);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 映射缓冲区只在持有当前对象的锁时访问，可以直接修改它的position和limit做批量读写
+     */
+    private int checksum(MappedByteBuffer buffer, int position, int length) {
+        buffer.position(position);
+        buffer.limit(position + length);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(buffer.capacity());
+        return (int) crc.getValue();
+    }
+
+    private static int put(MappedByteBuffer buffer, int position, byte[] src, int length) {
+        buffer.position(position);
+        buffer.put(src, 0, length);
+        return position + length;
+    }
+
+    private static void get(MappedByteBuffer buffer, int position, byte[] dst) {
+        buffer.position(position);
+        buffer.get(dst);
+    }
+
+    /**
+     * 立即解除映射，之后不能再访问这个缓冲区，否则JVM会崩溃；
+     * Java 9及以上通过Unsafe.invokeCleaner，Java 8通过DirectBuffer.cleaner()，都失败时留给GC回收
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8没有invokeCleaner
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 无法访问JDK内部的API，等待GC回收
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // 映射在文件关闭后仍然有效
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
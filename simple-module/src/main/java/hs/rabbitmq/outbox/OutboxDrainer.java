@@ -0,0 +1,138 @@
+package hs.rabbitmq.outbox;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: OutboxDrainer
+ * @description: 把MappedOutbox中的消息在后台重放到broker
+ *               后台线程每次从发件箱读出最多batchSize条消息，按顺序发布后waitForConfirmsOrDie，全部确认后commit；
+ *               连接失败、发布失败、nack或者确认超时时关闭连接，把发件箱的读取位置退回到检查点，等待retryInterval后重新连接，
+ *               所以broker重启期间生产者照常往发件箱写入，broker恢复后消息按写入顺序补发。
+ *               与PublisherConfirms中的批量确认一样，一批消息中任意一条失败整批都会重发，消费端需要幂等
+ * @date 2026年10月18日 20:10
+ */
+@SuppressWarnings("try") // close()要join后台发送线程
+public class OutboxDrainer implements AutoCloseable {
+
+    private final MappedOutbox outbox;
+    private final ConnectionFactory connectionFactory;
+    private final int batchSize;
+    private final long retryIntervalMillis;
+    private final Thread thread;
+    private final AtomicLong drained = new AtomicLong();
+
+    private volatile boolean running = true;
+    private Connection connection;
+    private Channel channel;
+
+    /**
+     * @param outbox 要重放的发件箱
+     * @param connectionFactory 用于创建到broker的连接，断开后由当前对象重新创建
+     * @param batchSize 每批发布并等待确认的最大消息数量
+     * @param retryInterval 连接或者发布失败后重试的间隔
+     * @param unit retryInterval的单位
+     */
+    public OutboxDrainer(MappedOutbox outbox, ConnectionFactory connectionFactory, int batchSize, long retryInterval,
+                         TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.outbox = outbox;
+        this.connectionFactory = connectionFactory;
+        this.batchSize = batchSize;
+        this.retryIntervalMillis = unit.toMillis(retryInterval);
+        this.thread = new Thread(this::drain, "outbox-drainer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * 启动后台线程
+     */
+    public OutboxDrainer start() {
+        thread.start();
+        return this;
+    }
+
+    /**
+     * @return 已经被broker确认的消息数量
+     */
+    public long drained() {
+        return drained.get();
+    }
+
+    /**
+     * 停止后台线程并关闭连接，不会关闭发件箱，未确认的消息留在发件箱中
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join();
+    }
+
+    private void drain() {
+        List<MappedOutbox.Entry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.clear();
+                if (outbox.read(batch, batchSize, 100, TimeUnit.MILLISECONDS) == 0) {
+                    continue;
+                }
+                Channel channel = channel();
+                for (MappedOutbox.Entry entry : batch) {
+                    channel.basicPublish(entry.getExchange(), entry.getRoutingKey(), entry.getProperties(), entry.getBody());
+                }
+                channel.waitForConfirmsOrDie(5_000);
+                outbox.commit();
+                drained.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                outbox.rewind();
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                // 连接不可用、消息被nack或者确认超时，退回到检查点，稍后重新连接并重发
+                System.err.println("Outbox drainer failed, retrying in " + retryIntervalMillis + "ms: " + e);
+                outbox.rewind();
+                closeConnection();
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        closeConnection();
+    }
+
+    private Channel channel() throws IOException, TimeoutException {
+        if (channel == null || !channel.isOpen()) {
+            closeConnection();
+            connection = connectionFactory.newConnection();
+            channel = connection.createChannel();
+            channel.confirmSelect();
+        }
+        return channel;
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException | RuntimeException e) {
+                // 连接可能已经断开
+            }
+            connection = null;
+            channel = null;
+        }
+    }
+}
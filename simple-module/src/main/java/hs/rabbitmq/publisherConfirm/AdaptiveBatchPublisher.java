@@ -0,0 +1,185 @@
+package hs.rabbitmq.publisherConfirm;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: AdaptiveBatchPublisher
+ * @description: 自适应批量大小的同步批量发布确认
+ *               PublisherConfirms.publishMessagesInBatch固定每100条消息等待一次确认：broker很快时，批量太小，浪费往返；
+ *               broker很慢（例如需要刷盘的quorum queue）时，一批消息要等很久才确认，延迟出现尖刺。
+ *               这里记录每一批消息的延迟（从这批的第一条消息发布到整批被确认），根据最近若干批的p99延迟调整批量大小：
+ *                  1. 某一批的延迟超过目标值，批量大小立即按比例缩小
+ *                  2. 最近若干批的p99延迟低于目标值的一定比例，批量大小按较小的比例逐步增大
+ *               批量大小始终在[minBatchSize, maxBatchSize]范围内。
+ *               非线程安全，一个实例只能在一个线程中使用
+ * @date 2026年10月18日 16:40
+ */
+public class AdaptiveBatchPublisher {
+
+    /**
+     * 计算p99时使用的最近批次数量
+     */
+    private static final int SAMPLE_WINDOW = 32;
+    /**
+     * 至少有这么多批的样本之后才考虑增大批量
+     */
+    private static final int MIN_SAMPLES_TO_GROW = 8;
+    /**
+     * p99低于目标值的这个比例时增大批量
+     */
+    private static final double GROW_THRESHOLD = 0.8;
+
+    private final Channel channel;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyNanos;
+    private final long confirmTimeoutMillis;
+
+    private int batchSize;
+    private int outstanding;
+    private long batchStartNanos;
+
+    private final long[] samples = new long[SAMPLE_WINDOW];
+    private final long[] sorted = new long[SAMPLE_WINDOW];
+    private int sampleCount;
+    private int sampleIndex;
+
+    private volatile long lastConfirmRttNanos;
+    private volatile long lastBatchLatencyNanos;
+    private volatile long p99BatchLatencyNanos;
+    private volatile int currentBatchSize;
+
+    /**
+     * @param channel 专用于当前发布者的Channel，会在构造时开启发布确认模式
+     * @param minBatchSize 最小批量
+     * @param maxBatchSize 最大批量
+     * @param targetP99Latency 目标p99延迟
+     * @param unit 目标p99延迟的单位
+     * @param confirmTimeoutMillis 等待一批消息确认的超时时间，单位：毫秒
+     * @throws IOException
+     */
+    public AdaptiveBatchPublisher(Channel channel, int minBatchSize, int maxBatchSize, long targetP99Latency, TimeUnit unit,
+                                  long confirmTimeoutMillis) throws IOException {
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException("Require 0 < minBatchSize <= maxBatchSize");
+        }
+        this.channel = channel;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatencyNanos = unit.toNanos(targetP99Latency);
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.batchSize = minBatchSize;
+        this.currentBatchSize = minBatchSize;
+        channel.confirmSelect();
+    }
+
+    /**
+     * 发布一条消息，攒够一批后同步等待这一批的确认
+     * @throws IOException 有消息被nack-ed
+     * @throws TimeoutException 等待确认超时
+     */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException, TimeoutException {
+        if (outstanding == 0) {
+            batchStartNanos = System.nanoTime();
+        }
+        channel.basicPublish(exchange, routingKey, props, body);
+        if (++outstanding >= batchSize) {
+            confirmBatch(true);
+        }
+    }
+
+    /**
+     * 等待不满一批的消息被确认
+     */
+    public void flush() throws IOException, InterruptedException, TimeoutException {
+        if (outstanding > 0) {
+            confirmBatch(false);
+        }
+    }
+
+    /**
+     * @return 当前的批量大小
+     */
+    public int getBatchSize() {
+        return currentBatchSize;
+    }
+
+    /**
+     * @return 最近一次waitForConfirms的等待时间
+     */
+    public long getLastConfirmRtt(TimeUnit unit) {
+        return unit.convert(lastConfirmRttNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 最近一批消息的延迟（第一条消息发布到整批确认）
+     */
+    public long getLastBatchLatency(TimeUnit unit) {
+        return unit.convert(lastBatchLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 最近若干批消息延迟的p99
+     */
+    public long getP99BatchLatency(TimeUnit unit) {
+        return unit.convert(p99BatchLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param full 是否是攒满的一批，不满的一批只能作为缩小批量的依据
+     */
+    private void confirmBatch(boolean full) throws IOException, InterruptedException, TimeoutException {
+        long waitStart = System.nanoTime();
+        try {
+            channel.waitForConfirmsOrDie(confirmTimeoutMillis);
+        } finally {
+            outstanding = 0;
+        }
+        long now = System.nanoTime();
+        lastConfirmRttNanos = now - waitStart;
+        long latency = now - batchStartNanos;
+        lastBatchLatencyNanos = latency;
+        record(latency);
+        adjust(latency, full);
+    }
+
+    private void record(long latency) {
+        samples[sampleIndex] = latency;
+        sampleIndex = (sampleIndex + 1) % SAMPLE_WINDOW;
+        if (sampleCount < SAMPLE_WINDOW) {
+            sampleCount++;
+        }
+        System.arraycopy(samples, 0, sorted, 0, sampleCount);
+        Arrays.sort(sorted, 0, sampleCount);
+        // 样本数量不多，p99取最接近的排位
+        int rank = (int) Math.ceil(sampleCount * 0.99) - 1;
+        p99BatchLatencyNanos = sorted[Math.max(rank, 0)];
+    }
+
+    private void adjust(long latency, boolean full) {
+        int next = batchSize;
+        if (latency > targetLatencyNanos) {
+            // 乘性减小，尽快消除延迟尖刺
+            next = Math.max(minBatchSize, batchSize * 3 / 4);
+        } else if (full && sampleCount >= MIN_SAMPLES_TO_GROW && p99BatchLatencyNanos < targetLatencyNanos * GROW_THRESHOLD) {
+            // 按1/8小幅增大（至少加1），比缩小（1/4）慢，缓慢逼近目标延迟；
+            // 不用固定步长：批量范围可能是1到10000，固定步长要调整上千次才能到达合适的批量
+            next = Math.min(maxBatchSize, batchSize + Math.max(1, batchSize / 8));
+        }
+        if (next != batchSize) {
+            batchSize = next;
+            currentBatchSize = next;
+            // 批量大小变化后，旧的样本不再有参考价值
+            sampleCount = 0;
+            sampleIndex = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package hs.rabbitmq.publisherConfirm;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: ConfirmingPublisher
+ * @description: 基于PublisherConfirms.handlePublishConfirmsAsynchronously整理出来的可复用的异步发布确认发布者
+ *               1. 每次publish返回一个CompletableFuture，收到ack时正常完成（结果为消息的sequenceNumber），收到nack或者Channel关闭时异常完成
+ *               2. 未确认消息的数量受maxInFlight限制，窗口满了之后publish会阻塞，直到有消息被确认，以此实现背压
+ *               3. 未确认的消息使用以sequenceNumber为下标的环形数组记录，代替ConcurrentSkipListMap<Long,String>，
+ *                  发布一条消息除了返回的Future外不会产生额外的对象，在高发送速率下可以明显降低GC压力
+ *               注意：Future的回调默认在Connection的I/O线程上执行，回调中不要做阻塞操作，更不要在回调中同步调用publish
+ * @date 2026年10月18日 11:05
+ */
+public class ConfirmingPublisher implements AutoCloseable {
+
+    private final Channel channel;
+    /**
+     * 环形数组的大小，为2的幂，不小于maxInFlight
+     */
+    private final int mask;
+    /**
+     * 每个槽位当前记录的sequenceNumber，0表示槽位为空（已确认或未使用）
+     */
+    private final long[] sequences;
+    private final CompletableFuture<Long>[] futures;
+    /**
+     * 确认回调中收集待完成Future的数组，只在Connection的I/O线程上使用
+     */
+    private final CompletableFuture<Long>[] confirmScratch;
+    /**
+     * 发布窗口，许可数量即maxInFlight
+     */
+    private final Semaphore window;
+    /**
+     * 保证获取sequenceNumber和basicPublish的原子性
+     */
+    private final Object publishLock = new Object();
+    /**
+     * 保护环形数组以及head/tail
+     */
+    private final Object ringLock = new Object();
+    /**
+     * 最小的未确认sequenceNumber
+     */
+    private long head;
+    /**
+     * 下一个将要发布的sequenceNumber
+     */
+    private long tail;
+    /**
+     * Channel关闭的原因，不为null时不再接受新的发布
+     */
+    private volatile ShutdownSignalException failure;
+
+    private final ConfirmListener confirmListener;
+    private final ShutdownListener shutdownListener;
+
+    /**
+     * @param channel 专用于当前发布者的Channel，会在构造时开启发布确认模式
+     * @param maxInFlight 最大未确认消息数量
+     * @throws IOException
+     */
+    public ConfirmingPublisher(Channel channel, int maxInFlight) throws IOException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        int capacity = Integer.highestOneBit(maxInFlight);
+        if (capacity < maxInFlight) {
+            capacity <<= 1;
+        }
+        this.channel = channel;
+        this.mask = capacity - 1;
+        this.sequences = new long[capacity];
+        this.futures = newFutureArray(capacity);
+        this.confirmScratch = newFutureArray(capacity);
+        this.window = new Semaphore(maxInFlight);
+
+        channel.confirmSelect();
+        // 复用的Channel之前可能已经发布过消息，从当前的sequenceNumber开始记录
+        this.head = channel.getNextPublishSeqNo();
+        this.tail = head;
+        this.confirmListener = channel.addConfirmListener(
+                (sequenceNumber, multiple) -> handleConfirm(sequenceNumber, multiple, true),
+                (sequenceNumber, multiple) -> handleConfirm(sequenceNumber, multiple, false));
+        this.shutdownListener = this::handleShutdown;
+        channel.addShutdownListener(shutdownListener);
+    }
+
+    /**
+     * 发布一条消息，窗口已满时阻塞等待
+     * @return 消息确认的Future，结果为消息的sequenceNumber
+     * @throws IOException 发布失败或者Channel已关闭
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<Long> publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException {
+        window.acquire();
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (publishLock) {
+            if (failure != null) {
+                window.release();
+                throw new IOException("Channel is closed", failure);
+            }
+            long sequenceNumber = channel.getNextPublishSeqNo();
+            synchronized (ringLock) {
+                int slot = (int) (sequenceNumber & mask);
+                sequences[slot] = sequenceNumber;
+                futures[slot] = future;
+                tail = sequenceNumber + 1;
+            }
+            try {
+                channel.basicPublish(exchange, routingKey, props, body);
+            } catch (IOException | RuntimeException e) {
+                // 发布失败的消息不会再收到确认，这里直接把它当作已完成处理，否则会一直占着窗口
+                completeRange(sequenceNumber, sequenceNumber, e, newFutureArray(1));
+                throw e;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 等待当前所有已发布的消息都被确认
+     * @return 超时返回false
+     * @throws InterruptedException
+     */
+    public boolean awaitConfirms(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (ringLock) {
+            while (head < tail) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(ringLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return 当前窗口中的消息数量（已发布但还有更早的消息未确认的也计算在内）
+     */
+    public int inFlight() {
+        synchronized (ringLock) {
+            return (int) (tail - head);
+        }
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * 移除当前发布者注册在Channel上的监听器，不会关闭Channel，未确认的消息的Future不会再完成
+     */
+    @Override
+    public void close() {
+        channel.removeConfirmListener(confirmListener);
+        channel.removeShutdownListener(shutdownListener);
+    }
+
+    private void handleConfirm(long sequenceNumber, boolean multiple, boolean ack) {
+        Exception cause = ack ? null : new IOException("Message has been nack-ed. Sequence number: " + sequenceNumber);
+        // 确认回调只会在Connection的I/O线程上串行执行，可以复用同一个数组收集需要完成的Future
+        // multiple为true时，所有低于等于当前sequenceNumber的消息都被确认
+        completeRange(multiple ? 0 : sequenceNumber, sequenceNumber, cause, confirmScratch);
+    }
+
+    private void handleShutdown(ShutdownSignalException cause) {
+        failure = cause;
+        completeRange(0, Long.MAX_VALUE, cause, newFutureArray(sequences.length));
+    }
+
+    /**
+     * 完成[from, to]范围内的消息，并向前推进head，归还窗口
+     * @param scratch 收集需要完成的Future的数组，长度不小于环形数组的大小
+     */
+    private void completeRange(long from, long to, Exception cause, CompletableFuture<Long>[] scratch) {
+        long firstSequence;
+        int length;
+        int released;
+        synchronized (ringLock) {
+            long start = Math.max(from, head);
+            long end = Math.min(to, tail - 1);
+            if (start > end) {
+                return;
+            }
+            firstSequence = start;
+            length = (int) (end - start + 1);
+            for (int i = 0; i < length; i++) {
+                long seq = start + i;
+                int slot = (int) (seq & mask);
+                if (sequences[slot] == seq) {
+                    sequences[slot] = 0;
+                    scratch[i] = futures[slot];
+                    futures[slot] = null;
+                }
+            }
+            // head之前的消息全部完成后，窗口才真正向前滑动
+            long oldHead = head;
+            while (head < tail && sequences[(int) (head & mask)] != head) {
+                head++;
+            }
+            released = (int) (head - oldHead);
+            if (head == tail) {
+                ringLock.notifyAll();
+            }
+        }
+        if (released > 0) {
+            window.release(released);
+        }
+        // 在锁外完成Future，避免回调在持有锁的情况下执行
+        for (int i = 0; i < length; i++) {
+            CompletableFuture<Long> future = scratch[i];
+            if (future == null) {
+                continue;
+            }
+            scratch[i] = null;
+            if (cause == null) {
+                future.complete(firstSequence + i);
+            } else {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Long>[] newFutureArray(int length) {
+        return (CompletableFuture<Long>[]) new CompletableFuture<?>[length];
+    }
+}
@@ -4,6 +4,7 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConfirmCallback;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import hs.rabbitmq.codec.PayloadBuffers;
 import hs.rabbitmq.config.RabbitmqConfig;
 
 import java.time.Duration;
@@ -27,7 +28,9 @@ public class PublisherConfirms {
     public static void main(String[] args) throws Exception {
         publishMessagesIndividually();
         publishMessagesInBatch();
+        publishMessagesInAdaptiveBatch();
         handlePublishConfirmsAsynchronously();
+        publishMessagesWithConfirmingPublisher();
     }
 
     /**
@@ -45,13 +48,14 @@ public class PublisherConfirms {
             ch.queueDeclare(queue, false, false, true, null);
             // 激活当前channel的发布者确认机制， 默认不启动
             ch.confirmSelect();
+            // 消息体编码到当前线程复用的byte[]中
+            PayloadBuffers buffers = PayloadBuffers.get();
             // 开始时间戳
             long start = System.nanoTime();
             // 循环发布若干条消息进行测试
             for (int i = 0; i < MESSAGE_COUNT; i++) {
-                String body = String.valueOf(i);
                 // 发布消息，采用默认Exchange
-                ch.basicPublish("", queue, null, body.getBytes());
+                ch.basicPublish("", queue, null, buffers.encode(buffers.builder().append(i)));
 
                 /**
                  * 同步等待发布确认返回，可设置超时时长，时间单位是TimeUnit.MILLISECONDS
@@ -85,10 +89,11 @@ public class PublisherConfirms {
             // 当前发送消息的数量
             int outstandingMessageCount = 0;
 
+            // 消息体编码到当前线程复用的byte[]中
+            PayloadBuffers buffers = PayloadBuffers.get();
             long start = System.nanoTime();
             for (int i = 0; i < MESSAGE_COUNT; i++) {
-                String body = String.valueOf(i);
-                ch.basicPublish("", queue, null, body.getBytes());
+                ch.basicPublish("", queue, null, buffers.encode(buffers.builder().append(i)));
                 outstandingMessageCount++;
                 // 若整组消息发送完成后，同步等待发布确认，若这里出现了nack-ed，则可能无法确认是具体哪条消息出现了nack-ed
                 if (outstandingMessageCount == batchSize) {
@@ -105,6 +110,34 @@ public class PublisherConfirms {
         }
     }
 
+    /**
+     * 自适应批量大小的同步批量发布确认
+     * 批量大小在10~1000之间，根据每一批的确认延迟调整，使p99延迟尽量接近但不超过20ms
+     * @throws Exception
+     */
+    static void publishMessagesInAdaptiveBatch() throws Exception {
+        try (Connection connection = RabbitmqConfig.getConnection()) {
+            Channel ch = connection.createChannel();
+
+            String queue = UUID.randomUUID().toString();
+            ch.queueDeclare(queue, false, false, true, null);
+
+            AdaptiveBatchPublisher publisher = new AdaptiveBatchPublisher(ch, 10, 1_000, 20, TimeUnit.MILLISECONDS, 5_000);
+
+            // 消息体编码到当前线程复用的byte[]中
+            PayloadBuffers buffers = PayloadBuffers.get();
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                publisher.publish("", queue, null, buffers.encode(buffers.builder().append(i)));
+            }
+            publisher.flush();
+            long end = System.nanoTime();
+            System.out.format("Published %,d messages in adaptive batch in %,d ms, batch size: %d, confirm rtt: %,d us, p99 batch latency: %,d us%n",
+                    MESSAGE_COUNT, Duration.ofNanos(end - start).toMillis(), publisher.getBatchSize(),
+                    publisher.getLastConfirmRtt(TimeUnit.MICROSECONDS), publisher.getP99BatchLatency(TimeUnit.MICROSECONDS));
+        }
+    }
+
     /**
      * 异步处理发布确认
      * 优点：灵活处理每一条消息发布确认结果，因为是异步，所以性能较好
@@ -161,12 +194,14 @@ public class PublisherConfirms {
                 cleanOutstandingConfirms.handle(sequenceNumber, multiple);
             });
 
+            // 消息体编码到当前线程复用的byte[]中
+            PayloadBuffers buffers = PayloadBuffers.get();
             long start = System.nanoTime();
             for (int i = 0; i < MESSAGE_COUNT; i++) {
                 String body = String.valueOf(i);
                 // 将对应消息和发布消息唯一标识关联起来并且存储在集合中
                 outstandingConfirms.put(ch.getNextPublishSeqNo(), body);
-                ch.basicPublish("", queue, null, body.getBytes());
+                ch.basicPublish("", queue, null, buffers.encode(body));
             }
             // 超过60秒未全部返回确认消息，则报错
             if (!waitUntil(Duration.ofSeconds(60), () -> outstandingConfirms.isEmpty())) {
@@ -178,6 +213,41 @@ public class PublisherConfirms {
         }
     }
 
+    /**
+     * 使用ConfirmingPublisher异步处理发布确认
+     * 与handlePublishConfirmsAsynchronously相同的思路，但是每条消息都有自己的Future，未确认消息数量受窗口限制，
+     * 并且不再需要轮询等待所有消息被确认
+     * @throws Exception
+     */
+    static void publishMessagesWithConfirmingPublisher() throws Exception {
+        try (Connection connection = RabbitmqConfig.getConnection()) {
+            Channel ch = connection.createChannel();
+
+            String queue = UUID.randomUUID().toString();
+            ch.queueDeclare(queue, false, false, true, null);
+            // 最多允许1000条消息未确认，超过后publish阻塞
+            ConfirmingPublisher publisher = new ConfirmingPublisher(ch, 1_000);
+
+            // 消息体编码到当前线程复用的byte[]中
+            PayloadBuffers buffers = PayloadBuffers.get();
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                String body = String.valueOf(i);
+                publisher.publish("", queue, null, buffers.encode(body)).whenComplete((sequenceNumber, cause) -> {
+                    if (cause != null) {
+                        System.err.format("Message with body %s has been nack-ed: %s%n", body, cause.getMessage());
+                    }
+                });
+            }
+            if (!publisher.awaitConfirms(60, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("All messages could not be confirmed in 60 seconds");
+            }
+
+            long end = System.nanoTime();
+            System.out.format("Published %,d messages with ConfirmingPublisher in %,d ms%n", MESSAGE_COUNT, Duration.ofNanos(end - start).toMillis());
+        }
+    }
+
     /**
      * 等待若干时间
      * @param timeout 持续等待市场
@@ -190,7 +260,7 @@ public class PublisherConfirms {
         // 每一百毫秒查看一下判断条件是否成立，若成立则返回；最后持续timeout所包含的持续时长
         while (!condition.getAsBoolean() && waited < timeout.toMillis()) {
             Thread.sleep(100L);
-            waited = +100;
+            waited += 100;
         }
         return condition.getAsBoolean();
     }
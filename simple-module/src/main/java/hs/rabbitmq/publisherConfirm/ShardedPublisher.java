@@ -0,0 +1,193 @@
+package hs.rabbitmq.publisherConfirm;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author heshuai
+ * @title: ShardedPublisher
+ * @description: 多Channel分片发布者
+ *               一个Channel上所有的帧都要串行地经过同一把锁，单个Channel的发布吞吐量最多只能用满一个核。
+ *               这里把消息分散到N个Channel（分片）上，每个分片是一个独立的ConfirmingPublisher，有自己的确认窗口，
+ *               多个线程同时发布时只会在各自选中的分片上竞争，吞吐量可以随核数近似线性增长。
+ *               分片选择策略：
+ *                  ROUND_ROBIN：轮询，吞吐量最好，但同一个routingKey的消息可能落在不同Channel上，不保证顺序
+ *                  ROUTING_KEY_HASH：按routingKey的hash选择，同一个routingKey的消息总是走同一个Channel，保证同一个routingKey内的顺序
+ * @date 2026年10月18日 16:02
+ */
+public class ShardedPublisher implements AutoCloseable {
+
+    public enum ShardStrategy {
+        /**
+         * 轮询
+         */
+        ROUND_ROBIN,
+        /**
+         * 按routingKey的hash选择
+         */
+        ROUTING_KEY_HASH
+    }
+
+    /**
+     * 为每个线程分配不同的轮询起点，避免所有线程竞争同一个计数器
+     */
+    private static final AtomicInteger THREAD_OFFSETS = new AtomicInteger();
+    private static final ThreadLocal<int[]> ROUND_ROBIN = ThreadLocal.withInitial(() -> new int[]{THREAD_OFFSETS.getAndIncrement()});
+
+    private final ConfirmingPublisher[] shards;
+    private final ShardStrategy strategy;
+    /**
+     * 由当前发布者创建、需要在close时关闭的Connection
+     */
+    private final List<Connection> ownedConnections;
+
+    /**
+     * 使用调用方提供的Channel创建分片，Channel的生命周期由调用方管理
+     * @param channels 每个Channel对应一个分片，同一个Channel不要再被其它代码用来发布消息
+     * @param maxInFlightPerShard 每个分片的最大未确认消息数量
+     * @param strategy 分片选择策略
+     * @throws IOException
+     */
+    public ShardedPublisher(List<Channel> channels, int maxInFlightPerShard, ShardStrategy strategy) throws IOException {
+        this(channels, maxInFlightPerShard, strategy, Collections.emptyList());
+    }
+
+    private ShardedPublisher(List<Channel> channels, int maxInFlightPerShard, ShardStrategy strategy,
+                             List<Connection> ownedConnections) throws IOException {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is required");
+        }
+        this.shards = new ConfirmingPublisher[channels.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ConfirmingPublisher(channels.get(i), maxInFlightPerShard);
+        }
+        this.strategy = strategy;
+        this.ownedConnections = ownedConnections;
+    }
+
+    /**
+     * 新建connectionCount个Connection，并把shardCount个分片均匀分布在这些Connection上，
+     * Connection会在close时一起关闭
+     * @param connectionFactory 连接工厂
+     * @param shardCount 分片（Channel）数量
+     * @param connectionCount Connection数量，一个Connection只有一个I/O线程，分片较多时可以分散到多个Connection上
+     * @param maxInFlightPerShard 每个分片的最大未确认消息数量
+     * @param strategy 分片选择策略
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static ShardedPublisher create(ConnectionFactory connectionFactory, int shardCount, int connectionCount,
+                                          int maxInFlightPerShard, ShardStrategy strategy) throws IOException, TimeoutException {
+        if (shardCount <= 0 || connectionCount <= 0) {
+            throw new IllegalArgumentException("shardCount and connectionCount must be positive");
+        }
+        List<Connection> connections = new ArrayList<>(connectionCount);
+        boolean created = false;
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                connections.add(connectionFactory.newConnection());
+            }
+            List<Channel> channels = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                channels.add(connections.get(i % connectionCount).createChannel());
+            }
+            ShardedPublisher publisher = new ShardedPublisher(channels, maxInFlightPerShard, strategy, connections);
+            created = true;
+            return publisher;
+        } finally {
+            // 任何异常（包括newConnection的TimeoutException）都要关闭已经建立的Connection
+            if (!created) {
+                closeAll(connections);
+            }
+        }
+    }
+
+    /**
+     * 选择一个分片发布消息，选中分片的窗口已满时阻塞等待
+     * @return 消息确认的Future，结果为消息在所在分片上的sequenceNumber
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public CompletableFuture<Long> publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException {
+        return shards[shardIndex(routingKey)].publish(exchange, routingKey, props, body);
+    }
+
+    /**
+     * 等待所有分片上已发布的消息都被确认
+     * @return 超时返回false
+     * @throws InterruptedException
+     */
+    public boolean awaitConfirms(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ConfirmingPublisher shard : shards) {
+            if (!shard.awaitConfirms(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return 所有分片窗口中的消息数量之和
+     */
+    public int inFlight() {
+        int inFlight = 0;
+        for (ConfirmingPublisher shard : shards) {
+            inFlight += shard.inFlight();
+        }
+        return inFlight;
+    }
+
+    @Override
+    public void close() {
+        for (ConfirmingPublisher shard : shards) {
+            shard.close();
+        }
+        closeAll(ownedConnections);
+    }
+
+    private int shardIndex(String routingKey) {
+        if (shards.length == 1) {
+            return 0;
+        }
+        int hash;
+        if (strategy == ShardStrategy.ROUTING_KEY_HASH) {
+            hash = routingKey.hashCode();
+            // 与HashMap一样把高位混合到低位
+            hash ^= hash >>> 16;
+        } else {
+            int[] counter = ROUND_ROBIN.get();
+            hash = counter[0]++;
+        }
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    private static void closeAll(List<Connection> connections) {
+        for (Connection connection : connections) {
+            try {
+                if (connection.isOpen()) {
+                    connection.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
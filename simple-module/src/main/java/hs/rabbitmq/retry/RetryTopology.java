@@ -0,0 +1,191 @@
+package hs.rabbitmq.retry;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: RetryTopology
+ * @description: 基于TTL和死信Exchange的分级延迟重试
+ *               处理失败的消息basicNack(requeue=true)会立即回到队列头部，马上又投递给消费者，
+ *               下游故障没有恢复时就是一个空转的死循环，白白消耗broker和消费者；requeue=false又直接丢了。
+ *               这里为队列queue声明一组延迟队列，失败的消息按重试次数进入对应的延迟队列，等待一段时间后再回到原队列：
+ *                  1. queue.retry：direct类型的Exchange，routingKey为延迟队列的序号
+ *                  2. queue.retry.<延迟毫秒数>：x-message-ttl为延迟时间，没有消费者，消息过期后由死信机制
+ *                     （x-dead-letter-exchange为默认Exchange，x-dead-letter-routing-key为queue）送回原队列；
+ *                     同一个延迟队列中所有消息的TTL相同，先进先出，不会出现单条消息设置expiration时被前面的消息挡住的问题
+ *                  3. queue.dlq：超过maxAttempts次仍然失败的消息停放在这里，等待人工处理
+ *               重试次数记录在消息头x-retry-attempt中，第n次重试进入第n个延迟队列，超过延迟队列数量时使用最后一个，
+ *               最后一次失败的异常信息记录在消息头x-retry-error中。
+ *               使用方式：declare声明拓扑，handler(...)包装WorkerPoolConsumer的处理逻辑，处理失败时重新发布到延迟队列或者停放队列，
+ *               然后由WorkerPoolConsumer照常确认原消息；重新发布失败时抛出异常，由WorkerPoolConsumer按原来的方式basicNack。
+ *               重新发布的Channel开启发布确认，broker确认收到重新发布的消息之后才返回，原消息才会被确认，
+ *               broker拒绝或者超过CONFIRM_TIMEOUT毫秒没有确认时同样抛出异常，消息不会在两步之间丢失。
+ *               注意：
+ *                  1. 先发布再确认，两步之间崩溃时消息会重复，消费者需要是幂等的；与IdempotencyCache一起使用时，
+ *                     去重要包在里面：retry.handler(dedup.handler(...))，否则失败的消息也会被记录为已处理，重试时被当作重复消息跳过
+ *                  2. 重新发布的消息保留原消息的所有属性（持久化、优先级、messageId等），只增加上面两个消息头
+ *                  3. 传入的Channel会被设置为发布确认模式，等待确认时会等待这个Channel上所有未确认的消息，
+ *                     应该使用单独的Channel，不要与消费原消息或者发布其它消息的Channel共用
+ *                  4. 延迟队列以延迟时间命名，delays不能有重复的值
+ * @date 2026年10月19日 00:40
+ */
+public class RetryTopology {
+
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String ERROR_HEADER = "x-retry-error";
+    /**
+     * 等待broker确认重新发布的消息的时间，单位：毫秒
+     */
+    public static final long CONFIRM_TIMEOUT = 5_000;
+
+    private final String queue;
+    private final int maxAttempts;
+    private final long[] delays;
+    private final Channel channel;
+
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+
+    /**
+     * @param channel 声明拓扑和重新发布消息的Channel，会被设置为发布确认模式，不要与消费消息的Channel共用
+     * @param queue 需要重试的队列
+     * @param maxAttempts 最多重试的次数，超过后进入停放队列
+     * @param delays 每一级延迟的时间，单位：毫秒，例如 1000, 10_000, 60_000, 600_000，不能重复
+     */
+    public RetryTopology(Channel channel, String queue, int maxAttempts, long... delays) throws IOException {
+        if (maxAttempts < 0 || delays.length == 0) {
+            throw new IllegalArgumentException("maxAttempts must not be negative and at least one delay is required");
+        }
+        Set<Long> distinct = new HashSet<>();
+        for (long delay : delays) {
+            if (delay < 0 || !distinct.add(delay)) {
+                throw new IllegalArgumentException("delays must be non-negative and distinct: " + Arrays.toString(delays));
+            }
+        }
+        channel.confirmSelect();
+        this.channel = channel;
+        this.queue = queue;
+        this.maxAttempts = maxAttempts;
+        this.delays = delays.clone();
+    }
+
+    /**
+     * 声明重试Exchange、延迟队列和停放队列，都是持久化的，原队列由调用方声明
+     */
+    public void declare() throws IOException {
+        channel.exchangeDeclare(retryExchange(), BuiltinExchangeType.DIRECT, true);
+        for (int tier = 0; tier < delays.length; tier++) {
+            Map<String, Object> arguments = new HashMap<>();
+            arguments.put("x-message-ttl", delays[tier]);
+            // 过期后经默认Exchange回到原队列
+            arguments.put("x-dead-letter-exchange", "");
+            arguments.put("x-dead-letter-routing-key", queue);
+            channel.queueDeclare(delayQueue(tier), true, false, false, arguments);
+            channel.queueBind(delayQueue(tier), retryExchange(), String.valueOf(tier));
+        }
+        channel.queueDeclare(parkingQueue(), true, false, false, null);
+    }
+
+    /**
+     * 包装WorkerPoolConsumer的处理逻辑，处理失败时延迟重试或者停放
+     */
+    public WorkerPoolConsumer.DeliveryHandler handler(WorkerPoolConsumer.DeliveryHandler delegate) {
+        return (envelope, properties, body) -> {
+            try {
+                delegate.handle(envelope, properties, body);
+            } catch (Exception e) {
+                e.printStackTrace();
+                retry(envelope, properties, body, e);
+            }
+        };
+    }
+
+    /**
+     * 把处理失败的消息发布到下一级延迟队列，超过最大重试次数时发布到停放队列，等待broker确认后返回，不会确认原消息
+     * @return true：进入延迟队列；false：进入停放队列
+     * @throws IOException 发布失败、broker拒绝或者等待确认超时，此时原消息不能确认
+     */
+    public boolean retry(Envelope envelope, AMQP.BasicProperties properties, byte[] body, Exception cause) throws IOException {
+        int attempt = attempts(properties) + 1;
+        Map<String, Object> headers = properties == null || properties.getHeaders() == null
+                ? new HashMap<>() : new HashMap<>(properties.getHeaders());
+        headers.put(ATTEMPT_HEADER, attempt);
+        headers.put(ERROR_HEADER, String.valueOf(cause));
+        AMQP.BasicProperties retryProperties = (properties == null ? new AMQP.BasicProperties() : properties).builder()
+                .headers(headers).build();
+        if (attempt > maxAttempts) {
+            channel.basicPublish("", parkingQueue(), retryProperties, body);
+            waitForConfirm();
+            parked.incrementAndGet();
+            return false;
+        }
+        int tier = Math.min(attempt, delays.length) - 1;
+        channel.basicPublish(retryExchange(), String.valueOf(tier), retryProperties, body);
+        waitForConfirm();
+        retried.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 不使用waitForConfirmsOrDie：它在拒绝或者超时时会关闭Channel，之后所有的重试都会失败
+     */
+    private void waitForConfirm() throws IOException {
+        try {
+            if (!channel.waitForConfirms(CONFIRM_TIMEOUT)) {
+                throw new IOException("Broker nacked the republished message of " + queue);
+            }
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for the broker to confirm the republished message of " + queue, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the broker to confirm the republished message of " + queue, e);
+        }
+    }
+
+    /**
+     * @return 消息已经重试过的次数
+     */
+    public int attempts(AMQP.BasicProperties properties) {
+        Object value = properties == null || properties.getHeaders() == null ? null : properties.getHeaders().get(ATTEMPT_HEADER);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    public String retryExchange() {
+        return queue + ".retry";
+    }
+
+    public String delayQueue(int tier) {
+        return queue + ".retry." + delays[tier];
+    }
+
+    public String parkingQueue() {
+        return queue + ".dlq";
+    }
+
+    /**
+     * @return 进入延迟队列的消息数量
+     */
+    public long retried() {
+        return retried.get();
+    }
+
+    /**
+     * @return 进入停放队列的消息数量
+     */
+    public long parked() {
+        return parked.get();
+    }
+}
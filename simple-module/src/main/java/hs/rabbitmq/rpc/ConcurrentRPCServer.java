@@ -0,0 +1,316 @@
+package hs.rabbitmq.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import hs.rabbitmq.consumer.AckCoalescer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: ConcurrentRPCServer
+ * @description: 多Channel、工作线程池处理请求的RPC服务端
+ *               RPCServer在一个Channel上basicQos(1)消费，在分发线程上计算，一个进程同一时刻只处理一个请求，CPU再多也用不上。
+ *               这里把“接收请求”、“计算”、“回复”拆开：
+ *                  1. 在channels个Channel上订阅同一个请求queue，每个Channel的prefetch为ceil(workers * 2 / channels)，
+ *                     保证每个工作线程手上有一个请求在处理、一个请求在排队，回复和确认在路上时工作线程也不会空闲
+ *                  2. handleDelivery只把请求交给工作线程池（workers个线程，默认为CPU核数），计算在工作线程上执行
+ *                  3. 回复由一个线程集中发送：工作线程把回复放进所属Channel的队列，没有其它线程正在发送时由它连续发送队列中所有的回复，
+ *                     其它工作线程放进队列后直接返回继续计算，不会在Channel上排队等锁；
+ *                     每个回复仍然是一次basicPublish（AMQP没有一次发布多条消息的方法），减少的只是线程之间对Channel的争用；
+ *                     确认通过AckCoalescer合并成multiple=true的basicAck，每批只发送一个ack帧
+ *                  4. 处理失败时仍然回复（消息体为空，x-rpc-error消息头为异常信息），客户端不需要等到超时；没有replyTo的请求只确认
+ *                  5. close：先取消所有订阅，不再接收新请求，再等待已经收到的请求处理完成、回复和确认发送完成，最后关闭Channel
+ *                  6. 可选的SingleFlight：在handleDelivery中登记，排队或者计算期间到达的相同请求只计算一次，
+ *                     其余的请求不进入工作线程池，计算完成后按各自的replyTo、correlationId回复
+ *               注意：请求的处理顺序与投递顺序无关，需要顺序时不要使用这个类
+ * @date 2026年10月19日 06:00
+ */
+@SuppressWarnings("try") // close()等待已收到的请求回复完成，被中断时不再等待
+public class ConcurrentRPCServer implements AutoCloseable {
+
+    public static final String ERROR_HEADER = "x-rpc-error";
+
+    /**
+     * 单个请求的处理逻辑，在工作线程上执行
+     */
+    @FunctionalInterface
+    public interface RequestHandler {
+        /**
+         * @return 回复的消息体
+         */
+        byte[] handle(AMQP.BasicProperties properties, byte[] body) throws Exception;
+    }
+
+    private final Connection connection;
+    private final String queue;
+    private final RequestHandler handler;
+    private final SingleFlight singleFlight;
+    private final int channelCount;
+    private final int prefetch;
+    private final ThreadPoolExecutor workers;
+    private final List<RequestConsumer> consumers = new ArrayList<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong replyBatches = new AtomicLong();
+
+    /**
+     * 工作线程数量为CPU核数，Channel数量为min(工作线程数量, 4)
+     */
+    public ConcurrentRPCServer(Connection connection, String queue, RequestHandler handler) {
+        this(connection, queue, handler, Math.min(Runtime.getRuntime().availableProcessors(), 4),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param connection 创建消费Channel的Connection
+     * @param queue 请求queue，需要事先声明
+     * @param handler 请求的处理逻辑
+     * @param channels 订阅请求queue的Channel数量
+     * @param workers 工作线程数量，CPU密集的处理逻辑取CPU核数
+     */
+    public ConcurrentRPCServer(Connection connection, String queue, RequestHandler handler, int channels, int workers) {
+        this(connection, queue, handler, channels, workers, null);
+    }
+
+    /**
+     * @param singleFlight 合并同时到达的相同请求，null表示每个请求各自计算
+     */
+    public ConcurrentRPCServer(Connection connection, String queue, RequestHandler handler, int channels, int workers,
+                               SingleFlight singleFlight) {
+        if (channels <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("channels and workers must be positive");
+        }
+        this.connection = connection;
+        this.queue = queue;
+        this.handler = handler;
+        this.singleFlight = singleFlight;
+        this.channelCount = channels;
+        this.prefetch = (workers * 2 + channels - 1) / channels;
+        AtomicInteger threads = new AtomicInteger();
+        // 排队的请求数量不超过channels * prefetch，不需要有界队列
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "rpc-server-worker-" + threads.getAndIncrement()));
+    }
+
+    /**
+     * 创建Channel并订阅请求queue
+     */
+    public synchronized void start() throws IOException {
+        for (int i = 0; i < channelCount; i++) {
+            Channel channel = connection.createChannel();
+            channel.basicQos(prefetch);
+            RequestConsumer consumer = new RequestConsumer(channel);
+            consumer.consumerTag = channel.basicConsume(queue, false, consumer);
+            consumers.add(consumer);
+        }
+    }
+
+    /**
+     * @return 每个Channel的prefetch
+     */
+    public int prefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @return 处理成功的请求数量
+     */
+    public long processed() {
+        return processed.get();
+    }
+
+    /**
+     * @return 处理失败的请求数量
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * @return 发送线程清空回复队列的次数，processed() + failed()与它的比值即平均每次连续发送的回复数量
+     */
+    public long replyBatches() {
+        return replyBatches.get();
+    }
+
+    /**
+     * 停止接收新请求，等待已经收到的请求处理完成并回复，然后关闭Channel，不会关闭Connection
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        List<RequestConsumer> started;
+        synchronized (this) {
+            started = new ArrayList<>(consumers);
+            consumers.clear();
+        }
+        for (RequestConsumer consumer : started) {
+            consumer.cancel();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            // 超时还没处理完的请求不再回复，Channel关闭后由broker重新投递
+            workers.shutdownNow();
+        }
+        for (RequestConsumer consumer : started) {
+            consumer.close();
+        }
+    }
+
+    /**
+     * 一个Channel上的消费者，同时负责这个Channel上的回复和确认
+     */
+    private final class RequestConsumer extends DefaultConsumer {
+
+        private final AckCoalescer acks;
+        private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile String consumerTag;
+
+        private RequestConsumer(Channel channel) {
+            super(channel);
+            // 确认最多延迟1ms，prefetch较小时也不会因为等待确认而拿不到新请求
+            this.acks = new AckCoalescer(channel, Math.max(1, prefetch / 2), 1, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            acks.delivered(envelope.getDeliveryTag());
+            if (singleFlight != null) {
+                // follower的回调在leader算完后在leader的工作线程上执行；leader已经算完时在当前线程上直接回复
+                // 工作线程池已经关闭时请求不处理也不确认；处理逻辑抛出的RejectedExecutionException照常作为失败回复
+                singleFlight.execute(properties, body, handler, workers).whenComplete((response, e) -> {
+                    if (!(e instanceof SingleFlight.SubmitRejectedException)) {
+                        reply(envelope, properties, response, e);
+                    }
+                });
+                return;
+            }
+            try {
+                workers.execute(() -> process(envelope, properties, body));
+            } catch (RejectedExecutionException e) {
+                // 已经关闭，请求不处理也不确认，Channel关闭后由broker重新投递
+            }
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            // 未确认的请求会被broker重新投递，还没发送的回复不再发送
+            replies.clear();
+        }
+
+        private void process(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            byte[] response = null;
+            Throwable error = null;
+            try {
+                response = handler.handle(properties, body);
+            } catch (Exception e) {
+                error = e;
+            }
+            reply(envelope, properties, response, error);
+        }
+
+        private void reply(Envelope envelope, AMQP.BasicProperties properties, byte[] response, Throwable e) {
+            String error = null;
+            if (e == null) {
+                processed.incrementAndGet();
+            } else {
+                e.printStackTrace();
+                failed.incrementAndGet();
+                response = new byte[0];
+                error = e.toString();
+            }
+            String replyTo = properties == null ? null : properties.getReplyTo();
+            AMQP.BasicProperties replyProps = null;
+            if (replyTo != null) {
+                AMQP.BasicProperties.Builder builder = new AMQP.BasicProperties.Builder()
+                        .correlationId(properties.getCorrelationId());
+                if (error != null) {
+                    builder.headers(Collections.singletonMap(ERROR_HEADER, error));
+                }
+                replyProps = builder.build();
+            }
+            replies.add(new Reply(envelope.getDeliveryTag(), replyTo, replyProps, response));
+            sendReplies();
+        }
+
+        /**
+         * 同一时刻只有一个线程发送，其它线程放入队列后直接返回；
+         * 发送的线程退出前再检查一次队列，避免最后放入的回复没有人发送
+         */
+        private void sendReplies() {
+            while (!replies.isEmpty() && sending.compareAndSet(false, true)) {
+                try {
+                    Reply reply;
+                    while ((reply = replies.poll()) != null) {
+                        if (reply.replyTo != null) {
+                            getChannel().basicPublish("", reply.replyTo, reply.properties, reply.body);
+                        }
+                        acks.ack(reply.deliveryTag);
+                    }
+                    replyBatches.incrementAndGet();
+                } catch (IOException | ShutdownSignalException e) {
+                    // Channel已经关闭，未确认的请求会被broker重新投递
+                    e.printStackTrace();
+                    replies.clear();
+                } finally {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void cancel() {
+            try {
+                if (consumerTag != null && getChannel().isOpen()) {
+                    getChannel().basicCancel(consumerTag);
+                }
+            } catch (IOException | ShutdownSignalException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void close() throws IOException {
+            sendReplies();
+            acks.close();
+            try {
+                if (getChannel().isOpen()) {
+                    getChannel().close();
+                }
+            } catch (TimeoutException | ShutdownSignalException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static final class Reply {
+        private final long deliveryTag;
+        private final String replyTo;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        private Reply(long deliveryTag, String replyTo, AMQP.BasicProperties properties, byte[] body) {
+            this.deliveryTag = deliveryTag;
+            this.replyTo = replyTo;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+}
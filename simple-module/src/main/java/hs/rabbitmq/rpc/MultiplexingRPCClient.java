@@ -0,0 +1,269 @@
+package hs.rabbitmq.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: MultiplexingRPCClient
+ * @description: 多个RPC请求共用一个回复消费者的RPC客户端
+ *               RPCClient.call每次请求都要声明一个新的回复queue、订阅、收到回复后再取消订阅，
+ *               比请求本身多了三次broker往返和一次queue的创建、删除，而且一个Channel上同时只能有一个请求。
+ *               这里在创建时订阅一次回复queue，之后所有请求共用：
+ *                  1. 回复queue：默认使用direct reply-to（amq.rabbitmq.reply-to），broker把回复直接推给这个Channel的消费者，
+ *                     不需要真正的queue；也可以在创建时声明一个server-named的exclusive queue
+ *                  2. 每个请求一个correlationId（客户端前缀 + 自增序号，不用UUID），等待中的请求保存在correlationId -> CompletableFuture的Map中，
+ *                     回复到达时按correlationId取出并完成，所以任意多个线程可以同时发起请求，同时在途的请求数量只受内存限制
+ *                  3. 超时：每个请求在timeout后仍然没有回复时从Map中删除，并以TimeoutException结束；超时之后才到达的回复直接丢弃
+ *                  4. Channel关闭时，所有等待中的请求以ShutdownSignalException结束
+ *                  5. 异步调用：callAsync立即返回CompletableFuture，不占用调用线程，一个线程可以同时发起任意多个请求；
+ *                     每个请求可以指定自己的超时时间（deadline）；取消Future（cancel）时同时删除correlationId和超时任务，之后到达的回复直接丢弃
+ *                  6. 背压：同时在途的请求数量不超过maxOutstanding，callAsync超过时不等待，返回以RejectedExecutionException结束的Future，
+ *                     由调用方决定降级或者稍后重试；阻塞的call在超时时间内等待空位
+ *               注意：direct reply-to要求请求从订阅了amq.rabbitmq.reply-to的同一个Channel发出，所以请求和回复都在创建时传入的Channel上，
+ *                  这个Channel不要再用于其它用途；多个线程发布时在这里加锁，保证同一时刻只有一个线程在这个Channel上发布。
+ *                  Future在Connection的分发线程上完成，回调中不要做阻塞操作，需要阻塞时使用thenApplyAsync等方法交给其它线程
+ * @date 2026年10月19日 04:20
+ */
+public class MultiplexingRPCClient implements AutoCloseable {
+
+    public static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private final Channel channel;
+    private final String exchange;
+    private final String routingKey;
+    private final long timeoutNanos;
+    private final String replyTo;
+    private final String consumerTag;
+    private final String correlationPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Map<String, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final Object publishLock = new Object();
+    /**
+     * 在途请求的许可，许可数量即maxOutstanding
+     */
+    private final Semaphore outstanding;
+    private volatile boolean closed;
+
+    /**
+     * 使用direct reply-to
+     * @param channel 发送请求、接收回复的Channel，由这个客户端独占
+     * @param exchange 请求发往的exchange，默认exchange为""
+     * @param routingKey 请求的routingKey，默认exchange时即请求queue的名字
+     * @param timeout 等待回复的时间
+     */
+    public MultiplexingRPCClient(Channel channel, String exchange, String routingKey, long timeout, TimeUnit unit) throws IOException {
+        this(channel, exchange, routingKey, true, timeout, unit);
+    }
+
+    /**
+     * 同时在途的请求数量不限
+     * @param directReplyTo true：使用direct reply-to；false：声明一个server-named的exclusive queue作为回复queue
+     */
+    public MultiplexingRPCClient(Channel channel, String exchange, String routingKey, boolean directReplyTo,
+                                 long timeout, TimeUnit unit) throws IOException {
+        this(channel, exchange, routingKey, directReplyTo, timeout, unit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param directReplyTo true：使用direct reply-to；false：声明一个server-named的exclusive queue作为回复queue
+     * @param timeout 没有指定超时时间的请求等待回复的时间
+     * @param maxOutstanding 同时在途（已发送、还没有收到回复或超时）的请求数量上限
+     */
+    public MultiplexingRPCClient(Channel channel, String exchange, String routingKey, boolean directReplyTo,
+                                 long timeout, TimeUnit unit, int maxOutstanding) throws IOException {
+        if (maxOutstanding <= 0) {
+            throw new IllegalArgumentException("maxOutstanding must be positive");
+        }
+        this.channel = channel;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.outstanding = new Semaphore(maxOutstanding);
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "rpc-client-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 收到回复后取消的超时任务直接从队列中删除，不会堆积到超时时间
+        this.timer.setRemoveOnCancelPolicy(true);
+        String replyQueue = directReplyTo ? DIRECT_REPLY_TO : channel.queueDeclare().getQueue();
+        this.replyTo = replyQueue;
+        // direct reply-to必须自动确认
+        this.consumerTag = channel.basicConsume(replyQueue, true, new ReplyConsumer(channel));
+    }
+
+    /**
+     * 发送请求并等待回复
+     * @return 回复的消息体
+     * @throws TimeoutException 超过timeout没有收到回复，或者在途请求已满并且timeout内没有空位
+     * @throws IOException 发送失败，或者等待期间Channel被关闭
+     */
+    public byte[] call(byte[] body) throws IOException, InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        if (!outstanding.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("Too many outstanding calls");
+        }
+        CompletableFuture<byte[]> reply = send(body, deadline - System.nanoTime());
+        try {
+            return reply.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 按UTF-8编码请求、解码回复
+     */
+    public String call(String message) throws IOException, InterruptedException, TimeoutException {
+        return new String(call(message.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 异步发送请求，使用创建时指定的超时时间
+     */
+    public CompletableFuture<byte[]> callAsync(byte[] body) {
+        return callAsync(body, timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 异步发送请求，不阻塞调用线程
+     * @param timeout 这个请求等待回复的时间，超过后Future以TimeoutException结束
+     * @return 回复消息体的Future；在途请求已满时以RejectedExecutionException结束，发送失败时以IOException结束；
+     *         cancel会删除这个请求的correlationId和超时任务
+     */
+    public CompletableFuture<byte[]> callAsync(byte[] body, long timeout, TimeUnit unit) {
+        if (!outstanding.tryAcquire()) {
+            CompletableFuture<byte[]> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RejectedExecutionException("Too many outstanding calls"));
+            return rejected;
+        }
+        return send(body, unit.toNanos(timeout));
+    }
+
+    /**
+     * @return 已发送、还没有收到回复的请求数量
+     */
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * 取消回复消费者，等待中的请求以IOException结束，不会关闭Channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel.isOpen()) {
+                channel.basicCancel(consumerTag);
+            }
+        } finally {
+            closed = true;
+            timer.shutdownNow();
+            failAll(new IOException("RPC client closed"));
+        }
+    }
+
+    /**
+     * 发送请求，调用前已经获取了在途请求的许可。先登记再发布，避免回复比登记先到达；
+     * Future以任何方式结束（回复、超时、取消、失败）时删除登记、取消超时任务、归还许可
+     */
+    private CompletableFuture<byte[]> send(byte[] body, long timeoutNanos) {
+        String correlationId = correlationPrefix + correlationIds.incrementAndGet();
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        ScheduledFuture<?> timeout;
+        try {
+            timeout = timer.schedule(() -> reply.completeExceptionally(new TimeoutException("No reply for "
+                    + correlationId + " within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms")),
+                    timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+            timeout = null;
+        }
+        ScheduledFuture<?> timeoutTask = timeout;
+        reply.whenComplete((result, e) -> {
+            pending.remove(correlationId, reply);
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            outstanding.release();
+        });
+        if (closed || timeoutTask == null) {
+            reply.completeExceptionally(new IOException("RPC client closed"));
+            return reply;
+        }
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .correlationId(correlationId)
+                .replyTo(replyTo)
+                .build();
+        try {
+            synchronized (publishLock) {
+                channel.basicPublish(exchange, routingKey, props, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    private void failAll(Throwable cause) {
+        for (String correlationId : pending.keySet()) {
+            CompletableFuture<byte[]> reply = pending.remove(correlationId);
+            if (reply != null) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * 唯一的回复消费者，按correlationId把回复交给等待的请求
+     */
+    private final class ReplyConsumer extends DefaultConsumer {
+
+        private ReplyConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            String correlationId = properties == null ? null : properties.getCorrelationId();
+            CompletableFuture<byte[]> reply = correlationId == null ? null : pending.remove(correlationId);
+            // 没有correlationId、已经超时或者不是这个客户端发出的请求的回复，直接丢弃
+            if (reply != null) {
+                reply.complete(body);
+            }
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            failAll(sig);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -28,12 +29,15 @@ public class RPCClient {
         try {
             // 新建一个channel
             channel = RabbitmqConfig.getChannel();
-            // 循环调用RPCServer，查看返回结果
-            for (int i = 0; i < 16; i++) {
-                String i_str = Integer.toString(i);
-                System.out.println(" [x] Requesting fib(" + i_str + ")");
-                String response = call(i_str);
-                System.out.println(" [.] Got '" + response + "'");
+            // 所有请求共用一个direct reply-to消费者，不再每次请求声明回复queue
+            try (MultiplexingRPCClient client = new MultiplexingRPCClient(channel, "", requestQueueName, 10, TimeUnit.SECONDS)) {
+                // 循环调用RPCServer，查看返回结果
+                for (int i = 0; i < 16; i++) {
+                    String i_str = Integer.toString(i);
+                    System.out.println(" [x] Requesting fib(" + i_str + ")");
+                    String response = client.call(i_str);
+                    System.out.println(" [.] Got '" + response + "'");
+                }
             }
         } catch (IOException | TimeoutException | InterruptedException e) {
             e.printStackTrace();
@@ -51,6 +55,18 @@ public class RPCClient {
      * @throws InterruptedException
      */
     public static String call(String message) throws IOException, InterruptedException {
+        return call(channel, requestQueueName, message);
+    }
+
+    /**
+     * 每次请求声明一个回复queue、订阅、收到回复后取消订阅，比请求本身多了三次broker往返，
+     * 同一个Channel上同时只能有一个请求；保留用于和MultiplexingRPCClient对比（RpcClientBenchmark）
+     * @param channel 发送请求的Channel
+     * @param requestQueueName 请求queue
+     * @param message 请求内容
+     * @return 回复内容
+     */
+    public static String call(Channel channel, String requestQueueName, String message) throws IOException, InterruptedException {
         // 生成唯一的correlationId,用来辨别返回response
         final String corrId = UUID.randomUUID().toString();
         // 生成返回queue，也就是当RPC request到达server后，由server返回的response所发送的queue
@@ -1,10 +1,10 @@
 package hs.rabbitmq.rpc;
 
-import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.DeliverCallback;
 import hs.rabbitmq.config.RabbitmqConfig;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author heshuai
  * @title: RPCServer
@@ -39,67 +39,50 @@ public class RPCServer {
              * 清除指定queue的内容，就是将queue中消息清空
              */
             channel.queuePurge(RPC_QUEUE_NAME);
+
+            /**
+             * 多个Channel订阅、工作线程池（CPU核数个线程）计算，回复由一个线程集中发送，确认合并发送，
+             * 不再是一个Channel、basicQos(1)、在分发线程上一次只处理一个请求
+             */
             /**
-             * 设置一次性预处理消息数量
+             * fib是纯函数，同样的参数总是得到同样的结果，用ResultCache包装后重复的请求直接返回缓存的结果，不再重新计算
+             * 最多1024个结果、1MB，10分钟过期，只按消息体区分请求；
+             * 缓存还没有结果时同时到达的相同请求由SingleFlight合并，只计算一次
              */
-            channel.basicQos(1);
+            ResultCache cache = new ResultCache(1024, 1024 * 1024, 10, TimeUnit.MINUTES);
+            SingleFlight singleFlight = new SingleFlight();
+            int cpus = Runtime.getRuntime().availableProcessors();
+            ConcurrentRPCServer server = new ConcurrentRPCServer(channel.getConnection(), RPC_QUEUE_NAME, cache.handler((properties, body) -> {
+                // Request参数
+                String message = new String(body, "UTF-8");
+                int n = Integer.parseInt(message);
 
+                System.out.println(" [.] fib(" + message + ")");
+                // 获取Fibonacci数字，并封装结果；参数不是数字时抛出异常，回复的x-rpc-error消息头为异常信息
+                return Integer.toString(fib(n)).getBytes("UTF-8");
+            }), Math.min(cpus, 4), cpus, singleFlight);
+            server.start();
             System.out.println(" [x] Awaiting RPC requests");
 
-            Object monitor = new Object();
-
-            DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-                /**
-                 * 响应Message的配置信息
-                 * correlationId：与Request相关联的唯一Id
-                  */
-                AMQP.BasicProperties replyProps = new AMQP.BasicProperties
-                        .Builder()
-                        .correlationId(delivery.getProperties().getCorrelationId())
-                        .build();
-                /**
-                 * RPC响应结果
-                 */
-                String response = "";
-
+            // 进程退出（Ctrl+C）时先处理完已经收到的请求，再关闭连接
+            Thread shutdownHook = new Thread(() -> {
                 try {
-                    // Request参数
-                    String message = new String(delivery.getBody(), "UTF-8");
-                    int n = Integer.parseInt(message);
-
-                    System.out.println(" [.] fib(" + message + ")");
-                    // 获取Fibonacci数字，并封装结果
-                    response += fib(n);
-                } catch (RuntimeException e) {
-                    System.out.println(" [.] " + e.toString());
-                } finally {
-                    // 返回Response给Client，采用默认Exchange
-                    channel.basicPublish("", delivery.getProperties().getReplyTo(), replyProps, response.getBytes("UTF-8"));
-                    // 手动确认单条消息
-                    channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-                    // RabbitMq consumer worker thread notifies the RPC server owner thread
-                    synchronized (monitor) {
-                        monitor.notify();
-                    }
-                }
-            };
-
-            channel.basicConsume(RPC_QUEUE_NAME, false, deliverCallback, (consumerTag -> { }));
-            // 使main线程不关闭，等待consume消息
-            while (true) {
-                synchronized (monitor) {
-                    try {
-                        monitor.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                    server.close();
+                    channel.getConnection().close();
+                    System.out.printf(" [x] Result cache hit ratio %.2f (%d hits, %d misses)%n", cache.hitRatio(), cache.hits(), cache.misses());
+                    System.out.printf(" [x] Single flight %d executions, %d coalesced%n", singleFlight.executions(), singleFlight.coalesced());
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            // 工作线程不是守护线程，main线程返回后进程不会退出，继续处理请求
         }catch (Exception e){
             e.printStackTrace();
-        }finally {
             // 关闭连接
-            channel.getConnection().close();
+            if (channel != null) {
+                channel.getConnection().close();
+            }
         }
     }
 }
@@ -0,0 +1,83 @@
+package hs.rabbitmq.rpc;
+
+import com.rabbitmq.client.AMQP;
+import hs.rabbitmq.util.Hashing;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * @author heshuai
+ * @title: RequestKey
+ * @description: RPC请求的key：消息体 + 指定消息头的值，ResultCache和SingleFlight用它判断两个请求是否相同
+ *               哈希值只用于查找，equals比较完整的消息体和消息头，哈希冲突不会把不同的请求当成同一个
+ *               注意：持有请求的byte[]，调用方不要修改
+ * @date 2026年10月19日 08:00
+ */
+public final class RequestKey {
+
+    private static final String[] NO_HEADERS = new String[0];
+
+    private final byte[] body;
+    private final String[] headers;
+    private final int hash;
+
+    private RequestKey(byte[] body, String[] headers) {
+        this.body = body;
+        this.headers = headers;
+        this.hash = hash(body, headers);
+    }
+
+    /**
+     * @param keyHeaders 参与比较的消息头，请求中没有的消息头按null比较
+     */
+    public static RequestKey of(AMQP.BasicProperties properties, byte[] body, String... keyHeaders) {
+        String[] values = keyHeaders.length == 0 ? NO_HEADERS : new String[keyHeaders.length];
+        Map<String, Object> headers = properties == null ? null : properties.getHeaders();
+        for (int i = 0; i < keyHeaders.length; i++) {
+            Object value = headers == null ? null : headers.get(keyHeaders[i]);
+            // 从broker收到的字符串类型的消息头是LongString，统一转成String比较
+            values[i] = value == null ? null : value.toString();
+        }
+        return new RequestKey(body, values);
+    }
+
+    /**
+     * @return 请求消息体的字节数
+     */
+    public int size() {
+        return body.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return hash == other.hash && Arrays.equals(body, other.body) && Arrays.equals(headers, other.headers);
+    }
+
+    /**
+     * FNV-1a后再混合（MurmurHash3的fmix64），消息头之间用不会出现在字符中的值分隔
+     */
+    private static int hash(byte[] body, String[] headers) {
+        long hash = Hashing.fnv1a(Hashing.FNV_OFFSET_BASIS, body);
+        for (String header : headers) {
+            hash = Hashing.fnv1a(hash, 0x10000);
+            if (header != null) {
+                hash = Hashing.fnv1a(hash, header);
+            }
+        }
+        hash = Hashing.fmix64(hash);
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,187 @@
+package hs.rabbitmq.rpc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: ResultCache
+ * @description: 幂等RPC处理逻辑的结果缓存
+ *               RPCServer的fib这类处理逻辑是纯函数：同样的请求总是得到同样的回复，重复的请求没有必要重新计算。
+ *               这里按请求缓存回复，只有显式用handler(...)包装的处理逻辑才会被缓存（即标记为幂等）：
+ *                  1. key：请求消息体 + 指定的消息头（例如租户、版本），见RequestKey，哈希冲突不会返回错误的回复
+ *                  2. 淘汰：按访问顺序的LRU，条目数量不超过maxEntries，所有条目的权重（请求 + 回复的字节数 + ENTRY_OVERHEAD）不超过maxWeight
+ *                  3. TTL：写入后超过ttl的条目视为不存在，下次访问时删除
+ *                  4. 统计：hits、misses、evictions、expirations、hitRatio
+ *                  5. 处理逻辑抛出异常时不缓存，下次同样的请求重新计算
+ *               注意：
+ *                  1. 只能用于幂等、没有副作用的处理逻辑，并且回复只取决于消息体和指定的消息头
+ *                  2. 同一个请求同时有多个没有命中缓存时会各自计算一次，需要合并时在外层使用SingleFlight
+ *                  3. 缓存的回复是同一个byte[]，调用方不要修改
+ * @date 2026年10月19日 07:00
+ */
+public class ResultCache {
+
+    /**
+     * 每个条目除了请求和回复的字节数以外的估算开销（RequestKey、Entry、LinkedHashMap节点、数组头）
+     */
+    public static final int ENTRY_OVERHEAD = 128;
+
+    private final String[] keyHeaders;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+    /**
+     * 按访问顺序排列，由当前对象的锁保护
+     */
+    private final LinkedHashMap<RequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maxEntries 最多缓存的条目数量
+     * @param maxWeight 所有条目的权重之和的上限，单位：字节
+     * @param ttl 条目写入后的有效期，0表示只按容量淘汰
+     * @param keyHeaders 参与key计算的消息头，不传时只按消息体
+     */
+    public ResultCache(int maxEntries, long maxWeight, long ttl, TimeUnit unit, String... keyHeaders) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxWeight must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.keyHeaders = keyHeaders == null ? new String[0] : keyHeaders.clone();
+    }
+
+    /**
+     * 包装ConcurrentRPCServer的处理逻辑：命中时直接返回缓存的回复，没有命中时计算并缓存
+     */
+    public ConcurrentRPCServer.RequestHandler handler(ConcurrentRPCServer.RequestHandler delegate) {
+        return (properties, body) -> {
+            RequestKey key = RequestKey.of(properties, body, keyHeaders);
+            byte[] cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            byte[] response = delegate.handle(properties, body);
+            put(key, response);
+            return response;
+        };
+    }
+
+    /**
+     * @return 缓存的回复，没有或者已经过期时返回null
+     */
+    public byte[] get(RequestKey key) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (ttlNanos == 0 || entry.expiresAt - now > 0) {
+                    hits.incrementAndGet();
+                    return entry.response;
+                }
+                entries.remove(key);
+                weight -= entry.weight;
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 缓存回复，已经存在时替换；单个条目的权重超过maxWeight时不缓存
+     */
+    public void put(RequestKey key, byte[] response) {
+        Entry entry = new Entry(response, key.size() + response.length + ENTRY_OVERHEAD, System.nanoTime() + ttlNanos);
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            weight += entry.weight;
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * @return 当前缓存的条目数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 当前所有条目的权重之和
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 因为条目数量或者权重超过上限被淘汰的条目数量
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return 因为过期被删除的条目数量
+     */
+    public long expirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return 命中次数占查询次数的比例
+     */
+    public double hitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * 从最久没有访问的条目开始淘汰，直到条目数量和权重都不超过上限，调用方持有当前对象的锁
+     */
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            weight -= entry.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] response;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(byte[] response, long weight, long expiresAt) {
+            this.response = response;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
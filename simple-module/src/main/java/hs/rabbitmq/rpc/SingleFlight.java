@@ -0,0 +1,108 @@
+package hs.rabbitmq.rpc;
+
+import com.rabbitmq.client.AMQP;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: SingleFlight
+ * @description: 合并同时到达的相同RPC请求，只计算一次
+ *               ResultCache只能避免已经算完的请求重复计算；同一个热点请求同时到达很多个时（缓存过期、刚启动），
+ *               它们都没有命中缓存，会在所有工作线程上各算一遍。这里登记排队或者计算中的请求：
+ *                  1. key：请求消息体 + 指定的消息头，见RequestKey
+ *                  2. 第一个请求（leader）交给executor计算，从登记开始（包括在executor队列中排队的时间）到计算完成之前
+ *                     到达的相同请求（follower）直接拿到leader的CompletableFuture，不计算、也不占用工作线程等待；
+ *                     只在计算期间合并的话，工作线程比相同请求少时（例如单核）排队的请求会一个接一个地各自计算
+ *                  3. leader计算完成（成功或者抛出异常）后先移除登记，再完成CompletableFuture，所有follower得到同样的结果或者异常；
+ *                     之后到达的相同请求重新计算，不会拿到旧的结果
+ *                  4. 由ConcurrentRPCServer使用：每个请求在CompletableFuture完成后按自己的replyTo、correlationId回复
+ *               注意：
+ *                  1. 只能用于幂等、没有副作用的处理逻辑，并且回复只取决于消息体和指定的消息头
+ *                  2. follower的回复在leader的线程上放入回复队列，leader的线程负责发送，合并的请求很多时leader会慢一点返回
+ *                  3. executor拒绝执行时leader和所有follower都以SubmitRejectedException完成，
+ *                     与处理逻辑自己抛出的RejectedExecutionException区分开：前者请求没有处理，后者是处理失败
+ *                  4. 所有请求拿到的是同一个byte[]，调用方不要修改
+ * @date 2026年10月19日 08:00
+ */
+public class SingleFlight {
+
+    /**
+     * executor拒绝执行（一般是已经关闭）时CompletableFuture完成的异常，请求没有被处理
+     */
+    public static final class SubmitRejectedException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        private SubmitRejectedException(RejectedExecutionException cause) {
+            super("Executor rejected the request", cause);
+        }
+    }
+
+    private final String[] keyHeaders;
+    private final ConcurrentHashMap<RequestKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param keyHeaders 参与key计算的消息头，不传时只按消息体
+     */
+    public SingleFlight(String... keyHeaders) {
+        this.keyHeaders = keyHeaders == null ? new String[0] : keyHeaders.clone();
+    }
+
+    /**
+     * 没有相同的请求在排队或者计算时登记并交给executor用handler计算，否则直接返回已经登记的计算的CompletableFuture
+     */
+    public CompletableFuture<byte[]> execute(AMQP.BasicProperties properties, byte[] body,
+                                             ConcurrentRPCServer.RequestHandler handler, Executor executor) {
+        RequestKey key = RequestKey.of(properties, body, keyHeaders);
+        CompletableFuture<byte[]> flight = new CompletableFuture<>();
+        CompletableFuture<byte[]> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            return leader;
+        }
+        try {
+            executor.execute(() -> {
+                executions.incrementAndGet();
+                try {
+                    byte[] response = handler.handle(properties, body);
+                    inFlight.remove(key, flight);
+                    flight.complete(response);
+                } catch (Throwable e) {
+                    inFlight.remove(key, flight);
+                    flight.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(new SubmitRejectedException(e));
+        }
+        return flight;
+    }
+
+    /**
+     * @return 实际计算的次数
+     */
+    public long executions() {
+        return executions.get();
+    }
+
+    /**
+     * @return 合并到正在进行的计算上、没有自己计算的请求数量
+     */
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return 当前正在排队或者计算的不同请求的数量
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -2,6 +2,7 @@ package hs.rabbitmq.topic;
 
 import com.rabbitmq.client.BuiltinExchangeType;
 import com.rabbitmq.client.Channel;
+import hs.rabbitmq.codec.PayloadBuffers;
 import hs.rabbitmq.config.RabbitmqConfig;
 import org.junit.Test;
 
@@ -31,9 +32,10 @@ public class Producer {
          * exchange：交换机名称
          * routingKey：DIRECT类型，必须需要routingKey
          */
-        channel.basicPublish(EXCHANGE,"log.error", null,"报错信息".getBytes("utf-8"));
-        channel.basicPublish(EXCHANGE,"log.info", null,"提示信息".getBytes("utf-8"));
-        channel.basicPublish(EXCHANGE,"log.warm", null,"警告信息".getBytes("utf-8"));
+        PayloadBuffers buffers = PayloadBuffers.get();
+        channel.basicPublish(EXCHANGE,"log.error", null,buffers.encode("报错信息"));
+        channel.basicPublish(EXCHANGE,"log.info", null,buffers.encode("提示信息"));
+        channel.basicPublish(EXCHANGE,"log.warm", null,buffers.encode("警告信息"));
         channel.close();
         channel.getConnection().close();
     }
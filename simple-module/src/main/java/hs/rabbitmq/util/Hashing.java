@@ -0,0 +1,61 @@
+package hs.rabbitmq.util;
+
+/**
+ * @author heshuai
+ * @title: Hashing
+ * @description: 64位FNV-1a哈希和MurmurHash3的fmix64，IdempotencyCache（消息id）、BloomFilter和RequestKey（RPC请求）共用
+ *               FNV-1a逐个字节（字符）累加，速度快但高位分布差，结果再经过fmix64混合，让每一位输入都影响所有输出位；
+ *               多段输入时从FNV_OFFSET_BASIS开始依次调用fnv1a，上一段的结果作为下一段的初始值
+ * @date 2026年10月19日 12:30
+ */
+public final class Hashing {
+
+    public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * 按字节累加
+     */
+    public static long fnv1a(long hash, byte[] bytes) {
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 按字符（UTF-16代码单元）累加
+     */
+    public static long fnv1a(long hash, CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            hash ^= chars.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 累加一个值，例如多段输入之间的分隔符
+     */
+    public static long fnv1a(long hash, int value) {
+        hash ^= value;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * MurmurHash3的fmix64，让每一位输入都影响所有输出位
+     */
+    public static long fmix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,9 +1,16 @@
 package hs.rabbitmq.workQueues;
 
 import com.rabbitmq.client.*;
+import hs.rabbitmq.codec.DecompressingConsumer;
 import hs.rabbitmq.config.RabbitmqConfig;
+import hs.rabbitmq.consumer.AckCoalescer;
+import hs.rabbitmq.consumer.AdaptivePrefetch;
+import hs.rabbitmq.consumer.WorkerPoolConsumer;
+import hs.rabbitmq.idempotency.IdempotencyCache;
+import hs.rabbitmq.retry.RetryTopology;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -26,50 +33,54 @@ public class ConsumerC1 {
              * 如果不设置，默认不受限制，那么Rabbitmq会一致发送消息至consumer这里，等待consumer处理
              * 这个其实是因为channel是异步处理消息的，哪怕下面设置了手动确认消息，消息依然会发送给consumer，等待处理确认
              * 设置了最大的接受消息数量后，在未确认消息之前，最多可以给consumer发送最大接受数量的消息，否则只能等待确认消息后才能继续发送
+             * 固定的值很难选：太小时每确认一条消息都要等一个网络往返才有下一条，太大时消息都堆在这一个消费者上，其它消费者空闲，
+             * AdaptivePrefetch从8开始，每5秒按处理耗时和网络往返时间重新计算，在4到256之间调整（4个工作线程，至少每个线程一条）
              */
-            channel.basicQos(1);
+            AdaptivePrefetch prefetch = new AdaptivePrefetch(channel,4,8,4,256,5,TimeUnit.SECONDS);
             /**
              * 消费消息
              * queue:队列名称
              * autoAck：消息确认机制；true：自动确认消息，false：手动确认消息
-             * callback：Consumer接口，收到消息后的处理逻辑！这里直接写了一个匿名类
+             * callback：Consumer接口，收到消息后的处理逻辑！
+             * prefetch.consumer/prefetch.handler：统计投递的消息、处理耗时，用于调整prefetch，
+             *      prefetch.prefetch()、bufferDepth()、idleTimeMillis()分别是当前的prefetch、已投递未处理的消息数量、工作线程累计的空闲时间
+             * DecompressingConsumer：被压缩的消息（content-encoding为lz4、deflate）先解压再交给handleDelivery，
+             *      解压失败的消息通过acks以requeue=false拒绝，不交给后面的处理逻辑，也不计入prefetch的统计
+             * WorkerPoolConsumer：handleDelivery不在Connection的分发线程上执行业务逻辑，而是交给4个工作线程，
+             *      一条消息处理1秒也不会拖慢这个Connection上的其它消费者，所以上面的prefetch要大于工作线程数量，否则工作线程吃不满；
+             *      work queue中的消息没有顺序要求，按deliveryTag轮流分配给工作线程，
+             *      需要保持顺序时使用KeyExtractor.routingKey()或者KeyExtractor.header("orderId")，key相同的消息在同一个工作线程上按顺序处理
              */
-            channel.basicConsume("work-queues",false,new DefaultConsumer(channel){
-                @Override
-                public void handleDelivery(String consumerTag,
-                                           Envelope envelope,
-                                           AMQP.BasicProperties properties,
-                                           byte[] body)
-                        throws IOException
-                {
-                    try {
-                        Thread.sleep(1000);
-                        System.out.println("Receive==="+new String(body));
-                        /**
-                         * 手动确认消息
-                         *  envelope.getDeliveryTag():delivery Tag,消息标识
-                         *  multiple：批量处理消息
-                         */
-                        channel.basicAck(envelope.getDeliveryTag(),false);
-                        /**
-                         * 手动发送不确定消息
-                         * envelope.getDeliveryTag():delivery Tag,消息标识
-                         * multiple：批量处理消息
-                         * requeue：重新排列，true:重新发送消息；false：丢弃或者死信队列
-                         */
-//                        channel.basicNack(envelope.getDeliveryTag(),false,true);
-                        /**
-                         * 拒绝消息
-                         * envelope.getDeliveryTag():delivery Tag,消息标识
-                         * requeue：重新排列，true:重新发送消息；false：丢弃或者死信队列
-                         */
-                        channel.basicReject(envelope.getDeliveryTag(),false);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-            });
+            AckCoalescer acks = new AckCoalescer(channel,4,10,TimeUnit.MILLISECONDS);
+            /**
+             * 消费端去重：按messageId记录最近处理成功的10万条消息（1小时有效），重复投递的消息不再处理，直接确认
+             * Producer.sendManyMIdempotent发送的消息每条都发送两次，第二次会被跳过，hits()、misses()、hitRate()是去重的统计
+             */
+            IdempotencyCache dedup = new IdempotencyCache(100_000,1,TimeUnit.HOURS);
+            /**
+             * 延迟重试：处理失败的消息不再立即重新入队，而是依次等待1秒、10秒、1分钟、10分钟后再回到work-queues，
+             * 5次仍然失败时停放到work-queues.dlq；去重要包在重试里面，失败的消息才不会被记录为已处理
+             * 重新发布使用单独的发布确认Channel，broker确认之后才确认原消息
+             */
+            RetryTopology retry = new RetryTopology(channel.getConnection().createChannel(),"work-queues",5,1000,10_000,60_000,600_000);
+            retry.declare();
+            channel.basicConsume("work-queues",false,new DecompressingConsumer(prefetch.consumer(new WorkerPoolConsumer(channel,4,
+                    WorkerPoolConsumer.KeyExtractor.none(),prefetch.handler(retry.handler(dedup.handler((envelope, properties, body) -> {
+                Thread.sleep(1000);
+                System.out.println("Receive==="+new String(body));
+                /**
+                 * 处理完成后由工作线程手动确认消息，业务逻辑抛出异常时发送不确定消息：
+                 *  basicAck(deliveryTag, multiple)：确认消息
+                 *      envelope.getDeliveryTag():delivery Tag,消息标识
+                 *      multiple：批量处理消息
+                 *  basicNack(deliveryTag, multiple, requeue)：手动发送不确定消息
+                 *      requeue：重新排列，true:重新发送消息；false：丢弃或者死信队列
+                 *  basicReject(deliveryTag, requeue)：拒绝消息，与multiple为false的basicNack相同
+                 * 同一条消息只能确认或者拒绝一次，确认之后再拒绝会因为unknown delivery tag导致Channel被关闭
+                 * AckCoalescer：连续完成4条消息（或者第一条完成后等待10ms）时，用multiple=true的basicAck一次确认，
+                 *      4个工作线程乱序完成时只确认到连续完成的最大deliveryTag，不会误确认还在处理中的消息
+                 */
+            }))),acks)),DecompressingConsumer.FailureHandler.nack(acks)));
             // 若不关闭connection，则一直保持接受消息的状态
         } catch (IOException e) {
             e.printStackTrace();
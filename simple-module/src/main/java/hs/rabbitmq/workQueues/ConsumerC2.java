@@ -1,9 +1,15 @@
 package hs.rabbitmq.workQueues;
 
 import com.rabbitmq.client.*;
+import hs.rabbitmq.batch.DebatchingConsumer;
+import hs.rabbitmq.codec.ByteBufferConsumer;
+import hs.rabbitmq.codec.DecompressingConsumer;
+import hs.rabbitmq.codec.LazyJson;
+import hs.rabbitmq.codec.Utf8Decoder;
 import hs.rabbitmq.config.RabbitmqConfig;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -21,23 +27,20 @@ public class ConsumerC2 {
              * 但是声明时，也要特别注意参数不要弄错
              */
             channel.queueDeclare("work-queues",true,false,false,null);
+            channel.queueDeclare("work-queues.batched",true,false,false,null);
             /**
              * 消费消息
              * queue:队列名称
              * autoAck：消息确认机制；true：自动确认消息，false：手动确认消息
-             * callback：Consumer接口，收到消息后的处理逻辑！这里直接写了一个匿名类
+             * callback：Consumer接口，收到消息后的处理逻辑！这里单条消息的处理逻辑直接写成lambda
+             * DecompressingConsumer：被压缩的消息（content-encoding为lz4、deflate）先解压再交给handleDelivery
+             * DebatchingConsumer：Producer.sendManyMBatched发送的批量消息拆成单条消息，逐条交给处理逻辑；
+             *      批量消息只发送到work-queues.batched，只有这里订阅，不会被不拆包的ConsumerC1当作一条消息处理
              */
-            channel.basicConsume("work-queues",true,new DefaultConsumer(channel){
-                @Override
-                public void handleDelivery(String consumerTag,
-                                           Envelope envelope,
-                                           AMQP.BasicProperties properties,
-                                           byte[] body)
-                        throws IOException
-                {
-                    System.out.println("Receive==="+new String(body));
-                }
-            });
+            channel.basicConsume("work-queues",true,new DecompressingConsumer(new DebatchingConsumer(channel,true,
+                    ConsumerC2::receive)));
+            channel.basicConsume("work-queues.batched",true,new DecompressingConsumer(new DebatchingConsumer(channel,true,
+                    ConsumerC2::receive)));
             // 若不关闭connection，则一直保持接受消息的状态
         } catch (IOException e) {
             e.printStackTrace();
@@ -46,4 +49,19 @@ public class ConsumerC2 {
         }
 
     }
+
+    /**
+     * 消息体按UTF-8解码，不使用平台默认字符集；JSON格式的订单消息（Producer.sendManyMJson）只打印已支付的订单，
+     * 直接在消息体字节上读取status和orderId字段，其它订单不解码
+     */
+    private static void receive(AMQP.BasicProperties properties, byte[] body) {
+        ByteBuffer buffer = ByteBufferConsumer.wrap(body);
+        if (properties != null && "application/json".equals(properties.getContentType())) {
+            if (LazyJson.stringEquals(buffer, LazyJson.find(buffer, "status"), "PAID")) {
+                System.out.println("Receive===paid order "+LazyJson.longValue(buffer, LazyJson.find(buffer, "orderId")));
+            }
+            return;
+        }
+        System.out.println("Receive==="+Utf8Decoder.decode(buffer));
+    }
 }
\ No newline at end of file
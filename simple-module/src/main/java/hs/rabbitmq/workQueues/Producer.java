@@ -1,12 +1,25 @@
 package hs.rabbitmq.workQueues;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.BuiltinExchangeType;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.MessageProperties;
+import hs.rabbitmq.batch.BatchingPublisher;
+import hs.rabbitmq.codec.Lz4Codec;
+import hs.rabbitmq.codec.PayloadBuffers;
+import hs.rabbitmq.codec.PayloadCompressor;
+import hs.rabbitmq.config.ChannelPool;
 import hs.rabbitmq.config.RabbitmqConfig;
+import hs.rabbitmq.flow.FlowControlPublisher;
+import hs.rabbitmq.flow.PublishBlockedException;
+import hs.rabbitmq.outbox.MappedOutbox;
+import hs.rabbitmq.publisherConfirm.ShardedPublisher;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -16,16 +29,183 @@ import java.util.concurrent.TimeoutException;
  **/
 public class Producer {
 
+    /**
+     * 从Channel池中借出Channel发送消息，用完归还而不是关闭Connection，
+     * 多次调用时复用的是同一个长连接，不会每次都重新建立TCP连接
+     */
     @Test
     public void sendManyM() throws IOException, TimeoutException {
-        Channel channel = RabbitmqConfig.getChannel();
-        // 声明work queue ，并将它设置为持久化
-        channel.queueDeclare("work-queues",true,false,false,null);
-        for (int i = 0;i<10;++i){
-            String message = "第"+i+"条消息";
-            channel.basicPublish("","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,message.getBytes("utf-8"));
-        }
-        channel.close();
-        channel.getConnection().close();
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            Channel channel = pooled.getChannel();
+            // 声明work queue ，并将它设置为持久化
+            channel.queueDeclare("work-queues",true,false,false,null);
+            // 消息内容在复用的StringBuilder中拼接，编码到复用的byte[]中，每条消息不再分配String和byte[]
+            PayloadBuffers buffers = PayloadBuffers.get();
+            for (int i = 0;i<10;++i){
+                StringBuilder message = buffers.builder().append("第").append(i).append("条消息");
+                channel.basicPublish("","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+            }
+        }
+    }
+
+    /**
+     * 发送较大的JSON消息，超过1KB的消息体使用LZ4压缩后发送，并在content-encoding中标记为lz4，
+     * ConsumerC1、ConsumerC2通过DecompressingConsumer自动解压
+     */
+    @Test
+    public void sendManyMCompressed() throws IOException, TimeoutException {
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4Codec(), 1024);
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            Channel channel = pooled.getChannel();
+            channel.queueDeclare("work-queues",true,false,false,null);
+            PayloadBuffers buffers = PayloadBuffers.get();
+            for (int i = 0;i<10;++i){
+                StringBuilder message = buffers.builder().append("{\"index\":").append(i).append(",\"items\":[");
+                for (int j = 0;j<100;++j){
+                    message.append(j == 0 ? "" : ",").append("{\"id\":").append(j).append(",\"status\":\"OK\"}");
+                }
+                message.append("]}");
+                compressor.basicPublish(channel,"","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+            }
+        }
+    }
+
+    /**
+     * 每条消息设置messageId并发送两次，模拟生产者重试或者消费者崩溃后的重复投递，
+     * ConsumerC1通过IdempotencyCache按messageId去重，第二次收到的消息直接确认，不再处理
+     */
+    @Test
+    public void sendManyMIdempotent() throws IOException, TimeoutException {
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            Channel channel = pooled.getChannel();
+            channel.queueDeclare("work-queues",true,false,false,null);
+            for (int i = 0;i<10;++i){
+                AMQP.BasicProperties properties = MessageProperties.PERSISTENT_TEXT_PLAIN.builder()
+                        .messageId(UUID.randomUUID().toString()).build();
+                byte[] body = ("第"+i+"条消息").getBytes(StandardCharsets.UTF_8);
+                channel.basicPublish("","work-queues",properties,body);
+                channel.basicPublish("","work-queues",properties,body);
+            }
+        }
+    }
+
+    /**
+     * 发送JSON格式的订单消息，ConsumerC2用LazyJson只读取status和orderId字段，remark等其它字段不会被解码
+     */
+    @Test
+    public void sendManyMJson() throws IOException, TimeoutException {
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            Channel channel = pooled.getChannel();
+            channel.queueDeclare("work-queues",true,false,false,null);
+            AMQP.BasicProperties properties = MessageProperties.PERSISTENT_BASIC.builder()
+                    .contentType("application/json").contentEncoding("utf-8").build();
+            PayloadBuffers buffers = PayloadBuffers.get();
+            for (int i = 0;i<10;++i){
+                StringBuilder message = buffers.builder().append("{\"orderId\":").append(i)
+                        .append(",\"status\":\"").append(i % 2 == 0 ? "PAID" : "CREATED")
+                        .append("\",\"remark\":\"第").append(i).append("条消息\"}");
+                channel.basicPublish("","work-queues",properties,buffers.encode(message));
+            }
+        }
+    }
+
+    /**
+     * 批量发送大量小消息：每100条（或者满64KB、或者第一条消息等待超过10ms）打包成一条AMQP消息发送，
+     * broker端按AMQP消息计算的开销减少为原来的1/100，ConsumerC2通过DebatchingConsumer拆包
+     * 批量消息发送到单独的work-queues.batched：work-queues上ConsumerC1、ConsumerC2是竞争消费者，ConsumerC1不拆包，
+     * 发到work-queues的批次会有一部分被ConsumerC1当作一条消息处理
+     */
+    @Test
+    public void sendManyMBatched() throws IOException, TimeoutException {
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            Channel channel = pooled.getChannel();
+            channel.queueDeclare("work-queues.batched",true,false,false,null);
+            PayloadBuffers buffers = PayloadBuffers.get();
+            try (BatchingPublisher publisher = new BatchingPublisher(channel, 100, 64 * 1024, 10, TimeUnit.MILLISECONDS)) {
+                for (int i = 0;i<10_000;++i){
+                    StringBuilder message = buffers.builder().append("第").append(i).append("条消息");
+                    // 消息体会被复制到批次的缓冲区中，可以直接使用复用的byte[]
+                    publisher.publish("","work-queues.batched", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+                }
+            }
+        }
+    }
+
+    /**
+     * 通过本地发件箱发送消息，broker不可用时append照常返回，消息暂存在本地磁盘上，
+     * 发件箱最多占用1GB，写满后append最多阻塞5秒，仍然写不进去才抛出IOException
+     * broker不可用时无法声明队列，work-queues队列由ConsumerC1、ConsumerC2声明
+     */
+    @Test
+    public void sendManyMOutbox() throws IOException, InterruptedException {
+        MappedOutbox outbox = RabbitmqConfig.getOutbox();
+        PayloadBuffers buffers = PayloadBuffers.get();
+        for (int i = 0;i<10_000;++i){
+            StringBuilder message = buffers.builder().append("第").append(i).append("条消息");
+            // 消息体会被复制到发件箱中，可以直接使用复用的byte[]
+            outbox.append("","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+        }
+        while (outbox.pending() > 0) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * 感知broker流控的发送：broker内存告警（connection.blocked）期间publish直接抛出PublishBlockedException，
+     * 发送线程不会卡在basicPublish中，这里计数后放弃，模拟上游拒绝请求
+     */
+    @Test
+    public void sendManyMFlowControl() throws IOException, TimeoutException {
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel();
+             FlowControlPublisher publisher = new FlowControlPublisher(pooled.getChannel(), FlowControlPublisher.Mode.FAIL_FAST, 0)) {
+            pooled.getChannel().queueDeclare("work-queues",true,false,false,null);
+            PayloadBuffers buffers = PayloadBuffers.get();
+            int rejected = 0;
+            for (int i = 0;i<10;++i){
+                StringBuilder message = buffers.builder().append("第").append(i).append("条消息");
+                try {
+                    publisher.publish("","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+                } catch (PublishBlockedException e) {
+                    rejected++;
+                }
+            }
+            System.out.println("rejected: " + rejected + ", blocked " + publisher.blockedCount() + " times, "
+                    + publisher.blockedTimeMillis() + "ms in total");
+        }
+    }
+
+    /**
+     * 多线程通过ShardedPublisher发送消息，消息分散在4个Channel（2个Connection）上，每个Channel有自己的发布确认窗口
+     */
+    @Test
+    public void sendManyMSharded() throws IOException, TimeoutException, InterruptedException {
+        try (ChannelPool.PooledChannel pooled = RabbitmqConfig.borrowChannel()) {
+            pooled.getChannel().queueDeclare("work-queues",true,false,false,null);
+        }
+        try (ShardedPublisher publisher = ShardedPublisher.create(RabbitmqConfig.getConnectionFactory(), 4, 2, 1_000,
+                ShardedPublisher.ShardStrategy.ROUND_ROBIN)) {
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int thread = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        PayloadBuffers buffers = PayloadBuffers.get();
+                        for (int i = 0;i<1_000;++i){
+                            StringBuilder message = buffers.builder().append("线程").append(thread).append("的第").append(i).append("条消息");
+                            publisher.publish("","work-queues", MessageProperties.PERSISTENT_TEXT_PLAIN,buffers.encode(message));
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (!publisher.awaitConfirms(60, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("All messages could not be confirmed in 60 seconds");
+            }
+        }
     }
 }
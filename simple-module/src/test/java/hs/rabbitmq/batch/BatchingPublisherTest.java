@@ -0,0 +1,98 @@
+package hs.rabbitmq.batch;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.MessageProperties;
+import hs.rabbitmq.support.RecordingChannel;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: BatchingPublisherTest
+ * @description: BatchingPublisher发送失败时保留批次，linger定时器的发送失败在下一次调用时抛出
+ * @date 2026年10月19日 11:00
+ */
+public class BatchingPublisherTest {
+
+    @Test
+    public void failedFlushKeepsBatch() throws Exception {
+        FakeChannel fake = new FakeChannel();
+        try (BatchingPublisher publisher = new BatchingPublisher(fake.channel(), 100, 1024, 1, TimeUnit.HOURS)) {
+            publisher.publish("", "q", MessageProperties.PERSISTENT_TEXT_PLAIN, new byte[]{1});
+            publisher.publish("", "q", MessageProperties.PERSISTENT_TEXT_PLAIN, new byte[]{2});
+            fake.failures.set(1);
+            try {
+                publisher.flush();
+                fail("Expected IOException");
+            } catch (IOException e) {
+                // 期望的结果
+            }
+            assertEquals(2, publisher.pending());
+
+            publisher.flush();
+            assertEquals(0, publisher.pending());
+            // 失败的一次 + 重新发送的一次，重新发送的仍然是完整的批次
+            assertEquals(2, fake.attempts());
+            assertEquals(2 * 5, fake.lastBody().length);
+        }
+    }
+
+    @Test
+    public void lingerFailureIsReportedToNextCall() throws Exception {
+        FakeChannel fake = new FakeChannel();
+        try (BatchingPublisher publisher = new BatchingPublisher(fake.channel(), 100, 1024, 1, TimeUnit.MILLISECONDS)) {
+            fake.failures.set(1);
+            publisher.publish("", "q", MessageProperties.PERSISTENT_TEXT_PLAIN, new byte[]{1});
+            long deadline = System.currentTimeMillis() + 5000;
+            while (fake.attempts() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            try {
+                publisher.publish("", "q", MessageProperties.PERSISTENT_TEXT_PLAIN, new byte[]{2});
+                fail("Expected IOException");
+            } catch (IOException e) {
+                // 期望的结果
+            }
+            assertEquals(1, publisher.pending());
+
+            publisher.flush();
+            assertEquals(0, publisher.pending());
+            assertEquals(2, fake.attempts());
+        }
+    }
+
+    /**
+     * 只实现basicPublish，前failures次发送抛出IOException
+     */
+    private static final class FakeChannel {
+        private final AtomicInteger failures = new AtomicInteger();
+        private final RecordingChannel recording = new RecordingChannel().on("basicPublish", args -> {
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new IOException("connection reset");
+            }
+            return null;
+        });
+
+        private Channel channel() {
+            return recording.channel();
+        }
+
+        private int attempts() {
+            return recording.count("basicPublish");
+        }
+
+        /**
+         * @return 最后一次发送的消息体
+         */
+        private byte[] lastBody() {
+            Object[] args = recording.calls("basicPublish").get(attempts() - 1);
+            return (byte[]) args[args.length - 1];
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hs.rabbitmq.codec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: DeflateCodecTest
+ * @description: DeflateCodec的压缩/解压往返、格式错误的消息体，以及超过最大解压长度的压缩炸弹
+ * @date 2026年10月19日 10:30
+ */
+public class DeflateCodecTest {
+
+    private final DeflateCodec codec = new DeflateCodec();
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(42);
+        for (int length : new int[]{0, 1, 64, 1000, 65536, 300_000}) {
+            byte[] randomBytes = new byte[length];
+            random.nextBytes(randomBytes);
+            assertArrayEquals(randomBytes, codec.decompress(codec.compress(randomBytes)));
+
+            byte[] repeated = new byte[length];
+            Arrays.fill(repeated, (byte) 'a');
+            assertArrayEquals(repeated, codec.decompress(codec.compress(repeated)));
+        }
+    }
+
+    @Test
+    public void malformedInputThrowsIOException() {
+        byte[] compressed = codec.compress("hello hello hello hello".getBytes(StandardCharsets.UTF_8));
+        assertRejected(codec, new byte[0]);
+        assertRejected(codec, new byte[]{1, 2, 3, 4, 5});
+        assertRejected(codec, Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test
+    public void decompressionBombIsRejected() throws IOException {
+        // 16MB的0压缩后只有十几KB
+        byte[] bomb = codec.compress(new byte[16 * 1024 * 1024]);
+        assertRejected(new DeflateCodec(1, 1024 * 1024), bomb);
+
+        DeflateCodec exact = new DeflateCodec(1, 4096);
+        assertArrayEquals(new byte[4096], exact.decompress(codec.compress(new byte[4096])));
+        assertRejected(exact, codec.compress(new byte[4097]));
+    }
+
+    private static void assertRejected(CompressionCodec codec, byte[] body) {
+        try {
+            codec.decompress(body);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // 期望的结果
+        }
+    }
+}
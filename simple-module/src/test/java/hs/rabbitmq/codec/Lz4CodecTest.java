@@ -0,0 +1,108 @@
+package hs.rabbitmq.codec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: Lz4CodecTest
+ * @description: Lz4Codec的压缩/解压往返，以及格式错误的消息体只抛出IOException
+ * @date 2026年10月19日 10:30
+ */
+public class Lz4CodecTest {
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(42);
+        for (int length : new int[]{0, 1, 5, 12, 13, 64, 1000, 65536, 300_000}) {
+            byte[] randomBytes = new byte[length];
+            random.nextBytes(randomBytes);
+            assertRoundTrip(randomBytes);
+
+            byte[] repeated = new byte[length];
+            Arrays.fill(repeated, (byte) 'a');
+            assertRoundTrip(repeated);
+
+            StringBuilder json = new StringBuilder();
+            while (json.length() < length) {
+                json.append("{\"orderId\":").append(random.nextInt(1000)).append(",\"status\":\"PAID\"},");
+            }
+            assertRoundTrip(json.substring(0, length).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void repetitiveInputIsCompressed() {
+        byte[] repeated = new byte[64 * 1024];
+        Arrays.fill(repeated, (byte) 'a');
+        assertTrue(codec.compress(repeated).length < 1024);
+    }
+
+    @Test
+    public void malformedInputThrowsIOException() {
+        byte[] body = "hello hello hello hello hello hello hello".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = codec.compress(body);
+
+        assertMalformed(new byte[0]);
+        assertMalformed(new byte[]{0, 0, 1});
+        // 负数长度
+        assertMalformed(new byte[]{(byte) 0x80, 0, 0, 0, 0});
+        // 截断的块
+        assertMalformed(Arrays.copyOf(compressed, compressed.length - 3));
+        assertMalformed(Arrays.copyOf(compressed, 5));
+        // 声明的长度与实际解压出的长度不一致
+        byte[] wrongLength = compressed.clone();
+        wrongLength[3]++;
+        assertMalformed(wrongLength);
+        // 匹配的offset超出已经解压的数据：token 0x00（没有字面量）后面直接是offset 0xFFFF
+        assertMalformed(new byte[]{0, 0, 0, 8, 0x00, (byte) 0xFF, (byte) 0xFF});
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            byte[] garbage = compressed.clone();
+            garbage[4 + random.nextInt(garbage.length - 4)] = (byte) random.nextInt();
+            try {
+                codec.decompress(garbage);
+            } catch (IOException e) {
+                // 期望的结果之一，不能抛出其它异常
+            }
+        }
+    }
+
+    @Test
+    public void lengthHeaderAboveLimitIsRejectedBeforeAllocating() throws IOException {
+        // 5个字节声明了2GB，不能按长度头分配数组
+        assertMalformed(new byte[]{0x7f, 0, 0, 0, 0});
+
+        byte[] body = new byte[2048];
+        Lz4Codec small = new Lz4Codec(1024);
+        assertMalformed(small, codec.compress(body));
+        assertArrayEquals(new byte[1024], small.decompress(codec.compress(new byte[1024])));
+    }
+
+    private void assertRoundTrip(byte[] body) throws IOException {
+        assertArrayEquals(body, codec.decompress(codec.compress(body)));
+    }
+
+    private void assertMalformed(byte[] body) {
+        assertMalformed(codec, body);
+    }
+
+    private static void assertMalformed(CompressionCodec codec, byte[] body) {
+        try {
+            codec.decompress(body);
+            fail("Expected IOException for " + Arrays.toString(body));
+        } catch (IOException e) {
+            // 期望的结果
+        }
+    }
+}
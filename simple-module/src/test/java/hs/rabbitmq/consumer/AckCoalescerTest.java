@@ -0,0 +1,141 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.Channel;
+import hs.rabbitmq.support.RecordingChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author heshuai
+ * @title: AckCoalescerTest
+ * @description: AckCoalescer的确认顺序，FakeBroker和真实的broker一样拒绝确认已经结束（ack或者nack过）的tag
+ * @date 2026年10月19日 10:00
+ */
+public class AckCoalescerTest {
+
+    @Test
+    public void multipleAckStopsBeforeNackedTag() throws Exception {
+        FakeBroker broker = new FakeBroker(3);
+        AckCoalescer acks = new AckCoalescer(broker.channel(), 100, 1, TimeUnit.HOURS);
+        acks.ack(1);
+        acks.ack(2);
+        acks.nack(3, false);
+        acks.flush();
+
+        assertEquals(Collections.singletonList(2L), broker.multipleAcks);
+        assertTrue(broker.outstanding.isEmpty());
+        assertEquals(2, acks.ackedMessages());
+        acks.close();
+    }
+
+    @Test
+    public void onlyNackedTagsSendNoAck() throws Exception {
+        FakeBroker broker = new FakeBroker(2);
+        AckCoalescer acks = new AckCoalescer(broker.channel(), 1, 1, TimeUnit.HOURS);
+        acks.nack(1, true);
+        acks.nack(2, false);
+        acks.flush();
+
+        assertEquals(0, acks.ackFrames());
+        assertTrue(broker.multipleAcks.isEmpty());
+        assertTrue(broker.outstanding.isEmpty());
+        acks.close();
+    }
+
+    @Test
+    public void multipleAckSkipsNackedTagsInTheMiddle() throws Exception {
+        FakeBroker broker = new FakeBroker(5);
+        AckCoalescer acks = new AckCoalescer(broker.channel(), 100, 1, TimeUnit.HOURS);
+        acks.nack(4, false);
+        acks.ack(1);
+        acks.nack(2, false);
+        acks.ack(3);
+        acks.nack(5, false);
+        acks.flush();
+
+        assertEquals(Collections.singletonList(3L), broker.multipleAcks);
+        assertTrue(broker.outstanding.isEmpty());
+        assertEquals(2, acks.ackedMessages());
+        acks.close();
+    }
+
+    @Test
+    public void randomCompletionOrderNeverAcksSettledTag() throws Exception {
+        int messages = 20000;
+        FakeBroker broker = new FakeBroker(messages);
+        AckCoalescer acks = new AckCoalescer(broker.channel(), 16, 1, TimeUnit.HOURS);
+        List<Long> tags = new ArrayList<>();
+        for (long tag = 1; tag <= messages; tag++) {
+            tags.add(tag);
+        }
+        Random random = new Random(42);
+        // 按窗口打乱，模拟并行处理时在prefetch范围内乱序完成
+        for (int from = 0; from < messages; from += 64) {
+            Collections.shuffle(tags.subList(from, Math.min(messages, from + 64)), random);
+        }
+        int nacks = 0;
+        for (long tag : tags) {
+            if (random.nextInt(5) == 0) {
+                acks.nack(tag, false);
+                nacks++;
+            } else {
+                acks.ack(tag);
+            }
+        }
+        acks.flush();
+
+        assertTrue(broker.outstanding.isEmpty());
+        assertEquals(messages - nacks, acks.ackedMessages());
+        acks.close();
+    }
+
+    /**
+     * 确认不存在的tag时和broker一样失败（真实的broker会关闭Channel）
+     */
+    private static final class FakeBroker {
+        private final TreeSet<Long> outstanding = new TreeSet<>();
+        private final List<Long> multipleAcks = new ArrayList<>();
+        private final RecordingChannel recording = new RecordingChannel()
+                .on("basicAck", args -> {
+                    basicAck((Long) args[0], (Boolean) args[1]);
+                    return null;
+                })
+                .on("basicNack", args -> {
+                    settle((Long) args[0]);
+                    return null;
+                });
+
+        private FakeBroker(int delivered) {
+            for (long tag = 1; tag <= delivered; tag++) {
+                outstanding.add(tag);
+            }
+        }
+
+        private Channel channel() {
+            return recording.channel();
+        }
+
+        private void basicAck(long tag, boolean multiple) {
+            settle(tag);
+            if (multiple) {
+                multipleAcks.add(tag);
+                outstanding.headSet(tag).clear();
+            }
+        }
+
+        private void settle(long tag) {
+            if (!outstanding.remove(tag)) {
+                throw new IllegalStateException("PRECONDITION_FAILED - unknown delivery tag " + tag);
+            }
+        }
+    }
+}
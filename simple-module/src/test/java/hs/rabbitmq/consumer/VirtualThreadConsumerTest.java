@@ -0,0 +1,41 @@
+package hs.rabbitmq.consumer;
+
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import hs.rabbitmq.support.RecordingChannel;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author heshuai
+ * @title: VirtualThreadConsumerTest
+ * @description: Channel关闭后自动恢复，同一个VirtualThreadConsumer继续收到的消息仍然被处理和确认
+ *               用普通线程池代替虚拟线程，按Java 8运行
+ * @date 2026年10月19日 14:30
+ */
+public class VirtualThreadConsumerTest {
+
+    @Test
+    public void deliveriesAfterShutdownSignalAreStillProcessed() throws Exception {
+        RecordingChannel recording = new RecordingChannel().on("basicAck", args -> null);
+        CountDownLatch handled = new CountDownLatch(2);
+        VirtualThreadConsumer consumer = new VirtualThreadConsumer(recording.channel(),
+                (envelope, properties, body) -> handled.countDown(), Executors.newCachedThreadPool());
+
+        consumer.handleDelivery("ctag", new Envelope(1, false, "", "q"), null, new byte[0]);
+        consumer.handleShutdownSignal("ctag", new ShutdownSignalException(false, false, null, null));
+        // 自动恢复后broker重新投递，deliveryTag从1开始
+        consumer.handleDelivery("ctag", new Envelope(1, true, "", "q"), null, new byte[0]);
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        consumer.close();
+        assertEquals(2, consumer.processed());
+        assertEquals(2, recording.count("basicAck"));
+    }
+}
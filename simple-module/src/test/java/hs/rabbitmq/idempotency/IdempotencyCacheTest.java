@@ -0,0 +1,99 @@
+package hs.rabbitmq.idempotency;
+
+import com.rabbitmq.client.AMQP;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author heshuai
+ * @title: IdempotencyCacheTest
+ * @description: IdempotencyCache在内存和持久化存储中去重，重启后布隆过滤器不能跳过重启前处理过的消息
+ * @date 2026年10月19日 14:00
+ */
+public class IdempotencyCacheTest {
+
+    @Test
+    public void duplicateInMemory() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(16, 1, TimeUnit.HOURS);
+        assertFalse(cache.isDuplicate(message("a")));
+        cache.processed(message("a"));
+
+        assertTrue(cache.isDuplicate(message("a")));
+        assertFalse(cache.isDuplicate(message("b")));
+        assertFalse(cache.isDuplicate(message(null)));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.unkeyed());
+    }
+
+    @Test
+    public void storeIsCheckedAfterEviction() throws Exception {
+        MemoryStore store = new MemoryStore();
+        IdempotencyCache cache = new IdempotencyCache(null, 1, 0, TimeUnit.MILLISECONDS, 0, store);
+        cache.processed(message("a"));
+        cache.processed(message("b"));
+
+        assertTrue(cache.isDuplicate(message("a")));
+        assertEquals(1, cache.storeHits());
+    }
+
+    @Test
+    public void bloomFilterIsSeededFromStoreAfterRestart() throws Exception {
+        MemoryStore store = new MemoryStore();
+        IdempotencyCache before = new IdempotencyCache(null, 16, 1, TimeUnit.HOURS, 1000, store);
+        before.processed(message("a"));
+
+        // 重启：内存和布隆过滤器都是新的，只有存储中还有记录
+        IdempotencyCache after = new IdempotencyCache(null, 16, 1, TimeUnit.HOURS, 1000, store);
+        assertTrue(after.isDuplicate(message("a")));
+        assertEquals(1, after.storeHits());
+
+        assertFalse(after.isDuplicate(message("b")));
+        assertEquals(1, after.bloomSkips());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bloomFilterRequiresForEachKey() throws Exception {
+        IdempotencyStore store = new IdempotencyStore() {
+            @Override
+            public boolean contains(String key) {
+                return false;
+            }
+
+            @Override
+            public void put(String key) {
+            }
+        };
+        new IdempotencyCache(null, 16, 1, TimeUnit.HOURS, 1000, store);
+    }
+
+    private static AMQP.BasicProperties message(String messageId) {
+        return new AMQP.BasicProperties.Builder().messageId(messageId).build();
+    }
+
+    private static final class MemoryStore implements IdempotencyStore {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean contains(String key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public void put(String key) {
+            keys.add(key);
+        }
+
+        @Override
+        public void forEachKey(Consumer<String> action) {
+            keys.forEach(action);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package hs.rabbitmq.idempotency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author heshuai
+ * @title: LongLruSetTest
+ * @description: LongLruSet按容量淘汰最旧的key，被访问过的key有第二次机会；过期的key视为不存在；删除后同一探测序列中的key仍然能找到
+ * @date 2026年10月19日 14:00
+ */
+public class LongLruSetTest {
+
+    @Test
+    public void evictsOldestUnreferencedKey() {
+        LongLruSet set = new LongLruSet(2, 0);
+        set.add(1, 0);
+        set.add(2, 0);
+        set.add(3, 0);
+
+        assertEquals(2, set.size());
+        assertFalse(set.contains(1, 0));
+        assertTrue(set.contains(2, 0));
+        assertTrue(set.contains(3, 0));
+    }
+
+    @Test
+    public void referencedKeyGetsSecondChance() {
+        LongLruSet set = new LongLruSet(2, 0);
+        set.add(1, 0);
+        set.add(2, 0);
+        assertTrue(set.contains(1, 0));
+        set.add(3, 0);
+
+        assertTrue(set.contains(1, 0));
+        assertFalse(set.contains(2, 0));
+        assertTrue(set.contains(3, 0));
+    }
+
+    @Test
+    public void expiredKeyIsAbsent() {
+        LongLruSet set = new LongLruSet(4, 10);
+        set.add(1, 100);
+        assertTrue(set.contains(1, 109));
+        assertFalse(set.contains(1, 110));
+
+        // 重新加入时重新计算过期时间
+        set.add(1, 110);
+        assertTrue(set.contains(1, 119));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void evictionKeepsProbeSequence() {
+        // 表大小为8，这些key都落在同一个槽位上
+        LongLruSet set = new LongLruSet(4, 0);
+        long[] keys = {1, 9, 17, 25, 33};
+        for (long key : keys) {
+            set.add(key, 0);
+        }
+
+        assertFalse(set.contains(1, 0));
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue(set.contains(keys[i], 0));
+        }
+    }
+}
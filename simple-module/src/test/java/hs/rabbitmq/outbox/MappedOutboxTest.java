@@ -0,0 +1,126 @@
+package hs.rabbitmq.outbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author heshuai
+ * @title: MappedOutboxTest
+ * @description: MappedOutbox重启恢复：中间的段损坏时不能丢掉后面的段，只截断最后一个段末尾的记录；已确认的段被删除
+ * @date 2026年10月19日 13:00
+ */
+public class MappedOutboxTest {
+
+    /**
+     * 每条记录 8字节记录头 + 2字节exchange长度 + 2 + 1字节routingKey + 4字节属性长度 + 16字节消息体 = 33字节，每个段3条
+     */
+    private static final int SEGMENT_SIZE = 128;
+    private static final int RECORD_LENGTH = 33;
+    private static final int BODY_OFFSET = 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void corruptMiddleSegmentKeepsLaterSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        append(directory, 0, 9);
+        // 第一个段的第二条记录
+        flipByte(segment(directory, 0), RECORD_LENGTH + BODY_OFFSET + 3);
+
+        MappedOutbox outbox = open(directory);
+        assertEquals(7, outbox.pending());
+        assertEquals(Arrays.asList(0, 3, 4, 5, 6, 7, 8), readAll(outbox));
+        assertTrue(Files.exists(directory.resolve(segment(directory, 0).getFileName() + ".corrupt")));
+        assertTrue(Files.exists(segment(directory, 2)));
+        outbox.close();
+    }
+
+    @Test
+    public void tornTailOfLastSegmentIsTruncated() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        append(directory, 0, 5);
+        // 最后一个段的第二条记录的CRC
+        flipByte(segment(directory, 1), RECORD_LENGTH + 4);
+
+        MappedOutbox outbox = open(directory);
+        assertEquals(4, outbox.pending());
+        outbox.append("", "q", null, body(9));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 9), readAll(outbox));
+        outbox.close();
+    }
+
+    @Test
+    public void committedSegmentsAreDeleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        MappedOutbox outbox = open(directory);
+        for (int i = 0; i < 9; i++) {
+            outbox.append("", "q", null, body(i));
+        }
+        assertEquals(9, readAll(outbox).size());
+        outbox.commit();
+        assertFalse(Files.exists(segment(directory, 0)));
+        assertFalse(Files.exists(segment(directory, 1)));
+        assertEquals(0, outbox.pending());
+
+        // 解除映射之后继续写入、读取不受影响
+        outbox.append("", "q", null, body(9));
+        assertEquals(Arrays.asList(9), readAll(outbox));
+        outbox.close();
+    }
+
+    private static MappedOutbox open(Path directory) throws IOException {
+        return new MappedOutbox(directory, SEGMENT_SIZE, 8, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private static void append(Path directory, int from, int to) throws Exception {
+        MappedOutbox outbox = open(directory);
+        for (int i = from; i < to; i++) {
+            outbox.append("", "q", null, body(i));
+        }
+        outbox.close();
+    }
+
+    private static List<Integer> readAll(MappedOutbox outbox) throws InterruptedException {
+        List<MappedOutbox.Entry> entries = new ArrayList<>();
+        outbox.read(entries, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+        List<Integer> values = new ArrayList<>();
+        for (MappedOutbox.Entry entry : entries) {
+            values.add((int) entry.getBody()[0]);
+        }
+        return values;
+    }
+
+    private static byte[] body(int value) {
+        byte[] body = new byte[16];
+        Arrays.fill(body, (byte) value);
+        return body;
+    }
+
+    private static Path segment(Path directory, long id) {
+        return directory.resolve(String.format("%020d.seg", id));
+    }
+
+    private static void flipByte(Path path, int position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xff);
+        }
+    }
+}
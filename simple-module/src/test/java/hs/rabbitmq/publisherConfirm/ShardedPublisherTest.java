@@ -0,0 +1,62 @@
+package hs.rabbitmq.publisherConfirm;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: ShardedPublisherTest
+ * @description: ShardedPublisher.create建立Connection超时时关闭已经建立的Connection
+ * @date 2026年10月19日 14:30
+ */
+public class ShardedPublisherTest {
+
+    @Test
+    public void connectionTimeoutClosesEarlierConnections() throws Exception {
+        AtomicInteger closed = new AtomicInteger();
+        ConnectionFactory factory = new ConnectionFactory() {
+            private int created;
+
+            @Override
+            public Connection newConnection() throws TimeoutException {
+                if (created++ == 1) {
+                    throw new TimeoutException("handshake timed out");
+                }
+                return connection(closed);
+            }
+        };
+        try {
+            ShardedPublisher.create(factory, 4, 2, 16, ShardedPublisher.ShardStrategy.ROUND_ROBIN);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // 期望的结果
+        }
+        assertEquals(1, closed.get());
+    }
+
+    /**
+     * 只实现isOpen和close的Connection
+     */
+    private static Connection connection(AtomicInteger closed) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "close":
+                            closed.incrementAndGet();
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,63 @@
+package hs.rabbitmq.retry;
+
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.MessageProperties;
+import hs.rabbitmq.support.RecordingChannel;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: RetryTopologyTest
+ * @description: RetryTopology等待broker确认重新发布的消息，拒绝重复的延迟时间
+ * @date 2026年10月19日 11:30
+ */
+public class RetryTopologyTest {
+
+    private static final Envelope ENVELOPE = new Envelope(1, false, "", "orders");
+
+    @Test
+    public void retryWaitsForConfirm() throws Exception {
+        RecordingChannel fake = confirmingChannel(true);
+        RetryTopology retry = new RetryTopology(fake.channel(), "orders", 1, 1000, 10_000);
+        assertEquals(1, fake.count("confirmSelect"));
+
+        assertTrue(retry.retry(ENVELOPE, MessageProperties.PERSISTENT_BASIC, new byte[]{1}, new RuntimeException()));
+        assertEquals("0", fake.calls("basicPublish").get(0)[1]);
+        assertEquals(1, fake.count("waitForConfirms"));
+        assertEquals(1, retry.retried());
+    }
+
+    @Test
+    public void nackedRepublishThrows() throws Exception {
+        RecordingChannel fake = confirmingChannel(false);
+        RetryTopology retry = new RetryTopology(fake.channel(), "orders", 1, 1000);
+        try {
+            retry.retry(ENVELOPE, MessageProperties.PERSISTENT_BASIC, new byte[]{1}, new RuntimeException());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // 期望的结果，原消息不能确认
+        }
+        assertEquals(0, retry.retried());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateDelaysAreRejected() throws Exception {
+        new RetryTopology(confirmingChannel(true).channel(), "orders", 3, 1000, 10_000, 1000);
+    }
+
+    /**
+     * @param confirmed waitForConfirms的结果，false表示broker拒绝了消息
+     */
+    private static RecordingChannel confirmingChannel(boolean confirmed) {
+        return new RecordingChannel()
+                .on("confirmSelect", args -> null)
+                .on("basicPublish", args -> null)
+                .on("waitForConfirms", args -> confirmed);
+    }
+}
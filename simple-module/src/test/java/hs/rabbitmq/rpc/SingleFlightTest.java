@@ -0,0 +1,60 @@
+package hs.rabbitmq.rpc;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author heshuai
+ * @title: SingleFlightTest
+ * @description: executor拒绝执行与处理逻辑抛出RejectedExecutionException要能区分开
+ * @date 2026年10月19日 12:00
+ */
+public class SingleFlightTest {
+
+    private static final byte[] BODY = {1, 2, 3};
+
+    @Test
+    public void rejectedSubmitCompletesWithMarker() {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<byte[]> result = singleFlight.execute(null, BODY, (properties, body) -> body, command -> {
+            throw new RejectedExecutionException("shut down");
+        });
+
+        assertTrue(cause(result) instanceof SingleFlight.SubmitRejectedException);
+        assertEquals(0, singleFlight.executions());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    public void handlerRejectionIsNotMarker() {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<byte[]> result = singleFlight.execute(null, BODY, (properties, body) -> {
+            throw new RejectedExecutionException("downstream pool is full");
+        }, Runnable::run);
+
+        Throwable cause = cause(result);
+        assertTrue(cause instanceof RejectedExecutionException);
+        assertFalse(cause instanceof SingleFlight.SubmitRejectedException);
+        assertEquals(1, singleFlight.executions());
+    }
+
+    private static Throwable cause(CompletableFuture<byte[]> result) {
+        try {
+            result.get();
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
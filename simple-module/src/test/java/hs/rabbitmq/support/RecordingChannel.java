@@ -0,0 +1,89 @@
+package hs.rabbitmq.support;
+
+import com.rabbitmq.client.Channel;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author heshuai
+ * @title: RecordingChannel
+ * @description: 测试用的Channel，记录每一次方法调用的参数，方法的行为由on(方法名, Answer)指定
+ *               没有指定的方法中isOpen返回true，add/removeShutdownListener什么都不做，其它方法抛出UnsupportedOperationException，
+ *               被测代码调用了意料之外的方法时测试会失败
+ * @date 2026年10月19日 14:00
+ */
+public final class RecordingChannel {
+
+    /**
+     * 一个方法的行为，返回值即方法的返回值，可以抛出异常（例如IOException）
+     */
+    @FunctionalInterface
+    public interface Answer {
+        Object answer(Object[] args) throws Throwable;
+    }
+
+    private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+    private final Channel channel;
+
+    public RecordingChannel() {
+        answers.put("isOpen", args -> true);
+        answers.put("addShutdownListener", args -> null);
+        answers.put("removeShutdownListener", args -> null);
+        this.channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    Object[] arguments = args == null ? new Object[0] : args;
+                    // 先记录再执行，抛出异常的调用也会被记录
+                    calls.add(new Call(method.getName(), arguments));
+                    Answer answer = answers.get(method.getName());
+                    if (answer == null) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return answer.answer(arguments);
+                });
+    }
+
+    /**
+     * 指定方法的行为，重复指定时替换原来的行为
+     */
+    public RecordingChannel on(String method, Answer answer) {
+        answers.put(method, answer);
+        return this;
+    }
+
+    public Channel channel() {
+        return channel;
+    }
+
+    /**
+     * @return 按调用顺序排列的参数
+     */
+    public List<Object[]> calls(String method) {
+        List<Object[]> result = new ArrayList<>();
+        for (Call call : calls) {
+            if (call.method.equals(method)) {
+                result.add(call.args);
+            }
+        }
+        return result;
+    }
+
+    public int count(String method) {
+        return calls(method).size();
+    }
+
+    private static final class Call {
+        private final String method;
+        private final Object[] args;
+
+        private Call(String method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+    }
+}
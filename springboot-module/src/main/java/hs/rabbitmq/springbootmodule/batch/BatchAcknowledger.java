@@ -0,0 +1,89 @@
+package hs.rabbitmq.springbootmodule.batch;
+
+import com.rabbitmq.client.Channel;
+import hs.rabbitmq.consumer.PartialBatchFailureException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * @author heshuai
+ * @title: BatchAcknowledger
+ * @description: 批量监听（batchRabbitListenerContainerFactory）的手动确认
+ *               监听方法收到List<Message>和Channel，调用process把整个批次交给BatchHandler处理，然后：
+ *                  1. 全部成功：用multiple=true的basicAck一次确认整个批次
+ *                  2. 部分失败：BatchHandler抛出PartialBatchFailureException，其中标记的消息逐条basicNack，
+ *                     第一次投递时重新入队，重复投递（redeliver）时不再入队（进入死信队列或丢弃），其余消息仍然一次确认
+ *                  3. 抛出其它异常：整个批次按失败处理
+ *               batchingRabbitTemplate发送的批量消息会被监听容器拆包，拆出的多条消息共用一个deliveryTag，
+ *               其中任意一条失败时这个deliveryTag被nack，同一个AMQP消息中已经处理成功的消息也会被重新投递，BatchHandler需要是幂等的
+ * @date 2026年10月18日 23:20
+ */
+public final class BatchAcknowledger {
+
+    /**
+     * 一个批次的处理逻辑
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+        /**
+         * @param batch 按投递顺序排列的消息
+         * @throws PartialBatchFailureException 只有部分消息处理失败
+         */
+        void handle(List<Message> batch) throws Exception;
+    }
+
+    private BatchAcknowledger() {
+    }
+
+    /**
+     * 处理并确认一个批次，不会抛出BatchHandler的异常，监听容器的acknowledge-mode必须是MANUAL
+     */
+    public static void process(Channel channel, List<Message> batch, BatchHandler handler) throws IOException {
+        BitSet failed;
+        try {
+            handler.handle(batch);
+            failed = new BitSet();
+        } catch (PartialBatchFailureException e) {
+            e.printStackTrace();
+            failed = e.getFailed();
+        } catch (Exception e) {
+            e.printStackTrace();
+            failed = new BitSet();
+            failed.set(0, batch.size());
+        }
+        settle(channel, batch, failed);
+    }
+
+    /**
+     * 先逐条basicNack失败的消息，再用multiple=true确认到最后一条成功的消息，
+     * 已经nack的消息在broker端已经结束，不会被之后的multiple=true确认包含。
+     * 监听容器按投递顺序逐批调用监听方法，批次之前的消息都已经确认，所以multiple=true不会误确认其它批次的消息
+     */
+    public static void settle(Channel channel, List<Message> batch, BitSet failed) throws IOException {
+        // 拆包后的多条消息共用deliveryTag，先找出有消息失败的deliveryTag
+        BitSet failedTags = new BitSet();
+        long first = batch.isEmpty() ? 0 : batch.get(0).getMessageProperties().getDeliveryTag();
+        for (int i = failed.nextSetBit(0); i >= 0 && i < batch.size(); i = failed.nextSetBit(i + 1)) {
+            failedTags.set((int) (batch.get(i).getMessageProperties().getDeliveryTag() - first));
+        }
+        long lastAcked = -1;
+        long lastNacked = -1;
+        for (Message message : batch) {
+            MessageProperties properties = message.getMessageProperties();
+            long tag = properties.getDeliveryTag();
+            if (!failedTags.get((int) (tag - first))) {
+                lastAcked = tag;
+            } else if (tag != lastNacked) {
+                channel.basicNack(tag, false, !Boolean.TRUE.equals(properties.isRedelivered()));
+                lastNacked = tag;
+            }
+        }
+        if (lastAcked >= 0) {
+            channel.basicAck(lastAcked, true);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package hs.rabbitmq.springbootmodule.codec;
+
+import hs.rabbitmq.codec.CompressionCodec;
+import org.springframework.amqp.support.postprocessor.AbstractDecompressingPostProcessor;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author heshuai
+ * @title: CodecDecompressingPostProcessor
+ * @description: 用simple-module的CompressionCodec（Lz4Codec、DeflateCodec）解压消息，一般注册到DelegatingDecompressingPostProcessor中使用
+ *               与DelegatingDecompressingPostProcessor内置的解压器一样总是解压，不要求消息带有springAutoDecompress头，
+ *               所以simple-module发送的lz4、deflate消息也能被解压；
+ *               解压后的长度超过codec的最大解压长度时抛出异常，不会因为伪造的长度或者压缩炸弹耗尽内存
+ * @date 2026年10月18日 18:30
+ */
+public class CodecDecompressingPostProcessor extends AbstractDecompressingPostProcessor {
+
+    private final CompressionCodec codec;
+
+    public CodecDecompressingPostProcessor(CompressionCodec codec) {
+        super(true);
+        this.codec = codec;
+    }
+
+    @Override
+    protected InputStream getDecompressorStream(InputStream zipped) throws IOException {
+        return new ByteArrayInputStream(codec.decompress(StreamUtils.copyToByteArray(zipped)));
+    }
+
+    @Override
+    protected String getEncoding() {
+        return codec.contentEncoding();
+    }
+}
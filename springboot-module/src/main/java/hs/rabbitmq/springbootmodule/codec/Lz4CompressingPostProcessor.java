@@ -0,0 +1,48 @@
+package hs.rabbitmq.springbootmodule.codec;
+
+import hs.rabbitmq.codec.Lz4Codec;
+import org.springframework.amqp.support.postprocessor.AbstractCompressingPostProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @author heshuai
+ * @title: Lz4CompressingPostProcessor
+ * @description: LZ4压缩的MessagePostProcessor，content-encoding为lz4
+ *               spring-amqp自带gzip、zip、deflate三种压缩，它们的压缩率较高但CPU开销也大，
+ *               LZ4的压缩/解压速度快一个数量级，适合网络带宽是瓶颈、CPU又不能花太多的场景。
+ *               压缩使用simple-module的Lz4Codec，两个模块之间content-encoding为lz4的消息可以互通。
+ *               LZ4块需要一次拿到完整的数据，这里的压缩流先缓存全部数据，在close时再压缩写出
+ * @date 2026年10月18日 18:30
+ */
+public class Lz4CompressingPostProcessor extends AbstractCompressingPostProcessor {
+
+    public static final String ENCODING = Lz4Codec.CONTENT_ENCODING;
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    @Override
+    protected OutputStream getCompressorStream(OutputStream zipped) {
+        return new ByteArrayOutputStream() {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                zipped.write(codec.compress(toByteArray()));
+                zipped.close();
+            }
+        };
+    }
+
+    @Override
+    protected String getEncoding() {
+        return ENCODING;
+    }
+}
@@ -0,0 +1,50 @@
+package hs.rabbitmq.springbootmodule.codec;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.core.Ordered;
+
+/**
+ * @author heshuai
+ * @title: ThresholdCompressingPostProcessor
+ * @description: 只压缩大消息的MessagePostProcessor
+ *               spring-amqp的压缩PostProcessor会压缩所有消息，小消息压缩收益很小，反而白白消耗CPU，
+ *               这里在消息体长度不小于threshold时才交给实际的压缩PostProcessor，压缩后没有变小的消息按原样发送
+ * @date 2026年10月18日 18:30
+ */
+public class ThresholdCompressingPostProcessor implements MessagePostProcessor, Ordered {
+
+    private final MessagePostProcessor compressor;
+    private final int threshold;
+
+    /**
+     * @param compressor 实际的压缩PostProcessor，例如Lz4CompressingPostProcessor、DeflaterPostProcessor
+     * @param threshold 压缩阈值，消息体长度小于这个值时不压缩，单位：字节
+     */
+    public ThresholdCompressingPostProcessor(MessagePostProcessor compressor, int threshold) {
+        this.compressor = compressor;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) throws AmqpException {
+        int length = message.getBody().length;
+        if (length < threshold) {
+            return message;
+        }
+        String contentEncoding = message.getMessageProperties().getContentEncoding();
+        Message compressed = compressor.postProcessMessage(message);
+        if (compressed.getBody().length >= length) {
+            // 压缩PostProcessor可能直接修改了原消息的属性，恢复content-encoding
+            message.getMessageProperties().setContentEncoding(contentEncoding);
+            return message;
+        }
+        return compressed;
+    }
+
+    @Override
+    public int getOrder() {
+        return compressor instanceof Ordered ? ((Ordered) compressor).getOrder() : Ordered.LOWEST_PRECEDENCE;
+    }
+}
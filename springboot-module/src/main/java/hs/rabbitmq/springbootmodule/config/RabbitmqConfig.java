@@ -1,10 +1,370 @@
 package hs.rabbitmq.springbootmodule.config;
 
+import com.rabbitmq.client.Channel;
+import hs.rabbitmq.codec.DeflateCodec;
+import hs.rabbitmq.codec.Lz4Codec;
+import hs.rabbitmq.consumer.VirtualThreads;
+import hs.rabbitmq.springbootmodule.codec.CodecDecompressingPostProcessor;
+import hs.rabbitmq.springbootmodule.codec.Lz4CompressingPostProcessor;
+import hs.rabbitmq.springbootmodule.codec.ThresholdCompressingPostProcessor;
+import hs.rabbitmq.springbootmodule.flow.ConnectionBlockedMonitor;
+import hs.rabbitmq.springbootmodule.metrics.RabbitMessagingMetrics;
+import hs.rabbitmq.springbootmodule.scaling.ListenerAutoscaler;
+import hs.rabbitmq.springbootmodule.virtualThread.VirtualThreadMessageListener;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.support.postprocessor.DeflaterPostProcessor;
+import org.springframework.amqp.support.postprocessor.DelegatingDecompressingPostProcessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.amqp.RabbitTemplateConfigurer;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
 /**
  * @author heshuai
  * @title: RabbitmqConfig
- * @description: TODO
+ * @description: Rabbitmq相关配置
+ *               消息压缩：
+ *                  RabbitTemplate发送消息前，消息体不小于rabbitmq.compression.threshold的消息按rabbitmq.compression.codec压缩，
+ *                  并在content-encoding中标记所用算法（lz4、deflate），codec为none（默认）时不压缩；
+ *                  只有所有消费者都能解压（本模块的监听容器、simple-module的PayloadCompressor）时才打开压缩，其他客户端收到的是压缩后的字节；
+ *                  所有@RabbitListener在收到消息后先按content-encoding自动解压，监听方法的参数仍然是原始的消息内容，
+ *                  RabbitTemplate收到的回复（sendAndReceive）同样自动解压；lz4、deflate解压后超过rabbitmq.compression.max-decompressed-size字节时解压失败。
+ *                  这里定义的rabbitTemplate、rabbitListenerContainerFactory会替换SpringBoot自动配置的同名Bean，
+ *                  spring.rabbitmq下的配置仍然通过Configurer生效
+ *               批量发送：
+ *                  batchingRabbitTemplate把发往同一个exchange/routingKey的多条小消息打包成一条AMQP消息发送，
+ *                  满rabbitmq.batching.batch-size条、满buffer-limit字节或者第一条消息等待超过timeout毫秒时发送，
+ *                  压缩作用于整个批次；监听容器默认开启拆包（deBatchingEnabled），@RabbitListener方法收到的仍然是单条消息
+ *               流控：
+ *                  broker内存或者磁盘告警时会阻塞（connection.blocked）发布消息的Connection，
+ *                  rabbitmq.flow-control.use-publisher-connection为true时RabbitTemplate使用单独的Connection发布消息，
+ *                  发布的Connection被阻塞时，监听容器仍然可以消费消息，帮助broker尽快解除告警；
+ *                  rabbitmq.flow-control.fail-fast为true时（默认false，需要调用方能处理异常时再开启），
+ *                  Connection被阻塞期间rabbitTemplate发送直接抛出AmqpResourceNotAvailableException，
+ *                  被阻塞的次数和累计时长见ConnectionBlockedMonitor
+ *               批量监听：
+ *                  containerFactory = "batchRabbitListenerContainerFactory"的@RabbitListener方法一次收到一批消息（List<Message>），
+ *                  满rabbitmq.batch-listener.batch-size条、或者等待下一条消息超过receive-timeout毫秒时交给监听方法，
+ *                  手动确认，由BatchAcknowledger一次确认整个批次，只重新投递（或死信）处理失败的消息
+ *               消费者数量：
+ *                  两个容器工厂创建的监听容器都注册到ListenerAutoscaler，按队列积压和忙碌程度在rabbitmq.autoscaling.min-consumers
+ *                  和max-consumers之间调整消费者数量；默认不启用（rabbitmq.autoscaling.enabled=false），消费者数量按spring.rabbitmq.listener.simple.concurrency
+ *               指标：
+ *                  两个RabbitTemplate在发送时、两个容器工厂的监听容器在交给监听方法时记录按exchange/routingKey、队列区分的指标，
+ *                  通过Micrometer导出（/actuator/metrics），见RabbitMessagingMetrics
+ *               虚拟线程：
+ *                  containerFactory = "virtualThreadRabbitListenerContainerFactory"的@RabbitListener方法在rabbitmq.virtual-threads.enabled为true时
+ *                  在虚拟线程上执行（需要Java 21，mvn -Pjava21打包），同时处理的消息数量由rabbitmq.virtual-threads.prefetch限制，
+ *                  而不是消费者线程数量，见VirtualThreadMessageListener
+ *               异步RPC：
+ *                  asyncRabbitTemplate通过rabbitTemplate发送请求，所有请求共用一个exclusive的回复queue（rpcReplyQueue）和一个回复消费者，
+ *                  按correlationId匹配回复，不阻塞调用线程；超时和在途请求数量的限制由AsyncRPCClient负责
+ *               RPC服务端：
+ *                  containerFactory = "rpcRabbitListenerContainerFactory"的@RabbitListener方法固定rabbitmq.rpc.server.consumers个消费者（默认CPU核数），
+ *                  每个消费者一个线程、一个Channel，prefetch为rabbitmq.rpc.server.prefetch，每个请求处理完成后单独确认；
+ *                  应用停止时先取消订阅，最多等待shutdown-timeout毫秒处理完已经收到的请求
  * @date 2021年02月09日 10:19
  */
+@Configuration
 public class RabbitmqConfig {
+
+    /**
+     * 发送消息前的压缩处理
+     * @param codec 压缩算法：lz4、deflate、none（默认，不压缩）
+     * @param threshold 压缩阈值，单位：字节
+     */
+    @Bean
+    public MessagePostProcessor compressingPostProcessor(@Value("${rabbitmq.compression.codec:none}") String codec,
+                                                         @Value("${rabbitmq.compression.threshold:1024}") int threshold) {
+        switch (codec) {
+            case "lz4":
+                return new ThresholdCompressingPostProcessor(new Lz4CompressingPostProcessor(), threshold);
+            case "deflate":
+                return new ThresholdCompressingPostProcessor(new DeflaterPostProcessor(), threshold);
+            case "none":
+                return message -> message;
+            default:
+                throw new IllegalArgumentException("Unsupported compression codec: " + codec);
+        }
+    }
+
+    /**
+     * 收到消息后的解压处理，支持gzip、zip、deflate以及lz4，没有被压缩的消息原样返回
+     * 内置的InflaterPostProcessor只解压带有springAutoDecompress头的消息，并且不限制解压后的长度，
+     * 这里deflate、lz4替换为simple-module的DeflateCodec、Lz4Codec：总是解压，这样simple-module（PayloadCompressor）发送的消息也能被解压，
+     * 解压后超过rabbitmq.compression.max-decompressed-size字节时抛出异常
+     * @param maxDecompressedSize 最大解压长度，单位：字节
+     */
+    @Bean
+    public DelegatingDecompressingPostProcessor decompressingPostProcessor(
+            @Value("${rabbitmq.compression.max-decompressed-size:67108864}") int maxDecompressedSize) {
+        DelegatingDecompressingPostProcessor decompressor = new DelegatingDecompressingPostProcessor();
+        decompressor.addDecompressor(DeflateCodec.CONTENT_ENCODING,
+                new CodecDecompressingPostProcessor(new DeflateCodec(Deflater.BEST_SPEED, maxDecompressedSize)));
+        decompressor.addDecompressor(Lz4Codec.CONTENT_ENCODING,
+                new CodecDecompressingPostProcessor(new Lz4Codec(maxDecompressedSize)));
+        return decompressor;
+    }
+
+    /**
+     * @param failFast Connection被阻塞时是否直接拒绝发送，默认false：与原来一样阻塞等待，已有的调用方不会突然收到异常
+     * @param usePublisherConnection 是否使用单独的Connection发布消息
+     */
+    @Bean
+    @Primary
+    public RabbitTemplate rabbitTemplate(RabbitTemplateConfigurer configurer, ConnectionFactory connectionFactory,
+                                         MessagePostProcessor compressingPostProcessor,
+                                         DelegatingDecompressingPostProcessor decompressingPostProcessor,
+                                         ConnectionBlockedMonitor connectionBlockedMonitor,
+                                         RabbitMessagingMetrics rabbitMessagingMetrics,
+                                         @Value("${rabbitmq.flow-control.fail-fast:false}") boolean failFast,
+                                         @Value("${rabbitmq.flow-control.use-publisher-connection:true}") boolean usePublisherConnection) {
+        RabbitTemplate template = new RabbitTemplate() {
+            @Override
+            public void doSend(Channel channel, String exchange, String routingKey, Message message, boolean mandatory,
+                               CorrelationData correlationData) throws IOException {
+                long start = System.nanoTime();
+                super.doSend(channel, exchange, routingKey, message, mandatory, correlationData);
+                rabbitMessagingMetrics.published(exchange, routingKey, correlationData, start);
+            }
+        };
+        configurer.configure(template, connectionFactory);
+        if (failFast) {
+            // 先检查流控状态，被拒绝的消息不需要再压缩
+            template.setBeforePublishPostProcessors(message -> {
+                connectionBlockedMonitor.checkNotBlocked();
+                return message;
+            }, compressingPostProcessor);
+        } else {
+            template.setBeforePublishPostProcessors(compressingPostProcessor);
+        }
+        template.setAfterReceivePostProcessors(decompressingPostProcessor);
+        template.setUsePublisherConnection(usePublisherConnection);
+        return template;
+    }
+
+    /**
+     * 批量发送小消息的RabbitTemplate，使用时按名称注入：@Autowired private BatchingRabbitTemplate batchingRabbitTemplate
+     * @param batchSize 一个批次最多的消息条数
+     * @param bufferLimit 一个批次最大的字节数
+     * @param timeout 批次中第一条消息最多等待的时间，单位：毫秒
+     */
+    @Bean
+    public BatchingRabbitTemplate batchingRabbitTemplate(RabbitTemplateConfigurer configurer, ConnectionFactory connectionFactory,
+                                                         MessagePostProcessor compressingPostProcessor,
+                                                         RabbitMessagingMetrics rabbitMessagingMetrics,
+                                                         @Value("${rabbitmq.batching.batch-size:100}") int batchSize,
+                                                         @Value("${rabbitmq.batching.buffer-limit:65536}") int bufferLimit,
+                                                         @Value("${rabbitmq.batching.timeout:10}") long timeout,
+                                                         @Value("${rabbitmq.flow-control.use-publisher-connection:true}") boolean usePublisherConnection) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("batching-rabbit-template-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        BatchingRabbitTemplate template = new BatchingRabbitTemplate(new SimpleBatchingStrategy(batchSize, bufferLimit, timeout), scheduler) {
+            @Override
+            public void doSend(Channel channel, String exchange, String routingKey, Message message, boolean mandatory,
+                               CorrelationData correlationData) throws IOException {
+                long start = System.nanoTime();
+                super.doSend(channel, exchange, routingKey, message, mandatory, correlationData);
+                rabbitMessagingMetrics.published(exchange, routingKey, correlationData, start);
+            }
+        };
+        configurer.configure(template, connectionFactory);
+        template.setBeforePublishPostProcessors(compressingPostProcessor);
+        // 批次在定时线程上发送，这里不做快速失败，只使用单独的发布Connection
+        template.setUsePublisherConnection(usePublisherConnection);
+        return template;
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                               ConnectionFactory connectionFactory,
+                                                                               MessagePostProcessor compressingPostProcessor,
+                                                                               DelegatingDecompressingPostProcessor decompressingPostProcessor,
+                                                                               ListenerAutoscaler listenerAutoscaler,
+                                                                               RabbitMessagingMetrics rabbitMessagingMetrics) {
+        SimpleRabbitListenerContainerFactory factory = newListenerContainerFactory(configurer, connectionFactory,
+                compressingPostProcessor, decompressingPostProcessor);
+        factory.setAdviceChain(rabbitMessagingMetrics.listenerAdvice(factory.getAdviceChain()));
+        Advice[] adviceChain = factory.getAdviceChain();
+        factory.setContainerCustomizer(container -> listenerAutoscaler.register(container, adviceChain));
+        return factory;
+    }
+
+    /**
+     * virtualThreadRabbitListenerContainerFactory的监听方法执行在这个Executor的虚拟线程上，
+     * 只在rabbitmq.virtual-threads.enabled为true时创建；应用停止时监听容器先停止，再由Spring调用shutdown
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "rabbitmq.virtual-threads.enabled", havingValue = "true")
+    public ExecutorService virtualThreadListenerExecutor() {
+        return VirtualThreads.newExecutor("rabbit-listener-virtual-");
+    }
+
+    /**
+     * 在虚拟线程上执行监听方法的容器工厂，适合监听方法阻塞在I/O上（JDBC、HTTP）的队列，
+     * 使用时在@RabbitListener中指定containerFactory = "virtualThreadRabbitListenerContainerFactory"
+     * rabbitmq.virtual-threads.enabled为true时（需要Java 21）：每个监听容器只有一个消费者，MANUAL确认，
+     *      最多prefetch条消息同时在虚拟线程上处理，处理完成后由VirtualThreadMessageListener确认；
+     *      并发度由prefetch决定，不注册到ListenerAutoscaler；不拆包，batchingRabbitTemplate打包的消息不要发送到这些队列
+     * 为false时与rabbitListenerContainerFactory相同，监听方法在消费者线程上执行
+     * @param virtualThreadListenerExecutor enabled为true时才存在
+     * @param enabled 是否在虚拟线程上执行监听方法
+     * @param prefetch 每个监听容器同时处理的消息数量上限
+     * @param defaultRequeueRejected 监听方法抛出异常时是否重新入队
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory virtualThreadRabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                            ConnectionFactory connectionFactory,
+                                                                                            MessagePostProcessor compressingPostProcessor,
+                                                                                            DelegatingDecompressingPostProcessor decompressingPostProcessor,
+                                                                                            ListenerAutoscaler listenerAutoscaler,
+                                                                                            RabbitMessagingMetrics rabbitMessagingMetrics,
+                                                                                            @Qualifier("virtualThreadListenerExecutor") ObjectProvider<ExecutorService> virtualThreadListenerExecutor,
+                                                                                            @Value("${rabbitmq.virtual-threads.enabled:false}") boolean enabled,
+                                                                                            @Value("${rabbitmq.virtual-threads.prefetch:200}") int prefetch,
+                                                                                            @Value("${spring.rabbitmq.listener.simple.default-requeue-rejected:true}") boolean defaultRequeueRejected) {
+        SimpleRabbitListenerContainerFactory factory = newListenerContainerFactory(configurer, connectionFactory,
+                compressingPostProcessor, decompressingPostProcessor);
+        Advice[] adviceChain = rabbitMessagingMetrics.listenerAdvice(factory.getAdviceChain());
+        if (!enabled) {
+            factory.setAdviceChain(adviceChain);
+            factory.setContainerCustomizer(container -> listenerAutoscaler.register(container, adviceChain));
+            return factory;
+        }
+        ExecutorService executor = virtualThreadListenerExecutor.getObject();
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setDeBatchingEnabled(false);
+        // 重试、指标等Advice改为在虚拟线程上包围监听方法
+        factory.setAdviceChain();
+        factory.setContainerCustomizer(container -> container.setMessageListener(new VirtualThreadMessageListener(
+                (ChannelAwareMessageListener) container.getMessageListener(), executor, adviceChain, defaultRequeueRejected)));
+        return factory;
+    }
+
+    /**
+     * 批量监听的容器工厂，使用时在@RabbitListener中指定containerFactory = "batchRabbitListenerContainerFactory"，
+     * 监听方法的参数为List<Message>和Channel，通过BatchAcknowledger处理和确认
+     * @param batchSize 一个批次最多的消息条数，prefetch小于batchSize时批次攒不满
+     * @param receiveTimeout 等待下一条消息的超时时间，超时后不满batchSize的批次也交给监听方法，单位：毫秒
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                    ConnectionFactory connectionFactory,
+                                                                                    DelegatingDecompressingPostProcessor decompressingPostProcessor,
+                                                                                    @Value("${rabbitmq.batch-listener.batch-size:50}") int batchSize,
+                                                                                    @Value("${rabbitmq.batch-listener.receive-timeout:100}") long receiveTimeout,
+                                                                                    ListenerAutoscaler listenerAutoscaler,
+                                                                                    RabbitMessagingMetrics rabbitMessagingMetrics) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 批量消费时解压在拆包之前，对每条AMQP消息执行
+        factory.setAfterReceivePostProcessors(decompressingPostProcessor);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setAdviceChain(rabbitMessagingMetrics.listenerAdvice(factory.getAdviceChain()));
+        Advice[] adviceChain = factory.getAdviceChain();
+        factory.setContainerCustomizer(container -> listenerAutoscaler.register(container, adviceChain));
+        return factory;
+    }
+
+    /**
+     * RPC服务端的容器工厂，请求处理是CPU密集的，消费者数量固定，不注册到ListenerAutoscaler
+     * 监听方法直接返回回复，由容器发送到请求的replyTo并带上correlationId，监听方法执行完成后自动确认
+     * 不设置batchSize：AUTO模式下batchSize大于1时确认以multiple=true发送，一个请求处理失败会把同一批中已经回复过的请求一起nack重新入队，
+     * 这些请求会被再处理一次、回复两次
+     * @param consumers 消费者数量，小于等于0时为CPU核数
+     * @param prefetch 每个消费者的prefetch，处理当前请求时下一个请求已经在本地排队
+     * @param shutdownTimeout 停止时等待正在处理的请求的时间，单位：毫秒
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory rpcRabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                  ConnectionFactory connectionFactory,
+                                                                                  MessagePostProcessor compressingPostProcessor,
+                                                                                  DelegatingDecompressingPostProcessor decompressingPostProcessor,
+                                                                                  RabbitMessagingMetrics rabbitMessagingMetrics,
+                                                                                  @Value("${rabbitmq.rpc.server.consumers:0}") int consumers,
+                                                                                  @Value("${rabbitmq.rpc.server.prefetch:4}") int prefetch,
+                                                                                  @Value("${rabbitmq.rpc.server.shutdown-timeout:10000}") long shutdownTimeout) {
+        SimpleRabbitListenerContainerFactory factory = newListenerContainerFactory(configurer, connectionFactory,
+                compressingPostProcessor, decompressingPostProcessor);
+        int concurrency = consumers > 0 ? consumers : Runtime.getRuntime().availableProcessors();
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(concurrency);
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setAdviceChain(rabbitMessagingMetrics.listenerAdvice(factory.getAdviceChain()));
+        factory.setContainerCustomizer(container -> container.setShutdownTimeout(shutdownTimeout));
+        return factory;
+    }
+
+    /**
+     * RPC回复queue，名字由客户端生成，exclusive、auto-delete，应用停止后自动删除
+     */
+    @Bean
+    public Queue rpcReplyQueue() {
+        return new AnonymousQueue();
+    }
+
+    /**
+     * 异步RPC：通过rabbitTemplate发送请求（同样压缩、记录指标），回复由一个监听rpcReplyQueue的容器接收并按需解压。
+     * 没有使用direct reply-to：AsyncRabbitTemplate的direct reply-to模式每个在途请求独占一个Channel，并行请求多时Channel数量随之增长
+     * receiveTimeout为0，不在这里超时，每个请求的超时时间由AsyncRPCClient控制
+     */
+    @Bean
+    public AsyncRabbitTemplate asyncRabbitTemplate(RabbitTemplate rabbitTemplate, ConnectionFactory connectionFactory,
+                                                   Queue rpcReplyQueue,
+                                                   DelegatingDecompressingPostProcessor decompressingPostProcessor) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(rpcReplyQueue.getName());
+        container.setAfterReceivePostProcessors(decompressingPostProcessor);
+        AsyncRabbitTemplate asyncRabbitTemplate = new AsyncRabbitTemplate(rabbitTemplate, container);
+        asyncRabbitTemplate.setReceiveTimeout(0);
+        return asyncRabbitTemplate;
+    }
+
+    /**
+     * 按spring.rabbitmq.listener.simple配置，收到消息后按需解压，@RabbitListener方法的返回值作为回复发送时同样按需压缩
+     */
+    private SimpleRabbitListenerContainerFactory newListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                             ConnectionFactory connectionFactory,
+                                                                             MessagePostProcessor compressingPostProcessor,
+                                                                             DelegatingDecompressingPostProcessor decompressingPostProcessor) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAfterReceivePostProcessors(decompressingPostProcessor);
+        factory.setBeforeSendReplyPostProcessors(compressingPostProcessor);
+        return factory;
+    }
 }
@@ -0,0 +1,103 @@
+package hs.rabbitmq.springbootmodule.flow;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: ConnectionBlockedMonitor
+ * @description: 监控broker流控（connection.blocked/unblocked）
+ *               CachingConnectionFactory收到connection.blocked时会发布ConnectionBlockedEvent，这里记录被阻塞的Connection，
+ *               统计被阻塞的次数和累计时长；RabbitTemplate在发送前调用checkNotBlocked，被阻塞期间发送直接抛出AmqpResourceNotAvailableException，
+ *               调用方（例如Controller）可以立即拒绝请求，而不是让线程卡在basicPublish中。
+ *               是否启用快速失败见rabbitmq.flow-control.fail-fast
+ * @date 2026年10月18日 21:00
+ */
+@Component
+public class ConnectionBlockedMonitor {
+
+    private static final Log logger = LogFactory.getLog(ConnectionBlockedMonitor.class);
+
+    /**
+     * 被阻塞的Connection及开始阻塞的时间
+     */
+    private final Map<Connection, Long> blockedSince = new ConcurrentHashMap<>();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile String lastReason;
+
+    @EventListener
+    public void onBlocked(ConnectionBlockedEvent event) {
+        if (blockedSince.putIfAbsent(event.getConnection(), System.nanoTime()) == null) {
+            lastReason = event.getReason();
+            blockedCount.incrementAndGet();
+            logger.warn("Rabbitmq connection is blocked: " + event.getReason());
+        }
+    }
+
+    @EventListener
+    public void onUnblocked(ConnectionUnblockedEvent event) {
+        Long since = blockedSince.remove(event.getConnection());
+        if (since != null) {
+            long blocked = System.nanoTime() - since;
+            blockedNanos.addAndGet(blocked);
+            logger.info("Rabbitmq connection is unblocked after " + TimeUnit.NANOSECONDS.toMillis(blocked) + "ms");
+        }
+    }
+
+    /**
+     * 被阻塞时拒绝发送，作为RabbitTemplate的发送前处理器使用
+     * @throws AmqpResourceNotAvailableException Connection正在被阻塞
+     */
+    public void checkNotBlocked() {
+        if (isBlocked()) {
+            rejectedCount.incrementAndGet();
+            throw new AmqpResourceNotAvailableException("Connection is blocked by the broker, reason: " + lastReason);
+        }
+    }
+
+    /**
+     * @return 是否有Connection正在被阻塞
+     */
+    public boolean isBlocked() {
+        return !blockedSince.isEmpty();
+    }
+
+    /**
+     * @return 被阻塞的次数
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * @return 累计被阻塞的时长，包括当前正在进行的阻塞，单位：毫秒
+     */
+    public long getBlockedTimeMillis() {
+        long nanos = blockedNanos.get();
+        long now = System.nanoTime();
+        for (Long since : blockedSince.values()) {
+            nanos += now - since;
+        }
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * @return 因为被阻塞而拒绝发送的消息数量
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,153 @@
+package hs.rabbitmq.springbootmodule.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.aop.Advice;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: RabbitMessagingMetrics
+ * @description: 通过Micrometer导出的生产者、消费者指标，可以在/actuator/metrics中查看
+ *               引入actuator后SpringBoot已经自动导出了：
+ *                  rabbitmq.published、rabbitmq.consumed、rabbitmq.acknowledged等：按ConnectionFactory汇总的计数（不区分exchange、队列）
+ *                  spring.rabbitmq.listener：每个监听容器执行监听方法的耗时（tag为listener.id、queue、result）
+ *               这里补充按exchange/routingKey、队列区分的指标：
+ *                  rabbitmq.publish（exchange、routing.key）：rabbitTemplate、batchingRabbitTemplate发布的AMQP消息数量，
+ *                      batchingRabbitTemplate按批次计数
+ *                  rabbitmq.publish.confirm（exchange、routing.key、result=ack/nack）：发布确认的耗时，
+ *                      只统计发送时带了CorrelationData的消息（没有CorrelationData时无法把确认对应到消息）
+ *                  rabbitmq.deliver、rabbitmq.redeliver（queue）：交给监听方法的消息数量，以及其中重新投递的数量
+ *                  rabbitmq.unacked（queue）：已经交给监听方法、还没有处理完成的消息数量；
+ *                      AUTO模式在监听方法返回后确认，MANUAL模式在监听方法中确认，所以这就是已投递、未确认的消息数量，
+ *                      不包括还在容器预取缓冲区中的消息
+ *               计数器（Micrometer的Counter内部是DoubleAdder）和Timer的直方图在热路径上都没有锁，
+ *               每个exchange/routingKey、队列的Meter只注册一次，之后从ConcurrentHashMap中取
+ * @date 2026年10月19日 02:00
+ */
+@Component
+public class RabbitMessagingMetrics {
+
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, PublishMeters>> publishers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, QueueMeters> queues = new ConcurrentHashMap<>();
+
+    public RabbitMessagingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 在RabbitTemplate.doSend发送成功后调用，记录一次发布；correlationData不为null时在收到确认后记录确认耗时，
+     * 确认可能在这之前就已经到达，此时回调立即执行
+     * @param start 开始发送的时间，System.nanoTime()
+     */
+    public void published(String exchange, String routingKey, CorrelationData correlationData, long start) {
+        PublishMeters meters = publishMeters(exchange == null ? "" : exchange, routingKey == null ? "" : routingKey);
+        meters.published.increment();
+        if (correlationData != null) {
+            correlationData.getFuture().addCallback(
+                    confirm -> (confirm != null && confirm.isAck() ? meters.acked : meters.nacked)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS),
+                    e -> meters.nacked.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * 在容器工厂的adviceChain后面追加记录投递的Advice，单条监听和批量监听（List<Message>）都适用
+     * @param adviceChain 容器工厂原来的adviceChain
+     * @return 新的adviceChain，通过factory.setAdviceChain设置
+     */
+    public Advice[] listenerAdvice(Advice[] adviceChain) {
+        Advice[] chain = adviceChain == null ? new Advice[1] : Arrays.copyOf(adviceChain, adviceChain.length + 1);
+        chain[chain.length - 1] = (MethodInterceptor) this::invokeListener;
+        return chain;
+    }
+
+    /**
+     * 拦截ContainerDelegate.invokeListener(Channel channel, Object data)，data为Message或者List<Message>
+     */
+    @SuppressWarnings("unchecked")
+    private Object invokeListener(MethodInvocation invocation) throws Throwable {
+        Object data = invocation.getArguments()[1];
+        List<Message> messages = data instanceof List ? (List<Message>) data
+                : data instanceof Message ? Collections.singletonList((Message) data) : Collections.emptyList();
+        for (Message message : messages) {
+            QueueMeters meters = queueMeters(message.getMessageProperties().getConsumerQueue());
+            meters.delivered.increment();
+            if (Boolean.TRUE.equals(message.getMessageProperties().isRedelivered())) {
+                meters.redelivered.increment();
+            }
+            meters.unacked.incrementAndGet();
+        }
+        try {
+            return invocation.proceed();
+        } finally {
+            for (Message message : messages) {
+                queueMeters(message.getMessageProperties().getConsumerQueue()).unacked.decrementAndGet();
+            }
+        }
+    }
+
+    private PublishMeters publishMeters(String exchange, String routingKey) {
+        ConcurrentHashMap<String, PublishMeters> byRoutingKey = publishers.get(exchange);
+        PublishMeters meters = byRoutingKey == null ? null : byRoutingKey.get(routingKey);
+        if (meters != null) {
+            return meters;
+        }
+        return publishers.computeIfAbsent(exchange, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(routingKey, key -> new PublishMeters(exchange, key));
+    }
+
+    private QueueMeters queueMeters(String queue) {
+        String name = queue == null ? "" : queue;
+        QueueMeters meters = queues.get(name);
+        return meters != null ? meters : queues.computeIfAbsent(name, QueueMeters::new);
+    }
+
+    private final class PublishMeters {
+        private final Counter published;
+        private final Timer acked;
+        private final Timer nacked;
+
+        private PublishMeters(String exchange, String routingKey) {
+            published = Counter.builder("rabbitmq.publish").description("Messages published by RabbitTemplate")
+                    .tag("exchange", exchange).tag("routing.key", routingKey).register(registry);
+            acked = confirmTimer(exchange, routingKey, "ack");
+            nacked = confirmTimer(exchange, routingKey, "nack");
+        }
+
+        private Timer confirmTimer(String exchange, String routingKey, String result) {
+            return Timer.builder("rabbitmq.publish.confirm").description("Time from publish to broker confirm")
+                    .tag("exchange", exchange).tag("routing.key", routingKey).tag("result", result)
+                    .publishPercentileHistogram().register(registry);
+        }
+    }
+
+    private final class QueueMeters {
+        private final Counter delivered;
+        private final Counter redelivered;
+        private final AtomicLong unacked = new AtomicLong();
+
+        private QueueMeters(String queue) {
+            delivered = Counter.builder("rabbitmq.deliver").description("Messages delivered to listeners")
+                    .tag("queue", queue).register(registry);
+            redelivered = Counter.builder("rabbitmq.redeliver").description("Redelivered messages delivered to listeners")
+                    .tag("queue", queue).register(registry);
+            Gauge.builder("rabbitmq.unacked", unacked, AtomicLong::get).description("Messages in listeners not yet acknowledged")
+                    .tag("queue", queue).register(registry);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package hs.rabbitmq.springbootmodule.rpc;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author heshuai
+ * @title: AsyncRPCClient
+ * @description: 非阻塞的RPC客户端，代替rabbitTemplate.convertSendAndReceive
+ *               convertSendAndReceive在收到回复之前一直阻塞调用线程，Web层要并行调用N个服务就需要N个线程。
+ *               这里基于asyncRabbitTemplate（见RabbitmqConfig，所有请求共用一个回复queue和一个回复消费者，按correlationId匹配回复），
+ *               call立即返回CompletableFuture<byte[]>，一个线程可以同时发起任意多个请求：
+ *                  1. 每个请求可以指定自己的超时时间（deadline），超过后Future以TimeoutException结束，默认为rabbitmq.rpc.timeout
+ *                  2. 调用方取消Future（cancel）或者超时时，同时取消asyncRabbitTemplate中的请求，删除correlationId，之后到达的回复直接丢弃
+ *                  3. 背压：同时在途的请求数量不超过rabbitmq.rpc.max-outstanding，超过时不等待，
+ *                     返回以RejectedExecutionException结束的Future，由调用方决定降级或者稍后重试
+ *               请求按rabbitTemplate的MessageConverter转换（与convertSendAndReceive相同），回复返回解压后的消息体，不做转换。
+ *               注意：Future在回复消费者线程或者超时线程上完成，回调中不要做阻塞操作，需要阻塞时使用thenApplyAsync等方法交给其它线程
+ * @date 2026年10月19日 05:10
+ */
+@Component
+public class AsyncRPCClient implements InitializingBean, DisposableBean {
+
+    private final AsyncRabbitTemplate asyncRabbitTemplate;
+    private final long timeout;
+    private final int maxOutstanding;
+    private final Semaphore outstanding;
+    private ThreadPoolTaskScheduler scheduler;
+
+    /**
+     * @param timeout 没有指定超时时间的请求等待回复的时间，单位：毫秒
+     * @param maxOutstanding 同时在途的请求数量上限
+     */
+    public AsyncRPCClient(AsyncRabbitTemplate asyncRabbitTemplate,
+                          @Value("${rabbitmq.rpc.timeout:5000}") long timeout,
+                          @Value("${rabbitmq.rpc.max-outstanding:1000}") int maxOutstanding) {
+        this.asyncRabbitTemplate = asyncRabbitTemplate;
+        this.timeout = timeout;
+        this.maxOutstanding = maxOutstanding;
+        this.outstanding = new Semaphore(maxOutstanding);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("rpc-deadline-");
+        scheduler.setDaemon(true);
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.initialize();
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * 发送请求，使用rabbitmq.rpc.timeout作为超时时间
+     */
+    public CompletableFuture<byte[]> call(String exchange, String routingKey, Object request) {
+        return call(exchange, routingKey, request, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送请求，不阻塞调用线程
+     * @param timeout 这个请求等待回复的时间
+     * @return 回复消息体的Future
+     */
+    public CompletableFuture<byte[]> call(String exchange, String routingKey, Object request, long timeout, TimeUnit unit) {
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        if (!outstanding.tryAcquire()) {
+            reply.completeExceptionally(new RejectedExecutionException("Too many outstanding RPC calls"));
+            return reply;
+        }
+        AsyncRabbitTemplate.RabbitMessageFuture future;
+        try {
+            Message message = asyncRabbitTemplate.getMessageConverter().toMessage(request, new MessageProperties());
+            future = asyncRabbitTemplate.sendAndReceive(exchange, routingKey, message);
+        } catch (AmqpException | IllegalStateException e) {
+            // 发送失败，或者asyncRabbitTemplate还没有启动、已经停止
+            outstanding.release();
+            reply.completeExceptionally(e);
+            return reply;
+        }
+        ScheduledFuture<?> deadline = scheduler.getScheduledExecutor().schedule(
+                () -> reply.completeExceptionally(new TimeoutException("No reply from " + exchange + "/" + routingKey
+                        + " within " + unit.toMillis(timeout) + "ms")),
+                timeout, unit);
+        future.addCallback(message -> reply.complete(message.getBody()), reply::completeExceptionally);
+        reply.whenComplete((result, e) -> {
+            deadline.cancel(false);
+            if (!future.isDone()) {
+                // 超时或者被调用方取消：删除asyncRabbitTemplate中等待的correlationId
+                future.cancel(false);
+            }
+            outstanding.release();
+        });
+        return reply;
+    }
+
+    /**
+     * @return 已发送、还没有结束的请求数量
+     */
+    public int outstanding() {
+        return maxOutstanding - outstanding.availablePermits();
+    }
+}
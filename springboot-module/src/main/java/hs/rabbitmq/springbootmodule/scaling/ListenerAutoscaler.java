@@ -0,0 +1,222 @@
+package hs.rabbitmq.springbootmodule.scaling;
+
+import org.aopalliance.aop.Advice;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author heshuai
+ * @title: ListenerAutoscaler
+ * @description: 按队列积压和消费者忙碌程度调整监听容器的消费者数量
+ *               固定的concurrency很难选：太少时突发流量积压很久才能消费完，太多时平时大部分线程和Channel都空闲。
+ *               监听容器通过容器工厂的ContainerCustomizer注册到这里（见RabbitmqConfig），每interval毫秒采样一次：
+ *                  1. 队列积压：被动声明（queue.declare passive）容器监听的所有队列，取消息数量之和
+ *                  2. 忙碌程度：在容器的adviceChain中统计监听方法的执行时间，除以（消费者数量 × 采样间隔）
+ *               扩容：积压超过 消费者数量 × scale-up-depth，或者忙碌程度不低于scale-up-utilization并且还有积压时，
+ *                    直接扩到 积压 / scale-up-depth 个消费者（至少加1个），尽快消费完突发流量；
+ *               缩容：没有积压并且连续scale-down-samples次忙碌程度低于scale-down-utilization时，每次减1个，空闲的线程和Channel随之关闭；
+ *               扩容和缩容的阈值不同（滞后），每次调整之后cooldown毫秒内不再调整，避免来回抖动。
+ *               消费者数量在min-consumers和max-consumers之间，启用后spring.rabbitmq.listener.simple.concurrency不再生效，
+ *               所以默认不启用，需要设置rabbitmq.autoscaling.enabled=true；
+ *               不要用于exclusive的容器，exclusive容器只能有一个消费者
+ * @date 2026年10月18日 23:40
+ */
+@Component
+public class ListenerAutoscaler implements InitializingBean, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(ListenerAutoscaler.class);
+
+    private final AmqpAdmin amqpAdmin;
+    private final boolean enabled;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final int scaleUpDepth;
+    private final double scaleUpUtilization;
+    private final double scaleDownUtilization;
+    private final int scaleDownSamples;
+    private final long interval;
+    private final long cooldown;
+    private final Map<SimpleMessageListenerContainer, ContainerState> containers = new ConcurrentHashMap<>();
+    private ThreadPoolTaskScheduler scheduler;
+
+    /**
+     * @param scaleUpDepth 每个消费者允许的积压消息数量，超过时扩容
+     * @param scaleUpUtilization 忙碌程度不低于这个值并且还有积压时扩容
+     * @param scaleDownUtilization 没有积压并且忙碌程度低于这个值时缩容
+     * @param scaleDownSamples 连续多少次满足缩容条件时才缩容
+     * @param interval 采样间隔，单位：毫秒
+     * @param cooldown 每次调整之后多久内不再调整，单位：毫秒
+     */
+    public ListenerAutoscaler(AmqpAdmin amqpAdmin,
+                              @Value("${rabbitmq.autoscaling.enabled:false}") boolean enabled,
+                              @Value("${rabbitmq.autoscaling.min-consumers:1}") int minConsumers,
+                              @Value("${rabbitmq.autoscaling.max-consumers:10}") int maxConsumers,
+                              @Value("${rabbitmq.autoscaling.scale-up-depth:100}") int scaleUpDepth,
+                              @Value("${rabbitmq.autoscaling.scale-up-utilization:0.8}") double scaleUpUtilization,
+                              @Value("${rabbitmq.autoscaling.scale-down-utilization:0.3}") double scaleDownUtilization,
+                              @Value("${rabbitmq.autoscaling.scale-down-samples:3}") int scaleDownSamples,
+                              @Value("${rabbitmq.autoscaling.interval:2000}") long interval,
+                              @Value("${rabbitmq.autoscaling.cooldown:10000}") long cooldown) {
+        if (minConsumers <= 0 || minConsumers > maxConsumers) {
+            throw new IllegalArgumentException("min-consumers must be positive and must not exceed max-consumers");
+        }
+        if (scaleDownUtilization >= scaleUpUtilization) {
+            throw new IllegalArgumentException("scale-down-utilization must be lower than scale-up-utilization");
+        }
+        this.amqpAdmin = amqpAdmin;
+        this.enabled = enabled;
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.scaleUpDepth = scaleUpDepth;
+        this.scaleUpUtilization = scaleUpUtilization;
+        this.scaleDownUtilization = scaleDownUtilization;
+        this.scaleDownSamples = scaleDownSamples;
+        this.interval = interval;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * 注册监听容器，在容器工厂的ContainerCustomizer中调用，此时容器还没有启动
+     * @param adviceChain 容器工厂的adviceChain（例如重试），统计执行时间的Advice追加在后面
+     */
+    public void register(SimpleMessageListenerContainer container, Advice[] adviceChain) {
+        if (!enabled) {
+            return;
+        }
+        ContainerState state = new ContainerState();
+        Advice[] chain = adviceChain == null ? new Advice[1] : Arrays.copyOf(adviceChain, adviceChain.length + 1);
+        chain[chain.length - 1] = (MethodInterceptor) invocation -> {
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                state.busyNanos.addAndGet(System.nanoTime() - start);
+            }
+        };
+        container.setAdviceChain(chain);
+        // 最大值与当前值相同，关闭容器自带的按连续空闲/忙碌次数的扩缩容，由这里统一调整；
+        // concurrentConsumers不能大于maxConcurrentConsumers，而配置的concurrency可能大于minConsumers，所以先放开最大值
+        container.setMaxConcurrentConsumers(Integer.MAX_VALUE);
+        container.setConcurrentConsumers(minConsumers);
+        container.setMaxConcurrentConsumers(minConsumers);
+        state.consumers = minConsumers;
+        containers.put(container, state);
+    }
+
+    /**
+     * @return 每个监听容器（listenerId）当前的消费者数量
+     */
+    public Map<String, Integer> getConsumerCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        containers.forEach((container, state) -> counts.put(container.getListenerId(), state.consumers));
+        return counts;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("listener-autoscaler-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::sample, interval);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void sample() {
+        containers.forEach((container, state) -> {
+            if (!container.isRunning()) {
+                return;
+            }
+            try {
+                adjust(container, state);
+            } catch (RuntimeException e) {
+                // broker暂时不可用，下个周期再试
+                logger.warn("Failed to sample listener container " + container.getListenerId(), e);
+            }
+        });
+    }
+
+    private void adjust(SimpleMessageListenerContainer container, ContainerState state) {
+        long now = System.nanoTime();
+        long busy = state.busyNanos.get();
+        double utilization = state.sampledAt == 0 ? 0
+                : Math.min(1.0, (double) (busy - state.sampledBusy) / ((now - state.sampledAt) * state.consumers));
+        state.sampledAt = now;
+        state.sampledBusy = busy;
+        long depth = 0;
+        for (String queue : container.getQueueNames()) {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            if (info != null) {
+                depth += info.getMessageCount();
+            }
+        }
+        int consumers = state.consumers;
+        boolean scaleUp = depth > (long) consumers * scaleUpDepth || (utilization >= scaleUpUtilization && depth > 0);
+        boolean scaleDown = depth == 0 && utilization < scaleDownUtilization;
+        state.scaleDownSamples = scaleDown ? state.scaleDownSamples + 1 : 0;
+        if (state.adjustedAt != 0 && now - state.adjustedAt < TimeUnit.MILLISECONDS.toNanos(cooldown)) {
+            return;
+        }
+        int target = consumers;
+        if (scaleUp) {
+            target = (int) Math.min(maxConsumers, Math.max(consumers + 1, (depth + scaleUpDepth - 1) / scaleUpDepth));
+        } else if (state.scaleDownSamples >= scaleDownSamples) {
+            target = Math.max(minConsumers, consumers - 1);
+        }
+        if (target == consumers) {
+            return;
+        }
+        // concurrentConsumers不能大于maxConcurrentConsumers，扩容时先调大最大值，缩容时后调小最大值
+        if (target > consumers) {
+            container.setMaxConcurrentConsumers(target);
+            container.setConcurrentConsumers(target);
+        } else {
+            container.setConcurrentConsumers(target);
+            container.setMaxConcurrentConsumers(target);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("%s consumers %d -> %d (depth=%d, utilization=%.2f)",
+                    container.getListenerId(), consumers, target, depth, utilization));
+        }
+        state.consumers = target;
+        state.adjustedAt = now;
+        state.scaleDownSamples = 0;
+    }
+
+    /**
+     * 一个监听容器的采样状态，busyNanos由消费者线程累加，其它字段只在采样线程上访问
+     */
+    private static class ContainerState {
+        private final AtomicLong busyNanos = new AtomicLong();
+        private volatile int consumers;
+        private long sampledAt;
+        private long sampledBusy;
+        private long adjustedAt;
+        private int scaleDownSamples;
+    }
+}
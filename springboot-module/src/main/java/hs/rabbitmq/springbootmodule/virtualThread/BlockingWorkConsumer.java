@@ -0,0 +1,44 @@
+package hs.rabbitmq.springbootmodule.virtualThread;
+
+import hs.rabbitmq.idempotency.IdempotencyCache;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author heshuai
+ * @title: BlockingWorkConsumer
+ * @description: 监听方法阻塞在I/O上的WorkQueue
+ *                  每条消息都要查询数据库、调用接口，大部分时间在等待，这里用Thread.sleep(50)模拟
+ *                  containerFactory: virtualThreadRabbitListenerContainerFactory，rabbitmq.virtual-threads.enabled为true时
+ *                      每条消息在一个虚拟线程上处理，一个消费者同时处理rabbitmq.virtual-threads.prefetch条消息；
+ *                      监听方法正常返回时消息被确认，抛出异常时按default-requeue-rejected拒绝，不需要（也不能）自己确认
+ *                  重新投递（消费者崩溃、Channel关闭、拒绝后重新入队）的消息按messageId去重（simple-module的IdempotencyCache），
+ *                  处理过的消息直接返回、正常确认，不再重复耗时的处理；没有messageId的消息不去重
+ * @date 2026年10月19日 03:10
+ */
+@Component
+public class BlockingWorkConsumer {
+
+    /**
+     * 最近一小时内处理过的十万个messageId，多个虚拟线程并发调用，IdempotencyCache是线程安全的
+     */
+    private final IdempotencyCache dedup = new IdempotencyCache(100_000, 1, TimeUnit.HOURS);
+
+    @RabbitListener(queuesToDeclare = @Queue(name = "blockingWorkQueue"), containerFactory = "virtualThreadRabbitListenerContainerFactory")
+    public void receive(String message, @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId)
+            throws InterruptedException, IOException {
+        if (dedup.isDuplicate(messageId)) {
+            System.out.println("跳过重复的消息：" + messageId);
+            return;
+        }
+        Thread.sleep(50);
+        System.out.println(Thread.currentThread() + "处理完成：" + message);
+        dedup.processed(messageId);
+    }
+}
@@ -0,0 +1,125 @@
+package hs.rabbitmq.springbootmodule.virtualThread;
+
+import com.rabbitmq.client.Channel;
+import org.aopalliance.aop.Advice;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.ImmediateAcknowledgeAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.ConditionalRejectingErrorHandler;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.support.ContainerUtils;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.util.ErrorHandler;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author heshuai
+ * @title: VirtualThreadMessageListener
+ * @description: 在虚拟线程上执行监听方法的MessageListener装饰器，由virtualThreadRabbitListenerContainerFactory包装到监听容器上
+ *               监听方法阻塞在I/O上（JDBC、HTTP）时，普通的监听容器要提高吞吐量只能调大max-concurrency，每个消费者一个平台线程和一个Channel。
+ *               这里监听容器的消费者线程只把消息交给一个新的虚拟线程，立即返回，监听方法在虚拟线程上执行：
+ *                  1. 容器使用MANUAL确认，同时处理的消息数量由prefetch限制（broker最多投递prefetch条未确认的消息），
+ *                     一个消费者、一个Channel就可以同时处理prefetch条消息
+ *                  2. 确认与AUTO模式相同，由这里在监听方法返回后代替容器完成：
+ *                     正常返回basicAck；抛出ImmediateAcknowledgeAmqpException时basicAck；
+ *                     其它异常先交给ConditionalRejectingErrorHandler（消息转换失败等致命异常不再重新入队），
+ *                     再按default-requeue-rejected、AmqpRejectAndDontRequeueException决定basicReject是否重新入队
+ *                  3. 容器工厂的adviceChain（重试、指标）改为在虚拟线程上包围监听方法，而不是包围“交给虚拟线程”这一步
+ *               注意：
+ *                  1. 监听方法不要再自己确认消息（不要声明Channel参数去basicAck），否则同一条消息会被确认两次
+ *                  2. 监听容器停止时，正在处理的消息确认会失败，Channel关闭后由broker重新投递，监听方法需要是幂等的
+ * @date 2026年10月19日 03:10
+ */
+public class VirtualThreadMessageListener implements ChannelAwareMessageListener {
+
+    private static final Log logger = LogFactory.getLog(VirtualThreadMessageListener.class);
+
+    /**
+     * 与监听容器中ContainerDelegate.invokeListener的参数相同，adviceChain中的拦截器按这个参数顺序读取消息
+     */
+    @FunctionalInterface
+    public interface ListenerInvoker {
+        void invokeListener(Channel channel, Object data) throws Exception;
+    }
+
+    private final Executor executor;
+    private final ListenerInvoker invoker;
+    private final ErrorHandler errorHandler = new ConditionalRejectingErrorHandler();
+    private final boolean defaultRequeueRejected;
+
+    /**
+     * @param delegate 监听容器原来的MessageListener
+     * @param executor 执行监听方法的Executor，通常是VirtualThreads.newExecutor
+     * @param adviceChain 包围监听方法的Advice，可以为null
+     * @param defaultRequeueRejected 监听方法抛出异常时是否重新入队，与spring.rabbitmq.listener.simple.default-requeue-rejected相同
+     */
+    public VirtualThreadMessageListener(ChannelAwareMessageListener delegate, Executor executor, Advice[] adviceChain,
+                                        boolean defaultRequeueRejected) {
+        this.executor = executor;
+        this.defaultRequeueRejected = defaultRequeueRejected;
+        ListenerInvoker target = (channel, data) -> delegate.onMessage((Message) data, channel);
+        if (adviceChain == null || adviceChain.length == 0) {
+            this.invoker = target;
+        } else {
+            ProxyFactory factory = new ProxyFactory(target);
+            factory.addInterface(ListenerInvoker.class);
+            for (Advice advice : adviceChain) {
+                factory.addAdvice(advice);
+            }
+            this.invoker = (ListenerInvoker) factory.getProxy(getClass().getClassLoader());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) {
+        try {
+            executor.execute(() -> invoke(message, channel));
+        } catch (RejectedExecutionException e) {
+            // 已经关闭，消息不处理也不确认，Channel关闭后由broker重新投递
+        }
+    }
+
+    private void invoke(Message message, Channel channel) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        try {
+            try {
+                invoker.invokeListener(channel, message);
+            } catch (Throwable e) {
+                if (isImmediateAcknowledge(e)) {
+                    channel.basicAck(deliveryTag, false);
+                } else {
+                    channel.basicReject(deliveryTag, shouldRequeue(e));
+                }
+                return;
+            }
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException | RuntimeException e) {
+            // Channel已经关闭，消息会被broker重新投递
+            logger.warn("Failed to acknowledge message " + deliveryTag + ", it will be redelivered", e);
+        }
+    }
+
+    private boolean shouldRequeue(Throwable e) {
+        Throwable failure = e;
+        try {
+            // 与监听容器相同，致命异常时ErrorHandler抛出AmqpRejectAndDontRequeueException
+            errorHandler.handleError(e);
+        } catch (Throwable rejected) {
+            failure = rejected;
+        }
+        return ContainerUtils.shouldRequeue(defaultRequeueRejected, failure, logger);
+    }
+
+    private static boolean isImmediateAcknowledge(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ImmediateAcknowledgeAmqpException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
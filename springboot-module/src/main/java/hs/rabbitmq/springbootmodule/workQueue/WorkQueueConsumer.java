@@ -1,31 +1,64 @@
 package hs.rabbitmq.springbootmodule.workQueue;
 
+import com.rabbitmq.client.Channel;
+import hs.rabbitmq.codec.ByteBufferConsumer;
+import hs.rabbitmq.codec.LazyJson;
+import hs.rabbitmq.codec.Utf8Decoder;
+import hs.rabbitmq.springbootmodule.batch.BatchAcknowledger;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
 /**
  * @author heshuai
  * @title: WorkQueueConsumer
  * @description: 工作模型——WorkQueue
  *                  因为需要在一个类中写多个监听处理，所以将@RaabitListener直接写到方法上机课
+ *                  下游（例如写数据库）批量处理比逐条处理便宜得多，这里使用批量监听，一次收到一批消息
+ *                  监听方法的参数是Message而不是String，消息体不经过MessageConverter转换，用simple-module的ByteBufferConsumer、
+ *                  LazyJson、Utf8Decoder直接在消息体字节上读取，JSON消息只解码需要的字段
  * @date 2021年02月02日 11:05
  */
 @Component
 public class WorkQueueConsumer {
     /**
      * @RabbitListener: 可以直接添加到方法上，表示该方法就是Rabbitmq监听器处理函数
+     * containerFactory: 批量监听的容器工厂，一次最多收到rabbitmq.batch-listener.batch-size条消息，手动确认
+     * BatchAcknowledger.process: 批次处理成功后一次确认；只有部分消息失败时抛出PartialBatchFailureException.of(失败的下标...)，
+     *      只有这些消息重新入队（重复投递时进入死信队列或丢弃），其余消息正常确认
      */
-    @RabbitListener(queuesToDeclare = @Queue(name = "workQueue"))
-    public void workQueue1(String message){
-        System.out.println("workQueue1收到消息如下：");
-        System.out.println(message);
+    @RabbitListener(queuesToDeclare = @Queue(name = "workQueue"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void workQueue1(List<Message> messages, Channel channel) throws IOException {
+        BatchAcknowledger.process(channel, messages, batch -> save("workQueue1", batch));
+    }
+
+    @RabbitListener(queuesToDeclare = @Queue(name = "workQueue"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void workQueue2(List<Message> messages, Channel channel) throws IOException {
+        BatchAcknowledger.process(channel, messages, batch -> save("workQueue2", batch));
     }
 
-    @RabbitListener(queuesToDeclare = @Queue(name = "workQueue"))
-    public void workQueue2(String message){
-        System.out.println("workQueue2收到消息如下：");
-        System.out.println(message);
+    /**
+     * 模拟批量写入，一次处理整个批次
+     * 消息体按UTF-8解码，不使用平台默认字符集；JSON格式的订单消息只写入已支付的订单，直接在消息体字节上读取status和orderId字段，其它订单不解码
+     */
+    private void save(String listener, List<Message> batch) {
+        System.out.println(listener + "收到" + batch.size() + "条消息如下：");
+        for (Message message : batch) {
+            ByteBuffer body = ByteBufferConsumer.wrap(message.getBody());
+            if (MessageProperties.CONTENT_TYPE_JSON.equals(message.getMessageProperties().getContentType())) {
+                if (LazyJson.stringEquals(body, LazyJson.find(body, "status"), "PAID")) {
+                    System.out.println("paid order " + LazyJson.longValue(body, LazyJson.find(body, "orderId")));
+                }
+                continue;
+            }
+            System.out.println(Utf8Decoder.decode(body));
+        }
     }
 
 }
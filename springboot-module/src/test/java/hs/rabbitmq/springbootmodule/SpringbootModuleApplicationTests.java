@@ -1,19 +1,25 @@
 package hs.rabbitmq.springbootmodule;
 
 import com.alibaba.fastjson.JSON;
+import hs.rabbitmq.springbootmodule.flow.ConnectionBlockedMonitor;
+import hs.rabbitmq.springbootmodule.rpc.AsyncRPCClient;
 import net.minidev.json.JSONArray;
 import org.apache.coyote.http11.filters.VoidOutputFilter;
 import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.ReturnedMessage;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.lang.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -34,6 +40,24 @@ class SpringbootModuleApplicationTests {
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
+    /**
+     * 批量发送的RabbitTemplate，见RabbitmqConfig
+     */
+    @Autowired
+    private BatchingRabbitTemplate batchingRabbitTemplate;
+
+    /**
+     * broker流控监控，见RabbitmqConfig
+     */
+    @Autowired
+    private ConnectionBlockedMonitor connectionBlockedMonitor;
+
+    /**
+     * 非阻塞的RPC客户端，见RabbitmqConfig
+     */
+    @Autowired
+    private AsyncRPCClient asyncRPCClient;
+
     /**
      * HelloWord 模型 消息发布
      */
@@ -61,6 +85,55 @@ class SpringbootModuleApplicationTests {
         TimeUnit.SECONDS.sleep(2L);
     }
 
+    /**
+     * WorkQueue 模型 JSON订单消息
+     * WorkQueueConsumer直接在消息体字节上读取status，只打印已支付的订单，其它字段不解码
+     */
+    @Test
+    void workQueueJson() throws InterruptedException {
+        for (int i=0; i<10; i++){
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            String order = "{\"orderId\":" + i + ",\"status\":\"" + (i % 2 == 0 ? "PAID" : "CREATED")
+                    + "\",\"remark\":\"第" + i + "条消息\"}";
+            rabbitTemplate.send("workQueue", new Message(order.getBytes(StandardCharsets.UTF_8), properties));
+        }
+        TimeUnit.SECONDS.sleep(2L);
+    }
+
+    /**
+     * WorkQueue 模型 批量发布
+     * 每100条消息打包成一条AMQP消息发送，WorkQueueConsumer收到的仍然是单条消息
+     */
+    @Test
+    void workQueueBatching() throws InterruptedException {
+        for (int i=0; i<1000; i++){
+            batchingRabbitTemplate.convertAndSend("workQueue","这是第"+i+"条批量发送的祝福");
+        }
+        // 发送最后一个不满的批次
+        batchingRabbitTemplate.flush();
+        TimeUnit.SECONDS.sleep(2L);
+    }
+
+    /**
+     * WorkQueue 模型 感知流控的发布
+     * broker内存告警时rabbitTemplate直接抛出AmqpResourceNotAvailableException，这里计数后放弃，模拟上游拒绝请求
+     */
+    @Test
+    void workQueueFlowControl() throws InterruptedException {
+        int rejected = 0;
+        for (int i=0; i<10; i++){
+            try {
+                rabbitTemplate.convertAndSend("workQueue","这是第"+i+"条祝福");
+            } catch (AmqpResourceNotAvailableException e) {
+                rejected++;
+            }
+        }
+        System.out.println("rejected: " + rejected + ", blocked " + connectionBlockedMonitor.getBlockedCount()
+                + " times, " + connectionBlockedMonitor.getBlockedTimeMillis() + "ms in total");
+        TimeUnit.SECONDS.sleep(2L);
+    }
+
     /**
      * Publish/Subscribe模式
      *  在此模式中是否使用routingKey都不重要, 因为Fanout类型就是将消息广播到所有的Queue
@@ -105,6 +178,24 @@ class SpringbootModuleApplicationTests {
         System.out.printf("收到回复如下：\n %s \n",new String((byte[]) response));
         TimeUnit.SECONDS.sleep(1L);
     }
+    /**
+     * RPC 模式，异步
+     */
+    @Test
+    void AsyncRPCClient() {
+        // call: 发送请求后立即返回Future，不等待回复；这里由一个线程同时发出10个请求，每个请求最多等待2秒
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[10];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = asyncRPCClient.call("RPCSERVER", "task.info", "我是第" + i + "个任务", 2, TimeUnit.SECONDS)
+                    .thenAccept(response -> System.out.printf("收到回复如下：\n %s \n", new String(response)))
+                    .exceptionally(e -> {
+                        // 超时（TimeoutException）或者在途请求已满（RejectedExecutionException）
+                        System.out.printf("请求失败：%s \n", e);
+                        return null;
+                    });
+        }
+        CompletableFuture.allOf(responses).join();
+    }
     /**
      * Publisher Confirms 模式
      */